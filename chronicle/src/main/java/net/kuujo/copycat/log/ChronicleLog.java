@@ -239,12 +239,48 @@ public class ChronicleLog extends FileLog {
     return this;
   }
 
+  @Override
+  public ChronicleLog withFlushGroupCommit(boolean groupCommit) {
+    super.setFlushGroupCommit(groupCommit);
+    return this;
+  }
+
+  @Override
+  public ChronicleLog withFlushGroupCommitWindow(long groupCommitWindow) {
+    super.setFlushGroupCommitWindow(groupCommitWindow);
+    return this;
+  }
+
   @Override
   public ChronicleLog withRetentionPolicy(RetentionPolicy retentionPolicy) {
     super.setRetentionPolicy(retentionPolicy);
     return this;
   }
 
+  @Override
+  public ChronicleLog withRetentionInterval(long retentionInterval) {
+    super.setRetentionInterval(retentionInterval);
+    return this;
+  }
+
+  @Override
+  public ChronicleLog withCacheSize(int cacheSize) {
+    super.setCacheSize(cacheSize);
+    return this;
+  }
+
+  @Override
+  public ChronicleLog withTimeIndexInterval(long timeIndexInterval) {
+    super.setTimeIndexInterval(timeIndexInterval);
+    return this;
+  }
+
+  @Override
+  public ChronicleLog withTimeIndexEntries(int timeIndexEntries) {
+    super.setTimeIndexEntries(timeIndexEntries);
+    return this;
+  }
+
   @Override
   public LogManager getLogManager(String name) {
     return new ChronicleLogManager(name, this);
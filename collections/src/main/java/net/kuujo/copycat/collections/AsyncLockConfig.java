@@ -57,7 +57,7 @@ public class AsyncLockConfig extends ResourceConfig<AsyncLockConfig> {
   @Override
   public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
     StateLogConfig config = new StateLogConfig(toMap());
-    return new CoordinatedResourceConfig()
+    return new CoordinatedResourceConfig(super.toMap())
       .withResourceFactory(DefaultAsyncLock::new)
       .withResourceConfig(config)
       .withElectionTimeout(getElectionTimeout())
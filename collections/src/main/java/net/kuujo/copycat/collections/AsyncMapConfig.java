@@ -15,6 +15,7 @@
  */
 package net.kuujo.copycat.collections;
 
+import net.kuujo.copycat.CompactionMode;
 import net.kuujo.copycat.ResourceConfig;
 import net.kuujo.copycat.StateLogConfig;
 import net.kuujo.copycat.cluster.ClusterConfig;
@@ -24,6 +25,7 @@ import net.kuujo.copycat.internal.util.Assert;
 import net.kuujo.copycat.protocol.Consistency;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Asynchronous map configuration.
@@ -32,8 +34,12 @@ import java.util.Map;
  */
 public class AsyncMapConfig extends ResourceConfig<AsyncMapConfig> {
   public static final String ASYNC_MAP_CONSISTENCY = "consistency";
+  public static final String ASYNC_MAP_COMPACTION = "compaction";
+  public static final String ASYNC_MAP_TOMBSTONE_RETENTION = "tombstone-retention";
 
   private static final String DEFAULT_ASYNC_MAP_CONSISTENCY = "default";
+  private static final String DEFAULT_ASYNC_MAP_COMPACTION = "snapshot";
+  private static final long DEFAULT_ASYNC_MAP_TOMBSTONE_RETENTION = TimeUnit.DAYS.toMillis(1);
 
   public AsyncMapConfig() {
   }
@@ -104,10 +110,123 @@ public class AsyncMapConfig extends ResourceConfig<AsyncMapConfig> {
     return this;
   }
 
+  /**
+   * Sets the map log compaction mode. When compacted by key, the log retains only the latest put or remove of each key.
+   *
+   * @param compaction The map log compaction mode.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public void setCompaction(String compaction) {
+    put(ASYNC_MAP_COMPACTION, CompactionMode.parse(Assert.isNotNull(compaction, "compaction")).toString());
+  }
+
+  /**
+   * Sets the map log compaction mode. When compacted by key, the log retains only the latest put or remove of each key.
+   *
+   * @param compaction The map log compaction mode.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public void setCompaction(CompactionMode compaction) {
+    put(ASYNC_MAP_COMPACTION, Assert.isNotNull(compaction, "compaction").toString());
+  }
+
+  /**
+   * Returns the map log compaction mode.
+   *
+   * @return The map log compaction mode.
+   */
+  public CompactionMode getCompaction() {
+    return CompactionMode.parse(get(ASYNC_MAP_COMPACTION, DEFAULT_ASYNC_MAP_COMPACTION));
+  }
+
+  /**
+   * Sets the map log compaction mode, returning the configuration for method chaining.
+   *
+   * @param compaction The map log compaction mode.
+   * @return The map configuration.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public AsyncMapConfig withCompaction(String compaction) {
+    setCompaction(compaction);
+    return this;
+  }
+
+  /**
+   * Sets the map log compaction mode, returning the configuration for method chaining.
+   *
+   * @param compaction The map log compaction mode.
+   * @return The map configuration.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public AsyncMapConfig withCompaction(CompactionMode compaction) {
+    setCompaction(compaction);
+    return this;
+  }
+
+  /**
+   * Sets the time for which removals are retained when the map log is compacted by key.
+   *
+   * @param retention The tombstone retention time in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public void setTombstoneRetention(long retention) {
+    put(ASYNC_MAP_TOMBSTONE_RETENTION, Assert.arg(retention, retention >= 0, "tombstone retention must not be negative"));
+  }
+
+  /**
+   * Sets the time for which removals are retained when the map log is compacted by key.
+   *
+   * @param retention The tombstone retention time.
+   * @param unit The retention time unit.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public void setTombstoneRetention(long retention, TimeUnit unit) {
+    setTombstoneRetention(unit.toMillis(retention));
+  }
+
+  /**
+   * Returns the time for which removals are retained when the map log is compacted by key.
+   *
+   * @return The tombstone retention time in milliseconds.
+   */
+  public long getTombstoneRetention() {
+    return get(ASYNC_MAP_TOMBSTONE_RETENTION, DEFAULT_ASYNC_MAP_TOMBSTONE_RETENTION);
+  }
+
+  /**
+   * Sets the time for which removals are retained when the map log is compacted by key, returning the configuration
+   * for method chaining.
+   *
+   * @param retention The tombstone retention time in milliseconds.
+   * @return The map configuration.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public AsyncMapConfig withTombstoneRetention(long retention) {
+    setTombstoneRetention(retention);
+    return this;
+  }
+
+  /**
+   * Sets the time for which removals are retained when the map log is compacted by key, returning the configuration
+   * for method chaining.
+   *
+   * @param retention The tombstone retention time.
+   * @param unit The retention time unit.
+   * @return The map configuration.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public AsyncMapConfig withTombstoneRetention(long retention, TimeUnit unit) {
+    setTombstoneRetention(retention, unit);
+    return this;
+  }
+
   @Override
   public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
-    StateLogConfig config = new StateLogConfig(toMap()).withDefaultConsistency(getConsistency());
-    return new CoordinatedResourceConfig()
+    StateLogConfig config = new StateLogConfig(toMap())
+      .withDefaultConsistency(getConsistency())
+      .withCompaction(getCompaction())
+      .withTombstoneRetention(getTombstoneRetention());
+    return new CoordinatedResourceConfig(super.toMap())
       .withResourceFactory(DefaultAsyncMap::new)
       .withResourceConfig(config)
       .withElectionTimeout(getElectionTimeout())
@@ -107,7 +107,7 @@ public class AsyncMultiMapConfig extends ResourceConfig<AsyncMultiMapConfig> {
   @Override
   public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
     StateLogConfig config = new StateLogConfig(toMap()).withDefaultConsistency(getConsistency());
-    return new CoordinatedResourceConfig()
+    return new CoordinatedResourceConfig(super.toMap())
       .withResourceFactory(DefaultAsyncMultiMap::new)
       .withResourceConfig(config)
       .withElectionTimeout(getElectionTimeout())
@@ -48,7 +48,7 @@ public class AsyncSetConfig extends AsyncCollectionConfig<AsyncSetConfig> {
   @Override
   public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
     StateLogConfig config = new StateLogConfig(toMap());
-    return new CoordinatedResourceConfig()
+    return new CoordinatedResourceConfig(super.toMap())
       .withResourceFactory(DefaultAsyncSet::new)
       .withResourceConfig(config)
       .withElectionTimeout(getElectionTimeout())
@@ -16,11 +16,11 @@
 package net.kuujo.copycat.collections.internal.map;
 
 import net.kuujo.copycat.Initializer;
+import net.kuujo.copycat.SnapshotMap;
 import net.kuujo.copycat.StateContext;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
@@ -38,8 +38,9 @@ public class DefaultMapState<K, V> implements MapState<K, V> {
   @Initializer
   public void init(StateContext<MapState<K, V>> context) {
     map = context.get("value");
-    if (map == null) {
-      map = new HashMap<>();
+    // Snapshot maps allow the state to be snapshotted without blocking commands.
+    if (!(map instanceof SnapshotMap)) {
+      map = map != null ? new SnapshotMap<>(map) : new SnapshotMap<>();
       context.put("value", map);
     }
   }
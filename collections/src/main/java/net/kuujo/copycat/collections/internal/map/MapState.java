@@ -64,11 +64,11 @@ public interface MapState<K, V> extends Map<K, V> {
   V get(Object key);
 
   @Override
-  @Command
+  @Command(key=0)
   V put(K key, V value);
 
   @Override
-  @Command
+  @Command(key=0, tombstone=true)
   V remove(Object key);
 
   @Override
@@ -38,11 +38,29 @@ public abstract class ResourceConfig<T extends ResourceConfig<T>> extends Abstra
   public static final String RESOURCE_SERIALIZER = "serializer";
   public static final String RESOURCE_ELECTION_TIMEOUT = "election.timeout";
   public static final String RESOURCE_HEARTBEAT_INTERVAL = "heartbeat.interval";
+  public static final String RESOURCE_REPLICATION_WINDOW = "replication.window";
+  public static final String RESOURCE_REPLICATION_BATCH_ENTRIES = "replication.batch-entries";
+  public static final String RESOURCE_REPLICATION_BATCH_SIZE = "replication.batch-size";
+  public static final String RESOURCE_REPLICATION_ADAPTIVE_BATCHING = "replication.adaptive-batching";
+  public static final String RESOURCE_REPLICATION_TARGET_LATENCY = "replication.target-latency";
+  public static final String RESOURCE_LEASE_READS = "lease.reads";
+  public static final String RESOURCE_LEASE_CLOCK_DRIFT = "lease.clock-drift";
+  public static final String RESOURCE_BOUNDED_READ_MAX_LAG = "bounded-read.max-lag";
+  public static final String RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES = "bounded-read.max-lag-entries";
   public static final String RESOURCE_REPLICAS = "replicas";
   public static final String RESOURCE_LOG = "log";
 
   private static final long DEFAULT_RESOURCE_ELECTION_TIMEOUT = 300;
   private static final long DEFAULT_RESOURCE_HEARTBEAT_INTERVAL = 150;
+  private static final int DEFAULT_RESOURCE_REPLICATION_WINDOW = 4;
+  private static final int DEFAULT_RESOURCE_REPLICATION_BATCH_ENTRIES = 100;
+  private static final int DEFAULT_RESOURCE_REPLICATION_BATCH_SIZE = 1024 * 1024;
+  private static final boolean DEFAULT_RESOURCE_REPLICATION_ADAPTIVE_BATCHING = false;
+  private static final long DEFAULT_RESOURCE_REPLICATION_TARGET_LATENCY = 50;
+  private static final boolean DEFAULT_RESOURCE_LEASE_READS = false;
+  private static final long DEFAULT_RESOURCE_LEASE_CLOCK_DRIFT = 50;
+  private static final long DEFAULT_RESOURCE_BOUNDED_READ_MAX_LAG = 1000;
+  private static final long DEFAULT_RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES = 100;
   private static final Set<String> DEFAULT_RESOURCE_REPLICAS = new HashSet<>(10);
   private static final Log DEFAULT_RESOURCE_LOG = new FileLog();
 
@@ -412,6 +430,387 @@ public abstract class ResourceConfig<T extends ResourceConfig<T>> extends Abstra
     return (T) this;
   }
 
+  /**
+   * Sets the resource replication window.<p>
+   *
+   * The replication window is the maximum number of append requests the leader will send to any single replica
+   * without having received a response. Larger windows allow replication throughput to scale with available
+   * bandwidth rather than with the round trip time to each replica.
+   *
+   * @param replicationWindow The maximum number of in-flight append requests per replica.
+   * @throws java.lang.IllegalArgumentException If the replication window is not positive
+   */
+  public void setReplicationWindow(int replicationWindow) {
+    put(RESOURCE_REPLICATION_WINDOW, Assert.arg(replicationWindow, replicationWindow > 0, "replication window must be positive"));
+  }
+
+  /**
+   * Returns the resource replication window.
+   *
+   * @return The maximum number of in-flight append requests per replica.
+   */
+  public int getReplicationWindow() {
+    return get(RESOURCE_REPLICATION_WINDOW, DEFAULT_RESOURCE_REPLICATION_WINDOW);
+  }
+
+  /**
+   * Sets the resource replication window, returning the resource configuration for method chaining.
+   *
+   * @param replicationWindow The maximum number of in-flight append requests per replica.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the replication window is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public T withReplicationWindow(int replicationWindow) {
+    setReplicationWindow(replicationWindow);
+    return (T) this;
+  }
+
+  /**
+   * Sets the maximum number of entries in a single append request.
+   *
+   * @param batchEntries The maximum number of entries to send to a replica in a single append request.
+   * @throws java.lang.IllegalArgumentException If the number of entries is not positive
+   */
+  public void setReplicationBatchEntries(int batchEntries) {
+    put(RESOURCE_REPLICATION_BATCH_ENTRIES, Assert.arg(batchEntries, batchEntries > 0, "batch entries must be positive"));
+  }
+
+  /**
+   * Returns the maximum number of entries in a single append request.
+   *
+   * @return The maximum number of entries to send to a replica in a single append request.
+   */
+  public int getReplicationBatchEntries() {
+    return get(RESOURCE_REPLICATION_BATCH_ENTRIES, DEFAULT_RESOURCE_REPLICATION_BATCH_ENTRIES);
+  }
+
+  /**
+   * Sets the maximum number of entries in a single append request, returning the configuration for method chaining.
+   *
+   * @param batchEntries The maximum number of entries to send to a replica in a single append request.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the number of entries is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public T withReplicationBatchEntries(int batchEntries) {
+    setReplicationBatchEntries(batchEntries);
+    return (T) this;
+  }
+
+  /**
+   * Sets the maximum size of the entries in a single append request.<p>
+   *
+   * An append request always contains at least one entry, so a single entry larger than the batch size will still
+   * be replicated.
+   *
+   * @param batchSize The maximum number of entry bytes to send to a replica in a single append request.
+   * @throws java.lang.IllegalArgumentException If the batch size is not positive
+   */
+  public void setReplicationBatchSize(int batchSize) {
+    put(RESOURCE_REPLICATION_BATCH_SIZE, Assert.arg(batchSize, batchSize > 0, "batch size must be positive"));
+  }
+
+  /**
+   * Returns the maximum size of the entries in a single append request.
+   *
+   * @return The maximum number of entry bytes to send to a replica in a single append request.
+   */
+  public int getReplicationBatchSize() {
+    return get(RESOURCE_REPLICATION_BATCH_SIZE, DEFAULT_RESOURCE_REPLICATION_BATCH_SIZE);
+  }
+
+  /**
+   * Sets the maximum size of the entries in a single append request, returning the configuration for method chaining.
+   *
+   * @param batchSize The maximum number of entry bytes to send to a replica in a single append request.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the batch size is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public T withReplicationBatchSize(int batchSize) {
+    setReplicationBatchSize(batchSize);
+    return (T) this;
+  }
+
+  /**
+   * Sets whether replication batches are sized adaptively.<p>
+   *
+   * When adaptive batching is enabled the leader grows the batch sent to each replica while the replica's
+   * acknowledgement latency remains below the target latency and shrinks the batch when latency rises above it.
+   * Batches never exceed the configured batch entries and batch size.
+   *
+   * @param adaptive Whether to enable adaptive batching.
+   */
+  public void setAdaptiveReplicationBatching(boolean adaptive) {
+    put(RESOURCE_REPLICATION_ADAPTIVE_BATCHING, adaptive);
+  }
+
+  /**
+   * Returns whether replication batches are sized adaptively.
+   *
+   * @return Whether adaptive batching is enabled.
+   */
+  public boolean isAdaptiveReplicationBatching() {
+    return get(RESOURCE_REPLICATION_ADAPTIVE_BATCHING, DEFAULT_RESOURCE_REPLICATION_ADAPTIVE_BATCHING);
+  }
+
+  /**
+   * Sets whether replication batches are sized adaptively, returning the configuration for method chaining.
+   *
+   * @param adaptive Whether to enable adaptive batching.
+   * @return The resource configuration.
+   */
+  @SuppressWarnings("unchecked")
+  public T withAdaptiveReplicationBatching(boolean adaptive) {
+    setAdaptiveReplicationBatching(adaptive);
+    return (T) this;
+  }
+
+  /**
+   * Sets the target replication latency for adaptive batching.
+   *
+   * @param targetLatency The target append request latency in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the target latency is not positive
+   */
+  public void setReplicationTargetLatency(long targetLatency) {
+    put(RESOURCE_REPLICATION_TARGET_LATENCY, Assert.arg(targetLatency, targetLatency > 0, "target latency must be positive"));
+  }
+
+  /**
+   * Sets the target replication latency for adaptive batching.
+   *
+   * @param targetLatency The target append request latency.
+   * @param unit The target latency unit.
+   * @throws java.lang.IllegalArgumentException If the target latency is not positive
+   */
+  public void setReplicationTargetLatency(long targetLatency, TimeUnit unit) {
+    setReplicationTargetLatency(unit.toMillis(targetLatency));
+  }
+
+  /**
+   * Returns the target replication latency for adaptive batching.
+   *
+   * @return The target append request latency in milliseconds.
+   */
+  public long getReplicationTargetLatency() {
+    return get(RESOURCE_REPLICATION_TARGET_LATENCY, DEFAULT_RESOURCE_REPLICATION_TARGET_LATENCY);
+  }
+
+  /**
+   * Sets the target replication latency for adaptive batching, returning the configuration for method chaining.
+   *
+   * @param targetLatency The target append request latency in milliseconds.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the target latency is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public T withReplicationTargetLatency(long targetLatency) {
+    setReplicationTargetLatency(targetLatency);
+    return (T) this;
+  }
+
+  /**
+   * Sets the target replication latency for adaptive batching, returning the configuration for method chaining.
+   *
+   * @param targetLatency The target append request latency.
+   * @param unit The target latency unit.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the target latency is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public T withReplicationTargetLatency(long targetLatency, TimeUnit unit) {
+    setReplicationTargetLatency(targetLatency, unit);
+    return (T) this;
+  }
+
+  /**
+   * Sets whether the leader serves strongly consistent reads from a lease.<p>
+   *
+   * When lease reads are enabled the leader evaluates {@link net.kuujo.copycat.protocol.Consistency#STRONG} queries
+   * locally for as long as a majority of the cluster has acknowledged its leadership within the minimum election
+   * timeout less the clock drift bound. Once the lease expires, queries fall back to a heartbeat round. Replicas
+   * that have recently heard from the leader refuse to vote for other candidates while lease reads are enabled,
+   * so all members of the cluster should be configured alike.
+   *
+   * @param leaseReads Whether to enable lease reads.
+   */
+  public void setLeaseReads(boolean leaseReads) {
+    put(RESOURCE_LEASE_READS, leaseReads);
+  }
+
+  /**
+   * Returns whether the leader serves strongly consistent reads from a lease.
+   *
+   * @return Whether lease reads are enabled.
+   */
+  public boolean isLeaseReads() {
+    return get(RESOURCE_LEASE_READS, DEFAULT_RESOURCE_LEASE_READS);
+  }
+
+  /**
+   * Sets whether the leader serves strongly consistent reads from a lease, returning the configuration for method chaining.
+   *
+   * @param leaseReads Whether to enable lease reads.
+   * @return The resource configuration.
+   */
+  @SuppressWarnings("unchecked")
+  public T withLeaseReads(boolean leaseReads) {
+    setLeaseReads(leaseReads);
+    return (T) this;
+  }
+
+  /**
+   * Sets the clock drift bound for lease reads.
+   *
+   * @param clockDrift The maximum clock drift between members in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the clock drift is negative
+   */
+  public void setLeaseClockDrift(long clockDrift) {
+    put(RESOURCE_LEASE_CLOCK_DRIFT, Assert.arg(clockDrift, clockDrift >= 0, "clock drift cannot be negative"));
+  }
+
+  /**
+   * Sets the clock drift bound for lease reads.
+   *
+   * @param clockDrift The maximum clock drift between members.
+   * @param unit The clock drift unit.
+   * @throws java.lang.IllegalArgumentException If the clock drift is negative
+   */
+  public void setLeaseClockDrift(long clockDrift, TimeUnit unit) {
+    setLeaseClockDrift(unit.toMillis(clockDrift));
+  }
+
+  /**
+   * Returns the clock drift bound for lease reads.
+   *
+   * @return The maximum clock drift between members in milliseconds.
+   */
+  public long getLeaseClockDrift() {
+    return get(RESOURCE_LEASE_CLOCK_DRIFT, DEFAULT_RESOURCE_LEASE_CLOCK_DRIFT);
+  }
+
+  /**
+   * Sets the clock drift bound for lease reads, returning the configuration for method chaining.
+   *
+   * @param clockDrift The maximum clock drift between members in milliseconds.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the clock drift is negative
+   */
+  @SuppressWarnings("unchecked")
+  public T withLeaseClockDrift(long clockDrift) {
+    setLeaseClockDrift(clockDrift);
+    return (T) this;
+  }
+
+  /**
+   * Sets the clock drift bound for lease reads, returning the configuration for method chaining.
+   *
+   * @param clockDrift The maximum clock drift between members.
+   * @param unit The clock drift unit.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the clock drift is negative
+   */
+  @SuppressWarnings("unchecked")
+  public T withLeaseClockDrift(long clockDrift, TimeUnit unit) {
+    setLeaseClockDrift(clockDrift, unit);
+    return (T) this;
+  }
+
+  /**
+   * Sets the maximum time since contact with the leader for {@link net.kuujo.copycat.protocol.Consistency#BOUNDED} reads.<p>
+   *
+   * A replica only serves bounded reads from its local state if it has heard from the leader within the maximum lag
+   * and has applied entries to within the maximum number of lagging entries of the leader's commit index. Otherwise,
+   * bounded reads are forwarded to the leader.
+   *
+   * @param maxLag The maximum lag in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the maximum lag is negative
+   */
+  public void setBoundedReadMaxLag(long maxLag) {
+    put(RESOURCE_BOUNDED_READ_MAX_LAG, Assert.arg(maxLag, maxLag >= 0, "max lag cannot be negative"));
+  }
+
+  /**
+   * Sets the maximum time since contact with the leader for {@link net.kuujo.copycat.protocol.Consistency#BOUNDED} reads.
+   *
+   * @param maxLag The maximum lag.
+   * @param unit The maximum lag unit.
+   * @throws java.lang.IllegalArgumentException If the maximum lag is negative
+   */
+  public void setBoundedReadMaxLag(long maxLag, TimeUnit unit) {
+    setBoundedReadMaxLag(unit.toMillis(maxLag));
+  }
+
+  /**
+   * Returns the maximum time since contact with the leader for {@link net.kuujo.copycat.protocol.Consistency#BOUNDED} reads.
+   *
+   * @return The maximum lag in milliseconds.
+   */
+  public long getBoundedReadMaxLag() {
+    return get(RESOURCE_BOUNDED_READ_MAX_LAG, DEFAULT_RESOURCE_BOUNDED_READ_MAX_LAG);
+  }
+
+  /**
+   * Sets the maximum time since contact with the leader for bounded reads, returning the configuration for method chaining.
+   *
+   * @param maxLag The maximum lag in milliseconds.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the maximum lag is negative
+   */
+  @SuppressWarnings("unchecked")
+  public T withBoundedReadMaxLag(long maxLag) {
+    setBoundedReadMaxLag(maxLag);
+    return (T) this;
+  }
+
+  /**
+   * Sets the maximum time since contact with the leader for bounded reads, returning the configuration for method chaining.
+   *
+   * @param maxLag The maximum lag.
+   * @param unit The maximum lag unit.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the maximum lag is negative
+   */
+  @SuppressWarnings("unchecked")
+  public T withBoundedReadMaxLag(long maxLag, TimeUnit unit) {
+    setBoundedReadMaxLag(maxLag, unit);
+    return (T) this;
+  }
+
+  /**
+   * Sets the maximum number of unapplied committed entries for {@link net.kuujo.copycat.protocol.Consistency#BOUNDED} reads.
+   *
+   * @param maxLagEntries The maximum number of entries by which the local state may lag the leader's commit index.
+   * @throws java.lang.IllegalArgumentException If the maximum number of entries is negative
+   */
+  public void setBoundedReadMaxLagEntries(long maxLagEntries) {
+    put(RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES, Assert.arg(maxLagEntries, maxLagEntries >= 0, "max lag entries cannot be negative"));
+  }
+
+  /**
+   * Returns the maximum number of unapplied committed entries for {@link net.kuujo.copycat.protocol.Consistency#BOUNDED} reads.
+   *
+   * @return The maximum number of entries by which the local state may lag the leader's commit index.
+   */
+  public long getBoundedReadMaxLagEntries() {
+    return get(RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES, DEFAULT_RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES);
+  }
+
+  /**
+   * Sets the maximum number of unapplied committed entries for bounded reads, returning the configuration for method
+   * chaining.
+   *
+   * @param maxLagEntries The maximum number of entries by which the local state may lag the leader's commit index.
+   * @return The resource configuration.
+   * @throws java.lang.IllegalArgumentException If the maximum number of entries is negative
+   */
+  @SuppressWarnings("unchecked")
+  public T withBoundedReadMaxLagEntries(long maxLagEntries) {
+    setBoundedReadMaxLagEntries(maxLagEntries);
+    return (T) this;
+  }
+
   /**
    * Sets the set of replicas for the resource.
    *
@@ -18,9 +18,12 @@ package net.kuujo.copycat;
 import net.kuujo.copycat.cluster.coordinator.CoordinatedResourceConfig;
 import net.kuujo.copycat.cluster.manager.ClusterManager;
 import net.kuujo.copycat.log.LogManager;
+import net.kuujo.copycat.log.SnapshotStore;
 import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.protocol.ReplicaMetrics;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
@@ -67,6 +70,22 @@ public interface ResourceContext extends Managed<ResourceContext>, Executor {
    */
   LogManager log();
 
+  /**
+   * Returns the Copycat snapshot store.
+   *
+   * @return The Copycat snapshot store.
+   */
+  SnapshotStore snapshots();
+
+  /**
+   * Returns replication metrics for each replica.<p>
+   *
+   * Replication metrics are only available while the local member is the leader.
+   *
+   * @return A collection of replication metrics, one for each replica.
+   */
+  Collection<ReplicaMetrics> replicaMetrics();
+
   /**
    * Registers an entry consumer on the context.
    *
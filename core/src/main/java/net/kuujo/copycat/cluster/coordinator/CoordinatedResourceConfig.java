@@ -16,6 +16,7 @@
 package net.kuujo.copycat.cluster.coordinator;
 
 import net.kuujo.copycat.*;
+import net.kuujo.copycat.cluster.ClusterConfig;
 import net.kuujo.copycat.internal.util.Assert;
 import net.kuujo.copycat.log.BufferedLog;
 import net.kuujo.copycat.log.Log;
@@ -46,6 +47,7 @@ public class CoordinatedResourceConfig extends AbstractConfigurable {
   private static final long DEFAULT_RESOURCE_HEARTBEAT_INTERVAL = 150;
   private static final Set<String> DEFAULT_RESOURCE_REPLICAS = new HashSet<>();
   private static final Log DEFAULT_RESOURCE_LOG = new BufferedLog();
+  private static final ResourceConfig<?> DEFAULT_RESOURCE_CONFIG = new DefaultResourceConfig();
   private final Serializer DEFAULT_RESOURCE_SERIALIZER = new KryoSerializer();
 
   public CoordinatedResourceConfig() {
@@ -267,6 +269,96 @@ public class CoordinatedResourceConfig extends AbstractConfigurable {
     return this;
   }
 
+  /**
+   * Returns the resource replication window.
+   *
+   * @return The maximum number of in-flight append requests per replica.
+   * @see net.kuujo.copycat.ResourceConfig#setReplicationWindow(int)
+   */
+  public int getReplicationWindow() {
+    return get(ResourceConfig.RESOURCE_REPLICATION_WINDOW, DEFAULT_RESOURCE_CONFIG.getReplicationWindow());
+  }
+
+  /**
+   * Returns the maximum number of entries in a single append request.
+   *
+   * @return The maximum number of entries to send to a replica in a single append request.
+   * @see net.kuujo.copycat.ResourceConfig#setReplicationBatchEntries(int)
+   */
+  public int getReplicationBatchEntries() {
+    return get(ResourceConfig.RESOURCE_REPLICATION_BATCH_ENTRIES, DEFAULT_RESOURCE_CONFIG.getReplicationBatchEntries());
+  }
+
+  /**
+   * Returns the maximum size of a single append request in bytes.
+   *
+   * @return The maximum number of entry bytes to send to a replica in a single append request.
+   * @see net.kuujo.copycat.ResourceConfig#setReplicationBatchSize(int)
+   */
+  public int getReplicationBatchSize() {
+    return get(ResourceConfig.RESOURCE_REPLICATION_BATCH_SIZE, DEFAULT_RESOURCE_CONFIG.getReplicationBatchSize());
+  }
+
+  /**
+   * Returns whether replication batch limits adapt to replica latency.
+   *
+   * @return Whether replication batch limits adapt to replica latency.
+   * @see net.kuujo.copycat.ResourceConfig#setAdaptiveReplicationBatching(boolean)
+   */
+  public boolean isAdaptiveReplicationBatching() {
+    return get(ResourceConfig.RESOURCE_REPLICATION_ADAPTIVE_BATCHING, DEFAULT_RESOURCE_CONFIG.isAdaptiveReplicationBatching());
+  }
+
+  /**
+   * Returns the target append latency for adaptive batching in milliseconds.
+   *
+   * @return The target append latency in milliseconds.
+   * @see net.kuujo.copycat.ResourceConfig#setReplicationTargetLatency(long)
+   */
+  public long getReplicationTargetLatency() {
+    return get(ResourceConfig.RESOURCE_REPLICATION_TARGET_LATENCY, DEFAULT_RESOURCE_CONFIG.getReplicationTargetLatency());
+  }
+
+  /**
+   * Returns whether strong reads may be served from a leader lease.
+   *
+   * @return Whether strong reads may be served from a leader lease.
+   * @see net.kuujo.copycat.ResourceConfig#setLeaseReads(boolean)
+   */
+  public boolean isLeaseReads() {
+    return get(ResourceConfig.RESOURCE_LEASE_READS, DEFAULT_RESOURCE_CONFIG.isLeaseReads());
+  }
+
+  /**
+   * Returns the maximum clock drift assumed by leader leases in milliseconds.
+   *
+   * @return The maximum clock drift in milliseconds.
+   * @see net.kuujo.copycat.ResourceConfig#setLeaseClockDrift(long)
+   */
+  public long getLeaseClockDrift() {
+    return get(ResourceConfig.RESOURCE_LEASE_CLOCK_DRIFT, DEFAULT_RESOURCE_CONFIG.getLeaseClockDrift());
+  }
+
+  /**
+   * Returns the maximum time since the leader was last heard from for bounded reads in milliseconds.
+   *
+   * @return The maximum bounded read lag in milliseconds.
+   * @see net.kuujo.copycat.ResourceConfig#setBoundedReadMaxLag(long)
+   */
+  public long getBoundedReadMaxLag() {
+    return get(ResourceConfig.RESOURCE_BOUNDED_READ_MAX_LAG, DEFAULT_RESOURCE_CONFIG.getBoundedReadMaxLag());
+  }
+
+  /**
+   * Returns the maximum number of entries a bounded read may lag behind the leader's commit index.
+   *
+   * @return The maximum bounded read lag in entries.
+   * @see net.kuujo.copycat.ResourceConfig#setBoundedReadMaxLagEntries(long)
+   */
+  public long getBoundedReadMaxLagEntries() {
+    return get(ResourceConfig.RESOURCE_BOUNDED_READ_MAX_LAG_ENTRIES, DEFAULT_RESOURCE_CONFIG.getBoundedReadMaxLagEntries());
+  }
+
   /**
    * Sets the set of replicas for the resource.
    *
@@ -458,4 +550,14 @@ public class CoordinatedResourceConfig extends AbstractConfigurable {
     return this;
   }
 
+  /**
+   * Empty resource configuration from which defaults shared with {@link ResourceConfig} are read.
+   */
+  private static class DefaultResourceConfig extends ResourceConfig<DefaultResourceConfig> {
+    @Override
+    public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 }
@@ -34,6 +34,8 @@ abstract class AbstractState implements RaftProtocol {
   protected MessageHandler<AppendRequest, AppendResponse> appendHandler;
   protected MessageHandler<CommitRequest, CommitResponse> commitHandler;
   protected MessageHandler<QueryRequest, QueryResponse> queryHandler;
+  protected MessageHandler<InstallRequest, InstallResponse> installHandler;
+  protected MessageHandler<ReadIndexRequest, ReadIndexResponse> readIndexHandler;
   protected MessageHandler<CopycatState, CopycatState> transitionHandler;
   private boolean open;
 
@@ -144,6 +146,28 @@ abstract class AbstractState implements RaftProtocol {
     return exceptionalFuture(new IllegalStateException("Invalid Copycat state"));
   }
 
+  @Override
+  public AbstractState installHandler(MessageHandler<InstallRequest, InstallResponse> handler) {
+    this.installHandler = handler;
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<InstallResponse> install(InstallRequest request) {
+    return exceptionalFuture(new IllegalStateException("Invalid Copycat state"));
+  }
+
+  @Override
+  public AbstractState readIndexHandler(MessageHandler<ReadIndexRequest, ReadIndexResponse> handler) {
+    this.readIndexHandler = handler;
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<ReadIndexResponse> readIndex(ReadIndexRequest request) {
+    return exceptionalFuture(new IllegalStateException("Invalid Copycat state"));
+  }
+
   /**
    * Sets a transition registerHandler on the state.
    */
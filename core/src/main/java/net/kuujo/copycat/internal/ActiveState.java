@@ -16,10 +16,18 @@
 package net.kuujo.copycat.internal;
 
 import net.kuujo.copycat.CopycatState;
+import net.kuujo.copycat.log.Snapshot;
+import net.kuujo.copycat.log.SnapshotWriter;
 import net.kuujo.copycat.protocol.*;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -29,6 +37,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 abstract class ActiveState extends PassiveState {
   private final AtomicBoolean transition = new AtomicBoolean();
+  private SnapshotWriter installWriter;
+  private long installIndex;
+  private int installChunk;
+  private long installOffset;
+  private final TreeMap<Long, CompletableFuture<Void>> appliedFutures = new TreeMap<>();
 
   protected ActiveState(CopycatStateContext context) {
     super(context);
@@ -44,6 +57,14 @@ abstract class ActiveState extends PassiveState {
     return exceptionalFuture(new IllegalStateException("No transition handler registered"));
   }
 
+  @Override
+  public CompletableFuture<Void> close() {
+    return super.close().thenRunAsync(() -> {
+      abortInstall();
+      failApplied();
+    }, context.executor());
+  }
+
   @Override
   public CompletableFuture<PingResponse> ping(final PingRequest request) {
     CompletableFuture<PingResponse> future = CompletableFuture.completedFuture(logResponse(handlePing(logRequest(request))));
@@ -67,6 +88,13 @@ abstract class ActiveState extends PassiveState {
       transition.set(true);
     }
 
+    // Record the time of contact with the leader in order to protect the leader's read lease and to bound the
+    // staleness of local reads.
+    if (request.term() == context.getTerm()) {
+      context.setLeaderContact(System.nanoTime());
+      context.setLeaderCommitIndex(request.commitIndex());
+    }
+
     // If the request term is less than the current term then immediately
     // reply false and return our current term. The leader will receive
     // the updated term and step down.
@@ -147,7 +175,14 @@ abstract class ActiveState extends PassiveState {
 
   @Override
   public CompletableFuture<AppendResponse> append(final AppendRequest request) {
-    CompletableFuture<AppendResponse> future = CompletableFuture.completedFuture(logResponse(handleAppend(logRequest(request))));
+    AppendResponse response = handleAppend(logRequest(request));
+    // Successful responses are only sent once the appended entries have been flushed to disk.
+    CompletableFuture<AppendResponse> future;
+    if (response.succeeded() && !request.entries().isEmpty()) {
+      future = context.flush(response.logIndex()).thenApply(index -> logResponse(response));
+    } else {
+      future = CompletableFuture.completedFuture(logResponse(response));
+    }
     // If a transition is required then transition back to the follower state.
     // If the node is already a follower then the transition will be ignored.
     if (transition.get()) {
@@ -168,6 +203,13 @@ abstract class ActiveState extends PassiveState {
       transition.set(true);
     }
 
+    // Record the time of contact with the leader in order to protect the leader's read lease and to bound the
+    // staleness of local reads.
+    if (request.term() == context.getTerm()) {
+      context.setLeaderContact(System.nanoTime());
+      context.setLeaderCommitIndex(request.commitIndex());
+    }
+
     // If the request term is less than the current term then immediately
     // reply false and return our current term. The leader will receive
     // the updated term and step down.
@@ -248,27 +290,32 @@ abstract class ActiveState extends PassiveState {
     // If the log contains entries after the request's previous log index
     // then remove those entries to be replaced by the request entries.
     if (!request.entries().isEmpty()) {
+      List<ByteBuffer> entries = request.entries();
       long index = request.logIndex() != null ? request.logIndex() : 0;
-      for (ByteBuffer entry : request.entries()) {
+      int offset = 0;
+      for (; offset < entries.size(); offset++) {
         index++;
         // Replicated snapshot entries are *always* immediately logged and applied to the state machine
         // since snapshots are only taken of committed state machine state. This will cause all previous
         // entries to be removed from the log.
-        if (context.log().containsIndex(index)) {
-          // Compare the term of the received entry with the matching entry in the log.
-          ByteBuffer match = context.log().getEntry(index);
-          if (entry.getLong() != match.getLong()) {
-            logger().warn("{} - Synced entry does not match local log, removing incorrect entries", context.getLocalMember());
-            context.log().removeAfter(index - 1);
-            context.log().appendEntry(entry);
-            logger().debug("{} - Appended {} to log at index {}", context.getLocalMember(), entry, index);
-          }
-        } else {
-          context.log().appendEntry(entry);
-          logger().debug("{} - Appended {} to log at index {}", context.getLocalMember(), entry, index);
+        if (!context.log().containsIndex(index)) {
+          break;
+        }
+
+        // Compare the term of the received entry with the matching entry in the log.
+        ByteBuffer match = context.log().getEntry(index);
+        if (entries.get(offset).getLong() != match.getLong()) {
+          logger().warn("{} - Synced entry does not match local log, removing incorrect entries", context.getLocalMember());
+          context.log().removeAfter(index - 1);
+          break;
         }
       }
-      context.log().flush();
+
+      // Append all remaining entries to the log in a single batch.
+      if (offset < entries.size()) {
+        List<Long> indexes = context.log().appendEntries(entries.subList(offset, entries.size()));
+        logger().debug("{} - Appended {} entries to log at indexes {}-{}", context.getLocalMember(), indexes.size(), indexes.get(0), indexes.get(indexes.size() - 1));
+      }
     }
     doApplyCommits(request.commitIndex());
     return AppendResponse.builder()
@@ -280,6 +327,159 @@ abstract class ActiveState extends PassiveState {
       .build();
   }
 
+  @Override
+  public CompletableFuture<InstallResponse> install(final InstallRequest request) {
+    CompletableFuture<InstallResponse> future = CompletableFuture.completedFuture(logResponse(handleInstall(logRequest(request))));
+    // If a transition is required then transition back to the follower state.
+    // If the node is already a follower then the transition will be ignored.
+    if (transition.get()) {
+      transition(CopycatState.FOLLOWER);
+    }
+    return future;
+  }
+
+  /**
+   * Handles an install request.
+   */
+  private InstallResponse handleInstall(InstallRequest request) {
+    // If the request indicates a term that is greater than the current term then
+    // assign that term and leader to the current context and step down as leader.
+    if (request.term() > context.getTerm() || (request.term() == context.getTerm() && context.getLeader() == null)) {
+      context.setTerm(request.term());
+      context.setLeader(request.leader());
+      transition.set(true);
+    }
+
+    // If the request term is less than the current term then immediately
+    // reply false and return our current term. The leader will receive
+    // the updated term and step down.
+    if (request.term() < context.getTerm()) {
+      logger().warn("{} - Rejected {}: request term is less than the current term ({})", context.getLocalMember(), request, context.getTerm());
+      return installResponse(request, false);
+    }
+
+    // If a snapshot at or after the requested snapshot has already been installed then there's nothing left to
+    // transfer. Reply with the end of the snapshot so the leader resumes replicating entries.
+    Snapshot snapshot = context.snapshots().snapshot();
+    if (snapshot != null && snapshot.index() >= request.snapshotIndex()) {
+      abortInstall();
+      return installResponse(request, true);
+    }
+
+    try {
+      // If this is the first request for the snapshot then discard any partial transfer of an older snapshot.
+      if (installWriter == null || installIndex != request.snapshotIndex()) {
+        if (request.chunk() != 0 || request.offset() != 0) {
+          logger().warn("{} - Rejected {}: snapshot transfer must start at the first chunk", context.getLocalMember(), request);
+          abortInstall();
+          return installResponse(request, false);
+        }
+        abortInstall();
+        installWriter = context.snapshots().createSnapshot(request.snapshotIndex(), request.snapshotTerm());
+        installIndex = request.snapshotIndex();
+      }
+
+      // Only accept data that continues the transfer exactly where it left off. Otherwise reply with the
+      // expected position so that the leader can resume the transfer from it.
+      if (request.chunk() != installChunk || request.offset() != installOffset) {
+        logger().warn("{} - Rejected {}: expected chunk {} at offset {}", context.getLocalMember(), request, installChunk, installOffset);
+        return installResponse(request, false);
+      }
+
+      // Data is never accepted beyond the end of the chunk declared by the leader.
+      if (request.chunkSize() < 0 || request.data().remaining() > request.chunkSize() - request.offset()) {
+        logger().warn("{} - Rejected {}: data exceeds chunk size {}", context.getLocalMember(), request, request.chunkSize());
+        return installResponse(request, false);
+      }
+
+      // Write each piece of the chunk straight to the snapshot store rather than buffering the chunk in memory.
+      if (request.chunk() < request.chunks()) {
+        installWriter.appendChunk(request.data());
+        installOffset += request.data().remaining();
+        if (request.isChunkComplete()) {
+          installWriter.completeChunk();
+          installChunk++;
+          installOffset = 0;
+        }
+      }
+
+      if (request.isComplete()) {
+        installWriter.commit();
+        installWriter = null;
+        installChunk = 0;
+        installOffset = 0;
+        doInstallSnapshot(request.snapshotIndex(), request.snapshotTerm());
+      }
+    } catch (RuntimeException e) {
+      logger().warn("{} - Failed to install snapshot {}", context.getLocalMember(), request.snapshotIndex(), e);
+      abortInstall();
+      return installResponse(request, false);
+    }
+    return installResponse(request, true);
+  }
+
+  /**
+   * Builds an install response indicating the next expected position in the snapshot. Once no transfer is in
+   * progress, a successful response points past the last chunk of the snapshot.
+   */
+  private InstallResponse installResponse(InstallRequest request, boolean succeeded) {
+    return InstallResponse.builder()
+      .withId(request.id())
+      .withUri(context.getLocalMember())
+      .withTerm(context.getTerm())
+      .withSucceeded(succeeded)
+      .withChunk(installWriter != null ? installChunk : succeeded ? request.chunks() : 0)
+      .withOffset(installWriter != null ? installOffset : 0)
+      .build();
+  }
+
+  /**
+   * Replaces the log up to the given index with an installed snapshot.
+   */
+  private void doInstallSnapshot(long index, long term) {
+    // The installed snapshot is represented in the log by an entry containing only the snapshot term. If the log
+    // already contains a matching entry at the snapshot index, entries following it are retained. Otherwise the
+    // entire log is replaced.
+    ByteBuffer entry = ByteBuffer.allocate(8);
+    entry.putLong(term);
+    entry.flip();
+    ByteBuffer match = context.log().containsIndex(index) ? context.log().getEntry(index) : null;
+    if (match != null && match.getLong() == term) {
+      context.log().compact(index, entry);
+    } else {
+      context.log().reset(index, entry);
+    }
+    logger().info("{} - Installed snapshot at index {}", context.getLocalMember(), index);
+
+    // The snapshot contains only committed state. Apply the snapshot entry so that the state machine
+    // restores its state from the snapshot store.
+    if (context.getCommitIndex() == null || context.getCommitIndex() < index) {
+      context.setCommitIndex(index);
+    }
+    if (context.getLastApplied() == null || context.getLastApplied() < index) {
+      if (context.getLastApplied() != null) {
+        context.setLastApplied(index - 1);
+      }
+      applyEntry(index);
+    }
+  }
+
+  /**
+   * Aborts any partially transferred snapshot.
+   */
+  private void abortInstall() {
+    if (installWriter != null) {
+      try {
+        installWriter.abort();
+      } catch (RuntimeException e) {
+        logger().warn("{} - Failed to abort snapshot {}", context.getLocalMember(), installIndex, e);
+      }
+    }
+    installWriter = null;
+    installChunk = 0;
+    installOffset = 0;
+  }
+
   /**
    * Applies commits to the local state machine.
    */
@@ -335,6 +535,59 @@ abstract class ActiveState extends PassiveState {
       } finally {
         context.setLastApplied(index);
       }
+      checkApplied();
+    }
+  }
+
+  /**
+   * Returns a future to be completed once entries up to the given index have been applied to the local state.
+   */
+  protected CompletableFuture<Void> whenApplied(Long index) {
+    if (index == null || (context.getLastApplied() != null && context.getLastApplied() >= index)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return appliedFutures.computeIfAbsent(index, i -> new CompletableFuture<>());
+  }
+
+  /**
+   * Completes futures waiting for entries that have been applied to the local state.
+   */
+  protected void checkApplied() {
+    Long lastApplied = context.getLastApplied();
+    if (lastApplied != null && !appliedFutures.isEmpty()) {
+      NavigableMap<Long, CompletableFuture<Void>> futures = appliedFutures.headMap(lastApplied, true);
+      List<CompletableFuture<Void>> ready = new ArrayList<>(futures.values());
+      futures.clear();
+      ready.forEach(future -> future.complete(null));
+    }
+  }
+
+  /**
+   * Fails all futures waiting for entries to be applied to the local state.
+   */
+  private void failApplied() {
+    List<CompletableFuture<Void>> futures = new ArrayList<>(appliedFutures.values());
+    appliedFutures.clear();
+    futures.forEach(future -> future.completeExceptionally(new IllegalStateException("State closed")));
+  }
+
+  /**
+   * Evaluates a query against the local state.
+   */
+  protected void applyQuery(QueryRequest request, CompletableFuture<QueryResponse> future) {
+    try {
+      future.complete(logResponse(QueryResponse.builder()
+        .withId(request.id())
+        .withUri(context.getLocalMember())
+        .withResult(context.consumer().apply(null, request.entry()))
+        .build()));
+    } catch (Exception e) {
+      future.complete(logResponse(QueryResponse.builder()
+        .withId(request.id())
+        .withUri(context.getLocalMember())
+        .withStatus(Response.Status.ERROR)
+        .withError(e)
+        .build()));
     }
   }
 
@@ -348,6 +601,20 @@ abstract class ActiveState extends PassiveState {
    * Handles a vote request.
    */
   private PollResponse handlePoll(PollRequest request) {
+    // If lease reads are enabled and the local member has heard from the current leader within the minimum
+    // election timeout then reject the poll. The leader may still be serving reads from its lease.
+    if (context.isLeaseReads() && context.getLeader() != null && !request.candidate().equals(context.getLeader())
+      && !request.candidate().equals(context.getLocalMember())
+      && timeSinceLeaderContact() < context.getMinimumElectionTimeout()) {
+      logger().debug("{} - Rejected {}: the current leader's lease has not expired", context.getLocalMember(), request);
+      return PollResponse.builder()
+        .withId(request.id())
+        .withUri(context.getLocalMember())
+        .withTerm(context.getTerm())
+        .withVoted(false)
+        .build();
+    }
+
     // If the request indicates a term that is greater than the current term then
     // assign that term and leader to the current context and step down as leader.
     if (request.term() > context.getTerm()) {
@@ -484,18 +751,120 @@ abstract class ActiveState extends PassiveState {
         .withUri(context.getLocalMember())
         .withResult(context.consumer().apply(null, request.entry()))
         .build()));
-    } else if (context.getLeader() == null) {
+    }
+
+    // Bounded and session queries are evaluated locally if the local state is recent enough, otherwise they're
+    // forwarded to the leader.
+    if ((request.consistency() == Consistency.BOUNDED && isWithinBounds())
+      || (request.consistency() == Consistency.SESSION && isSessionApplied(request.index()))) {
+      CompletableFuture<QueryResponse> future = new CompletableFuture<>();
+      applyQuery(request, future);
+      return future;
+    }
+
+    if (context.getLeader() == null) {
       return CompletableFuture.completedFuture(logResponse(QueryResponse.builder()
         .withId(request.id())
         .withUri(context.getLocalMember())
         .withStatus(Response.Status.ERROR)
         .withError(new IllegalStateException("Not the leader"))
         .build()));
+    } else if (request.consistency() == Consistency.STRONG) {
+      return doReadIndexQuery(request);
     } else {
       return queryHandler.handle(QueryRequest.builder(request).withUri(context.getLeader()).build());
     }
   }
 
+  /**
+   * Returns the time elapsed since the local member last heard from the current leader, measured with a monotonic
+   * clock.
+   */
+  private long timeSinceLeaderContact() {
+    Long leaderContact = context.getLeaderContact();
+    return leaderContact != null ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leaderContact) : Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns a boolean indicating whether the local state is within the configured bounds for bounded reads.<p>
+   *
+   * The local state is within bounds if the leader has been heard from within the maximum lag and entries have been
+   * applied to within the maximum number of lagging entries of the commit index most recently reported by the leader.
+   */
+  private boolean isWithinBounds() {
+    if (context.getLeader() == null || timeSinceLeaderContact() > context.getBoundedReadMaxLag()) {
+      return false;
+    }
+    Long leaderCommitIndex = context.getLeaderCommitIndex();
+    if (leaderCommitIndex == null) {
+      return true;
+    }
+    long lastApplied = context.getLastApplied() != null ? context.getLastApplied() : 0;
+    return leaderCommitIndex - lastApplied <= context.getBoundedReadMaxLagEntries();
+  }
+
+  /**
+   * Returns a boolean indicating whether the local state has applied the given session index.
+   */
+  private boolean isSessionApplied(Long index) {
+    return index == null || (context.getLastApplied() != null && context.getLastApplied() >= index);
+  }
+
+  /**
+   * Evaluates a strongly consistent query against the local state.<p>
+   *
+   * Rather than forwarding the query to the leader for evaluation, the leader is asked only for a read index
+   * confirmed by a quorum of the cluster. The query is evaluated locally once entries up to the read index have
+   * been applied, so reads remain linearizable while their cost is spread across the cluster.
+   */
+  private CompletableFuture<QueryResponse> doReadIndexQuery(QueryRequest request) {
+    CompletableFuture<QueryResponse> future = new CompletableFuture<>();
+    ReadIndexRequest readRequest = ReadIndexRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri(context.getLeader())
+      .withTerm(context.getTerm())
+      .build();
+    logger().debug("{} - Sent {} to {}", context.getLocalMember(), readRequest, context.getLeader());
+    readIndexHandler.handle(readRequest).whenComplete((response, error) -> {
+      context.executor().execute(() -> {
+        if (error == null && response.status() == Response.Status.OK) {
+          logger().debug("{} - Received {}", context.getLocalMember(), response);
+          whenApplied(response.readIndex()).whenComplete((result, appliedError) -> {
+            if (appliedError == null) {
+              applyQuery(request, future);
+            } else {
+              future.complete(logResponse(QueryResponse.builder()
+                .withId(request.id())
+                .withUri(context.getLocalMember())
+                .withStatus(Response.Status.ERROR)
+                .withError(appliedError)
+                .build()));
+            }
+          });
+        } else {
+          future.complete(logResponse(QueryResponse.builder()
+            .withId(request.id())
+            .withUri(context.getLocalMember())
+            .withStatus(Response.Status.ERROR)
+            .withError(error != null ? error : response.error())
+            .build()));
+        }
+      });
+    });
+    return future;
+  }
+
+  @Override
+  public CompletableFuture<ReadIndexResponse> readIndex(ReadIndexRequest request) {
+    logRequest(request);
+    return CompletableFuture.completedFuture(logResponse(ReadIndexResponse.builder()
+      .withId(request.id())
+      .withUri(context.getLocalMember())
+      .withStatus(Response.Status.ERROR)
+      .withError(new IllegalStateException("Not the leader"))
+      .build()));
+  }
+
   @Override
   public CompletableFuture<CommitResponse> commit(CommitRequest request) {
     logRequest(request);
@@ -79,7 +79,7 @@ class CandidateState extends ActiveState {
     // When the election timer is reset, increment the current term and
     // restart the election.
     context.setTerm(context.getTerm() + 1);
-    long delay = context.getElectionTimeout() - (context.getElectionTimeout() / 4) + (Math.round(Math.random() * (context.getElectionTimeout() / 2)));
+    long delay = context.getMinimumElectionTimeout() + (Math.round(Math.random() * (context.getElectionTimeout() / 2)));
     currentTimer = context.executor().schedule(() -> {
       // When the election times out, clear the previous majority vote
       // check and restart the election.
@@ -23,13 +23,17 @@ import net.kuujo.copycat.internal.util.Assert;
 import net.kuujo.copycat.internal.util.concurrent.Futures;
 import net.kuujo.copycat.internal.util.concurrent.NamedThreadFactory;
 import net.kuujo.copycat.log.LogManager;
+import net.kuujo.copycat.log.SnapshotStore;
 import net.kuujo.copycat.protocol.*;
 
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -41,6 +45,13 @@ import java.util.stream.Collectors;
 public class CopycatStateContext extends Observable implements RaftProtocol {
   private final ScheduledExecutorService executor;
   private final LogManager log;
+  private final SnapshotStore snapshots;
+  private final boolean groupCommit;
+  private final long groupCommitWindow;
+  private final long retentionInterval;
+  private ScheduledFuture<?> retentionFuture;
+  private final List<CompletableFuture<Long>> flushFutures = new ArrayList<>();
+  private boolean flushScheduled;
   private AbstractState state;
   private BiFunction<Long, ByteBuffer, ByteBuffer> consumer;
   private MessageHandler<SyncRequest, SyncResponse> syncHandler;
@@ -49,6 +60,8 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
   private MessageHandler<AppendRequest, AppendResponse> appendHandler;
   private MessageHandler<QueryRequest, QueryResponse> queryHandler;
   private MessageHandler<CommitRequest, CommitResponse> commitHandler;
+  private MessageHandler<InstallRequest, InstallResponse> installHandler;
+  private MessageHandler<ReadIndexRequest, ReadIndexResponse> readIndexHandler;
   private CompletableFuture<Void> openFuture;
   private final String localMember;
   private final Set<String> replicas;
@@ -64,6 +77,18 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
   private Long lastApplied;
   private long electionTimeout = 500;
   private long heartbeatInterval = 250;
+  private int replicationWindow = 4;
+  private int replicationBatchEntries = 100;
+  private int replicationBatchSize = 1024 * 1024;
+  private boolean adaptiveReplicationBatching;
+  private long replicationTargetLatency = 50;
+  private boolean leaseReads;
+  private long leaseClockDrift = 50;
+  private volatile Long leaderContact;
+  private Long leaderCommitIndex;
+  private long boundedReadMaxLag = 1000;
+  private long boundedReadMaxLagEntries = 100;
+  private final Map<String, ReplicaMetrics> replicaMetrics = new ConcurrentHashMap<>();
   private boolean open;
 
   public CopycatStateContext(String name, String uri, CoordinatedResourceConfig config, ScheduledExecutorService executor) {
@@ -75,8 +100,21 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     this.localMemberInfo = new ReplicaInfo(uri);
     this.memberInfo.put(uri, localMemberInfo);
     this.log = config.getLog().getLogManager(name);
+    this.snapshots = config.getLog().getSnapshotStore(name);
+    this.groupCommit = config.getLog().isFlushGroupCommit();
+    this.groupCommitWindow = config.getLog().getFlushGroupCommitWindow();
+    this.retentionInterval = config.getLog().getRetentionInterval();
     this.electionTimeout = config.getElectionTimeout();
     this.heartbeatInterval = config.getHeartbeatInterval();
+    this.replicationWindow = config.getReplicationWindow();
+    this.replicationBatchEntries = config.getReplicationBatchEntries();
+    this.replicationBatchSize = config.getReplicationBatchSize();
+    this.adaptiveReplicationBatching = config.isAdaptiveReplicationBatching();
+    this.replicationTargetLatency = config.getReplicationTargetLatency();
+    this.leaseReads = config.isLeaseReads();
+    this.leaseClockDrift = config.getLeaseClockDrift();
+    this.boundedReadMaxLag = config.getBoundedReadMaxLag();
+    this.boundedReadMaxLagEntries = config.getBoundedReadMaxLagEntries();
   }
 
   /**
@@ -403,6 +441,18 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     return electionTimeout;
   }
 
+  /**
+   * Returns the minimum randomized election timeout.<p>
+   *
+   * Election timeouts are randomized between .75 and 1.25 times the configured election timeout, so no replica
+   * starts an election or votes for another candidate until at least this long after it last heard from the leader.
+   *
+   * @return The minimum election timeout in milliseconds.
+   */
+  public long getMinimumElectionTimeout() {
+    return electionTimeout - (electionTimeout / 4);
+  }
+
   /**
    * Sets the state heartbeat interval.
    *
@@ -423,6 +473,251 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     return heartbeatInterval;
   }
 
+  /**
+   * Sets the state replication window.
+   *
+   * @param replicationWindow The maximum number of in-flight append requests per replica.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setReplicationWindow(int replicationWindow) {
+    this.replicationWindow = replicationWindow;
+    return this;
+  }
+
+  /**
+   * Returns the state replication window.
+   *
+   * @return The maximum number of in-flight append requests per replica.
+   */
+  public int getReplicationWindow() {
+    return replicationWindow;
+  }
+
+  /**
+   * Sets the maximum number of entries per append request.
+   *
+   * @param batchEntries The maximum number of entries per append request.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setReplicationBatchEntries(int batchEntries) {
+    this.replicationBatchEntries = batchEntries;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of entries per append request.
+   *
+   * @return The maximum number of entries per append request.
+   */
+  public int getReplicationBatchEntries() {
+    return replicationBatchEntries;
+  }
+
+  /**
+   * Sets the maximum number of entry bytes per append request.
+   *
+   * @param batchSize The maximum number of entry bytes per append request.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setReplicationBatchSize(int batchSize) {
+    this.replicationBatchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of entry bytes per append request.
+   *
+   * @return The maximum number of entry bytes per append request.
+   */
+  public int getReplicationBatchSize() {
+    return replicationBatchSize;
+  }
+
+  /**
+   * Sets whether replication batches are sized adaptively.
+   *
+   * @param adaptive Whether replication batches are sized adaptively.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setAdaptiveReplicationBatching(boolean adaptive) {
+    this.adaptiveReplicationBatching = adaptive;
+    return this;
+  }
+
+  /**
+   * Returns whether replication batches are sized adaptively.
+   *
+   * @return Whether replication batches are sized adaptively.
+   */
+  public boolean isAdaptiveReplicationBatching() {
+    return adaptiveReplicationBatching;
+  }
+
+  /**
+   * Sets the target append request latency for adaptive batching.
+   *
+   * @param targetLatency The target append request latency in milliseconds.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setReplicationTargetLatency(long targetLatency) {
+    this.replicationTargetLatency = targetLatency;
+    return this;
+  }
+
+  /**
+   * Returns the target append request latency for adaptive batching.
+   *
+   * @return The target append request latency in milliseconds.
+   */
+  public long getReplicationTargetLatency() {
+    return replicationTargetLatency;
+  }
+
+  /**
+   * Sets whether the leader serves strongly consistent reads from a lease.
+   *
+   * @param leaseReads Whether lease reads are enabled.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setLeaseReads(boolean leaseReads) {
+    this.leaseReads = leaseReads;
+    return this;
+  }
+
+  /**
+   * Returns whether the leader serves strongly consistent reads from a lease.
+   *
+   * @return Whether lease reads are enabled.
+   */
+  public boolean isLeaseReads() {
+    return leaseReads;
+  }
+
+  /**
+   * Sets the clock drift bound for lease reads.
+   *
+   * @param clockDrift The maximum clock drift between members in milliseconds.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setLeaseClockDrift(long clockDrift) {
+    this.leaseClockDrift = clockDrift;
+    return this;
+  }
+
+  /**
+   * Returns the clock drift bound for lease reads.
+   *
+   * @return The maximum clock drift between members in milliseconds.
+   */
+  public long getLeaseClockDrift() {
+    return leaseClockDrift;
+  }
+
+  /**
+   * Returns the duration of a leader lease.<p>
+   *
+   * The lease duration is the minimum randomized election timeout less the clock drift bound. No replica that
+   * has acknowledged the leader will help elect another leader within that time.
+   *
+   * @return The leader lease duration in milliseconds.
+   */
+  public long getLeaseDuration() {
+    return getMinimumElectionTimeout() - leaseClockDrift;
+  }
+
+  /**
+   * Sets the last time the local member heard from the current leader.<p>
+   *
+   * Contact times are read from {@link System#nanoTime()} so that they're unaffected by changes to the wall clock.
+   *
+   * @param time The last leader contact time in nanoseconds.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setLeaderContact(long time) {
+    this.leaderContact = time;
+    return this;
+  }
+
+  /**
+   * Returns the last time the local member heard from the current leader.
+   *
+   * @return The last leader contact time in nanoseconds, or {@code null} if no leader has been heard from.
+   */
+  public Long getLeaderContact() {
+    return leaderContact;
+  }
+
+  /**
+   * Sets the leader's commit index as last reported by the leader.
+   *
+   * @param commitIndex The leader's commit index.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setLeaderCommitIndex(Long commitIndex) {
+    this.leaderCommitIndex = commitIndex;
+    return this;
+  }
+
+  /**
+   * Returns the leader's commit index as last reported by the leader.
+   *
+   * @return The leader's commit index.
+   */
+  public Long getLeaderCommitIndex() {
+    return leaderCommitIndex;
+  }
+
+  /**
+   * Sets the maximum time since contact with the leader for bounded reads.
+   *
+   * @param maxLag The maximum lag in milliseconds.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setBoundedReadMaxLag(long maxLag) {
+    this.boundedReadMaxLag = maxLag;
+    return this;
+  }
+
+  /**
+   * Returns the maximum time since contact with the leader for bounded reads.
+   *
+   * @return The maximum lag in milliseconds.
+   */
+  public long getBoundedReadMaxLag() {
+    return boundedReadMaxLag;
+  }
+
+  /**
+   * Sets the maximum number of unapplied committed entries for bounded reads.
+   *
+   * @param maxLagEntries The maximum number of lagging entries.
+   * @return The Copycat state context.
+   */
+  CopycatStateContext setBoundedReadMaxLagEntries(long maxLagEntries) {
+    this.boundedReadMaxLagEntries = maxLagEntries;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of unapplied committed entries for bounded reads.
+   *
+   * @return The maximum number of lagging entries.
+   */
+  public long getBoundedReadMaxLagEntries() {
+    return boundedReadMaxLagEntries;
+  }
+
+  /**
+   * Returns replication metrics for each replica.<p>
+   *
+   * Metrics are only maintained while the local member is the leader.
+   *
+   * @return A map of replica URIs to replication metrics.
+   */
+  public Map<String, ReplicaMetrics> getReplicaMetrics() {
+    return replicaMetrics;
+  }
+
   /**
    * Returns the Copycat state.
    *
@@ -470,6 +765,90 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     return log;
   }
 
+  /**
+   * Returns the state snapshot store.
+   *
+   * @return The snapshot store.
+   */
+  public SnapshotStore snapshots() {
+    return snapshots;
+  }
+
+  /**
+   * Returns the highest index up to which the local log counts towards a commit quorum.<p>
+   *
+   * When group commit is enabled, this is the log's durable index. Otherwise, entries are flushed according to the
+   * log's flush policy as they're appended, so all appended entries are counted.
+   *
+   * @return The highest index up to which the local log counts towards a commit quorum.
+   */
+  public long getDurableIndex() {
+    if (!groupCommit) {
+      Long lastIndex = log.lastIndex();
+      return lastIndex != null ? lastIndex : 0;
+    }
+    return log.durableIndex();
+  }
+
+  /**
+   * Flushes the state log up to the given index.<p>
+   *
+   * If group commit is enabled, the flush is deferred to the end of the group commit window so that all entries
+   * appended within the window share a single forced flush. The returned future is completed once the log's durable
+   * index has reached the given index.
+   *
+   * @param index The index up to which to flush the log.
+   * @return A completable future to be completed once the log has been flushed up to the given index.
+   */
+  public CompletableFuture<Long> flush(long index) {
+    if (!groupCommit) {
+      log.flush();
+      return CompletableFuture.completedFuture(index);
+    }
+
+    long durableIndex = log.durableIndex();
+    if (durableIndex >= index) {
+      return CompletableFuture.completedFuture(durableIndex);
+    }
+
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    flushFutures.add(future);
+    if (!flushScheduled) {
+      flushScheduled = true;
+      if (groupCommitWindow > 0) {
+        executor.schedule(this::doFlush, groupCommitWindow, TimeUnit.MICROSECONDS);
+      } else {
+        executor.execute(this::doFlush);
+      }
+    }
+    return future;
+  }
+
+  /**
+   * Enforces the log retention policy. Expired segments are deleted in the background.
+   */
+  private void enforceRetentionPolicy() {
+    if (log.isOpen()) {
+      log.enforceRetentionPolicy();
+    }
+  }
+
+  /**
+   * Forces the log to disk and completes all pending flush futures.
+   */
+  private void doFlush() {
+    flushScheduled = false;
+    List<CompletableFuture<Long>> futures = new ArrayList<>(flushFutures);
+    flushFutures.clear();
+    try {
+      log.flush(true);
+      long durableIndex = log.durableIndex();
+      futures.forEach(f -> f.complete(durableIndex));
+    } catch (Exception e) {
+      futures.forEach(f -> f.completeExceptionally(e));
+    }
+  }
+
   @Override
   public CompletableFuture<SyncResponse> sync(SyncRequest request) {
     return wrapCall(request, state::sync);
@@ -536,6 +915,28 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     return wrapCall(request, state::commit);
   }
 
+  @Override
+  public CopycatStateContext installHandler(MessageHandler<InstallRequest, InstallResponse> handler) {
+    this.installHandler = handler;
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<InstallResponse> install(InstallRequest request) {
+    return wrapCall(request, state::install);
+  }
+
+  @Override
+  public CopycatStateContext readIndexHandler(MessageHandler<ReadIndexRequest, ReadIndexResponse> handler) {
+    this.readIndexHandler = handler;
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<ReadIndexResponse> readIndex(ReadIndexRequest request) {
+    return wrapCall(request, state::readIndex);
+  }
+
   private <T extends Request, U extends Response> CompletableFuture<U> wrapCall(T request, MessageHandler<T, U> handler) {
     CompletableFuture<U> future = new CompletableFuture<>();
     executor.execute(() -> {
@@ -638,6 +1039,8 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     state.pollHandler(pollHandler);
     state.queryHandler(queryHandler);
     state.commitHandler(commitHandler);
+    state.installHandler(installHandler);
+    state.readIndexHandler(readIndexHandler);
     state.transitionHandler(this::transition);
   }
 
@@ -651,6 +1054,8 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
     state.pollHandler(null);
     state.queryHandler(null);
     state.commitHandler(null);
+    state.installHandler(null);
+    state.readIndexHandler(null);
     state.transitionHandler(null);
   }
 
@@ -673,6 +1078,8 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
       try {
         open = true;
         log.open();
+        snapshots.open();
+        retentionFuture = executor.scheduleAtFixedRate(this::enforceRetentionPolicy, retentionInterval, retentionInterval, TimeUnit.MILLISECONDS);
         transition(replicas.contains(localMember) ? CopycatState.FOLLOWER : CopycatState.PASSIVE);
       } catch (Exception e) {
         openFuture.completeExceptionally(e);
@@ -698,10 +1105,15 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
 
     CompletableFuture<Void> future = new CompletableFuture<>();
     executor.execute(() -> {
+      if (retentionFuture != null) {
+        retentionFuture.cancel(false);
+        retentionFuture = null;
+      }
       transition(CopycatState.START).whenComplete((result, error) -> {
         if (error == null) {
           try {
             log.close();
+            snapshots.close();
             future.complete(null);
           } catch (Exception e) {
             future.completeExceptionally(e);
@@ -709,6 +1121,7 @@ public class CopycatStateContext extends Observable implements RaftProtocol {
         } else {
           try {
             log.close();
+            snapshots.close();
             future.completeExceptionally(error);
           } catch (Exception e) {
             future.completeExceptionally(error);
@@ -23,14 +23,19 @@ import net.kuujo.copycat.internal.cluster.coordinator.DefaultClusterCoordinator;
 import net.kuujo.copycat.internal.util.Assert;
 import net.kuujo.copycat.internal.util.concurrent.Futures;
 import net.kuujo.copycat.log.LogManager;
+import net.kuujo.copycat.log.SnapshotStore;
 import net.kuujo.copycat.protocol.CommitRequest;
 import net.kuujo.copycat.protocol.Consistency;
 import net.kuujo.copycat.protocol.QueryRequest;
+import net.kuujo.copycat.protocol.ReplicaMetrics;
 import net.kuujo.copycat.protocol.Response;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 /**
@@ -44,6 +49,7 @@ public class DefaultResourceContext implements ResourceContext {
   private final ClusterManager cluster;
   private final CopycatStateContext context;
   private final DefaultClusterCoordinator coordinator;
+  private final AtomicLong lastWriteIndex = new AtomicLong();
   private boolean open;
 
   public DefaultResourceContext(String name, CoordinatedResourceConfig config, ClusterManager cluster, CopycatStateContext context, DefaultClusterCoordinator coordinator) {
@@ -80,6 +86,16 @@ public class DefaultResourceContext implements ResourceContext {
     return context.log();
   }
 
+  @Override
+  public SnapshotStore snapshots() {
+    return context.snapshots();
+  }
+
+  @Override
+  public Collection<ReplicaMetrics> replicaMetrics() {
+    return Collections.unmodifiableCollection(context.getReplicaMetrics().values());
+  }
+
   @Override
   public void execute(Runnable command) {
     context.executor().execute(command);
@@ -103,11 +119,14 @@ public class DefaultResourceContext implements ResourceContext {
     }
 
     CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+    // Session queries must be evaluated against state that includes the last write committed through this context.
+    long sessionIndex = lastWriteIndex.get();
     QueryRequest request = QueryRequest.builder()
       .withId(UUID.randomUUID().toString())
       .withUri(context.getLocalMember())
       .withEntry(entry)
       .withConsistency(consistency)
+      .withIndex(consistency == Consistency.SESSION && sessionIndex > 0 ? sessionIndex : null)
       .build();
     context.query(request).whenComplete((response, error) -> {
       if (error == null) {
@@ -138,6 +157,9 @@ public class DefaultResourceContext implements ResourceContext {
     context.commit(request).whenComplete((response, error) -> {
       if (error == null) {
         if (response.status() == Response.Status.OK) {
+          if (response.index() != null) {
+            lastWriteIndex.accumulateAndGet(response.index(), Math::max);
+          }
           future.complete(response.result());
         } else {
           future.completeExceptionally(response.error());
@@ -80,7 +80,7 @@ class FollowerState extends ActiveState {
       // Set the election timeout in a semi-random fashion with the random range
       // being somewhere between .75 * election timeout and 1.25 * election
       // timeout.
-      long delay = context.getElectionTimeout() - (context.getElectionTimeout() / 4)
+      long delay = context.getMinimumElectionTimeout()
         + (Math.round(Math.random() * (context.getElectionTimeout() / 2)));
       currentTimer = context.executor().schedule(() -> {
         // If the node has not yet voted for anyone then transition to
@@ -17,6 +17,7 @@ package net.kuujo.copycat.internal;
 import net.kuujo.copycat.CopycatException;
 import net.kuujo.copycat.CopycatState;
 import net.kuujo.copycat.internal.util.Quorum;
+import net.kuujo.copycat.log.Snapshot;
 import net.kuujo.copycat.protocol.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,10 @@ class LeaderState extends ActiveState {
   private static final Logger LOGGER = LoggerFactory.getLogger(LeaderState.class);
   private ScheduledFuture<?> currentTimer;
   private Replicator replicator;
+  private final List<PendingCommit> pendingCommits = new ArrayList<>();
+  private final List<CompletableFuture<Long>> readFutures = new ArrayList<>();
+  private boolean readPending;
+  private boolean committedInTerm;
 
   LeaderState(CopycatStateContext context) {
     super(context);
@@ -148,34 +153,49 @@ class LeaderState extends ActiveState {
     BiFunction<Long, ByteBuffer, ByteBuffer> consumer = context.consumer();
 
     switch (request.consistency()) {
-      // Consistency mode WEAK or DEFAULT is immediately evaluated and returned.
+      // Consistency mode WEAK, DEFAULT or BOUNDED is immediately evaluated and returned. The leader's state is never
+      // behind its own commit index.
       case WEAK:
       case DEFAULT:
+      case BOUNDED:
         future.complete(logResponse(QueryResponse.builder()
           .withId(request.id())
           .withUri(context.getLocalMember())
           .withResult(consumer.apply(null, request.entry()))
           .build()));
         break;
+      // Consistency mode SESSION is evaluated once the caller's last write has been applied.
+      case SESSION:
+        whenApplied(request.index()).whenComplete((result, error) -> {
+          if (error == null) {
+            applyQuery(request, future);
+          } else {
+            future.complete(logResponse(QueryResponse.builder()
+              .withId(request.id())
+              .withUri(context.getLocalMember())
+              .withStatus(Response.Status.ERROR)
+              .withError(error)
+              .build()));
+          }
+        });
+        break;
       // Consistency mode STRONG requires synchronous consistency check prior to applying the query.
       case STRONG:
-        LOGGER.debug("{} - Synchronizing logs to index {} for read", context.getLocalMember(), context.log().lastIndex());
-        replicator.pingAll().whenComplete((index, error) -> {
+        // If the leader holds a read lease then no other leader can have been elected, so the query can be
+        // evaluated against the local state without a heartbeat round once the state has caught up to the commit
+        // index. Otherwise, wait for leadership to be confirmed and then evaluate the query once the state has caught
+        // up to the commit index at the start of the confirmation round.
+        CompletableFuture<Long> readFuture;
+        if (isLeaseValid()) {
+          LOGGER.debug("{} - Evaluating read under leader lease", context.getLocalMember());
+          readFuture = CompletableFuture.completedFuture(context.getCommitIndex());
+        } else {
+          readFuture = readIndex();
+        }
+
+        readFuture.thenCompose(this::whenApplied).whenComplete((result, error) -> {
           if (error == null) {
-            try {
-              future.complete(logResponse(QueryResponse.builder()
-                .withId(request.id())
-                .withUri(context.getLocalMember())
-                .withResult(consumer.apply(null, request.entry()))
-                .build()));
-            } catch (Exception e) {
-              future.complete(logResponse(QueryResponse.builder()
-                .withId(request.id())
-                .withUri(context.getLocalMember())
-                .withStatus(Response.Status.ERROR)
-                .withError(e)
-                .build()));
-            }
+            applyQuery(request, future);
           } else {
             future.complete(logResponse(QueryResponse.builder()
               .withId(request.id())
@@ -191,39 +211,31 @@ class LeaderState extends ActiveState {
   }
 
   @Override
-  public CompletableFuture<CommitResponse> commit(final CommitRequest request) {
+  public CompletableFuture<ReadIndexResponse> readIndex(ReadIndexRequest request) {
     logRequest(request);
 
-    CompletableFuture<CommitResponse> future = new CompletableFuture<>();
-    ByteBuffer entry = request.entry();
-    BiFunction<Long, ByteBuffer, ByteBuffer> consumer = context.consumer();
-    ByteBuffer logEntry = ByteBuffer.allocate(entry.capacity() + 8);
-    logEntry.putLong(context.getTerm());
-    logEntry.put(entry);
-    entry.rewind();
-    long index = context.log().appendEntry(logEntry);
-    LOGGER.debug("{} - Appended entry to log at index {}", context.getLocalMember(), index);
-    LOGGER.debug("{} - Replicating logs up to index {} for write", context.getLocalMember(), index);
-    replicator.commit(index).whenComplete((resultIndex, error) -> {
+    CompletableFuture<ReadIndexResponse> future = new CompletableFuture<>();
+    // If the leader holds a read lease then its commit index is already confirmed.
+    if (isLeaseValid()) {
+      future.complete(logResponse(ReadIndexResponse.builder()
+        .withId(request.id())
+        .withUri(context.getLocalMember())
+        .withTerm(context.getTerm())
+        .withReadIndex(context.getCommitIndex())
+        .build()));
+      return future;
+    }
+
+    readIndex().whenComplete((readIndex, error) -> {
       if (error == null) {
-        try {
-          future.complete(logResponse(CommitResponse.builder()
-            .withId(request.id())
-            .withUri(context.getLocalMember())
-            .withResult(consumer.apply(index, entry))
-            .build()));
-        } catch (Exception e) {
-          future.complete(logResponse(CommitResponse.builder()
-            .withId(request.id())
-            .withUri(context.getLocalMember())
-            .withStatus(Response.Status.ERROR)
-            .withError(e)
-            .build()));
-        } finally {
-          context.setLastApplied(index);
-        }
+        future.complete(logResponse(ReadIndexResponse.builder()
+          .withId(request.id())
+          .withUri(context.getLocalMember())
+          .withTerm(context.getTerm())
+          .withReadIndex(readIndex)
+          .build()));
       } else {
-        future.complete(logResponse(CommitResponse.builder()
+        future.complete(logResponse(ReadIndexResponse.builder()
           .withId(request.id())
           .withUri(context.getLocalMember())
           .withStatus(Response.Status.ERROR)
@@ -234,6 +246,182 @@ class LeaderState extends ActiveState {
     return future;
   }
 
+  /**
+   * Returns a boolean indicating whether reads can be served under the leader's lease.<p>
+   *
+   * Until the leader has committed an entry in its own term, its commit index may be behind entries committed by a
+   * previous leader, so reads aren't served from the lease until then.
+   */
+  private boolean isLeaseValid() {
+    return context.isLeaseReads() && isCommittedInTerm() && replicator.hasLease();
+  }
+
+  /**
+   * Returns a boolean indicating whether an entry from the current term has been committed.
+   */
+  private boolean isCommittedInTerm() {
+    if (!committedInTerm) {
+      Long commitIndex = context.getCommitIndex();
+      if (commitIndex != null && context.log().containsIndex(commitIndex)) {
+        committedInTerm = context.log().getEntry(commitIndex).getLong() == context.getTerm();
+      }
+    }
+    return committedInTerm;
+  }
+
+  /**
+   * Returns a read index confirmed by a quorum of the cluster.<p>
+   *
+   * Read index requests are coalesced: all requests that arrive while a confirmation round is in flight wait for
+   * the next round, so any number of concurrent reads costs a single heartbeat round. Each round records the commit
+   * index when the round starts and completes all of its requests with that index once a majority of the cluster
+   * has acknowledged the leader.
+   */
+  private CompletableFuture<Long> readIndex() {
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    readFutures.add(future);
+    if (!readPending) {
+      startReadRound();
+    }
+    return future;
+  }
+
+  /**
+   * Starts a read index confirmation round for all pending read index requests.
+   */
+  private void startReadRound() {
+    if (readFutures.isEmpty()) {
+      return;
+    }
+
+    List<CompletableFuture<Long>> futures = new ArrayList<>(readFutures);
+    readFutures.clear();
+    readPending = true;
+
+    Long readIndex = context.getCommitIndex();
+    LOGGER.debug("{} - Confirming read index {} for {} reads", context.getLocalMember(), readIndex, futures.size());
+    replicator.confirm().whenComplete((result, error) -> {
+      readPending = false;
+      for (CompletableFuture<Long> future : futures) {
+        if (error == null) {
+          future.complete(readIndex);
+        } else {
+          future.completeExceptionally(error);
+        }
+      }
+      if (isOpen()) {
+        startReadRound();
+      }
+    });
+  }
+
+  /**
+   * Fails all reads waiting on a read index.
+   */
+  private void failReads() {
+    List<CompletableFuture<Long>> futures = new ArrayList<>(readFutures);
+    readFutures.clear();
+    futures.forEach(future -> future.completeExceptionally(new CopycatException("Not the leader")));
+  }
+
+  @Override
+  public CompletableFuture<CommitResponse> commit(final CommitRequest request) {
+    logRequest(request);
+
+    // Commits are appended and replicated in batches. The first commit received in an executor tick schedules a
+    // flush of all commits received before the flush runs.
+    CompletableFuture<CommitResponse> future = new CompletableFuture<>();
+    pendingCommits.add(new PendingCommit(request, future));
+    if (pendingCommits.size() == 1) {
+      context.executor().execute(this::flushCommits);
+    }
+    return future;
+  }
+
+  /**
+   * Appends all pending commits to the log as a single batch and replicates them with a single quorum round.
+   */
+  private void flushCommits() {
+    if (isClosed()) {
+      failCommits();
+      return;
+    }
+
+    if (pendingCommits.isEmpty()) {
+      return;
+    }
+
+    List<PendingCommit> commits = new ArrayList<>(pendingCommits);
+    pendingCommits.clear();
+
+    // Prepend the term to each entry. All entries in the batch share a single buffer.
+    int size = 0;
+    for (PendingCommit commit : commits) {
+      size += commit.request.entry().remaining() + 8;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    List<ByteBuffer> entries = new ArrayList<>(commits.size());
+    long term = context.getTerm();
+    for (PendingCommit commit : commits) {
+      ByteBuffer entry = commit.request.entry();
+      int position = buffer.position();
+      buffer.putLong(term);
+      buffer.put(entry.duplicate());
+      ByteBuffer logEntry = buffer.duplicate();
+      logEntry.position(position);
+      logEntry.limit(buffer.position());
+      entries.add(logEntry.slice());
+    }
+
+    List<Long> indexes = context.log().appendEntries(entries);
+    long firstIndex = indexes.get(0);
+    long lastIndex = indexes.get(indexes.size() - 1);
+    LOGGER.debug("{} - Appended {} entries to log at indexes {}-{}", context.getLocalMember(), indexes.size(), firstIndex, lastIndex);
+    LOGGER.debug("{} - Replicating logs up to index {} for write", context.getLocalMember(), lastIndex);
+
+    // Wait for the entries to be both replicated and flushed to the local log. When group commit is enabled, the local
+    // flush is shared with other entries appended within the same group commit window. The leader's own log only counts
+    // towards the commit index once it's durable, so commits are checked again once the flush completes.
+    BiFunction<Long, ByteBuffer, ByteBuffer> consumer = context.consumer();
+    CompletableFuture<Long> flushFuture = context.flush(lastIndex).thenApply(durableIndex -> {
+      replicator.checkCommits();
+      return durableIndex;
+    });
+    replicator.commit(lastIndex).thenCombine(flushFuture, (replicatedIndex, durableIndex) -> replicatedIndex).whenComplete((resultIndex, error) -> {
+      for (int i = 0; i < commits.size(); i++) {
+        PendingCommit commit = commits.get(i);
+        long index = firstIndex + i;
+        if (error == null) {
+          try {
+            commit.future.complete(logResponse(CommitResponse.builder()
+              .withId(commit.request.id())
+              .withUri(context.getLocalMember())
+              .withResult(consumer.apply(index, commit.request.entry()))
+              .withIndex(index)
+              .build()));
+          } catch (Exception e) {
+            commit.future.complete(logResponse(CommitResponse.builder()
+              .withId(commit.request.id())
+              .withUri(context.getLocalMember())
+              .withStatus(Response.Status.ERROR)
+              .withError(e)
+              .build()));
+          } finally {
+            context.setLastApplied(index);
+          }
+        } else {
+          commit.future.complete(logResponse(CommitResponse.builder()
+            .withId(commit.request.id())
+            .withUri(context.getLocalMember())
+            .withStatus(Response.Status.ERROR)
+            .withError(error)
+            .build()));
+        }
+      }
+      checkApplied();
+    });
+  }
 
   /**
    * Cancels the ping timer.
@@ -245,9 +433,42 @@ class LeaderState extends ActiveState {
     }
   }
 
+  /**
+   * Fails all commits that have not yet been appended to the log.
+   */
+  private void failCommits() {
+    for (PendingCommit commit : pendingCommits) {
+      commit.future.complete(logResponse(CommitResponse.builder()
+        .withId(commit.request.id())
+        .withUri(context.getLocalMember())
+        .withStatus(Response.Status.ERROR)
+        .withError(new CopycatException("Not the leader"))
+        .build()));
+    }
+    pendingCommits.clear();
+  }
+
   @Override
   public CompletableFuture<Void> close() {
-    return super.close().thenRunAsync(this::cancelPingTimer, context.executor());
+    return super.close().thenRunAsync(() -> {
+      cancelPingTimer();
+      failCommits();
+      failReads();
+      replicator.close();
+    }, context.executor());
+  }
+
+  /**
+   * Commit awaiting a batch append.
+   */
+  private static class PendingCommit {
+    private final CommitRequest request;
+    private final CompletableFuture<CommitResponse> future;
+
+    private PendingCommit(CommitRequest request, CompletableFuture<CommitResponse> future) {
+      this.request = request;
+      this.future = future;
+    }
   }
 
   /**
@@ -315,6 +536,66 @@ class LeaderState extends ActiveState {
       return future;
     }
 
+    /**
+     * Confirms the leader's leadership with a quorum of the cluster using heartbeats sent after this method is called.
+     */
+    public CompletableFuture<Void> confirm() {
+      if (quorum == 0) {
+        return CompletableFuture.completedFuture(null);
+      }
+
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      final Quorum quorum = new Quorum(this.quorum, succeeded -> {
+        if (succeeded) {
+          future.complete(null);
+        } else {
+          future.completeExceptionally(new CopycatException("Failed to obtain quorum"));
+        }
+      });
+
+      for (Replica replica : replicaMap.values()) {
+        replica.confirm().whenComplete((resultIndex, error) -> {
+          if (error == null) {
+            quorum.succeed();
+          } else {
+            quorum.fail();
+          }
+        });
+      }
+      return future;
+    }
+
+    /**
+     * Returns a boolean indicating whether the leader holds a read lease.<p>
+     *
+     * The lease begins when the most recent request acknowledged by a majority of the cluster was sent and lasts
+     * for the lease duration, during which no other leader can be elected.
+     */
+    public boolean hasLease() {
+      long leaseDuration = TimeUnit.MILLISECONDS.toNanos(context.getLeaseDuration());
+      if (leaseDuration <= 0) {
+        return false;
+      } else if (quorum == 0) {
+        return true;
+      }
+
+      List<Long> contacts = new ArrayList<>(replicas.size());
+      for (Replica replica : replicas) {
+        if (replica.lastContact != null) {
+          contacts.add(replica.lastContact);
+        }
+      }
+
+      if (contacts.size() < quorum) {
+        return false;
+      }
+
+      // Sort contact times from most to least recent. The quorum'th most recent contact time is the most recent
+      // time at which a majority of the cluster (including the leader) acknowledged the leader.
+      contacts.sort((c1, c2) -> Long.signum(c2 - c1));
+      return System.nanoTime() - contacts.get(quorum - 1) < leaseDuration;
+    }
+
     /**
      * Commits the log to all nodes in the cluster.
      */
@@ -374,9 +655,13 @@ class LeaderState extends ActiveState {
         // the required quorum size to get the index of the replica with the least
         // possible quorum replication. That replica's match index is the commit index.
         // Set the commit index. Once the commit index has been set we can run
-        // all tasks up to the given commit.
+        // all tasks up to the given commit. The leader is implicitly counted in the quorum,
+        // so the commit index can't exceed the index up to which the leader's log is durable.
         Long commitIndex = replicas.get(quorumIndex).matchIndex;
         if (commitIndex != null) {
+          commitIndex = Math.min(commitIndex, context.getDurableIndex());
+        }
+        if (commitIndex != null && (context.getCommitIndex() == null || commitIndex > context.getCommitIndex())) {
           context.setCommitIndex(commitIndex);
           triggerCommitFutures(commitIndex);
         }
@@ -398,40 +683,88 @@ class LeaderState extends ActiveState {
         }
       }
     }
+
+    /**
+     * Closes the replicator, removing replica metrics from the context.
+     */
+    private void close() {
+      for (Replica replica : replicas) {
+        context.getReplicaMetrics().remove(replica.member, replica.metrics);
+      }
+    }
   }
 
   /**
    * Remote replica.
    */
   private class Replica {
-    private static final int BATCH_SIZE = 100;
+    private static final int MIN_BATCH_SIZE = 1024 * 4;
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final int INSTALL_CHUNK_SIZE = 1024 * 64;
     private final String member;
     private final CopycatStateContext context;
     private Long nextIndex;
     private Long matchIndex;
-    private final TreeMap<Long, CompletableFuture<Long>> pingFutures = new TreeMap<>();
+    private final ReplicaMetrics metrics;
+    private int batchEntries;
+    private int batchSize;
+    private double latency = -1;
+    private long lastDecrease;
+    private int inFlight;
+    private Long lastContact;
+    private long generation;
+    private boolean installing;
+    private int installChunk = -1;
+    private ByteBuffer installData;
     private final Map<Long, CompletableFuture<Long>> replicateFutures = new HashMap<>(1024);
 
     private Replica(String member, CopycatStateContext context) {
       this.member = member;
       this.context = context;
       this.nextIndex = context.log().lastIndex() != null ? context.log().lastIndex() + 1 : null;
+
+      // Adaptive batches start small and grow towards the configured limits as long as latency allows.
+      if (context.isAdaptiveReplicationBatching()) {
+        this.batchEntries = Math.max(context.getReplicationBatchEntries() / 4, 1);
+        this.batchSize = Math.min(Math.max(context.getReplicationBatchSize() / 4, MIN_BATCH_SIZE), context.getReplicationBatchSize());
+      } else {
+        this.batchEntries = context.getReplicationBatchEntries();
+        this.batchSize = context.getReplicationBatchSize();
+      }
+      this.metrics = new ReplicaMetrics(member).setBatch(batchEntries, batchSize);
+      context.getReplicaMetrics().put(member, metrics);
     }
 
+    /**
+     * Pings the replica, replicating entries up to the given index if the replica doesn't already have them.
+     */
     public CompletableFuture<Long> ping(Long index) {
       if (index != null && (matchIndex == null || index > matchIndex)) {
         return commit(index);
       }
+      return heartbeat(index, true);
+    }
 
-      CompletableFuture<Long> future = new CompletableFuture<>();
-      if (index != null && !pingFutures.isEmpty() && pingFutures.lastKey() >= index) {
-        return pingFutures.lastEntry().getValue();
-      }
-
-      if (index != null) {
-        pingFutures.put(index, future);
-      }
+    /**
+     * Confirms that the replica still recognizes the local member as the leader.<p>
+     *
+     * A new heartbeat is always sent, so the returned future is only completed by a response to a request sent
+     * after this method was called. Append requests already in flight can't confirm a read index round since they
+     * may have been acknowledged before the round started.
+     */
+    public CompletableFuture<Long> confirm() {
+      return heartbeat(matchIndex, false);
+    }
 
+    /**
+     * Sends a heartbeat to the replica.<p>
+     *
+     * Each heartbeat is completed only by the response to its own request. If {@code consistent} is {@code false}
+     * then the heartbeat succeeds whenever the replica acknowledges the current term, regardless of whether the
+     * replica's log is consistent with the given index.
+     */
+    private CompletableFuture<Long> heartbeat(Long index, boolean consistent) {
+      CompletableFuture<Long> future = new CompletableFuture<>();
       PingRequest request = PingRequest.builder()
         .withId(UUID.randomUUID().toString())
         .withUri(member)
@@ -441,25 +774,27 @@ class LeaderState extends ActiveState {
         .withLogTerm(index != null && context.log().containsIndex(index) ? context.log().getEntry(index).getLong() : null)
         .withCommitIndex(context.getCommitIndex())
         .build();
+      final long sendTime = System.nanoTime();
       LOGGER.debug("{} - Sent {} to {}", context.getLocalMember(), request, member);
       pingHandler.handle(request).whenComplete((response, error) -> {
         context.executor().execute(() -> {
           if (error != null) {
-            triggerPingFutures(index, error);
+            future.completeExceptionally(error);
           } else {
             LOGGER.debug("{} - Received {} from {}", context.getLocalMember(), response, member);
             if (response.status().equals(Response.Status.OK)) {
+              acknowledge(response.term(), sendTime);
               if (response.term() > context.getTerm()) {
                 context.setTerm(response.term());
                 transition(CopycatState.FOLLOWER);
-                triggerPingFutures(index, new CopycatException("Not the leader"));
-              } else if (!response.succeeded()) {
-                triggerPingFutures(index, new ProtocolException("Replica not in commit"));
+                future.completeExceptionally(new CopycatException("Not the leader"));
+              } else if (consistent && !response.succeeded()) {
+                future.completeExceptionally(new ProtocolException("Replica not in commit"));
               } else {
-                triggerPingFutures(index);
+                future.complete(index);
               }
             } else {
-              triggerPingFutures(index, response.error());
+              future.completeExceptionally(response.error());
             }
           }
         });
@@ -476,53 +811,90 @@ class LeaderState extends ActiveState {
       }
 
       CompletableFuture<Long> future = replicateFutures.get(index);
-      if (future != null) {
-        return future;
+      if (future == null) {
+        future = new CompletableFuture<>();
+        replicateFutures.put(index, future);
       }
 
-      future = new CompletableFuture<>();
-      replicateFutures.put(index, future);
-
-      if (matchIndex == null || index >= matchIndex) {
-        doSync();
-      }
+      // Replicate any entries that fit in the replication window, including entries for which a
+      // previous request was abandoned after a failure.
+      doSync();
       return future;
     }
 
     /**
-     * Performs a commit operation.
+     * Performs a commit operation.<p>
+     *
+     * Append requests are pipelined: up to the configured replication window of requests may be outstanding to the
+     * replica at any time, and {@code nextIndex} is advanced optimistically as each batch is sent. If any request
+     * fails then {@code nextIndex} is rolled back and responses to requests sent prior to the rollback are ignored.
      */
     private void doSync() {
-      if (!context.log().isEmpty()) {
+      // Entries aren't replicated while the snapshot is being installed on the replica.
+      if (installing) {
+        return;
+      }
+
+      while (inFlight < context.getReplicationWindow() && !context.log().isEmpty()) {
         if (nextIndex == null) {
           nextIndex = context.log().lastIndex();
         }
 
-        if (context.log().containsIndex(nextIndex)) {
-          final Long prevIndex = nextIndex - 1 == 0 ? null : nextIndex - 1;
-          final ByteBuffer prevEntry = prevIndex != null ? context.log().getEntry(prevIndex) : null;
-
-          // Create a list of up to ten entries to send to the follower.
-          // We can only send one snapshot entry in any given request. So, if any of
-          // the entries are snapshot entries, send all entries up to the snapshot and
-          // then send snapshot entries individually.
-          List<ByteBuffer> entries = new ArrayList<>(BATCH_SIZE);
-          long lastIndex = Math.min(nextIndex + BATCH_SIZE - 1, context.log().lastIndex());
-          for (long i = nextIndex; i <= lastIndex; i++) {
-            entries.add(context.log().getEntry(i));
+        // If the entry preceding the next index has been compacted out of the log then the replica can
+        // only be caught up by installing the snapshot that replaced it. The snapshot is only installed
+        // once all outstanding append requests have completed.
+        if (nextIndex <= context.log().firstIndex() && context.log().firstIndex() > 1) {
+          if (inFlight == 0) {
+            Snapshot snapshot = context.snapshots().snapshot();
+            if (snapshot != null && snapshot.index() >= nextIndex - 1) {
+              doInstall(snapshot, nextIndex, 0, 0);
+            }
           }
+          return;
+        }
 
-          if (!entries.isEmpty()) {
-            doSync(prevIndex, prevEntry, entries);
+        if (!context.log().containsIndex(nextIndex)) {
+          return;
+        }
+
+        final Long prevIndex = nextIndex - 1 == 0 ? null : nextIndex - 1;
+        final ByteBuffer prevEntry = prevIndex != null ? context.log().getEntry(prevIndex) : null;
+
+        // Create a list of entries to send to the follower, limited by both the number of entries and the
+        // total size of the entries. A batch always contains at least one entry, however large.
+        List<ByteBuffer> entries = new ArrayList<>(Math.min(batchEntries, 1024));
+        long lastIndex = context.log().lastIndex();
+        long index = nextIndex;
+        int size = 0;
+        boolean full = false;
+        while (index <= lastIndex) {
+          if (entries.size() >= batchEntries) {
+            full = true;
+            break;
+          }
+          ByteBuffer entry = context.log().getEntry(index);
+          if (!entries.isEmpty() && size + entry.remaining() > batchSize) {
+            full = true;
+            break;
           }
+          entries.add(entry);
+          size += entry.remaining();
+          index++;
         }
+
+        if (entries.isEmpty()) {
+          return;
+        }
+
+        nextIndex = index;
+        doSync(prevIndex, prevEntry, entries, size, full);
       }
     }
 
     /**
      * Sends a append request.
      */
-    private void doSync(final Long prevIndex, final ByteBuffer prevEntry, final List<ByteBuffer> entries) {
+    private void doSync(final Long prevIndex, final ByteBuffer prevEntry, final List<ByteBuffer> entries, final int size, final boolean full) {
       AppendRequest request = AppendRequest.builder()
         .withId(UUID.randomUUID().toString())
         .withUri(member)
@@ -534,37 +906,55 @@ class LeaderState extends ActiveState {
         .withCommitIndex(context.getCommitIndex())
         .build();
 
+      final long firstIndex = prevIndex != null ? prevIndex + 1 : context.log().firstIndex();
+      final long lastIndex = firstIndex + entries.size() - 1;
+      final long generation = this.generation;
+      final long startTime = System.nanoTime();
+      inFlight++;
+
       LOGGER.debug("{} - Sent {} to {}", context.getLocalMember(), request, member);
       appendHandler.handle(request).whenComplete((response, error) -> {
         context.executor().execute(() -> {
+          // Responses to requests sent before the last rollback no longer count against the window.
+          boolean current = generation == this.generation;
+          if (current) {
+            inFlight--;
+          }
+
           if (error != null) {
-            triggerReplicateFutures(prevIndex != null ? prevIndex + 1 : context.log().firstIndex(), prevIndex != null ? prevIndex + entries.size() : context.log().firstIndex() + entries.size() - 1, error);
+            if (current) {
+              triggerReplicateFutures(firstIndex, lastIndex, error);
+              rollback(null);
+            }
           } else {
             LOGGER.debug("{} - Received {} from {}", context.getLocalMember(), response, member);
             if (response.status().equals(Response.Status.OK)) {
+              acknowledge(response.term(), startTime);
               if (response.succeeded()) {
-                // Update the next index to send and the last index known to be replicated.
-                if (!entries.isEmpty()) {
-                  matchIndex = matchIndex != null ? Math.max(matchIndex, prevIndex != null ? prevIndex + entries.size() : context.log().firstIndex() + entries.size() - 1) : prevIndex != null ? prevIndex + entries.size() : context.log().firstIndex() + entries.size() - 1;
+                // Update the last index known to be replicated. Successful responses are always safe to apply
+                // since replicas only ever truncate entries that conflict with the leader's log.
+                matchIndex = matchIndex != null ? Math.max(matchIndex, lastIndex) : lastIndex;
+                if (nextIndex == null || nextIndex <= matchIndex) {
                   nextIndex = matchIndex + 1;
-                  triggerReplicateFutures(prevIndex != null ? prevIndex + 1 : context.log().firstIndex(), matchIndex);
-                  doSync();
-                }
-              } else {
-                if (response.term() > context.getTerm()) {
-                  triggerReplicateFutures(prevIndex != null ? prevIndex + 1 : context.log().firstIndex(), prevIndex != null ? prevIndex + entries.size() : context.log().firstIndex() + entries.size() - 1, new CopycatException("Not the leader"));
-                  transition(CopycatState.FOLLOWER);
-                } else {
-                  // If replication failed then use the last log index indicated by
-                  // the replica in the response to generate a new nextIndex. This allows
-                  // us to skip repeatedly replicating one entry at a time if it's not
-                  // necessary.
-                  nextIndex = response.logIndex() != null ? response.logIndex() + 1 : prevIndex != null ? prevIndex : context.log().firstIndex();
-                  doSync();
                 }
+                triggerReplicateFutures(firstIndex, matchIndex);
+                recordAppend(entries.size(), size, full, (System.nanoTime() - startTime) / 1000000d);
+                doSync();
+              } else if (response.term() > context.getTerm()) {
+                triggerReplicateFutures(firstIndex, lastIndex, new CopycatException("Not the leader"));
+                transition(CopycatState.FOLLOWER);
+              } else if (current) {
+                // If replication failed then use the last log index indicated by
+                // the replica in the response to generate a new nextIndex. This allows
+                // us to skip repeatedly replicating one entry at a time if it's not
+                // necessary.
+                long index = prevIndex != null ? prevIndex : context.log().firstIndex();
+                rollback(response.logIndex() != null ? Math.min(response.logIndex() + 1, index) : index);
+                doSync();
               }
-            } else {
-              triggerReplicateFutures(prevIndex != null ? prevIndex + 1 : context.log().firstIndex(), prevIndex != null ? prevIndex + entries.size() : context.log().firstIndex() + entries.size() - 1, response.error());
+            } else if (current) {
+              triggerReplicateFutures(firstIndex, lastIndex, response.error());
+              rollback(null);
             }
           }
         });
@@ -572,28 +962,147 @@ class LeaderState extends ActiveState {
     }
 
     /**
-     * Triggers ping futures with a completion result.
+     * Records the time at which a request acknowledged by the replica in the current term was sent.<p>
+     *
+     * The replica will not vote for another candidate until at least the minimum election timeout has elapsed
+     * since it received the request, so the send time bounds the start of the leader's lease with the replica.
      */
-    private void triggerPingFutures(Long index) {
-      if (index != null) {
-        NavigableMap<Long, CompletableFuture<Long>> matchFutures = pingFutures.headMap(index, true);
-        for (Map.Entry<Long, CompletableFuture<Long>> entry : matchFutures.entrySet()) {
-          entry.getValue().complete(index);
+    private void acknowledge(long term, long sendTime) {
+      if (term == context.getTerm() && (lastContact == null || sendTime - lastContact > 0)) {
+        lastContact = sendTime;
+      }
+    }
+
+    /**
+     * Records the latency of an acknowledged append request and adapts the batch limits.<p>
+     *
+     * When adaptive batching is enabled, batch limits grow additively while the smoothed latency remains below the
+     * target latency and the batch was limited by its size, and shrink multiplicatively - at most once per target
+     * latency period - when the smoothed latency exceeds the target.
+     */
+    private void recordAppend(int entries, int size, boolean full, double sample) {
+      latency = latency < 0 ? sample : latency * (1 - LATENCY_WEIGHT) + sample * LATENCY_WEIGHT;
+      if (context.isAdaptiveReplicationBatching()) {
+        long targetLatency = context.getReplicationTargetLatency();
+        if (latency > targetLatency) {
+          long time = System.currentTimeMillis();
+          if (time - lastDecrease >= targetLatency) {
+            batchEntries = Math.max(batchEntries / 2, 1);
+            batchSize = Math.max(batchSize / 2, Math.min(MIN_BATCH_SIZE, context.getReplicationBatchSize()));
+            lastDecrease = time;
+          }
+        } else if (full) {
+          batchEntries = Math.min(batchEntries + Math.max(batchEntries / 8, 1), context.getReplicationBatchEntries());
+          batchSize = (int) Math.min((long) batchSize + Math.max(batchSize / 8, MIN_BATCH_SIZE), context.getReplicationBatchSize());
         }
-        matchFutures.clear();
+        metrics.setBatch(batchEntries, batchSize);
       }
+      metrics.recordAppend(entries, size, latency);
     }
 
     /**
-     * Triggers response futures with an error result.
+     * Rolls back the optimistic next index after a failed append request.<p>
+     *
+     * The next index is never rolled back beyond the last index known to be replicated. All requests that are still
+     * outstanding are abandoned by starting a new replication window.
      */
-    private void triggerPingFutures(Long index, Throwable t) {
-      if (index != null) {
-        CompletableFuture<Long> future = pingFutures.remove(index);
-        if (future != null) {
-          future.completeExceptionally(t);
+    private void rollback(Long index) {
+      long minIndex = matchIndex != null ? matchIndex + 1 : context.log().firstIndex();
+      nextIndex = index != null ? Math.max(index, minIndex) : minIndex;
+      inFlight = 0;
+      generation++;
+    }
+
+    /**
+     * Sends a piece of the snapshot to the replica.<p>
+     *
+     * Only one install request is outstanding at any time. Each response indicates the position in the snapshot from
+     * which the replica expects the next request, so the transfer resumes from wherever the replica left off.
+     */
+    private void doInstall(final Snapshot snapshot, final long startIndex, final int chunk, final long offset) {
+      final InstallRequest request;
+      try {
+        ByteBuffer data;
+        long chunkSize;
+        if (chunk < snapshot.chunks()) {
+          if (installChunk != chunk || installData == null) {
+            installData = snapshot.readChunk(chunk);
+            installChunk = chunk;
+          }
+          chunkSize = installData.remaining();
+          data = installData.duplicate();
+          data.position(installData.position() + (int) Math.min(offset, chunkSize));
+          data.limit(data.position() + (int) Math.min(INSTALL_CHUNK_SIZE, chunkSize - (data.position() - installData.position())));
+          data = data.slice();
+        } else {
+          data = ByteBuffer.allocate(0);
+          chunkSize = 0;
         }
+
+        request = InstallRequest.builder()
+          .withId(UUID.randomUUID().toString())
+          .withUri(member)
+          .withTerm(context.getTerm())
+          .withLeader(context.getLocalMember())
+          .withSnapshotIndex(snapshot.index())
+          .withSnapshotTerm(snapshot.term())
+          .withChunks(snapshot.chunks())
+          .withChunk(Math.min(chunk, Math.max(snapshot.chunks() - 1, 0)))
+          .withChunkSize(chunkSize)
+          .withOffset(Math.min(offset, chunkSize))
+          .withData(data)
+          .build();
+      } catch (RuntimeException e) {
+        // The snapshot may have been replaced by a newer snapshot. The transfer will be restarted with the
+        // current snapshot the next time entries are replicated to the replica.
+        LOGGER.warn("{} - Failed to read snapshot {} for {}", context.getLocalMember(), snapshot.index(), member, e);
+        resetInstall();
+        return;
       }
+
+      installing = true;
+      LOGGER.debug("{} - Sent {} to {}", context.getLocalMember(), request, member);
+      installHandler.handle(request).whenComplete((response, error) -> {
+        context.executor().execute(() -> {
+          if (error != null) {
+            LOGGER.warn("{} - Failed to install snapshot on {}", context.getLocalMember(), member, error);
+            resetInstall();
+          } else {
+            LOGGER.debug("{} - Received {} from {}", context.getLocalMember(), response, member);
+            if (response.status().equals(Response.Status.OK)) {
+              if (response.term() > context.getTerm()) {
+                resetInstall();
+                context.setTerm(response.term());
+                transition(CopycatState.FOLLOWER);
+              } else if (response.succeeded() && response.chunk() >= snapshot.chunks()) {
+                // The snapshot has been installed, so resume replicating entries from the snapshot index.
+                resetInstall();
+                matchIndex = matchIndex != null ? Math.max(matchIndex, snapshot.index()) : snapshot.index();
+                nextIndex = matchIndex + 1;
+                triggerReplicateFutures(startIndex, matchIndex);
+                doSync();
+              } else if (response.succeeded() || response.chunk() != request.chunk() || response.offset() != request.offset()) {
+                doInstall(snapshot, startIndex, response.chunk(), response.offset());
+              } else {
+                // The replica failed to accept the data at the position it expects, so give up until
+                // entries are next replicated to the replica.
+                resetInstall();
+              }
+            } else {
+              resetInstall();
+            }
+          }
+        });
+      });
+    }
+
+    /**
+     * Resets the snapshot transfer state.
+     */
+    private void resetInstall() {
+      installing = false;
+      installChunk = -1;
+      installData = null;
     }
 
     /**
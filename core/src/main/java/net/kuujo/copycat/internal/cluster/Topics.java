@@ -51,4 +51,14 @@ public class Topics {
    */
   public static final String COMMIT = "commit";
 
+  /**
+   * Member install topic.
+   */
+  public static final String INSTALL = "install";
+
+  /**
+   * Member read index topic.
+   */
+  public static final String READ_INDEX = "read-index";
+
 }
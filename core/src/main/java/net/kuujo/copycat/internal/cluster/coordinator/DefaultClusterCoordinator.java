@@ -287,12 +287,16 @@ public class DefaultClusterCoordinator implements ClusterCoordinator {
       cluster.member().registerHandler(Topics.APPEND, PROTOCOL_ID, protocol::append, serializer);
       cluster.member().registerHandler(Topics.QUERY, PROTOCOL_ID, protocol::query, serializer);
       cluster.member().registerHandler(Topics.COMMIT, PROTOCOL_ID, protocol::commit, serializer);
+      cluster.member().registerHandler(Topics.INSTALL, PROTOCOL_ID, protocol::install, serializer);
+      cluster.member().registerHandler(Topics.READ_INDEX, PROTOCOL_ID, protocol::readIndex, serializer);
       protocol.pingHandler(request -> handleOutboundRequest(Topics.SYNC, request, cluster));
       protocol.pingHandler(request -> handleOutboundRequest(Topics.PING, request, cluster));
       protocol.pollHandler(request -> handleOutboundRequest(Topics.POLL, request, cluster));
       protocol.appendHandler(request -> handleOutboundRequest(Topics.APPEND, request, cluster));
       protocol.queryHandler(request -> handleOutboundRequest(Topics.QUERY, request, cluster));
       protocol.commitHandler(request -> handleOutboundRequest(Topics.COMMIT, request, cluster));
+      protocol.installHandler(request -> handleOutboundRequest(Topics.INSTALL, request, cluster));
+      protocol.readIndexHandler(request -> handleOutboundRequest(Topics.READ_INDEX, request, cluster));
     }
 
     /**
@@ -316,11 +320,15 @@ public class DefaultClusterCoordinator implements ClusterCoordinator {
       cluster.member().unregisterHandler(Topics.APPEND, PROTOCOL_ID);
       cluster.member().unregisterHandler(Topics.QUERY, PROTOCOL_ID);
       cluster.member().unregisterHandler(Topics.COMMIT, PROTOCOL_ID);
+      cluster.member().unregisterHandler(Topics.INSTALL, PROTOCOL_ID);
+      cluster.member().unregisterHandler(Topics.READ_INDEX, PROTOCOL_ID);
       protocol.pingHandler(null);
       protocol.pollHandler(null);
       protocol.appendHandler(null);
       protocol.queryHandler(null);
       protocol.commitHandler(null);
+      protocol.installHandler(null);
+      protocol.readIndexHandler(null);
     }
   }
 
@@ -16,11 +16,18 @@
 package net.kuujo.copycat.log;
 
 import net.kuujo.copycat.internal.util.Assert;
+import net.kuujo.copycat.internal.util.concurrent.NamedThreadFactory;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract log. Not threadsafe.
@@ -34,13 +41,33 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
   protected LogSegment currentSegment;
   private long nextSegmentId;
   private long lastFlush;
+  private long durableIndex;
+  private long lastAppendIndex;
+  private long lastAppendTimestamp;
+  private long lastTimeIndexIndex;
+  private long lastTimeIndexTimestamp;
+  private ExecutorService executor;
+  private CompletableFuture<Void> compactFuture;
+  private CompletableFuture<Long> cleanFuture;
+  private final EntryCache cache;
 
   protected AbstractLogManager(Log config) {
     this.config = (Log) config.copy();
+    this.cache = new EntryCache(this.config.getCacheSize());
   }
 
   /**
-   * Loads all log segments.
+   * Returns the log configuration.
+   */
+  protected Log config() {
+    return config;
+  }
+
+  /**
+   * Loads all log segments.<p>
+   *
+   * Implementations may return segments that have already been opened. Segments that are not open will be opened when
+   * the log is opened.
    *
    * @return A collection of all existing log segments.
    */
@@ -55,6 +82,88 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
    */
   protected abstract LogSegment createSegment(long segmentId, long firstIndex);
 
+  /**
+   * Returns the number of bytes an entry will occupy in a segment.<p>
+   *
+   * This is used to split bulk appends across segments. Implementations that cannot determine the size of an entry in
+   * advance should return {@code -1}, in which case entries are appended individually.
+   *
+   * @param entry The entry.
+   * @return The number of bytes the entry will occupy in a segment, or {@code -1} if unknown.
+   */
+  protected long entrySize(ByteBuffer entry) {
+    return -1;
+  }
+
+  /**
+   * Returns the next segment id.
+   */
+  protected long nextSegmentId() {
+    return ++nextSegmentId;
+  }
+
+  /**
+   * Opens a new segment to which to roll over the log.<p>
+   *
+   * By default, the segment is created and opened on the calling thread. Implementations can override this method to
+   * return a segment that was prepared in the background so that rolling over the log does not block appends.
+   *
+   * @param firstIndex The index at which the segment starts.
+   * @return The opened segment.
+   */
+  protected LogSegment openSegment(long firstIndex) throws IOException {
+    LogSegment segment = createSegment(nextSegmentId(), firstIndex);
+    segment.open();
+    return segment;
+  }
+
+  /**
+   * Creates a segment to which the entries of existing segments are rewritten by compaction or cleaning.<p>
+   *
+   * A rewritten segment replaces the segments from which it was rewritten once it has been written in full. By default,
+   * this method creates a normal segment. Persistent implementations should create a segment that is not loaded when
+   * the log is reopened until it has been {@link #commitSegment(LogSegment) committed}.
+   *
+   * @param segmentId The log segment id.
+   * @param firstIndex The index at which the segment starts.
+   * @return A new log segment.
+   */
+  protected LogSegment createRewriteSegment(long segmentId, long firstIndex) {
+    return createSegment(segmentId, firstIndex);
+  }
+
+  /**
+   * Commits a rewritten segment immediately before it replaces the segments from which it was rewritten.<p>
+   *
+   * By default, this method does nothing.
+   *
+   * @param segment The rewritten segment.
+   */
+  protected void commitSegment(LogSegment segment) throws IOException {
+  }
+
+  /**
+   * Called once the log has been rolled over from a segment.<p>
+   *
+   * Sealed segments are no longer appended to unless entries are later removed from the log. By default, this method
+   * does nothing.
+   *
+   * @param segment The sealed segment.
+   */
+  protected void sealSegment(LogSegment segment) {
+  }
+
+  /**
+   * Releases a segment that has been removed from the log.<p>
+   *
+   * This method may be called from a background thread. By default, the segment is deleted.
+   *
+   * @param segment The segment to release.
+   */
+  protected void releaseSegment(LogSegment segment) {
+    segment.delete();
+  }
+
   /**
    * Deletes a log segment.
    *
@@ -78,6 +187,31 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
     return currentSegment;
   }
 
+  /**
+   * Returns the entry cache.
+   */
+  EntryCache cache() {
+    return cache;
+  }
+
+  /**
+   * Returns the number of entry reads that were served from the entry cache.
+   *
+   * @return The number of entry reads that were served from the entry cache.
+   */
+  public long cacheHitCount() {
+    return cache.hitCount();
+  }
+
+  /**
+   * Returns the number of entry reads that could not be served from the entry cache.
+   *
+   * @return The number of entry reads that could not be served from the entry cache.
+   */
+  public long cacheMissCount() {
+    return cache.missCount();
+  }
+
   /**
    * Returns a log segment by index.
    * 
@@ -112,14 +246,24 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
   public synchronized void open() throws IOException {
     assertIsNotOpen();
     for (LogSegment segment : loadSegments()) {
-      segment.open();
-      segments.put(segment.firstIndex(), segment);
+      if (!segment.isOpen()) {
+        segment.open();
+      }
+      nextSegmentId = Math.max(nextSegmentId, segment.id());
+      // Empty segments may be left behind by rolling over prior to compaction.
+      if (segment.firstIndex() == null) {
+        releaseSegment(segment);
+      } else {
+        segments.put(segment.firstIndex(), segment);
+      }
     }
     if (!segments.isEmpty()) {
       currentSegment = segments.lastEntry().getValue();
     } else {
       createInitialSegment();
     }
+    Long lastIndex = lastIndex();
+    durableIndex = lastIndex != null ? lastIndex : 0;
   }
 
   @Override
@@ -149,22 +293,69 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
     assertIsOpen();
     checkRollOver();
     checkFlush();
-    return currentSegment.appendEntry(entry);
+    long index = currentSegment.appendEntry(entry);
+    cache.put(index, entry);
+    indexTimestamp(index, System.currentTimeMillis());
+    return index;
   }
 
   @Override
   public List<Long> appendEntries(List<ByteBuffer> entries) {
     assertIsOpen();
+    Assert.isNotNull(entries, "entries");
     List<Long> indices = new ArrayList<>(entries.size());
-    for (ByteBuffer entry : entries) {
+    long timestamp = System.currentTimeMillis();
+    int i = 0;
+    while (i < entries.size()) {
       checkRollOver();
-      indices.add(currentSegment.appendEntry(entry));
+      int count = countSegmentEntries(entries, i);
+      List<Long> segmentIndices = currentSegment.appendEntries(entries.subList(i, i + count));
+      for (int j = 0; j < count; j++) {
+        cache.put(segmentIndices.get(j), entries.get(i + j));
+        indexTimestamp(segmentIndices.get(j), timestamp);
+      }
+      indices.addAll(segmentIndices);
+      i += count;
     }
 
     checkFlush();
     return indices;
   }
 
+  /**
+   * Records an appended entry in the current segment's time index if the time index interval or number of entries has
+   * passed since the last recorded entry. The first entry appended to each segment is always recorded.
+   */
+  private void indexTimestamp(long index, long timestamp) {
+    lastAppendIndex = index;
+    lastAppendTimestamp = timestamp;
+    if (lastTimeIndexIndex == 0
+      || index - lastTimeIndexIndex >= config.getTimeIndexEntries()
+      || timestamp - lastTimeIndexTimestamp >= config.getTimeIndexInterval()) {
+      currentSegment.indexTimestamp(index, timestamp);
+      lastTimeIndexIndex = index;
+      lastTimeIndexTimestamp = timestamp;
+    }
+  }
+
+  /**
+   * Counts the number of entries starting at the given offset that can be appended to the current segment before it
+   * must be rolled over.
+   */
+  private int countSegmentEntries(List<ByteBuffer> entries, int offset) {
+    long size = currentSegment.size();
+    int count = 0;
+    while (offset + count < entries.size() && (count == 0 || size < config.getSegmentSize())) {
+      long entrySize = entrySize(entries.get(offset + count));
+      if (entrySize < 0) {
+        return 1;
+      }
+      size += entrySize;
+      count++;
+    }
+    return count;
+  }
+
   @Override
   public Long firstIndex() {
     assertIsOpen();
@@ -175,8 +366,14 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
   @Override
   public Long lastIndex() {
     assertIsOpen();
-    LogSegment lastSegment = lastSegment();
-    return lastSegment == null ? null : lastSegment().lastIndex();
+    // The last segment may be empty if it was rolled over for compaction.
+    for (LogSegment segment : segments.descendingMap().values()) {
+      Long lastIndex = segment.lastIndex();
+      if (lastIndex != null) {
+        return lastIndex;
+      }
+    }
+    return null;
   }
 
   @Override
@@ -187,13 +384,17 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
   }
 
   /**
-   * Returns the entry for the {@code index} by checking the current segment first, then looking up
+   * Returns the entry for the {@code index} by checking the entry cache and the current segment first, then looking up
    * the correct segment.
    */
   @Override
   @SuppressWarnings("resource")
   public ByteBuffer getEntry(long index) {
     assertIsOpen();
+    ByteBuffer entry = cache.get(index);
+    if (entry != null) {
+      return entry;
+    }
     LogSegment segment = currentSegment.containsIndex(index) ? currentSegment : segment(index);
     return segment.getEntry(index);
   }
@@ -209,9 +410,13 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
     List<ByteBuffer> entries = new ArrayList<>((int) (to - from + 1));
     LogSegment segment = currentSegment;
     for (long i = from; i <= to; i++) {
-      if (!segment.containsIndex(i))
-        segment = segment(i);
-      entries.add(segment.getEntry(i));
+      ByteBuffer entry = cache.get(i);
+      if (entry == null) {
+        if (!segment.containsIndex(i))
+          segment = segment(i);
+        entry = segment.getEntry(i);
+      }
+      entries.add(entry);
     }
 
     return entries;
@@ -226,15 +431,20 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
     Collection<LogSegment> removalSegments = segments.tailMap(segmentIndex).values();
     for (Iterator<LogSegment> i = removalSegments.iterator(); i.hasNext();) {
       LogSegment segment = i.next();
-      if (index < segment.firstIndex()) {
-        segment.delete();
+      Long firstIndex = segment.firstIndex();
+      if (firstIndex == null || index < firstIndex) {
+        releaseSegment(segment);
         i.remove();
-        nextSegmentId--;
       } else {
         segment.removeAfter(index);
       }
     }
 
+    durableIndex = Math.min(durableIndex, index);
+    cache.removeAfter(index);
+    lastAppendIndex = 0;
+    lastTimeIndexIndex = 0;
+
     Map.Entry<Long, LogSegment> lastSegment = segments.lastEntry();
     if (lastSegment != null) {
       currentSegment = lastSegment.getValue();
@@ -256,7 +466,7 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
       segment = i.next();
       i.remove();
       if (segment.lastIndex() < index) {
-        segment.delete();
+        releaseSegment(segment);
       } else {
         segment.compact(index, entry);
         segments.put(segment.firstIndex(), segment);
@@ -264,26 +474,376 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
       }
     }
 
+    // The entry at the compacted index was replaced, so remove it from the cache along with all prior entries.
+    cache.removeBefore(index + 1);
+
     currentSegment = segments.lastEntry().getValue();
   }
 
   @Override
-  public void flush() {
+  public void reset(long index, ByteBuffer entry) {
+    assertIsOpen();
+    Assert.index(index, index > 0, "index must be greater than zero");
+    Assert.isNotNull(entry, "entry");
+    for (LogSegment segment : segments.values()) {
+      releaseSegment(segment);
+    }
+    segments.clear();
+    cache.clear();
+    durableIndex = 0;
+    lastAppendIndex = 0;
+    lastTimeIndexIndex = 0;
+
+    try {
+      currentSegment = openSegment(index);
+    } catch (IOException e) {
+      throw new LogException(e, "Failed to open new segment");
+    }
+    segments.put(index, currentSegment);
+    appendEntry(entry);
+    flush(true);
+  }
+
+  @Override
+  public CompletableFuture<Void> compact(long index, ByteBuffer entry, Executor executor) {
+    assertIsOpen();
+    assertContainsIndex(index);
+    if (compactFuture != null && !compactFuture.isDone()) {
+      return compactFuture;
+    }
+
+    // Seal the segment containing the index so that it can be safely read while it's rewritten.
+    if (currentSegment.containsIndex(index)) {
+      rollOver(currentSegment.lastIndex() + 1);
+    }
+
+    long segmentIndex = segments.floorKey(index);
+    LogSegment segment = segments.get(segmentIndex);
+    long lastIndex = segment.lastIndex();
+    long segmentId = nextSegmentId();
+
+    // Entries are read from the sealed segment in the background. Only rolling over the log and swapping the
+    // compacted segment into the log are done on the calling thread.
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    compactFuture = future;
+    executor().execute(() -> {
+      try {
+        List<ByteBuffer> entries = new ArrayList<>((int) (lastIndex - index + 1));
+        entries.add(entry);
+        for (long i = index + 1; i <= lastIndex; i++) {
+          entries.add(segment.getEntry(i));
+        }
+
+        LogSegment compactSegment = createRewriteSegment(segmentId, index);
+        compactSegment.open();
+        compactSegment.appendEntries(entries);
+        copyTimeIndex(segment, compactSegment, index);
+        compactSegment.flush(true);
+        executor.execute(() -> swapSegments(segmentIndex, segment, compactSegment, future));
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Swaps a compacted segment into the log, removing all segments preceding it.
+   */
+  private void swapSegments(long segmentIndex, LogSegment segment, LogSegment compactSegment, CompletableFuture<Void> future) {
+    // If the log was closed or the segment was modified while it was being compacted then discard the compacted segment.
+    if (!isOpen() || segments.get(segmentIndex) != segment || !compactSegment.lastIndex().equals(segment.lastIndex())) {
+      releaseSegment(compactSegment);
+      future.completeExceptionally(new LogException("Log was modified during compaction"));
+      return;
+    }
+
+    try {
+      commitSegment(compactSegment);
+    } catch (IOException e) {
+      releaseSegment(compactSegment);
+      future.completeExceptionally(new LogException(e, "Failed to commit compacted segment"));
+      return;
+    }
+
+    Map<Long, LogSegment> compactedSegments = segments.headMap(segmentIndex, true);
+    List<LogSegment> deleteSegments = new ArrayList<>(compactedSegments.values());
+    compactedSegments.clear();
+    segments.put(compactSegment.firstIndex(), compactSegment);
+    cache.removeBefore(compactSegment.firstIndex() + 1);
+    sealSegment(compactSegment);
+    executor().execute(() -> {
+      deleteSegments.forEach(this::releaseSegment);
+      future.complete(null);
+    });
+  }
+
+  @Override
+  public CompletableFuture<Long> clean(long index, KeyResolver resolver, long tombstoneRetention, Executor executor) {
     assertIsOpen();
-    currentSegment.flush();
+    Assert.isNotNull(resolver, "resolver");
+    Assert.arg(tombstoneRetention, tombstoneRetention >= 0, "tombstone retention must not be negative");
+    if (cleanFuture != null && !cleanFuture.isDone()) {
+      return cleanFuture;
+    }
+
+    // Only sealed segments are cleaned so that they can be safely read while they're rewritten.
+    List<LogSegment> cleanSegments = new ArrayList<>();
+    List<Long> segmentIds = new ArrayList<>();
+    for (LogSegment segment : segments.values()) {
+      Long lastIndex = segment.lastIndex();
+      if (segment == currentSegment || lastIndex == null || lastIndex > index) {
+        break;
+      }
+      cleanSegments.add(segment);
+      segmentIds.add(nextSegmentId());
+    }
+
+    if (cleanSegments.isEmpty()) {
+      return CompletableFuture.completedFuture(0L);
+    }
+
+    Long expiredIndex = findIndexForTimestamp(System.currentTimeMillis() - tombstoneRetention);
+    long tombstoneIndex = expiredIndex != null ? expiredIndex : 0;
+
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    cleanFuture = future;
+    executor().execute(() -> {
+      try {
+        // Find the latest index of each key in the cleaned segments.
+        Map<Object, Long> keys = new HashMap<>();
+        for (LogSegment segment : cleanSegments) {
+          for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+            Object key = resolver.key(segment.getEntry(i));
+            if (key != null) {
+              keys.put(key, i);
+            }
+          }
+        }
+
+        // Rewrite segments that contain superseded entries or expired tombstones.
+        Map<LogSegment, LogSegment> cleanedSegments = new LinkedHashMap<>();
+        for (int s = 0; s < cleanSegments.size(); s++) {
+          LogSegment segment = cleanSegments.get(s);
+          long lastIndex = segment.lastIndex();
+          List<ByteBuffer> entries = new ArrayList<>((int) (lastIndex - segment.firstIndex() + 1));
+          boolean cleaned = false;
+          for (long i = segment.firstIndex(); i <= lastIndex; i++) {
+            ByteBuffer entry = segment.getEntry(i);
+            Object key = resolver.key(entry);
+            if (key != null && (keys.get(key) != i || (i <= tombstoneIndex && resolver.isTombstone(entry)))) {
+              entry = resolver.placeholder(entry);
+              cleaned = true;
+            }
+            entries.add(entry);
+          }
+
+          if (cleaned) {
+            LogSegment cleanSegment = createRewriteSegment(segmentIds.get(s), segment.firstIndex());
+            cleanSegment.open();
+            cleanSegment.appendEntries(entries);
+            copyTimeIndex(segment, cleanSegment, segment.firstIndex());
+            cleanSegment.flush(true);
+            cleanedSegments.put(segment, cleanSegment);
+          }
+        }
+        executor.execute(() -> swapCleanedSegments(cleanedSegments, future));
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Swaps cleaned segments into the log in place of the segments from which they were rewritten.
+   */
+  private void swapCleanedSegments(Map<LogSegment, LogSegment> cleanedSegments, CompletableFuture<Long> future) {
+    List<LogSegment> releaseSegments = new ArrayList<>(cleanedSegments.size());
+    long reclaimed = 0;
+    for (Map.Entry<LogSegment, LogSegment> entry : cleanedSegments.entrySet()) {
+      LogSegment segment = entry.getKey();
+      LogSegment cleanSegment = entry.getValue();
+      // If the log was closed or the segment was compacted or removed while it was being cleaned then discard the
+      // cleaned segment. Segments that are still in the log were not modified, since sealed segments are never written.
+      if (isOpen() && segments.get(cleanSegment.firstIndex()) == segment && cleanSegment.lastIndex().equals(segment.lastIndex())
+        && commitCleanedSegment(cleanSegment)) {
+        reclaimed += segment.size() - cleanSegment.size();
+        segments.put(cleanSegment.firstIndex(), cleanSegment);
+        cache.removeBefore(cleanSegment.lastIndex() + 1);
+        sealSegment(cleanSegment);
+        releaseSegments.add(segment);
+      } else {
+        releaseSegments.add(cleanSegment);
+      }
+    }
+
+    long reclaimedBytes = reclaimed;
+    executor().execute(() -> {
+      releaseSegments.forEach(this::releaseSegment);
+      LOGGER.debug("Cleaned {} segments, reclaiming {} bytes", cleanedSegments.size(), reclaimedBytes);
+      future.complete(reclaimedBytes);
+    });
+  }
+
+  /**
+   * Commits a cleaned segment, returning whether the segment was committed.
+   */
+  private boolean commitCleanedSegment(LogSegment segment) {
+    try {
+      commitSegment(segment);
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Failed to commit cleaned segment {}", segment.id(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Copies the time index marks of a segment at or after the given index to a rewritten segment.
+   */
+  private void copyTimeIndex(LogSegment segment, LogSegment target, long index) {
+    if (segment instanceof AbstractLogSegment) {
+      TimeIndex timeIndex = ((AbstractLogSegment) segment).timeIndex();
+      for (int i = 0; i < timeIndex.size(); i++) {
+        if (timeIndex.index(i) >= index) {
+          target.indexTimestamp(timeIndex.index(i), timeIndex.timestamp(i));
+        }
+      }
+    }
+  }
+
+  @Override
+  public CompletableFuture<Long> enforceRetentionPolicy() {
+    assertIsOpen();
+    Long lastIndex = lastIndex();
+    if (lastIndex == null) {
+      return CompletableFuture.completedFuture(0L);
+    }
+
+    // Remove expired segments from the head of the log. Size based policies inspect the size of the log, so segments
+    // must be removed from the log before the following segment is evaluated.
+    RetentionPolicy retentionPolicy = config.getRetentionPolicy();
+    List<LogSegment> expiredSegments = new ArrayList<>();
+    long reclaimed = 0;
+    for (Iterator<LogSegment> i = segments.values().iterator(); i.hasNext();) {
+      LogSegment segment = i.next();
+      Long segmentLastIndex = segment.lastIndex();
+      if (segmentLastIndex == null || segmentLastIndex >= lastIndex || retentionPolicy.retain(segment)) {
+        break;
+      }
+      reclaimed += segment.size();
+      expiredSegments.add(segment);
+      i.remove();
+    }
+
+    if (expiredSegments.isEmpty()) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    cache.removeBefore(firstIndex());
+
+    long reclaimedBytes = reclaimed;
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    executor().execute(() -> {
+      for (LogSegment segment : expiredSegments) {
+        try {
+          segment.close();
+        } catch (Exception e) {
+          LOGGER.warn("Failed to close expired segment {}", segment.id(), e);
+        }
+        releaseSegment(segment);
+      }
+      LOGGER.debug("Deleted {} expired segments, reclaiming {} bytes", expiredSegments.size(), reclaimedBytes);
+      future.complete(reclaimedBytes);
+    });
+    return future;
+  }
+
+  /**
+   * Returns the executor on which segments are compacted, prepared, and released in the background.
+   */
+  protected ExecutorService executor() {
+    if (executor == null) {
+      ThreadFactory threadFactory = new NamedThreadFactory("copycat-log-%d");
+      executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = threadFactory.newThread(r);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executor;
+  }
+
+  @Override
+  public long durableIndex() {
+    assertIsOpen();
+    return durableIndex;
+  }
+
+  @Override
+  public Long indexForTimestamp(long timestamp) {
+    assertIsOpen();
+    Long index = findIndexForTimestamp(timestamp);
+    return index != null ? index : firstIndex();
+  }
+
+  /**
+   * Returns the latest indexed entry appended at or before the given time, or {@code null} if no such entry is indexed.
+   */
+  private Long findIndexForTimestamp(long timestamp) {
+    // Entries are appended in time order, so segments that index an entry at or before the time precede those that don't.
+    List<LogSegment> segments = new ArrayList<>(this.segments.values());
+    Long index = null;
+    int low = 0;
+    int high = segments.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Long segmentIndex = segments.get(mid).indexForTimestamp(timestamp);
+      if (segmentIndex != null) {
+        index = segmentIndex;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return index;
+  }
+
+  @Override
+  public void flush() {
+    flush(false);
   }
 
   @Override
   public void flush(boolean force) {
     assertIsOpen();
     currentSegment.flush(force);
+    if (force || config.isFlushOnWrite()) {
+      Long lastIndex = currentSegment.lastIndex();
+      if (lastIndex != null) {
+        durableIndex = lastIndex;
+      }
+      lastFlush = System.currentTimeMillis();
+    }
   }
 
   @Override
   public synchronized void close() throws IOException {
+    // Wait for background tasks so that segments replaced by compaction or cleaning are released before the log can
+    // be reopened. Rewritten segments that were not yet swapped in are discarded once the log is closed.
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executor = null;
+    }
     for (LogSegment segment : segments.values())
       segment.close();
     segments.clear();
+    cache.clear();
     currentSegment = null;
   }
 
@@ -297,6 +857,7 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
     for (LogSegment segment : segments.values())
       segment.delete();
     segments.clear();
+    cache.clear();
   }
 
   @Override
@@ -305,8 +866,7 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
   }
   
   private void createInitialSegment() throws IOException {
-    currentSegment = createSegment(++nextSegmentId, 1);
-    currentSegment.open();
+    currentSegment = openSegment(1);
     segments.put(Long.valueOf(1), currentSegment);
   }
 
@@ -325,35 +885,37 @@ public abstract class AbstractLogManager extends AbstractLoggable implements Log
       && System.currentTimeMillis() > currentSegment.timestamp() + config.getSegmentInterval();
 
     if (segmentSizeExceeded || segmentExpired) {
-      currentSegment.flush();
-      long nextIndex = lastIndex + 1;
-      currentSegment = createSegment(++nextSegmentId, nextIndex);
-      LOGGER.debug("Rolling over to new segment at new index {}", nextIndex);
-
-      try {
-        currentSegment.open();
-      } catch (IOException e) {
-        throw new LogException(e, "Failed to open new segment");
-      }
-
-      segments.put(nextIndex, currentSegment);
-      lastFlush = System.currentTimeMillis();
-      checkRetention();
+      rollOver(lastIndex + 1);
     }
   }
 
   /**
-   * Checks whether any existing segments need to be deleted. Does not allow the last log segment to
-   * be checked.
+   * Rolls over to a new segment starting at the given index.
+   *
+   * @throws LogException if a new segment cannot be opened
    */
-  private void checkRetention() {
-    for (Iterator<Map.Entry<Long, LogSegment>> i = segments.entrySet().iterator(); i.hasNext();) {
-      Map.Entry<Long, LogSegment> entry = i.next();
-      if (!segments.isEmpty() && segments.lastKey() != entry.getKey()
-        && !config.getRetentionPolicy().retain(entry.getValue())) {
-        i.remove();
-      }
+  private void rollOver(long nextIndex) {
+    // Force the segment before rolling over since the durable index is advanced by forcing only the current segment.
+    currentSegment.flush(true);
+    LOGGER.debug("Rolling over to new segment at new index {}", nextIndex);
+
+    // Record the last entry in the segment's time index so the time index covers the entire sealed segment.
+    LogSegment sealedSegment = currentSegment;
+    Long lastIndex = sealedSegment.lastIndex();
+    if (lastIndex != null && lastIndex == lastAppendIndex && lastAppendIndex != lastTimeIndexIndex) {
+      sealedSegment.indexTimestamp(lastAppendIndex, lastAppendTimestamp);
     }
+    lastTimeIndexIndex = 0;
+
+    try {
+      currentSegment = openSegment(nextIndex);
+    } catch (IOException e) {
+      throw new LogException(e, "Failed to open new segment");
+    }
+
+    segments.put(nextIndex, currentSegment);
+    lastFlush = System.currentTimeMillis();
+    sealSegment(sealedSegment);
   }
 
   /**
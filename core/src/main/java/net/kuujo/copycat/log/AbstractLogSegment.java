@@ -1,6 +1,9 @@
 package net.kuujo.copycat.log;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * Base LogSegment implementation.
@@ -10,6 +13,7 @@ import java.util.Comparator;
 public abstract class AbstractLogSegment extends AbstractLoggable implements LogSegment, Comparator<AbstractLogSegment> {
   protected final long id;
   protected long firstIndex;
+  final TimeIndex timeIndex = new TimeIndex();
 
   protected AbstractLogSegment(long id, long firstIndex) {
     this.id = id;
@@ -26,6 +30,41 @@ public abstract class AbstractLogSegment extends AbstractLoggable implements Log
     return id;
   }
 
+  @Override
+  public void indexTimestamp(long index, long timestamp) {
+    assertIsOpen();
+    timeIndex.add(index, timestamp);
+  }
+
+  @Override
+  public Long indexForTimestamp(long timestamp) {
+    assertIsOpen();
+    Long firstIndex = firstIndex();
+    Long lastIndex = lastIndex();
+    if (firstIndex == null || lastIndex == null) {
+      return null;
+    }
+    // Entries before the first index may have been compacted out of the segment.
+    Long index = timeIndex.lookup(timestamp, lastIndex);
+    return index != null ? Math.max(index, firstIndex) : null;
+  }
+
+  /**
+   * Returns the segment's time index.
+   */
+  TimeIndex timeIndex() {
+    return timeIndex;
+  }
+
+  @Override
+  public List<Long> appendEntries(List<ByteBuffer> entries) {
+    List<Long> indices = new ArrayList<>(entries.size());
+    for (ByteBuffer entry : entries) {
+      indices.add(appendEntry(entry));
+    }
+    return indices;
+  }
+
   @Override
   public String toString() {
     return String.format("%s..%s", firstIndex(), lastIndex());
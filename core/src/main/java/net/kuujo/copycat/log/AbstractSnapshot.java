@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Base snapshot implementation.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+abstract class AbstractSnapshot implements Snapshot {
+  protected final long index;
+  protected final long term;
+  protected final long[] sizes;
+  protected final long[] checksums;
+
+  protected AbstractSnapshot(long index, long term, long[] sizes, long[] checksums) {
+    this.index = index;
+    this.term = term;
+    this.sizes = sizes;
+    this.checksums = checksums;
+  }
+
+  /**
+   * Computes the checksum of a chunk.
+   */
+  static long checksum(ByteBuffer chunk) {
+    CRC32 crc = new CRC32();
+    crc.update(chunk.duplicate());
+    return crc.getValue();
+  }
+
+  @Override
+  public long index() {
+    return index;
+  }
+
+  @Override
+  public long term() {
+    return term;
+  }
+
+  @Override
+  public int chunks() {
+    return sizes.length;
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (long chunkSize : sizes) {
+      size += chunkSize;
+    }
+    return size;
+  }
+
+  @Override
+  public long checksum() {
+    ByteBuffer buffer = ByteBuffer.allocate(checksums.length * 8);
+    for (long checksum : checksums) {
+      buffer.putLong(checksum);
+    }
+    buffer.flip();
+    return checksum(buffer);
+  }
+
+  /**
+   * Returns the size of a chunk.
+   */
+  long size(int chunk) {
+    assertContainsChunk(chunk);
+    return sizes[chunk];
+  }
+
+  /**
+   * Returns the checksum of a chunk.
+   */
+  long checksum(int chunk) {
+    assertContainsChunk(chunk);
+    return checksums[chunk];
+  }
+
+  /**
+   * Asserts that the snapshot contains the given chunk.
+   */
+  protected void assertContainsChunk(int chunk) {
+    Assert.index(chunk, chunk >= 0 && chunk < sizes.length, "Snapshot does not contain chunk %d", chunk);
+  }
+
+  /**
+   * Verifies that a chunk that has been read matches its checksum.
+   */
+  protected ByteBuffer verifyChunk(int chunk, ByteBuffer buffer) {
+    if (buffer.remaining() != sizes[chunk] || checksum(buffer) != checksums[chunk]) {
+      throw new LogException("Snapshot %d chunk %d is corrupt", index, chunk);
+    }
+    return buffer;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, term=%d, chunks=%d]", getClass().getSimpleName(), index, term, sizes.length);
+  }
+
+}
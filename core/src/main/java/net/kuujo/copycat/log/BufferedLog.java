@@ -65,15 +65,56 @@ public class BufferedLog extends Log {
     return this;
   }
 
+  @Override
+  public BufferedLog withFlushGroupCommit(boolean groupCommit) {
+    setFlushGroupCommit(groupCommit);
+    return this;
+  }
+
+  @Override
+  public BufferedLog withFlushGroupCommitWindow(long groupCommitWindow) {
+    setFlushGroupCommitWindow(groupCommitWindow);
+    return this;
+  }
+
   @Override
   public BufferedLog withRetentionPolicy(RetentionPolicy retentionPolicy) {
     setRetentionPolicy(retentionPolicy);
     return this;
   }
 
+  @Override
+  public BufferedLog withRetentionInterval(long retentionInterval) {
+    setRetentionInterval(retentionInterval);
+    return this;
+  }
+
+  @Override
+  public BufferedLog withCacheSize(int cacheSize) {
+    setCacheSize(cacheSize);
+    return this;
+  }
+
+  @Override
+  public BufferedLog withTimeIndexInterval(long timeIndexInterval) {
+    setTimeIndexInterval(timeIndexInterval);
+    return this;
+  }
+
+  @Override
+  public BufferedLog withTimeIndexEntries(int timeIndexEntries) {
+    setTimeIndexEntries(timeIndexEntries);
+    return this;
+  }
+
   @Override
   public LogManager getLogManager(String name) {
     return new BufferedLogManager(this);
   }
 
+  @Override
+  public SnapshotStore getSnapshotStore(String name) {
+    return new BufferedSnapshotStore();
+  }
+
 }
@@ -15,6 +15,7 @@
  */
 package net.kuujo.copycat.log;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -35,6 +36,11 @@ class BufferedLogManager extends AbstractLogManager {
     return Collections.EMPTY_LIST;
   }
 
+  @Override
+  protected long entrySize(ByteBuffer entry) {
+    return entry.limit();
+  }
+
   @Override
   protected LogSegment createSegment(long segmentNumber, long firstIndex) {
     return new BufferedLogSegment(this, segmentNumber, firstIndex);
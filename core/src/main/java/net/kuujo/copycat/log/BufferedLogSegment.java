@@ -16,20 +16,30 @@
 package net.kuujo.copycat.log;
 
 import java.nio.ByteBuffer;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import net.kuujo.copycat.internal.util.Assert;
 
 /**
- * In-memory log segment.
+ * In-memory log segment.<p>
+ *
+ * Entries are copied contiguously into off-heap chunks, and each entry's chunk, position, and length are tracked in
+ * primitive arrays. Entries are never split across chunks, so reading an entry simply returns a slice of its chunk.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class BufferedLogSegment extends AbstractLogSegment {
+  private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+  private static final int DEFAULT_OFFSETS_CAPACITY = 1024;
   private final BufferedLogManager parent;
   private long timestamp;
-  private TreeMap<Long, ByteBuffer> log;
-  private int size;
+  private List<ByteBuffer> chunks;
+  private long[] offsets;
+  private int[] lengths;
+  private int count;
+  private long size;
 
   BufferedLogSegment(BufferedLogManager parent, long id, long firstIndex) {
     super(id, firstIndex);
@@ -49,8 +59,11 @@ public class BufferedLogSegment extends AbstractLogSegment {
   @Override
   public void open() {
     assertIsNotOpen();
-    if (log == null) {
-      log = new TreeMap<>();
+    if (chunks == null) {
+      chunks = new ArrayList<>();
+      offsets = new long[DEFAULT_OFFSETS_CAPACITY];
+      lengths = new int[DEFAULT_OFFSETS_CAPACITY];
+      count = 0;
       size = 0;
       timestamp = System.currentTimeMillis();
     }
@@ -58,12 +71,12 @@ public class BufferedLogSegment extends AbstractLogSegment {
 
   @Override
   public boolean isOpen() {
-    return log != null;
+    return chunks != null;
   }
   
   @Override
   public boolean isEmpty() {
-    return log != null && !log.isEmpty();
+    return chunks == null || count == 0;
   }
 
   @Override
@@ -75,75 +88,125 @@ public class BufferedLogSegment extends AbstractLogSegment {
   @Override
   public long entryCount() {
     assertIsOpen();
-    return log.size();
+    return count;
   }
 
   @Override
   public long appendEntry(ByteBuffer entry) {
     Assert.isNotNull(entry, "entry");
     assertIsOpen();
-    long index = log.isEmpty() ? firstIndex : log.lastKey() + 1;
-    log.put(index, entry);
-    size += entry.limit();
-    return index;
+    ByteBuffer buffer = entry.duplicate();
+    buffer.rewind();
+    int length = buffer.limit();
+    ByteBuffer chunk = allocate(length);
+    int position = chunk.position();
+    chunk.put(buffer);
+
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, count * 2);
+      lengths = Arrays.copyOf(lengths, count * 2);
+    }
+    offsets[count] = ((long) (chunks.size() - 1) << 32) | position;
+    lengths[count] = length;
+    size += length;
+    return firstIndex + count++;
+  }
+
+  /**
+   * Returns a chunk with enough remaining space to hold an entry of the given length, allocating a new chunk if
+   * necessary.
+   */
+  private ByteBuffer allocate(int length) {
+    ByteBuffer chunk = !chunks.isEmpty() ? chunks.get(chunks.size() - 1) : null;
+    if (chunk == null || chunk.remaining() < length) {
+      chunk = ByteBuffer.allocateDirect(Math.max(length, Math.min(parent.config().getSegmentSize(), MAX_CHUNK_SIZE)));
+      chunks.add(chunk);
+    }
+    return chunk;
   }
 
   @Override
   public Long firstIndex() {
     assertIsOpen();
-    return !log.isEmpty() ? log.firstKey() : null;
+    return count > 0 ? firstIndex : null;
   }
 
   @Override
   public Long lastIndex() {
     assertIsOpen();
-    return !log.isEmpty() ? log.lastKey() : null;
+    return count > 0 ? firstIndex + count - 1 : null;
   }
 
   @Override
   public boolean containsIndex(long index) {
     assertIsOpen();
-    return log.containsKey(index);
+    return count > 0 && firstIndex <= index && index < firstIndex + count;
   }
 
   @Override
   public ByteBuffer getEntry(long index) {
     assertIsOpen();
     assertContainsIndex(index);
-    ByteBuffer buffer = log.get(index);
-    if (buffer != null) buffer.rewind();
-    return buffer;
+    int offset = (int) (index - firstIndex);
+    ByteBuffer entry = chunks.get((int) (offsets[offset] >>> 32)).duplicate();
+    int position = (int) offsets[offset];
+    entry.limit(position + lengths[offset]);
+    entry.position(position);
+    return entry.slice().asReadOnlyBuffer();
   }
 
   @Override
   public void removeAfter(long index) {
     assertIsOpen();
     if (index < firstIndex) {
-      log.clear();
-      size = 0;
+      truncate(0);
     } else {
       assertContainsIndex(index);
-      for (long i = index + 1; i <= log.lastKey(); i++) {
-        ByteBuffer value = log.remove(i);
-        if (value != null) {
-          size -= value.limit();
-        }
+      truncate((int) (index - firstIndex) + 1);
+    }
+  }
+
+  /**
+   * Truncates the segment to the given number of entries, releasing any chunks that are no longer used.
+   */
+  private void truncate(int newCount) {
+    if (newCount >= count) {
+      return;
+    }
+
+    for (int i = newCount; i < count; i++) {
+      size -= lengths[i];
+    }
+
+    if (newCount == 0) {
+      chunks.clear();
+    } else {
+      int chunkIndex = (int) (offsets[newCount] >>> 32);
+      while (chunks.size() > chunkIndex + 1) {
+        chunks.remove(chunks.size() - 1);
       }
+      chunks.get(chunkIndex).position((int) offsets[newCount]);
     }
+    count = newCount;
   }
 
   @Override
   public void compact(long index, ByteBuffer entry) {
     assertIsOpen();
     assertContainsIndex(index);
-    log.put(index, entry);
-    if (log.firstKey() != index) {
-      for (long i = log.firstKey(); i < index; i++) {
-        ByteBuffer value = log.remove(i);
-        if (value != null) {
-          size -= value.limit();
-        }
-      }
+    List<ByteBuffer> entries = new ArrayList<>((int) (firstIndex + count - index));
+    entries.add(entry);
+    for (long i = index + 1; i < firstIndex + count; i++) {
+      entries.add(getEntry(i));
+    }
+
+    // Copy the retained entries into new chunks. Entries read from the old chunks remain valid until they're copied.
+    chunks = new ArrayList<>();
+    count = 0;
+    size = 0;
+    firstIndex = index;
+    for (ByteBuffer retained : entries) {
+      appendEntry(retained);
     }
   }
 
@@ -164,14 +227,18 @@ public class BufferedLogSegment extends AbstractLogSegment {
 
   @Override
   public boolean isClosed() {
-    return log == null;
+    return chunks == null;
   }
 
   @Override
   public void delete() {
-    if (log != null) {
-      log.clear();
-      log = null;
+    if (chunks != null) {
+      chunks.clear();
+      chunks = null;
+      offsets = null;
+      lengths = null;
+      count = 0;
+      size = 0;
     }
   }
 }
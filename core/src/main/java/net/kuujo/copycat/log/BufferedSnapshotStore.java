@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory snapshot store.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class BufferedSnapshotStore implements SnapshotStore {
+  private BufferedSnapshot snapshot;
+  private boolean open;
+
+  @Override
+  public synchronized void open() {
+    open = true;
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public synchronized Snapshot snapshot() {
+    Assert.state(open, "The snapshot store is not open");
+    return snapshot;
+  }
+
+  @Override
+  public synchronized SnapshotWriter createSnapshot(long index, long term) {
+    Assert.state(open, "The snapshot store is not open");
+    Assert.arg(index, snapshot == null || index > snapshot.index(), "snapshot index must be greater than the current snapshot index");
+    return new BufferedSnapshotWriter(index, term, snapshot);
+  }
+
+  @Override
+  public synchronized void close() {
+    open = false;
+  }
+
+  @Override
+  public synchronized void delete() {
+    snapshot = null;
+  }
+
+  /**
+   * Replaces the current snapshot with a committed snapshot.
+   */
+  private synchronized void commit(BufferedSnapshot snapshot) {
+    Assert.state(open, "The snapshot store is not open");
+    if (this.snapshot == null || snapshot.index() > this.snapshot.index()) {
+      this.snapshot = snapshot;
+    }
+  }
+
+  /**
+   * In-memory snapshot.
+   */
+  private static class BufferedSnapshot extends AbstractSnapshot {
+    private final List<ByteBuffer> chunks;
+
+    private BufferedSnapshot(long index, long term, List<ByteBuffer> chunks) {
+      super(index, term, new long[chunks.size()], new long[chunks.size()]);
+      this.chunks = chunks;
+      for (int i = 0; i < chunks.size(); i++) {
+        sizes[i] = chunks.get(i).remaining();
+        checksums[i] = checksum(chunks.get(i));
+      }
+    }
+
+    @Override
+    public ByteBuffer readChunk(int chunk) {
+      assertContainsChunk(chunk);
+      return chunks.get(chunk).asReadOnlyBuffer();
+    }
+  }
+
+  /**
+   * In-memory snapshot writer.
+   */
+  private class BufferedSnapshotWriter implements SnapshotWriter {
+    private final long index;
+    private final long term;
+    private final BufferedSnapshot previous;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private List<ByteBuffer> partialChunk;
+
+    private BufferedSnapshotWriter(long index, long term, BufferedSnapshot previous) {
+      this.index = index;
+      this.term = term;
+      this.previous = previous;
+    }
+
+    @Override
+    public SnapshotWriter writeChunk(ByteBuffer chunk) {
+      assertNoPartialChunk();
+      chunks.add(copy(chunk));
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter appendChunk(ByteBuffer data) {
+      if (partialChunk == null) {
+        partialChunk = new ArrayList<>();
+      }
+      partialChunk.add(copy(data));
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter completeChunk() {
+      int size = 0;
+      if (partialChunk != null) {
+        for (ByteBuffer data : partialChunk) {
+          size += data.remaining();
+        }
+      }
+      ByteBuffer chunk = ByteBuffer.allocate(size);
+      if (partialChunk != null) {
+        partialChunk.forEach(chunk::put);
+      }
+      chunk.flip();
+      chunks.add(chunk);
+      partialChunk = null;
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter copyChunk(int chunk) {
+      Assert.state(previous != null, "No current snapshot");
+      assertNoPartialChunk();
+      chunks.add(previous.readChunk(chunk));
+      return this;
+    }
+
+    /**
+     * Copies a buffer.
+     */
+    private ByteBuffer copy(ByteBuffer buffer) {
+      ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+      copy.put(buffer.duplicate());
+      copy.flip();
+      return copy;
+    }
+
+    /**
+     * Asserts that no chunk is partially written.
+     */
+    private void assertNoPartialChunk() {
+      Assert.state(partialChunk == null, "Snapshot %d chunk %d is partially written", index, chunks.size());
+    }
+
+    @Override
+    public Snapshot commit() {
+      assertNoPartialChunk();
+      BufferedSnapshot snapshot = new BufferedSnapshot(index, term, chunks);
+      BufferedSnapshotStore.this.commit(snapshot);
+      return snapshot;
+    }
+
+    @Override
+    public void abort() {
+      chunks.clear();
+      partialChunk = null;
+    }
+  }
+
+}
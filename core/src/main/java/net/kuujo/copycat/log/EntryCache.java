@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Byte capped cache of the most recently appended log entries.<p>
+ *
+ * The cache holds a contiguous window of entries at the tail of the log. Appending an entry that does not immediately
+ * follow the window resets the cache, and the oldest entries are evicted once the cached entries exceed the maximum
+ * number of bytes. Entries are copied when they're cached, and each read returns an independent view of the cached
+ * entry. Not threadsafe.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+class EntryCache {
+  private final long maxSize;
+  private final Map<Long, ByteBuffer> entries = new HashMap<>(1024);
+  private long firstIndex;
+  private long lastIndex = -1;
+  private long size;
+  private long hitCount;
+  private long missCount;
+
+  EntryCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Caches an appended entry.
+   *
+   * @param index The entry index.
+   * @param entry The entry.
+   */
+  void put(long index, ByteBuffer entry) {
+    if (maxSize == 0) {
+      return;
+    }
+    if (index != lastIndex + 1) {
+      clear();
+    }
+    if (entries.isEmpty()) {
+      firstIndex = index;
+    }
+
+    ByteBuffer buffer = entry.duplicate();
+    buffer.rewind();
+    ByteBuffer copy = ByteBuffer.allocate(buffer.limit());
+    copy.put(buffer);
+    copy.flip();
+    entries.put(index, copy);
+    lastIndex = index;
+    size += copy.limit();
+
+    while (size > maxSize && firstIndex <= lastIndex) {
+      size -= entries.remove(firstIndex++).limit();
+    }
+  }
+
+  /**
+   * Returns a cached entry.
+   *
+   * @param index The entry index.
+   * @return The cached entry, or {@code null} if the entry is not cached.
+   */
+  ByteBuffer get(long index) {
+    ByteBuffer entry = index >= firstIndex && index <= lastIndex ? entries.get(index) : null;
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.duplicate();
+  }
+
+  /**
+   * Removes all cached entries before the given index.
+   *
+   * @param index The index before which to remove entries.
+   */
+  void removeBefore(long index) {
+    while (firstIndex < index && firstIndex <= lastIndex) {
+      size -= entries.remove(firstIndex++).limit();
+    }
+  }
+
+  /**
+   * Removes all cached entries after the given index.
+   *
+   * @param index The index after which to remove entries.
+   */
+  void removeAfter(long index) {
+    while (lastIndex > index && lastIndex >= firstIndex) {
+      size -= entries.remove(lastIndex--).limit();
+    }
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  void clear() {
+    entries.clear();
+    firstIndex = 0;
+    lastIndex = -1;
+    size = 0;
+  }
+
+  /**
+   * Returns the number of bytes of cached entries.
+   */
+  long size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of reads served from the cache.
+   */
+  long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of reads not served from the cache.
+   */
+  long missCount() {
+    return missCount;
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package net.kuujo.copycat.log;
 
+import net.kuujo.copycat.internal.util.Assert;
+
 import java.io.File;
 import java.util.Map;
 
@@ -25,8 +27,16 @@ import java.util.Map;
  */
 public class FileLog extends Log {
   public static final String FILE_LOG_DIRECTORY = "directory";
+  public static final String FILE_LOG_MEMORY_MAPPED = "memory-mapped";
+  public static final String FILE_LOG_PREALLOCATE = "preallocate";
+  public static final String FILE_LOG_COMPRESSED = "compressed";
+  public static final String FILE_LOG_COMPRESSION_BLOCK_SIZE = "compression.block-size";
 
   private static final String DEFAULT_FILE_LOG_DIRECTORY = System.getProperty("user.dir");
+  private static final boolean DEFAULT_FILE_LOG_MEMORY_MAPPED = false;
+  private static final boolean DEFAULT_FILE_LOG_PREALLOCATE = true;
+  private static final boolean DEFAULT_FILE_LOG_COMPRESSED = false;
+  private static final int DEFAULT_FILE_LOG_COMPRESSION_BLOCK_SIZE = 1024 * 64;
 
   public FileLog() {
     super();
@@ -98,6 +108,136 @@ public class FileLog extends Log {
     return this;
   }
 
+  /**
+   * Sets whether log segments should be memory mapped.<p>
+   *
+   * When memory mapping is enabled, each segment's log and index files are mapped into memory at up to the configured
+   * segment size. Appends are written directly to the mapped region and reads return read-only slices of the mapped
+   * log file.
+   *
+   * @param memoryMapped Whether log segments should be memory mapped.
+   */
+  public void setMemoryMapped(boolean memoryMapped) {
+    put(FILE_LOG_MEMORY_MAPPED, memoryMapped);
+  }
+
+  /**
+   * Returns whether log segments are memory mapped.
+   *
+   * @return Whether log segments are memory mapped.
+   */
+  public boolean isMemoryMapped() {
+    return get(FILE_LOG_MEMORY_MAPPED, DEFAULT_FILE_LOG_MEMORY_MAPPED);
+  }
+
+  /**
+   * Sets whether log segments should be memory mapped, returning the log configuration for method chaining.
+   *
+   * @param memoryMapped Whether log segments should be memory mapped.
+   * @return The log configuration.
+   */
+  public FileLog withMemoryMapped(boolean memoryMapped) {
+    setMemoryMapped(memoryMapped);
+    return this;
+  }
+
+  /**
+   * Sets whether log segment files should be preallocated.<p>
+   *
+   * When preallocation is enabled, each segment's log file is filled to the configured segment size before the log is
+   * rolled over to it, and the log files of deleted segments are recycled for new segments rather than being removed.
+   *
+   * @param preallocate Whether log segment files should be preallocated.
+   */
+  public void setPreallocate(boolean preallocate) {
+    put(FILE_LOG_PREALLOCATE, preallocate);
+  }
+
+  /**
+   * Returns whether log segment files are preallocated.
+   *
+   * @return Whether log segment files are preallocated.
+   */
+  public boolean isPreallocate() {
+    return get(FILE_LOG_PREALLOCATE, DEFAULT_FILE_LOG_PREALLOCATE);
+  }
+
+  /**
+   * Sets whether log segment files should be preallocated, returning the log configuration for method chaining.
+   *
+   * @param preallocate Whether log segment files should be preallocated.
+   * @return The log configuration.
+   */
+  public FileLog withPreallocate(boolean preallocate) {
+    setPreallocate(preallocate);
+    return this;
+  }
+
+  /**
+   * Sets whether sealed log segments should be compressed.<p>
+   *
+   * When compression is enabled, each segment's log file is compressed in the background once the log has been rolled
+   * over from the segment. The log file is compressed in independent blocks so that reading an entry only requires
+   * decompressing the blocks that contain it.
+   *
+   * @param compressed Whether sealed log segments should be compressed.
+   */
+  public void setCompressed(boolean compressed) {
+    put(FILE_LOG_COMPRESSED, compressed);
+  }
+
+  /**
+   * Returns whether sealed log segments are compressed.
+   *
+   * @return Whether sealed log segments are compressed.
+   */
+  public boolean isCompressed() {
+    return get(FILE_LOG_COMPRESSED, DEFAULT_FILE_LOG_COMPRESSED);
+  }
+
+  /**
+   * Sets whether sealed log segments should be compressed, returning the log configuration for method chaining.
+   *
+   * @param compressed Whether sealed log segments should be compressed.
+   * @return The log configuration.
+   */
+  public FileLog withCompressed(boolean compressed) {
+    setCompressed(compressed);
+    return this;
+  }
+
+  /**
+   * Sets the number of uncompressed bytes in each compressed block.
+   *
+   * @param blockSize The number of uncompressed bytes in each compressed block.
+   * @throws java.lang.IllegalArgumentException If the block size is not positive
+   */
+  public void setCompressionBlockSize(int blockSize) {
+    put(FILE_LOG_COMPRESSION_BLOCK_SIZE, Assert.arg(blockSize, blockSize > 0, "block size must be positive"));
+  }
+
+  /**
+   * Returns the number of uncompressed bytes in each compressed block.
+   *
+   * @return The number of uncompressed bytes in each compressed block.
+   */
+  public int getCompressionBlockSize() {
+    return get(FILE_LOG_COMPRESSION_BLOCK_SIZE, DEFAULT_FILE_LOG_COMPRESSION_BLOCK_SIZE);
+  }
+
+  /**
+   * Sets the number of uncompressed bytes in each compressed block, returning the log configuration for method
+   * chaining.
+   *
+   * @param blockSize The number of uncompressed bytes in each compressed block.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the block size is not positive
+   */
+  public FileLog withCompressionBlockSize(int blockSize) {
+    setCompressionBlockSize(blockSize);
+    return this;
+  }
+
   @Override
   public FileLog withSegmentSize(int segmentSize) {
     setSegmentSize(segmentSize);
@@ -122,15 +262,56 @@ public class FileLog extends Log {
     return this;
   }
 
+  @Override
+  public FileLog withFlushGroupCommit(boolean groupCommit) {
+    setFlushGroupCommit(groupCommit);
+    return this;
+  }
+
+  @Override
+  public FileLog withFlushGroupCommitWindow(long groupCommitWindow) {
+    setFlushGroupCommitWindow(groupCommitWindow);
+    return this;
+  }
+
   @Override
   public FileLog withRetentionPolicy(RetentionPolicy retentionPolicy) {
     setRetentionPolicy(retentionPolicy);
     return this;
   }
 
+  @Override
+  public FileLog withRetentionInterval(long retentionInterval) {
+    setRetentionInterval(retentionInterval);
+    return this;
+  }
+
+  @Override
+  public FileLog withCacheSize(int cacheSize) {
+    setCacheSize(cacheSize);
+    return this;
+  }
+
+  @Override
+  public FileLog withTimeIndexInterval(long timeIndexInterval) {
+    setTimeIndexInterval(timeIndexInterval);
+    return this;
+  }
+
+  @Override
+  public FileLog withTimeIndexEntries(int timeIndexEntries) {
+    setTimeIndexEntries(timeIndexEntries);
+    return this;
+  }
+
   @Override
   public LogManager getLogManager(String name) {
     return new FileLogManager(name, this);
   }
 
+  @Override
+  public SnapshotStore getSnapshotStore(String name) {
+    return new FileSnapshotStore(name, this);
+  }
+
 }
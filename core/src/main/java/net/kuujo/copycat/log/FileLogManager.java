@@ -15,23 +15,64 @@
  */
 package net.kuujo.copycat.log;
 
+import net.kuujo.copycat.internal.util.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * File log.
+ * File log.<p>
+ *
+ * The segment to which the log will next be rolled over is prepared on a dedicated background thread, so rolling over
+ * only requires recording the new segment's first index. If the prepared segment is not yet ready when the log is
+ * rolled over, a segment is created on the appending thread rather than waiting for it. When {@link FileLog#isPreallocate() preallocation} is enabled,
+ * the log files of released segments are kept in a small pool and reused for new segments rather than being deleted.<p>
+ *
+ * When the log is {@link FileLog#isCompressed() compressed}, sealed segments are compressed on a background thread
+ * and the compressed files are swapped in the next time the log is rolled over, provided the segments have not been
+ * modified in the meantime.<p>
+ *
+ * Segments rewritten by compaction or cleaning are written with a temporary metadata file, which is atomically renamed
+ * once the segment replaces the segments from which it was rewritten. Segments that were never committed are deleted
+ * when the log is reopened, and committed segments take the place of any replaced segments that were not yet deleted.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class FileLogManager extends AbstractLogManager {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileLogManager.class);
+  private static final int MAX_RECYCLED_SEGMENTS = 2;
   final FileLog config;
   final File base;
+  private final Deque<File> recycledLogFiles = new ConcurrentLinkedDeque<>();
+  private CompletableFuture<FileLogSegment> nextSegment;
+  private ExecutorService preallocateExecutor;
+  private long maxRecycledSegmentId;
+  private final Queue<CompressedSegment> compressedSegments = new ConcurrentLinkedQueue<>();
 
   FileLogManager(String name, FileLog config) {
     super(config);
@@ -39,49 +80,156 @@ public class FileLogManager extends AbstractLogManager {
     this.base = new File(config.getDirectory(), name);
   }
 
+  /**
+   * Loads the log's segments.<p>
+   *
+   * Segments are recovered and opened in parallel on a bounded fork-join pool. Sealed segments are opened lazily, so
+   * typically only the last segment's index must be rebuilt when the log is opened.
+   */
   @Override
   protected Collection<LogSegment> loadSegments() {
-    Map<Long, LogSegment> segments = new HashMap<>();
+    Set<Long> segmentIds = new HashSet<>();
+    Set<Long> uncommittedSegmentIds = new HashSet<>();
     base.getAbsoluteFile().getParentFile().mkdirs();
+    recycledLogFiles.clear();
+    maxRecycledSegmentId = 0;
     for (File file : config.getDirectory().listFiles(File::isFile)) {
-      if (file.getName().startsWith(base.getName() + "-") && file.getName().endsWith(".metadata")) {
+      if (file.getName().startsWith(base.getName() + "-") && file.getName().endsWith(".log.pool")) {
+        recycledLogFiles.add(file);
+        try {
+          maxRecycledSegmentId = Math.max(maxRecycledSegmentId, Long.valueOf(file.getName().substring(file.getName().lastIndexOf('-') + 1, file.getName().indexOf('.', file.getName().lastIndexOf('-')))));
+        } catch (NumberFormatException e) {
+          throw new LogException(e);
+        }
+      } else if (file.getName().startsWith(base.getName() + "-") && file.getName().endsWith(".deflate.tmp")) {
+        // Delete compressed files that were never swapped in before the log was closed.
+        file.delete();
+      } else if (file.getName().startsWith(base.getName() + "-") && file.getName().endsWith(".metadata.tmp")) {
         try {
-          long id = Long.valueOf(file.getName().substring(file.getName().lastIndexOf('-')), file.getName().lastIndexOf('.')).longValue();
-          if (!segments.containsKey(id)) {
-            // First, look for an existing history file for the log. If history files exist for this segment then that
-            // indicates that a failure occurred during log compaction. Recover the previous log.
-            File historyLogFile = new File(base.getParent(), String.format("%s-%d.log.history", base.getName(), id));
-            File historyIndexFile = new File(base.getParent(), String.format("%s-%d.index.history", base.getName(), id));
-            File historyMetadataFile = new File(base.getParent(), String.format("%s-%d.metadata.history", base.getName(), id));
-            if (historyLogFile.exists() && historyIndexFile.exists() && historyMetadataFile.exists()) {
-              // Restore the log by moving historical files back to permanent log files.
-              File logFile = new File(base.getParent(), String.format("%s-%d.log", base.getName(), id));
-              File indexFile = new File(base.getParent(), String.format("%s-%d.index", base.getName(), id));
-              File metadataFile = new File(base.getParent(), String.format("%s-%d.metadata", base.getName(), id));
-
-              // Copy the files instead of moving them in case another failure occurs.
-              Files.copy(historyLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-              Files.copy(historyIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-              Files.copy(historyMetadataFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
-              // Once the history has been restored, delete historical files.
-              historyLogFile.delete();
-              historyIndexFile.delete();
-              historyMetadataFile.delete();
-            }
-
-            // Open the metadata file, determine the segment's first index, and create a log segment.
-            try (RandomAccessFile metaFile = new RandomAccessFile(file, "r")) {
-              long firstIndex = metaFile.readLong();
-              segments.put(id, new FileLogSegment(this, id, firstIndex));
-            }
-          }
-        } catch (IOException | NumberFormatException e) {
+          uncommittedSegmentIds.add(Long.valueOf(file.getName().substring(file.getName().lastIndexOf('-') + 1, file.getName().indexOf('.', file.getName().lastIndexOf('-')))));
+        } catch (NumberFormatException e) {
           throw new LogException(e);
         }
+      } else if (file.getName().startsWith(base.getName() + "-") && file.getName().endsWith(".metadata")) {
+        try {
+          segmentIds.add(Long.valueOf(file.getName().substring(file.getName().lastIndexOf('-') + 1, file.getName().lastIndexOf('.'))));
+        } catch (NumberFormatException e) {
+          throw new LogException(e);
+        }
+      }
+    }
+
+    // Delete segments that were being rewritten but were never committed.
+    for (long id : uncommittedSegmentIds) {
+      new FileLogSegment(this, id, 0, false).delete();
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), segmentIds.size())));
+    try {
+      List<CompletableFuture<LogSegment>> futures = segmentIds.stream()
+        .map(id -> CompletableFuture.supplyAsync(() -> loadSegment(id), pool))
+        .collect(Collectors.toList());
+      List<LogSegment> segments = new ArrayList<>(futures.size());
+      for (CompletableFuture<LogSegment> future : futures) {
+        segments.add(future.join());
+      }
+      return removeReplacedSegments(segments);
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof LogException ? (LogException) e.getCause() : new LogException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Loads and opens a segment, first restoring the segment from history files if a failure occurred during compaction.
+   */
+  private LogSegment loadSegment(long id) {
+    try {
+      // First, look for an existing history file for the log. If history files exist for this segment then that
+      // indicates that a failure occurred during log compaction. Recover the previous log.
+      File historyLogFile = new File(base.getParent(), String.format("%s-%d.log.history", base.getName(), id));
+      File historyIndexFile = new File(base.getParent(), String.format("%s-%d.index.history", base.getName(), id));
+      File historyMetadataFile = new File(base.getParent(), String.format("%s-%d.metadata.history", base.getName(), id));
+      File metadataFile = new File(base.getParent(), String.format("%s-%d.metadata", base.getName(), id));
+      if (historyLogFile.exists() && historyIndexFile.exists() && historyMetadataFile.exists()) {
+        // Restore the log by moving historical files back to permanent log files.
+        File logFile = new File(base.getParent(), String.format("%s-%d.log", base.getName(), id));
+        File indexFile = new File(base.getParent(), String.format("%s-%d.index", base.getName(), id));
+
+        // Copy the files instead of moving them in case another failure occurs.
+        Files.copy(historyLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(historyIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(historyMetadataFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // Once the history has been restored, delete historical files.
+        historyLogFile.delete();
+        historyIndexFile.delete();
+        historyMetadataFile.delete();
+      }
+
+      // Open the metadata file, determine the segment's first index, and open the log segment.
+      long firstIndex;
+      try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "r")) {
+        firstIndex = metaFile.readLong();
+      }
+      FileLogSegment segment = new FileLogSegment(this, id, firstIndex);
+      segment.open();
+      return segment;
+    } catch (IOException e) {
+      throw new LogException(e);
+    }
+  }
+
+  /**
+   * Removes segments that were replaced by rewritten segments but not deleted before the log was closed.<p>
+   *
+   * Rewritten segments are committed before the segments they replace are deleted, and they always have higher ids than
+   * the segments they replace. Where the index ranges of two segments overlap, the segment with the lower id is deleted.
+   * If a compacted segment starts after the first index of a segment it replaces, all segments preceding it were
+   * compacted as well and are deleted too.
+   */
+  private List<LogSegment> removeReplacedSegments(List<LogSegment> segments) {
+    List<LogSegment> sortedSegments = new ArrayList<>(segments);
+    sortedSegments.sort((s1, s2) -> Long.compare(s2.id(), s1.id()));
+    TreeMap<Long, LogSegment> retainedSegments = new TreeMap<>();
+    List<LogSegment> emptySegments = new ArrayList<>();
+    Long compactIndex = null;
+    for (LogSegment segment : sortedSegments) {
+      Long firstIndex = segment.firstIndex();
+      if (firstIndex == null) {
+        emptySegments.add(segment);
+        continue;
+      }
+      Map.Entry<Long, LogSegment> overlap = retainedSegments.floorEntry(segment.lastIndex());
+      if (overlap != null && overlap.getValue().lastIndex() >= firstIndex) {
+        LOGGER.info("Deleting segment {} replaced by segment {}", segment.id(), overlap.getValue().id());
+        segment.delete();
+        if (overlap.getKey() > firstIndex) {
+          compactIndex = compactIndex != null ? Math.max(compactIndex, overlap.getKey()) : overlap.getKey();
+        }
+      } else {
+        retainedSegments.put(firstIndex, segment);
       }
     }
-    return segments.values();
+
+    if (compactIndex != null) {
+      Map<Long, LogSegment> compactedSegments = retainedSegments.headMap(compactIndex);
+      for (LogSegment segment : compactedSegments.values()) {
+        LOGGER.info("Deleting segment {} replaced by compaction", segment.id());
+        segment.delete();
+      }
+      compactedSegments.clear();
+    }
+
+    List<LogSegment> result = new ArrayList<>(retainedSegments.values());
+    result.addAll(emptySegments);
+    return result;
+  }
+
+  @Override
+  protected long entrySize(ByteBuffer entry) {
+    return FileLogSegment.HEADER_SIZE + entry.limit();
   }
 
   @Override
@@ -89,4 +237,249 @@ public class FileLogManager extends AbstractLogManager {
     return new FileLogSegment(this, segmentId, firstIndex);
   }
 
+  @Override
+  protected LogSegment createRewriteSegment(long segmentId, long firstIndex) {
+    return new FileLogSegment(this, segmentId, firstIndex, false);
+  }
+
+  @Override
+  protected void commitSegment(LogSegment segment) throws IOException {
+    ((FileLogSegment) segment).commit();
+  }
+
+  /**
+   * Returns the next segment id, skipping the ids of recycled log files. Recycled files still contain the entries of the
+   * segments from which they were recycled, and their checksums are seeded with the original segment ids, so ids must
+   * not be reused for recycled files.
+   */
+  @Override
+  protected long nextSegmentId() {
+    long segmentId = super.nextSegmentId();
+    while (segmentId <= maxRecycledSegmentId) {
+      segmentId = super.nextSegmentId();
+    }
+    return segmentId;
+  }
+
+  @Override
+  protected LogSegment openSegment(long firstIndex) throws IOException {
+    installCompressedSegments();
+    FileLogSegment segment = null;
+    if (nextSegment != null && nextSegment.isDone()) {
+      if (!nextSegment.isCompletedExceptionally()) {
+        segment = nextSegment.join();
+      }
+      nextSegment = null;
+    }
+
+    if (segment != null) {
+      segment.activate(firstIndex);
+    } else {
+      // If the segment has not yet been prepared then create one here rather than waiting behind the background thread.
+      // A segment that is still being prepared is left to be used for the next roll over.
+      segment = new FileLogSegment(this, nextSegmentId(), firstIndex);
+      segment.prepare(recycledLogFiles.poll());
+      segment.open();
+    }
+    if (nextSegment == null) {
+      prepareNextSegment();
+    }
+    return segment;
+  }
+
+  /**
+   * Prepares the next segment on a background thread. The segment's first index is recorded once the log is rolled
+   * over to it, so until then the segment is recovered as an empty segment if the log is reopened.
+   */
+  private void prepareNextSegment() {
+    long segmentId = nextSegmentId();
+    nextSegment = CompletableFuture.supplyAsync(() -> {
+      FileLogSegment segment = new FileLogSegment(this, segmentId, 0);
+      try {
+        segment.prepare(recycledLogFiles.poll());
+        segment.open();
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to prepare segment");
+      }
+      return segment;
+    }, preallocateExecutor());
+  }
+
+  /**
+   * Returns the executor on which segments are prepared. Segments are prepared on their own thread so that preparing
+   * the next segment is never queued behind compaction or compression.
+   */
+  private ExecutorService preallocateExecutor() {
+    if (preallocateExecutor == null) {
+      ThreadFactory threadFactory = new NamedThreadFactory("copycat-log-preallocate-%d");
+      preallocateExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = threadFactory.newThread(r);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return preallocateExecutor;
+  }
+
+  /**
+   * Stops preparing segments and returns the prepared segment, if any.<p>
+   *
+   * Segment preparation runs on its own thread, so this waits at most for the segment currently being prepared and
+   * never for compaction or compression.
+   */
+  private FileLogSegment shutdownPreallocation() {
+    CompletableFuture<FileLogSegment> segment = nextSegment;
+    nextSegment = null;
+    if (preallocateExecutor != null) {
+      preallocateExecutor.shutdown();
+      try {
+        preallocateExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      preallocateExecutor = null;
+    }
+    return segment != null && segment.isDone() && !segment.isCompletedExceptionally() ? segment.join() : null;
+  }
+
+  @Override
+  protected void sealSegment(LogSegment segment) {
+    FileLogSegment fileSegment = (FileLogSegment) segment;
+    try {
+      fileSegment.seal();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to seal segment {}", segment.id(), e);
+    }
+    if (config.isCompressed() && !fileSegment.isCompressed()) {
+      compressSegment(fileSegment);
+    }
+  }
+
+  /**
+   * Compresses a sealed segment on a background thread.<p>
+   *
+   * Segments may be released by compaction, cleaning or retention before they're compressed. Released and rewritten
+   * segments are skipped, and a segment that is released while it's being compressed is not treated as a failure.
+   */
+  private void compressSegment(FileLogSegment segment) {
+    long size = segment.size();
+    int generation = segment.generation();
+    executor().execute(() -> {
+      if (!segment.isOpen() || segment.generation() != generation) {
+        LOGGER.debug("Skipped compressing segment {}: segment was removed or rewritten", segment.id());
+        return;
+      }
+
+      try {
+        File file = File.createTempFile(String.format("%s-%d-", base.getName(), segment.id()), ".deflate.tmp", base.getParentFile());
+        try {
+          compressedSegments.add(new CompressedSegment(segment, generation, size, file, segment.compress(size, file)));
+        } catch (IOException | LogException e) {
+          file.delete();
+          throw e;
+        }
+      } catch (IOException | LogException e) {
+        if (segment.isOpen()) {
+          LOGGER.warn("Failed to compress segment {}", segment.id(), e);
+        } else {
+          LOGGER.debug("Skipped compressing segment {}: segment was removed", segment.id());
+        }
+      }
+    });
+  }
+
+  /**
+   * Swaps compressed log files into segments that have been compressed in the background.
+   */
+  private void installCompressedSegments() {
+    CompressedSegment compressed;
+    while ((compressed = compressedSegments.poll()) != null) {
+      FileLogSegment segment = compressed.segment;
+      Long firstIndex = segment.isOpen() ? segment.firstIndex() : null;
+      boolean unmodified = firstIndex != null && segments.get(firstIndex) == segment && segment != currentSegment
+        && segment.generation() == compressed.generation && segment.size() == compressed.size;
+      if (unmodified) {
+        try {
+          segment.installCompressedFile(compressed.file, compressed.blockOffsets);
+          continue;
+        } catch (IOException e) {
+          LOGGER.warn("Failed to install compressed segment {}", segment.id(), e);
+        }
+      }
+      compressed.file.delete();
+    }
+  }
+
+  @Override
+  protected void releaseSegment(LogSegment segment) {
+    if (config.isPreallocate() && recycledLogFiles.size() < MAX_RECYCLED_SEGMENTS) {
+      File recycledLogFile = new File(base.getParentFile(), String.format("%s-%d.log.pool", base.getName(), segment.id()));
+      try {
+        ((FileLogSegment) segment).recycle(recycledLogFile);
+        recycledLogFiles.add(recycledLogFile);
+        return;
+      } catch (IOException e) {
+        // Fall through and delete the segment if its log file could not be recycled.
+      }
+    }
+    segment.delete();
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    super.open();
+    if (nextSegment == null) {
+      prepareNextSegment();
+    }
+
+    // Seal and compress any segments that were not sealed before the log was closed.
+    for (LogSegment segment : segments.values()) {
+      if (segment != currentSegment) {
+        sealSegment(segment);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    // Release the prepared segment so its log file can be reused when the log is reopened.
+    FileLogSegment segment = shutdownPreallocation();
+    if (segment != null) {
+      releaseSegment(segment);
+    }
+    super.close();
+    compressedSegments.forEach(compressed -> compressed.file.delete());
+    compressedSegments.clear();
+  }
+
+  @Override
+  public void delete() {
+    FileLogSegment segment = shutdownPreallocation();
+    if (segment != null) {
+      segment.delete();
+    }
+    super.delete();
+    recycledLogFiles.forEach(File::delete);
+    recycledLogFiles.clear();
+  }
+
+  /**
+   * A segment log file that has been compressed in the background.
+   */
+  private static class CompressedSegment {
+    private final FileLogSegment segment;
+    private final int generation;
+    private final long size;
+    private final File file;
+    private final long[] blockOffsets;
+
+    private CompressedSegment(FileLogSegment segment, int generation, long size, File file, long[] blockOffsets) {
+      this.segment = segment;
+      this.generation = generation;
+      this.size = size;
+      this.file = file;
+      this.blockOffsets = blockOffsets;
+    }
+  }
+
 }
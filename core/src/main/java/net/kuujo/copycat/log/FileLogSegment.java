@@ -15,39 +15,125 @@
  */
 package net.kuujo.copycat.log;
 
+import net.kuujo.copycat.internal.util.Assert;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- * File log segment.
+ * File log segment.<p>
+ *
+ * Each entry is written to the {@code .log} file prefixed with a header containing the entry length and a CRC32
+ * checksum of the segment id, length, and entry bytes, and the entry's position and length are recorded in the
+ * {@code .index} file. When the segment is opened, only the entries at the tail of the segment are validated against
+ * their checksums, and any torn writes are discarded, so the log can be safely recovered without flushing on every
+ * write. Since checksums are seeded with the segment id, stale entries left in a recycled log file are never
+ * recovered.<p>
+ *
+ * If the log is configured as {@link FileLog#isMemoryMapped() memory mapped}, both files are mapped into memory so
+ * appends become memory stores and reads return slices of the mapped log file rather than requiring a system call.<p>
+ *
+ * Entry positions and lengths are also held in memory for the lifetime of an open segment. The on-disk index is
+ * written only so that the in-memory index can be rebuilt when the segment is reopened.<p>
+ *
+ * If the log is configured as {@link FileLog#isCompressed() compressed}, the log file of a sealed segment is replaced
+ * with a {@code .log.deflate} file containing independently compressed blocks of the log file. Entry positions still
+ * refer to the uncompressed log, so reading an entry only requires decompressing the blocks that contain it, and
+ * recently read blocks are cached. Compressed segments are decompressed again before they're modified.<p>
+ *
+ * Once the log has been rolled over from a segment, the segment is sealed by recording its last index and size in the
+ * metadata file. Sealed segments are opened lazily: their files are only opened and recovered when their entries are
+ * first accessed or they're modified, and the seal is removed from the metadata file before a sealed segment is
+ * modified. Once opened, sealed segments count against the process wide {@link SegmentHandleManager} budget, and the
+ * least recently used sealed segments are closed again when the budget is exceeded.<p>
+ *
+ * Entries recorded in the segment's time index are written through to the {@code .timeindex} file as pairs of entry
+ * indexes and append times. The time index is only read when the segment is first searched by time.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class FileLogSegment extends AbstractLogSegment {
+  static final int HEADER_SIZE = 8;
+  private static final int METADATA_SIZE = 16;
+  private static final int SEALED_METADATA_SIZE = 32;
+  private static final int INDEX_ENTRY_SIZE = 12;
+  private static final int TIME_INDEX_ENTRY_SIZE = 16;
+  private static final int DEFAULT_INDEX_CAPACITY = 1024 * INDEX_ENTRY_SIZE;
+  private static final int DEFAULT_OFFSETS_CAPACITY = 1024;
+  private static final int PREALLOCATE_BUFFER_SIZE = 64 * 1024;
+  private static final int COMPRESSED_HEADER_SIZE = 12;
+  private static final int BLOCK_HEADER_SIZE = 8;
+  private static final int BLOCK_CACHE_SIZE = 4;
   private final FileLogManager log;
   private final File logFile;
   private final File indexFile;
-  private final File metadataFile;
+  private File metadataFile;
+  private final File compressedFile;
+  private final File timeIndexFile;
   private long timestamp;
   private FileChannel logFileChannel;
   private FileChannel indexFileChannel;
-  private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(16);
-  private final ByteBuffer entryBuffer = ByteBuffer.allocateDirect(1024 * 1024);
+  private MappedByteBuffer logBuffer;
+  private MappedByteBuffer indexBuffer;
+  private FileChannel compressedFileChannel;
+  private int blockSize;
+  private long[] blockOffsets;
+  private Inflater inflater;
+  private final Map<Integer, byte[]> blockCache = new LinkedHashMap<Integer, byte[]>(BLOCK_CACHE_SIZE, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+      return size() > BLOCK_CACHE_SIZE;
+    }
+  };
+  private final ByteBuffer indexEntryBuffer = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE);
+  private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(HEADER_SIZE);
+  private final CRC32 checksum = new CRC32();
+  private final byte[] checksumSeed;
+  private long[] positions = new long[DEFAULT_OFFSETS_CAPACITY];
+  private int[] lengths = new int[DEFAULT_OFFSETS_CAPACITY];
+  private long logSize;
   private Long firstIndex;
   private Long lastIndex;
+  private int generation;
+  private boolean sealed;
+  private volatile boolean lazy;
+  volatile long lastAccess;
+  private boolean timeIndexLoaded;
+  private final SegmentHandleManager handles = SegmentHandleManager.instance();
 
   FileLogSegment(FileLogManager log, long id, long firstIndex) {
+    this(log, id, firstIndex, true);
+  }
+
+  /**
+   * Creates a segment. Uncommitted segments write their metadata to a temporary file, so they're not loaded when the
+   * log is reopened until they've been {@link #commit() committed}.
+   */
+  FileLogSegment(FileLogManager log, long id, long firstIndex, boolean committed) {
     super(id, firstIndex);
     this.log = log;
     this.logFile = new File(log.base.getParentFile(), String.format("%s-%d.log", log.base.getName(), id));
     this.indexFile = new File(log.base.getParentFile(), String.format("%s-%d.index", log.base.getName(), id));
-    this.metadataFile = new File(log.base.getParentFile(), String.format("%s-%d.metadata", log.base.getName(), id));
+    this.metadataFile = new File(log.base.getParentFile(), String.format(committed ? "%s-%d.metadata" : "%s-%d.metadata.tmp", log.base.getName(), id));
+    this.compressedFile = new File(log.base.getParentFile(), String.format("%s-%d.log.deflate", log.base.getName(), id));
+    this.timeIndexFile = new File(log.base.getParentFile(), String.format("%s-%d.timeindex", log.base.getName(), id));
+    this.checksumSeed = ByteBuffer.allocate(8).putLong(id).array();
   }
 
   @Override
@@ -70,25 +156,661 @@ public class FileLogSegment extends AbstractLogSegment {
 
     if (!metadataFile.exists()) {
       timestamp = System.currentTimeMillis();
-      try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "w+")) {
-        metaFile.writeLong(super.firstIndex);
-        metaFile.writeLong(timestamp);
-      }
+      writeMetadata();
+      openChannels(false);
     } else {
-      try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "r+")) {
+      try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "r")) {
         if (metaFile.readLong() != super.firstIndex) {
           throw new LogException("Segment metadata out of sync");
         }
         timestamp = metaFile.readLong();
+        sealed = metaFile.length() >= SEALED_METADATA_SIZE;
+        if (sealed) {
+          lastIndex = metaFile.readLong();
+          logSize = metaFile.readLong();
+        }
+      }
+
+      // The index range and size of sealed segments are known, so their files are opened when they're first accessed.
+      if (sealed) {
+        firstIndex = super.firstIndex;
+        lazy = true;
+      } else {
+        openChannels(true);
+      }
+    }
+  }
+
+  /**
+   * Opens and recovers the files of a lazily opened segment. Accesses to segments that are already open only record
+   * the access time, so the handle manager's lock is taken only when a segment's files are opened.
+   */
+  private void checkLoaded() {
+    if (!lazy) {
+      if (sealed) {
+        handles.touch(this);
+      }
+      return;
+    }
+    lazy = false;
+    Long sealedLastIndex = lastIndex;
+    long sealedSize = logSize;
+    try {
+      openChannels(true);
+    } catch (IOException e) {
+      throw new LogException(e);
+    }
+    if (!sealedLastIndex.equals(lastIndex) || sealedSize != logSize) {
+      throw new LogException("Segment metadata out of sync");
+    }
+    if (sealed) {
+      handles.acquire(this);
+    }
+  }
+
+  /**
+   * Closes the files of a sealed segment that has been evicted from the handle budget. The segment's index range and
+   * size are retained, so the segment is reopened lazily when it's next accessed.
+   */
+  synchronized void unload() throws IOException {
+    if (sealed && !lazy && isOpen() && !handles.contains(this)) {
+      lazy = true;
+      closeChannels();
+    }
+  }
+
+  /**
+   * Seals the segment, recording its last index and size in the metadata file so that the segment can be opened lazily
+   * when the log is reopened. The segment must be flushed to disk before it's sealed.
+   */
+  synchronized void seal() throws IOException {
+    assertIsOpen();
+    if (sealed || lastIndex == null) {
+      return;
+    }
+    try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "rw")) {
+      metaFile.seek(METADATA_SIZE);
+      metaFile.write(ByteBuffer.allocate(SEALED_METADATA_SIZE - METADATA_SIZE).putLong(lastIndex).putLong(logSize).array());
+    }
+    sealed = true;
+    if (!lazy) {
+      handles.acquire(this);
+    }
+  }
+
+  /**
+   * Removes the seal from the metadata file before the segment is modified. The metadata file is forced to disk so the
+   * segment can't be lazily opened with a stale index range.
+   */
+  private void unseal() {
+    try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "rw")) {
+      metaFile.setLength(METADATA_SIZE);
+      metaFile.getFD().sync();
+    } catch (IOException e) {
+      throw new LogException(e);
+    }
+    sealed = false;
+    handles.release(this);
+  }
+
+  /**
+   * Records an entry in the segment's time index. Time index entries are recorded infrequently, so the time index file
+   * is only opened while it's being written.
+   */
+  @Override
+  public synchronized void indexTimestamp(long index, long timestamp) {
+    assertIsOpen();
+    loadTimeIndex();
+    int position = timeIndex.add(index, timestamp);
+    try (FileChannel channel = FileChannel.open(timeIndexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(TIME_INDEX_ENTRY_SIZE).putLong(index).putLong(timeIndex.timestamp(position));
+      buffer.flip();
+      writeFully(channel, (long) position * TIME_INDEX_ENTRY_SIZE, buffer);
+      // Truncate entries for indexes that have been removed from the segment.
+      channel.truncate((long) (position + 1) * TIME_INDEX_ENTRY_SIZE);
+    } catch (IOException e) {
+      throw new LogException(e);
+    }
+  }
+
+  @Override
+  public synchronized Long indexForTimestamp(long timestamp) {
+    assertIsOpen();
+    loadTimeIndex();
+    return super.indexForTimestamp(timestamp);
+  }
+
+  @Override
+  synchronized TimeIndex timeIndex() {
+    loadTimeIndex();
+    return super.timeIndex();
+  }
+
+  /**
+   * Reads the time index file into memory, ignoring any partially written entry at the end of the file.
+   */
+  private void loadTimeIndex() {
+    if (timeIndexLoaded) {
+      return;
+    }
+    timeIndexLoaded = true;
+    if (timeIndexFile.exists()) {
+      try (FileChannel channel = FileChannel.open(timeIndexFile.toPath(), StandardOpenOption.READ)) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() / TIME_INDEX_ENTRY_SIZE * TIME_INDEX_ENTRY_SIZE));
+        readFully(channel, 0, buffer);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          timeIndex.add(buffer.getLong(), buffer.getLong());
+        }
+      } catch (IOException e) {
+        throw new LogException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the segment's files have not yet been opened.
+   */
+  boolean isLazy() {
+    return lazy;
+  }
+
+  /**
+   * Writes the segment's first index and timestamp to the metadata file.
+   */
+  private void writeMetadata() throws IOException {
+    try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "rw")) {
+      metaFile.writeLong(super.firstIndex);
+      metaFile.writeLong(timestamp);
+    }
+  }
+
+  /**
+   * Commits an uncommitted segment by atomically renaming its metadata file, after which the segment is loaded when
+   * the log is reopened. The segment's files must have been flushed to disk before it's committed.
+   */
+  synchronized void commit() throws IOException {
+    File committedMetadataFile = new File(log.base.getParentFile(), String.format("%s-%d.metadata", log.base.getName(), id()));
+    if (metadataFile.equals(committedMetadataFile)) {
+      return;
+    }
+    try (RandomAccessFile metaFile = new RandomAccessFile(metadataFile, "rw")) {
+      metaFile.getFD().sync();
+    }
+    Files.move(metadataFile.toPath(), committedMetadataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    metadataFile = committedMetadataFile;
+  }
+
+  /**
+   * Prepares the segment's log file before the segment is opened.<p>
+   *
+   * If a recycled log file is provided, it's renamed to the segment's log file. If preallocation is enabled, the log
+   * file is then filled to the configured segment size and the header of its first entry is cleared.
+   *
+   * @param recycledLogFile A recycled log file to reuse, or {@code null} if no recycled file is available.
+   */
+  void prepare(File recycledLogFile) throws IOException {
+    assertIsNotOpen();
+    if (recycledLogFile != null) {
+      Files.move(recycledLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    if (log.config.isPreallocate()) {
+      try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        ByteBuffer zeros = ByteBuffer.allocateDirect(PREALLOCATE_BUFFER_SIZE);
+        zeros.limit(HEADER_SIZE);
+        while (zeros.hasRemaining()) {
+          channel.write(zeros, zeros.position());
+        }
+
+        long position = channel.size();
+        while (position < log.config.getSegmentSize()) {
+          zeros.clear();
+          zeros.limit((int) Math.min(zeros.capacity(), log.config.getSegmentSize() - position));
+          position += channel.write(zeros, position);
+        }
+        channel.force(true);
+      }
+    }
+  }
+
+  /**
+   * Activates a prepared segment, recording the index at which the segment starts.
+   *
+   * @param firstIndex The index at which the segment starts.
+   */
+  void activate(long firstIndex) throws IOException {
+    assertIsOpen();
+    Assert.state(this.firstIndex == null, "Cannot activate a non-empty segment");
+    super.firstIndex = firstIndex;
+    timestamp = System.currentTimeMillis();
+    writeMetadata();
+  }
+
+  /**
+   * Recycles the segment's log file, moving it to the given file and deleting the segment's remaining files.
+   *
+   * @param recycledLogFile The file to which to move the segment's log file.
+   */
+  synchronized void recycle(File recycledLogFile) throws IOException {
+    handles.release(this);
+    if (isOpen()) {
+      lazy = false;
+      closeChannels();
+    }
+
+    // Delete the metadata file first so a partially recycled segment is never loaded.
+    metadataFile.delete();
+    Files.move(logFile.toPath(), recycledLogFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    indexFile.delete();
+    timeIndexFile.delete();
+  }
+
+  /**
+   * Opens the log and index file channels, mapping them into memory if necessary.
+   *
+   * @param recover Whether to recover existing entries from the log and index files.
+   */
+  private void openChannels(boolean recover) throws IOException {
+    indexFileChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    // Determine the file sizes before mapping since mapping a file extends it to the size of the mapped region.
+    long logFileSize;
+    if (recover && compressedFile.exists()) {
+      logFileSize = openCompressedFile();
+      // The uncompressed log file may be left behind if a failure occurred while swapping in the compressed file.
+      logFile.delete();
+    } else {
+      logFileChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      logFileSize = logFileChannel.size();
+      if (log.config.isMemoryMapped()) {
+        logBuffer = logFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(logFileSize, log.config.getSegmentSize()));
+      }
+    }
+
+    long indexFileSize = indexFileChannel.size();
+    if (log.config.isMemoryMapped()) {
+      indexBuffer = indexFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(indexFileSize, DEFAULT_INDEX_CAPACITY));
+    }
+    if (recover) {
+      recover(logFileSize, indexFileSize);
+    } else {
+      logSize = 0;
+      firstIndex = null;
+      lastIndex = null;
+    }
+  }
+
+  /**
+   * Recovers the segment's entries.<p>
+   *
+   * The index is first scanned for the contiguous run of entries that fit in the log file. Mapped files are extended
+   * beyond their logical size, so the first index entry that does not immediately follow its predecessor marks the end
+   * of the index. Since torn writes can only occur at the tail of the segment, only trailing entries are validated
+   * against their checksums. Finally, any valid entries written after the last indexed entry are re-indexed and
+   * everything following the last valid entry is discarded.
+   */
+  private void recover(long logFileSize, long indexFileSize) throws IOException {
+    ByteBuffer index = readIndex(indexFileSize);
+    int count = 0;
+    long position = 0;
+    while (index.remaining() >= INDEX_ENTRY_SIZE) {
+      long entryPosition = index.getLong();
+      int frameLength = index.getInt();
+      if (entryPosition != position || frameLength < HEADER_SIZE || entryPosition + frameLength > logFileSize) {
+        break;
       }
+      ensureOffsetsCapacity(count + 1);
+      positions[count] = entryPosition;
+      lengths[count] = frameLength - HEADER_SIZE;
+      position += frameLength;
+      count++;
     }
 
-    logFileChannel = FileChannel.open(this.logFile.toPath(), StandardOpenOption.CREATE_NEW);
-    indexFileChannel = FileChannel.open(this.indexFile.toPath(), StandardOpenOption.CREATE_NEW);
+    // Discard trailing entries that were indexed but whose contents did not fully reach disk.
+    while (count > 0 && readEntryLength(positions[count - 1], logFileSize) != lengths[count - 1]) {
+      count--;
+      position = positions[count];
+    }
+
+    // Index any valid entries that were written to the log but whose index entries did not reach disk.
+    int length;
+    while ((length = readEntryLength(position, logFileSize)) >= 0) {
+      ensureOffsetsCapacity(count + 1);
+      positions[count] = position;
+      lengths[count] = length;
+      storeIndexEntry((long) count * INDEX_ENTRY_SIZE, position, length);
+      position += HEADER_SIZE + length;
+      count++;
+    }
 
-    if (indexFileChannel.size() > 0) {
+    // Discard any partially written entries following the last valid entry. Compressed segments are never written.
+    if (blockOffsets != null) {
+      if (indexFileSize > (long) count * INDEX_ENTRY_SIZE && indexBuffer == null) {
+        indexFileChannel.truncate((long) count * INDEX_ENTRY_SIZE);
+      }
+    } else if (logBuffer != null) {
+      terminate(position);
+    } else {
+      if (logFileSize > position) {
+        logFileChannel.truncate(position);
+      }
+      if (indexFileSize > (long) count * INDEX_ENTRY_SIZE) {
+        indexFileChannel.truncate((long) count * INDEX_ENTRY_SIZE);
+      }
+    }
+
+    logSize = position;
+    if (count > 0) {
       firstIndex = super.firstIndex;
-      lastIndex = firstIndex + indexFileChannel.size() / 8 - 1;
+      lastIndex = firstIndex + count - 1;
+    } else {
+      firstIndex = null;
+      lastIndex = null;
+    }
+  }
+
+  /**
+   * Reads the index file for recovery.
+   */
+  private ByteBuffer readIndex(long indexFileSize) throws IOException {
+    if (indexBuffer != null) {
+      ByteBuffer index = indexBuffer.duplicate();
+      index.clear();
+      return index;
+    }
+
+    ByteBuffer index = ByteBuffer.allocate((int) indexFileSize);
+    while (index.hasRemaining()) {
+      if (indexFileChannel.read(index, index.position()) < 0) {
+        break;
+      }
+    }
+    index.flip();
+    return index;
+  }
+
+  /**
+   * Reads and validates the entry at the given position in the log file.
+   *
+   * @return The length of the entry, or {@code -1} if no valid entry exists at the given position.
+   */
+  private int readEntryLength(long position, long logFileSize) throws IOException {
+    if (position + HEADER_SIZE > logFileSize) {
+      return -1;
+    }
+
+    headerBuffer.clear();
+    read(position, headerBuffer);
+    int length = headerBuffer.getInt(0);
+    int checksum = headerBuffer.getInt(4);
+    if (length < 0 || position + HEADER_SIZE + length > logFileSize) {
+      return -1;
+    }
+
+    ByteBuffer entry = ByteBuffer.allocate(length);
+    read(position + HEADER_SIZE, entry);
+    entry.flip();
+    return checksum(length, entry) == checksum ? length : -1;
+  }
+
+  /**
+   * Computes the checksum of an entry and its length.
+   */
+  private int checksum(int length, ByteBuffer entry) {
+    this.checksum.reset();
+    this.checksum.update(checksumSeed);
+    this.checksum.update(length >>> 24);
+    this.checksum.update(length >>> 16);
+    this.checksum.update(length >>> 8);
+    this.checksum.update(length);
+    this.checksum.update(entry);
+    entry.rewind();
+    return (int) this.checksum.getValue();
+  }
+
+  /**
+   * Reads bytes from the log file at the given position.
+   */
+  private void read(long position, ByteBuffer buffer) throws IOException {
+    if (blockOffsets != null) {
+      while (buffer.hasRemaining()) {
+        int block = (int) (position / blockSize);
+        int offset = (int) (position - (long) block * blockSize);
+        byte[] bytes = readBlock(block);
+        if (offset >= bytes.length) {
+          throw new LogException("Unexpected end of log file");
+        }
+        int length = Math.min(bytes.length - offset, buffer.remaining());
+        buffer.put(bytes, offset, length);
+        position += length;
+      }
+    } else if (logBuffer != null) {
+      ByteBuffer source = logBuffer.duplicate();
+      source.limit((int) position + buffer.remaining());
+      source.position((int) position);
+      buffer.put(source);
+    } else {
+      int start = buffer.position();
+      while (buffer.hasRemaining()) {
+        if (logFileChannel.read(buffer, position + buffer.position() - start) < 0) {
+          throw new LogException("Unexpected end of log file");
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes bytes to the log file at the given position.
+   */
+  private void write(long position, ByteBuffer buffer) throws IOException {
+    if (logBuffer != null) {
+      ByteBuffer target = logBuffer.duplicate();
+      target.position((int) position);
+      target.put(buffer);
+    } else {
+      int start = buffer.position();
+      while (buffer.hasRemaining()) {
+        logFileChannel.write(buffer, position + buffer.position() - start);
+      }
+    }
+  }
+
+  /**
+   * Clears the header following the last entry in a mapped log file. Mapped files are not truncated, so this prevents
+   * stale entries from being recovered.
+   */
+  private void terminate(long position) {
+    if (position + HEADER_SIZE <= logBuffer.capacity()) {
+      logBuffer.putLong((int) position, 0);
+    }
+  }
+
+  /**
+   * Opens the compressed log file, reading the offsets of its blocks.
+   *
+   * @return The size of the uncompressed log.
+   */
+  private long openCompressedFile() throws IOException {
+    compressedFileChannel = FileChannel.open(compressedFile.toPath(), StandardOpenOption.READ);
+    ByteBuffer header = ByteBuffer.allocate(COMPRESSED_HEADER_SIZE);
+    readFully(compressedFileChannel, 0, header);
+    blockSize = header.getInt(0);
+    long size = header.getLong(4);
+
+    long[] offsets = new long[(int) ((size + blockSize - 1) / blockSize)];
+    long position = COMPRESSED_HEADER_SIZE;
+    ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = position;
+      blockHeader.clear();
+      readFully(compressedFileChannel, position, blockHeader);
+      position += BLOCK_HEADER_SIZE + blockHeader.getInt(0);
+    }
+    blockOffsets = offsets;
+    inflater = new Inflater();
+    return size;
+  }
+
+  /**
+   * Reads and decompresses a block of the compressed log file, checking the block cache first.
+   */
+  private byte[] readBlock(int block) throws IOException {
+    byte[] bytes = blockCache.get(block);
+    if (bytes != null) {
+      return bytes;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+    readFully(compressedFileChannel, blockOffsets[block], header);
+    byte[] compressed = new byte[header.getInt(0)];
+    bytes = new byte[header.getInt(4)];
+    readFully(compressedFileChannel, blockOffsets[block] + BLOCK_HEADER_SIZE, ByteBuffer.wrap(compressed));
+    inflater.reset();
+    inflater.setInput(compressed);
+    try {
+      if (inflater.inflate(bytes) != bytes.length) {
+        throw new LogException("Corrupt compressed block %d", block);
+      }
+    } catch (DataFormatException e) {
+      throw new LogException(e, "Corrupt compressed block %d", block);
+    }
+    blockCache.put(block, bytes);
+    return bytes;
+  }
+
+  /**
+   * Reads bytes from the given channel at the given position until the buffer is full.
+   */
+  private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position() - start) < 0) {
+        throw new LogException("Unexpected end of file");
+      }
+    }
+  }
+
+  /**
+   * Writes bytes to the given channel at the given position until the buffer is empty.
+   */
+  private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position() - start);
+    }
+  }
+
+  /**
+   * Returns whether the segment's log file is compressed.
+   */
+  boolean isCompressed() {
+    return blockOffsets != null || lazy && compressedFile.exists();
+  }
+
+  /**
+   * Returns the segment's generation, which changes whenever existing entries are rewritten.
+   */
+  int generation() {
+    return generation;
+  }
+
+  /**
+   * Compresses the first {@code size} bytes of the segment's log file to the given file.<p>
+   *
+   * This method does not modify the segment and may be called from a background thread. The compressed file is written
+   * with a header containing the block size and uncompressed size, followed by each block prefixed with its
+   * compressed and uncompressed lengths.
+   *
+   * @param size The number of bytes to compress.
+   * @param file The file to which to write the compressed log.
+   * @return The offsets of the compressed blocks.
+   */
+  long[] compress(long size, File file) throws IOException {
+    int blockSize = log.config.getCompressionBlockSize();
+    long[] offsets = new long[(int) ((size + blockSize - 1) / blockSize)];
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (FileChannel source = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+         FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(COMPRESSED_HEADER_SIZE);
+      header.putInt(blockSize).putLong(size).flip();
+      writeFully(target, 0, header);
+
+      long position = COMPRESSED_HEADER_SIZE;
+      byte[] input = new byte[blockSize];
+      byte[] output = new byte[blockSize];
+      for (int i = 0; i < offsets.length; i++) {
+        int length = (int) Math.min(blockSize, size - (long) i * blockSize);
+        readFully(source, (long) i * blockSize, ByteBuffer.wrap(input, 0, length));
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+          if (compressedLength == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          compressedLength += deflater.deflate(output, compressedLength, output.length - compressedLength);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressedLength);
+        block.putInt(compressedLength).putInt(length).put(output, 0, compressedLength).flip();
+        offsets[i] = position;
+        writeFully(target, position, block);
+        position += BLOCK_HEADER_SIZE + compressedLength;
+      }
+      target.force(true);
+    } finally {
+      deflater.end();
+    }
+    return offsets;
+  }
+
+  /**
+   * Replaces the segment's log file with a file written by {@link #compress(long, java.io.File)}.<p>
+   *
+   * The caller is responsible for ensuring the segment has not been modified since it was compressed.
+   *
+   * @param file The compressed log file.
+   * @param offsets The offsets of the compressed blocks.
+   */
+  synchronized void installCompressedFile(File file, long[] offsets) throws IOException {
+    assertIsOpen();
+    Files.move(file.toPath(), compressedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    if (lazy) {
+      logFile.delete();
+      return;
+    }
+    logBuffer = null;
+    logFileChannel.close();
+    logFileChannel = null;
+    compressedFileChannel = FileChannel.open(compressedFile.toPath(), StandardOpenOption.READ);
+    blockSize = log.config.getCompressionBlockSize();
+    blockOffsets = offsets;
+    inflater = new Inflater();
+    logFile.delete();
+  }
+
+  /**
+   * Decompresses the segment's log file so that the segment can be modified.
+   */
+  private void decompress() {
+    try {
+      File tempFile = new File(log.base.getParent(), String.format("%s-%d.log.tmp", log.base.getName(), id));
+      try (FileChannel target = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        for (int i = 0; i < blockOffsets.length; i++) {
+          writeFully(target, (long) i * blockSize, ByteBuffer.wrap(readBlock(i)));
+        }
+        target.force(true);
+      }
+
+      // Move the decompressed log into place before deleting the compressed log so that entries can't be lost.
+      closeChannels();
+      Files.move(tempFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.delete(compressedFile.toPath());
+      openChannels(true);
+    } catch (IOException e) {
+      throw new LogException(e);
     }
   }
 
@@ -100,17 +822,13 @@ public class FileLogSegment extends AbstractLogSegment {
 
   @Override
   public boolean isOpen() {
-    return logFileChannel != null && indexFileChannel != null;
+    return lazy || (logFileChannel != null || compressedFileChannel != null) && indexFileChannel != null;
   }
 
   @Override
   public long size() {
     assertIsOpen();
-    try {
-      return logFileChannel.size();
-    } catch (IOException e) {
-      throw new LogException(e);
-    }
+    return logSize;
   }
 
   @Override
@@ -133,12 +851,27 @@ public class FileLogSegment extends AbstractLogSegment {
 
   @Override
   public long appendEntry(ByteBuffer entry) {
+    Assert.isNotNull(entry, "entry");
     assertIsOpen();
+    checkWritable();
+    ByteBuffer buffer = entry.duplicate();
+    buffer.rewind();
+    int length = buffer.limit();
     long index = nextIndex();
     try {
-      long position = logFileChannel.position();
-      logFileChannel.write(entry);
-      storePosition(index, position);
+      headerBuffer.clear();
+      headerBuffer.putInt(length).putInt(checksum(length, buffer));
+      headerBuffer.flip();
+      if (logBuffer != null) {
+        ensureLogCapacity(logSize + HEADER_SIZE * 2 + length);
+      }
+      write(logSize, headerBuffer);
+      write(logSize + HEADER_SIZE, buffer);
+      storePosition(index, logSize, length);
+      logSize += HEADER_SIZE + length;
+      if (logBuffer != null) {
+        terminate(logSize);
+      }
     } catch (IOException e) {
       throw new LogException(e);
     }
@@ -146,29 +879,154 @@ public class FileLogSegment extends AbstractLogSegment {
   }
 
   /**
-   * Stores the position of an entry in the log.
+   * Appends a list of entries to the segment.<p>
+   *
+   * Entries are written to the log file with a single gathering write, and their index entries are written to the
+   * index file as a single block. Memory mapped segments append entries individually since appends are memory stores.
    */
-  private void storePosition(long index, long position) {
+  @Override
+  public List<Long> appendEntries(List<ByteBuffer> entries) {
+    Assert.isNotNull(entries, "entries");
+    assertIsOpen();
+    checkWritable();
+    if (logBuffer != null || entries.size() <= 1) {
+      return super.appendEntries(entries);
+    }
+
+    int count = entries.size();
+    List<Long> indices = new ArrayList<>(count);
+    ByteBuffer[] buffers = new ByteBuffer[count * 2];
+    ByteBuffer headers = ByteBuffer.allocate(count * HEADER_SIZE);
+    ByteBuffer indexEntries = ByteBuffer.allocate(count * INDEX_ENTRY_SIZE);
+    long position = logSize;
+    for (int i = 0; i < count; i++) {
+      ByteBuffer buffer = entries.get(i).duplicate();
+      buffer.rewind();
+      int length = buffer.limit();
+      headers.limit(headers.position() + HEADER_SIZE);
+      ByteBuffer header = headers.slice();
+      header.putInt(length).putInt(checksum(length, buffer));
+      header.flip();
+      headers.position(headers.limit());
+      buffers[i * 2] = header;
+      buffers[i * 2 + 1] = buffer;
+
+      long index = nextIndex();
+      int offset = (int) (index - firstIndex);
+      ensureOffsetsCapacity(offset + 1);
+      positions[offset] = position;
+      lengths[offset] = length;
+      indexEntries.putLong(position).putInt(HEADER_SIZE + length);
+      indices.add(index);
+      position += HEADER_SIZE + length;
+    }
+    indexEntries.flip();
+
     try {
-      indexBuffer.reset();
-      indexBuffer.putLong(index).putLong(position);
-      indexFileChannel.write(indexBuffer, (index - firstIndex) * 8);
+      logFileChannel.position(logSize);
+      long remaining = position - logSize;
+      while (remaining > 0) {
+        remaining -= logFileChannel.write(buffers);
+      }
+      long indexPosition = (indices.get(0) - firstIndex) * INDEX_ENTRY_SIZE;
+      while (indexEntries.hasRemaining()) {
+        indexFileChannel.write(indexEntries, indexPosition + indexEntries.position());
+      }
     } catch (IOException e) {
       throw new LogException(e);
     }
+    logSize = position;
+    return indices;
+  }
+
+  /**
+   * Prepares the segment to be appended to, opening, unsealing, and decompressing the segment as necessary. Segments
+   * are only closed by the handle budget while they're sealed, so segments that are already writable need no locking.
+   */
+  private void checkWritable() {
+    if (lazy || sealed || blockOffsets != null) {
+      synchronized (this) {
+        checkLoaded();
+        if (sealed) {
+          unseal();
+        }
+        if (blockOffsets != null) {
+          decompress();
+        }
+      }
+    }
+  }
+
+  /**
+   * Remaps the log file if the given capacity exceeds the size of the mapped region.
+   */
+  private void ensureLogCapacity(long capacity) throws IOException {
+    if (capacity > logBuffer.capacity()) {
+      logBuffer = logFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, (long) logBuffer.capacity() * 2));
+    }
+  }
+
+  /**
+   * Remaps the index file if the given capacity exceeds the size of the mapped region.
+   */
+  private void ensureIndexCapacity(long capacity) throws IOException {
+    if (capacity > indexBuffer.capacity()) {
+      indexBuffer = indexFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, (long) indexBuffer.capacity() * 2));
+    }
+  }
+
+  /**
+   * Grows the in-memory index to hold at least the given number of entries.
+   */
+  private void ensureOffsetsCapacity(int capacity) {
+    if (capacity > positions.length) {
+      int newCapacity = Math.max(capacity, positions.length * 2);
+      positions = Arrays.copyOf(positions, newCapacity);
+      lengths = Arrays.copyOf(lengths, newCapacity);
+    }
+  }
+
+  /**
+   * Stores the position and length of an entry in the in-memory index and the index file.
+   */
+  private void storePosition(long index, long position, int length) throws IOException {
+    int offset = (int) (index - firstIndex);
+    ensureOffsetsCapacity(offset + 1);
+    positions[offset] = position;
+    lengths[offset] = length;
+    storeIndexEntry((long) offset * INDEX_ENTRY_SIZE, position, length);
+  }
+
+  /**
+   * Writes an index entry to the index file. Index entries record the length of the entry including its header.
+   */
+  private void storeIndexEntry(long offset, long position, int length) throws IOException {
+    if (indexBuffer != null) {
+      ensureIndexCapacity(offset + INDEX_ENTRY_SIZE);
+      indexBuffer.putLong((int) offset, position);
+      indexBuffer.putInt((int) offset + 8, HEADER_SIZE + length);
+    } else {
+      indexEntryBuffer.clear();
+      indexEntryBuffer.putLong(position).putInt(HEADER_SIZE + length);
+      indexEntryBuffer.flip();
+      while (indexEntryBuffer.hasRemaining()) {
+        indexFileChannel.write(indexEntryBuffer, offset + indexEntryBuffer.position());
+      }
+    }
   }
 
   /**
    * Finds the position of the given index in the segment.
    */
   private long findPosition(long index) {
-    try {
-      indexFileChannel.read(indexBuffer, (index - firstIndex) * 8);
-      indexBuffer.position(4);
-      return indexBuffer.getLong();
-    } catch (IOException e) {
-      throw new LogException(e);
-    }
+    return positions[(int) (index - firstIndex)];
+  }
+
+  /**
+   * Finds the length of the given index in the segment.
+   */
+  private int findLength(long index) {
+    return lengths[(int) (index - firstIndex)];
   }
 
   @Override
@@ -189,13 +1047,31 @@ public class FileLogSegment extends AbstractLogSegment {
     return firstIndex != null && lastIndex != null && firstIndex <= index && index <= lastIndex;
   }
 
+  /**
+   * Gets an entry from the segment.<p>
+   *
+   * If the segment is memory mapped, the returned buffer is a read-only view of the mapped log file and is only
+   * valid until the entry is removed or the segment is compacted.
+   */
   @Override
-  public ByteBuffer getEntry(long index) {
+  public synchronized ByteBuffer getEntry(long index) {
     assertIsOpen();
+    assertContainsIndex(index);
+    checkLoaded();
+    long position = findPosition(index) + HEADER_SIZE;
+    int length = findLength(index);
+    if (logBuffer != null) {
+      ByteBuffer entry = logBuffer.duplicate();
+      entry.limit((int) position + length);
+      entry.position((int) position);
+      return entry.slice().asReadOnlyBuffer();
+    }
+
     try {
-      logFileChannel.read(entryBuffer, findPosition(index));
-      entryBuffer.flip();
-      return entryBuffer.duplicate();
+      ByteBuffer entry = ByteBuffer.allocate(length);
+      read(position, entry);
+      entry.flip();
+      return entry;
     } catch (IOException e) {
       throw new LogException(e);
     }
@@ -205,18 +1081,42 @@ public class FileLogSegment extends AbstractLogSegment {
   public void removeAfter(long index) {
     assertIsOpen();
     if (containsIndex(index + 1)) {
+      checkWritable();
+      generation++;
+      long count = index + 1 - firstIndex;
+      long position = findPosition(index + 1);
       try {
-        logFileChannel.truncate(findPosition(index + 1));
-        indexFileChannel.truncate(((index + 1) - firstIndex) * 8);
+        if (indexBuffer != null) {
+          // Mapped files are not truncated, so clear the removed index entries to prevent them from being recovered.
+          for (long i = count; i <= lastIndex - firstIndex; i++) {
+            indexBuffer.putLong((int) (i * INDEX_ENTRY_SIZE), 0);
+            indexBuffer.putInt((int) (i * INDEX_ENTRY_SIZE) + 8, 0);
+          }
+          terminate(position);
+        } else {
+          logFileChannel.truncate(position);
+          indexFileChannel.truncate(count * INDEX_ENTRY_SIZE);
+        }
       } catch (IOException e) {
         throw new LogException(e);
       }
+
+      logSize = position;
+      if (count == 0) {
+        firstIndex = null;
+        lastIndex = null;
+      } else {
+        lastIndex = index;
+      }
     }
   }
 
   @Override
   public void compact(long index, ByteBuffer entry) {
     assertIsOpen();
+    assertContainsIndex(index);
+    checkWritable();
+    generation++;
     try {
       // Create temporary log, index, and metadata files which will be copied to permanent names.
       File tempLogFile = new File(log.base.getParent(), String.format("%s-%d.log.tmp", log.base.getName(), id));
@@ -224,16 +1124,42 @@ public class FileLogSegment extends AbstractLogSegment {
       File tempMetadataFile = new File(log.base.getParent(), String.format("%s-%d.metadata.tmp", log.base.getName(), id));
 
       // Create temporary log, index, and metadata file channels for writing.
-      try (FileChannel tempLogFileChannel = FileChannel.open(tempLogFile.toPath(), StandardOpenOption.CREATE_NEW);
-          FileChannel tempIndexFileChannel = FileChannel.open(tempIndexFile.toPath(), StandardOpenOption.CREATE_NEW);
-          FileChannel tempMetadataFileChannel = FileChannel.open(tempMetadataFile.toPath(), StandardOpenOption.CREATE_NEW)) {
+      try (FileChannel tempLogFileChannel = FileChannel.open(tempLogFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+          FileChannel tempIndexFileChannel = FileChannel.open(tempIndexFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+          FileChannel tempMetadataFileChannel = FileChannel.open(tempMetadataFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
 
-        // Transfer logs and indexes from the given index.
-        logFileChannel.transferTo(findPosition(index), Integer.MAX_VALUE, tempLogFileChannel);
-        indexFileChannel.transferTo((index - firstIndex) * 8, Integer.MAX_VALUE, tempIndexFileChannel);
+        // Write the compacted entry at the head of the new log.
+        ByteBuffer buffer = entry.duplicate();
+        buffer.rewind();
+        int length = buffer.limit();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(length).putInt(checksum(length, buffer)).flip();
+        while (header.hasRemaining()) {
+          tempLogFileChannel.write(header);
+        }
+        while (buffer.hasRemaining()) {
+          tempLogFileChannel.write(buffer);
+        }
+
+        // Transfer the entries following the given index, rebasing their positions in the new index.
+        ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        indexEntry.putLong(0).putInt(HEADER_SIZE + length).flip();
+        tempIndexFileChannel.write(indexEntry);
+        if (index < lastIndex) {
+          long position = findPosition(index + 1);
+          long offset = HEADER_SIZE + length - position;
+          for (long i = index + 1; i <= lastIndex; i++) {
+            indexEntry.clear();
+            indexEntry.putLong(findPosition(i) + offset).putInt(HEADER_SIZE + findLength(i)).flip();
+            tempIndexFileChannel.write(indexEntry);
+          }
+          logFileChannel.transferTo(position, logSize - position, tempLogFileChannel);
+        }
 
         // Write the temporary metadata file.
-        tempMetadataFileChannel.write(ByteBuffer.allocateDirect(16).putLong(index).putLong(timestamp));
+        ByteBuffer metadata = ByteBuffer.allocate(16).putLong(index).putLong(timestamp);
+        metadata.flip();
+        tempMetadataFileChannel.write(metadata);
 
         // Flush temporary log, index, and metadata file contents to disk.
         tempLogFileChannel.force(true);
@@ -241,6 +1167,9 @@ public class FileLogSegment extends AbstractLogSegment {
         tempMetadataFileChannel.force(true);
       }
 
+      // Close the current log and index files before replacing them.
+      closeChannels();
+
       // Create temporary files to which to copy current log, index, and metadata files.
       File historyLogFile = new File(log.base.getParent(), String.format("%s-%d.log.history", log.base.getName(), id));
       File historyIndexFile = new File(log.base.getParent(), String.format("%s-%d.index.history", log.base.getName(), id));
@@ -262,8 +1191,8 @@ public class FileLogSegment extends AbstractLogSegment {
       Files.delete(historyIndexFile.toPath());
       Files.delete(historyMetadataFile.toPath());
 
-      logFileChannel = FileChannel.open(logFile.toPath());
-      indexFileChannel = FileChannel.open(indexFile.toPath());
+      super.firstIndex = index;
+      openChannels(true);
     } catch (IOException e) {
       throw new LogException(e);
     }
@@ -275,36 +1204,90 @@ public class FileLogSegment extends AbstractLogSegment {
   }
 
   @Override
-  public void flush(boolean force) {
+  public synchronized void flush(boolean force) {
     assertIsOpen();
+    if (lazy) {
+      return;
+    }
     if (force || log.config.isFlushOnWrite()) {
       try {
-        logFileChannel.force(true);
-        indexFileChannel.force(true);
+        if (blockOffsets != null) {
+          // Compressed log files are forced before they're installed.
+          if (indexBuffer != null) {
+            indexBuffer.force();
+          } else {
+            indexFileChannel.force(true);
+          }
+        } else if (logBuffer != null) {
+          logBuffer.force();
+          indexBuffer.force();
+        } else {
+          logFileChannel.force(true);
+          indexFileChannel.force(true);
+        }
       } catch (IOException e) {
         throw new LogException(e);
       }
     }
   }
 
+  /**
+   * Closes the log and index file channels. Mapped buffers are released once they're no longer referenced.
+   */
+  private void closeChannels() throws IOException {
+    logBuffer = null;
+    indexBuffer = null;
+    blockOffsets = null;
+    blockCache.clear();
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+    try {
+      if (logFileChannel != null) {
+        logFileChannel.close();
+      }
+      if (compressedFileChannel != null) {
+        compressedFileChannel.close();
+      }
+      if (indexFileChannel != null) {
+        indexFileChannel.close();
+      }
+    } finally {
+      logFileChannel = null;
+      compressedFileChannel = null;
+      indexFileChannel = null;
+    }
+  }
+
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
     assertIsOpen();
-    logFileChannel.close();
-    logFileChannel = null;
-    indexFileChannel.close();
-    indexFileChannel = null;
+    handles.release(this);
+    lazy = false;
+    closeChannels();
   }
 
   @Override
   public boolean isClosed() {
-    return logFileChannel == null;
+    return !isOpen();
   }
 
   @Override
-  public void delete() {
+  public synchronized void delete() {
+    handles.release(this);
+    if (isOpen()) {
+      lazy = false;
+      try {
+        closeChannels();
+      } catch (IOException ignore) {
+      }
+    }
+
     logFile.delete();
+    compressedFile.delete();
     indexFile.delete();
+    timeIndexFile.delete();
     metadataFile.delete();
   }
 
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import net.kuujo.copycat.internal.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * File based snapshot store.<p>
+ *
+ * Each snapshot is written to its own directory, with one file per chunk and a metadata file recording the snapshot's
+ * index and term along with the size and checksum of each chunk. Snapshots are written to a temporary directory that
+ * is renamed once the snapshot has been committed, so a partially written snapshot is never recovered. Chunks that are
+ * identical to the corresponding chunk of the current snapshot are linked to the existing chunk file rather than
+ * rewritten, so unchanged parts of the state cost no I/O.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class FileSnapshotStore implements SnapshotStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileSnapshotStore.class);
+  private static final String METADATA_FILE = "snapshot.metadata";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private final File directory;
+  private FileSnapshot snapshot;
+  private boolean open;
+
+  FileSnapshotStore(String name, FileLog config) {
+    this.directory = new File(config.getDirectory(), name + "-snapshots");
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    Assert.state(!open, "The snapshot store is already open");
+    Files.createDirectories(directory.toPath());
+
+    // Recover the latest committed snapshot, deleting older and partially written snapshots.
+    File[] files = directory.listFiles();
+    if (files != null) {
+      Arrays.sort(files, (a, b) -> Long.compare(snapshotIndex(b), snapshotIndex(a)));
+      for (File file : files) {
+        if (snapshot == null && snapshotIndex(file) >= 0) {
+          try {
+            snapshot = readSnapshot(file);
+            continue;
+          } catch (IOException | LogException e) {
+            LOGGER.warn("Failed to read snapshot {}", file, e);
+          }
+        }
+        deleteDirectory(file);
+      }
+    }
+    open = true;
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public synchronized Snapshot snapshot() {
+    Assert.state(open, "The snapshot store is not open");
+    return snapshot;
+  }
+
+  @Override
+  public synchronized SnapshotWriter createSnapshot(long index, long term) {
+    Assert.state(open, "The snapshot store is not open");
+    Assert.arg(index, snapshot == null || index > snapshot.index(), "snapshot index must be greater than the current snapshot index");
+    File snapshotDirectory = new File(directory, index + TEMP_SUFFIX);
+    deleteDirectory(snapshotDirectory);
+    try {
+      Files.createDirectories(snapshotDirectory.toPath());
+    } catch (IOException e) {
+      throw new LogException(e, "Failed to create snapshot %d", index);
+    }
+    return new FileSnapshotWriter(index, term, snapshotDirectory, snapshot);
+  }
+
+  @Override
+  public synchronized void close() {
+    open = false;
+    snapshot = null;
+  }
+
+  @Override
+  public synchronized void delete() {
+    deleteDirectory(directory);
+    snapshot = null;
+  }
+
+  /**
+   * Replaces the current snapshot with a committed snapshot, deleting the previous snapshot.
+   */
+  private synchronized FileSnapshot commit(FileSnapshotWriter writer) throws IOException {
+    Assert.state(open, "The snapshot store is not open");
+    Assert.state(snapshot == null || writer.index > snapshot.index(), "A newer snapshot has already been committed");
+
+    // Write the metadata to the temporary directory and then rename the directory to commit the snapshot.
+    ByteBuffer metadata = ByteBuffer.allocate(20 + writer.chunks * 16);
+    metadata.putLong(writer.index);
+    metadata.putLong(writer.term);
+    metadata.putInt(writer.chunks);
+    for (int i = 0; i < writer.chunks; i++) {
+      metadata.putLong(writer.sizes[i]);
+      metadata.putLong(writer.checksums[i]);
+    }
+    metadata.flip();
+    writeFile(new File(writer.directory, METADATA_FILE), metadata);
+
+    File snapshotDirectory = new File(directory, String.valueOf(writer.index));
+    Files.move(writer.directory.toPath(), snapshotDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    FileSnapshot previous = snapshot;
+    snapshot = new FileSnapshot(writer.index, writer.term, snapshotDirectory, Arrays.copyOf(writer.sizes, writer.chunks), Arrays.copyOf(writer.checksums, writer.chunks));
+    if (previous != null) {
+      deleteDirectory(previous.directory);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Reads a committed snapshot from the given directory.
+   */
+  private static FileSnapshot readSnapshot(File snapshotDirectory) throws IOException {
+    ByteBuffer metadata = ByteBuffer.wrap(Files.readAllBytes(new File(snapshotDirectory, METADATA_FILE).toPath()));
+    long index = metadata.getLong();
+    long term = metadata.getLong();
+    int chunks = metadata.getInt();
+    if (index != snapshotIndex(snapshotDirectory) || chunks < 0 || metadata.remaining() != chunks * 16) {
+      throw new LogException("Invalid snapshot metadata");
+    }
+    long[] sizes = new long[chunks];
+    long[] checksums = new long[chunks];
+    for (int i = 0; i < chunks; i++) {
+      sizes[i] = metadata.getLong();
+      checksums[i] = metadata.getLong();
+    }
+    return new FileSnapshot(index, term, snapshotDirectory, sizes, checksums);
+  }
+
+  /**
+   * Returns the index of the committed snapshot in the given directory, or {@code -1} if the file is not a committed
+   * snapshot.
+   */
+  private static long snapshotIndex(File file) {
+    try {
+      return file.isDirectory() ? Long.parseLong(file.getName()) : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the file of a snapshot chunk.
+   */
+  private static File chunkFile(File snapshotDirectory, int chunk) {
+    return new File(snapshotDirectory, chunk + ".chunk");
+  }
+
+  /**
+   * Writes and syncs a file.
+   */
+  private static void writeFile(File file, ByteBuffer buffer) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Recursively deletes a file or directory.
+   */
+  private static void deleteDirectory(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        deleteDirectory(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * File based snapshot.
+   */
+  private static class FileSnapshot extends AbstractSnapshot {
+    private final File directory;
+
+    private FileSnapshot(long index, long term, File directory, long[] sizes, long[] checksums) {
+      super(index, term, sizes, checksums);
+      this.directory = directory;
+    }
+
+    @Override
+    public ByteBuffer readChunk(int chunk) {
+      assertContainsChunk(chunk);
+      try {
+        return verifyChunk(chunk, ByteBuffer.wrap(Files.readAllBytes(chunkFile(directory, chunk).toPath())));
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to read snapshot %d chunk %d", index, chunk);
+      }
+    }
+  }
+
+  /**
+   * File based snapshot writer.
+   */
+  private class FileSnapshotWriter implements SnapshotWriter {
+    private final long index;
+    private final long term;
+    private final File directory;
+    private final FileSnapshot previous;
+    private long[] sizes = new long[16];
+    private long[] checksums = new long[16];
+    private int chunks;
+    private FileChannel partialChannel;
+    private CRC32 partialChecksum;
+    private long partialSize;
+
+    private FileSnapshotWriter(long index, long term, File directory, FileSnapshot previous) {
+      this.index = index;
+      this.term = term;
+      this.directory = directory;
+      this.previous = previous;
+    }
+
+    @Override
+    public SnapshotWriter writeChunk(ByteBuffer chunk) {
+      assertNoPartialChunk();
+      ByteBuffer buffer = chunk.duplicate();
+      long size = buffer.remaining();
+      long checksum = AbstractSnapshot.checksum(buffer);
+      // Link identical chunks of the previous snapshot rather than rewriting them.
+      if (previous != null && chunks < previous.chunks() && previous.size(chunks) == size && previous.checksum(chunks) == checksum) {
+        return copyChunk(chunks);
+      }
+      try {
+        writeFile(chunkFile(directory, chunks), buffer);
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to write snapshot %d chunk %d", index, chunks);
+      }
+      addChunk(size, checksum);
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter appendChunk(ByteBuffer data) {
+      ByteBuffer buffer = data.duplicate();
+      try {
+        if (partialChannel == null) {
+          partialChannel = FileChannel.open(chunkFile(directory, chunks).toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+          partialChecksum = new CRC32();
+          partialSize = 0;
+        }
+        partialChecksum.update(buffer.duplicate());
+        partialSize += buffer.remaining();
+        while (buffer.hasRemaining()) {
+          partialChannel.write(buffer);
+        }
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to write snapshot %d chunk %d", index, chunks);
+      }
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter completeChunk() {
+      if (partialChannel == null) {
+        appendChunk(ByteBuffer.allocate(0));
+      }
+      try {
+        partialChannel.force(true);
+        partialChannel.close();
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to write snapshot %d chunk %d", index, chunks);
+      } finally {
+        partialChannel = null;
+      }
+      addChunk(partialSize, partialChecksum.getValue());
+      return this;
+    }
+
+    @Override
+    public SnapshotWriter copyChunk(int chunk) {
+      Assert.state(previous != null, "No current snapshot");
+      assertNoPartialChunk();
+      long size = previous.size(chunk);
+      long checksum = previous.checksum(chunk);
+      File source = chunkFile(previous.directory, chunk);
+      File target = chunkFile(directory, chunks);
+      try {
+        try {
+          Files.createLink(target.toPath(), source.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+          Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException e) {
+        throw new LogException(e, "Failed to copy snapshot %d chunk %d", index, chunk);
+      }
+      addChunk(size, checksum);
+      return this;
+    }
+
+    /**
+     * Asserts that no chunk is partially written.
+     */
+    private void assertNoPartialChunk() {
+      Assert.state(partialChannel == null, "Snapshot %d chunk %d is partially written", index, chunks);
+    }
+
+    /**
+     * Records the size and checksum of a written chunk.
+     */
+    private void addChunk(long size, long checksum) {
+      if (chunks == sizes.length) {
+        sizes = Arrays.copyOf(sizes, chunks * 2);
+        checksums = Arrays.copyOf(checksums, chunks * 2);
+      }
+      sizes[chunks] = size;
+      checksums[chunks] = checksum;
+      chunks++;
+    }
+
+    @Override
+    public Snapshot commit() {
+      assertNoPartialChunk();
+      try {
+        return FileSnapshotStore.this.commit(this);
+      } catch (IOException e) {
+        abort();
+        throw new LogException(e, "Failed to commit snapshot %d", index);
+      }
+    }
+
+    @Override
+    public void abort() {
+      if (partialChannel != null) {
+        try {
+          partialChannel.close();
+        } catch (IOException e) {
+          LOGGER.warn("Failed to close snapshot {} chunk {}", index, chunks, e);
+        }
+        partialChannel = null;
+      }
+      deleteDirectory(directory);
+    }
+  }
+
+}
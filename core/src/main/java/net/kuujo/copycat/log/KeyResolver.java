@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Resolves the keys of log entries for key based log cleaning.<p>
+ *
+ * When the log is {@link LogManager#clean(long, KeyResolver, long, java.util.concurrent.Executor) cleaned}, entries
+ * that have been superseded by a later entry with the same key are replaced with placeholder entries. Resolvers are
+ * called from the log's background thread and must not retain references to entries.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface KeyResolver {
+
+  /**
+   * Returns the key of the given entry.
+   *
+   * @param entry The log entry.
+   * @return The entry key, or {@code null} if the entry is not keyed and must never be removed from the log. Keys are
+   *         compared with {@link Object#equals(Object)}.
+   */
+  Object key(ByteBuffer entry);
+
+  /**
+   * Returns whether the given keyed entry deletes its key.<p>
+   *
+   * Tombstones are retained until they're older than the log's tombstone retention time so that replicas that are
+   * catching up see the deletion, after which they're removed from the log like superseded entries.
+   *
+   * @param entry The log entry.
+   * @return Whether the entry is a tombstone.
+   */
+  boolean isTombstone(ByteBuffer entry);
+
+  /**
+   * Returns the entry with which to replace a removed entry.<p>
+   *
+   * Removed entries are replaced rather than dropped so that log indexes remain contiguous. The placeholder must retain
+   * any information other readers of the log require, and its key must resolve to {@code null}.
+   *
+   * @param entry The removed log entry.
+   * @return The placeholder entry.
+   */
+  ByteBuffer placeholder(ByteBuffer entry);
+
+}
@@ -32,13 +32,25 @@ public abstract class Log extends AbstractConfigurable implements Configurable {
   public static final String LOG_SEGMENT_INTERVAL = "segment.interval";
   public static final String LOG_FLUSH_ON_WRITE = "flush.on-write";
   public static final String LOG_FLUSH_INTERVAL = "flush.interval";
+  public static final String LOG_FLUSH_GROUP_COMMIT = "flush.group-commit";
+  public static final String LOG_FLUSH_GROUP_COMMIT_WINDOW = "flush.group-commit-window";
   public static final String LOG_RETENTION_POLICY = "retention-policy";
+  public static final String LOG_RETENTION_INTERVAL = "retention-interval";
+  public static final String LOG_CACHE_SIZE = "cache.size";
+  public static final String LOG_TIME_INDEX_INTERVAL = "time-index.interval";
+  public static final String LOG_TIME_INDEX_ENTRIES = "time-index.entries";
 
   private static final int DEFAULT_LOG_SEGMENT_SIZE = 1024 * 1024;
   private static final long DEFAULT_LOG_SEGMENT_INTERVAL = Long.MAX_VALUE;
   private static final boolean DEFAULT_LOG_FLUSH_ON_WRITE = false;
   private static final long DEFAULT_LOG_FLUSH_INTERVAL = Long.MAX_VALUE;
+  private static final boolean DEFAULT_LOG_FLUSH_GROUP_COMMIT = false;
+  private static final long DEFAULT_LOG_FLUSH_GROUP_COMMIT_WINDOW = 0;
   private static final RetentionPolicy DEFAULT_LOG_RETENTION_POLICY = new FullRetentionPolicy();
+  private static final long DEFAULT_LOG_RETENTION_INTERVAL = 60000;
+  private static final int DEFAULT_LOG_CACHE_SIZE = 1024 * 1024;
+  private static final long DEFAULT_LOG_TIME_INDEX_INTERVAL = 1000;
+  private static final int DEFAULT_LOG_TIME_INDEX_ENTRIES = 4096;
 
   protected Log() {
     super();
@@ -174,6 +186,71 @@ public abstract class Log extends AbstractConfigurable implements Configurable {
     return this;
   }
 
+  /**
+   * Sets whether to group commit log entries.<p>
+   *
+   * When group commit is enabled, entries appended to the log within the same group commit window share a single
+   * forced flush to disk, and entries are only acknowledged once the log's durable index has reached them.
+   *
+   * @param groupCommit Whether to group commit log entries.
+   */
+  public void setFlushGroupCommit(boolean groupCommit) {
+    put(LOG_FLUSH_GROUP_COMMIT, groupCommit);
+  }
+
+  /**
+   * Returns whether log entries are group committed.
+   *
+   * @return Whether log entries are group committed.
+   */
+  public boolean isFlushGroupCommit() {
+    return get(LOG_FLUSH_GROUP_COMMIT, DEFAULT_LOG_FLUSH_GROUP_COMMIT);
+  }
+
+  /**
+   * Sets whether to group commit log entries, returning the log configuration for method chaining.
+   *
+   * @param groupCommit Whether to group commit log entries.
+   * @return The log configuration.
+   */
+  public Log withFlushGroupCommit(boolean groupCommit) {
+    setFlushGroupCommit(groupCommit);
+    return this;
+  }
+
+  /**
+   * Sets the log group commit window in microseconds.<p>
+   *
+   * If the window is {@code 0} then entries appended within the same executor tick share a flush.
+   *
+   * @param groupCommitWindow The log group commit window in microseconds.
+   * @throws java.lang.IllegalArgumentException If the group commit window is negative
+   */
+  public void setFlushGroupCommitWindow(long groupCommitWindow) {
+    put(LOG_FLUSH_GROUP_COMMIT_WINDOW, Assert.arg(groupCommitWindow, groupCommitWindow >= 0, "group commit window must not be negative"));
+  }
+
+  /**
+   * Returns the log group commit window in microseconds.
+   *
+   * @return The log group commit window in microseconds.
+   */
+  public long getFlushGroupCommitWindow() {
+    return get(LOG_FLUSH_GROUP_COMMIT_WINDOW, DEFAULT_LOG_FLUSH_GROUP_COMMIT_WINDOW);
+  }
+
+  /**
+   * Sets the log group commit window in microseconds, returning the log configuration for method chaining.
+   *
+   * @param groupCommitWindow The log group commit window in microseconds.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the group commit window is negative
+   */
+  public Log withFlushGroupCommitWindow(long groupCommitWindow) {
+    setFlushGroupCommitWindow(groupCommitWindow);
+    return this;
+  }
+
   /**
    * Sets the log retention policy.
    *
@@ -218,6 +295,141 @@ public abstract class Log extends AbstractConfigurable implements Configurable {
     return this;
   }
 
+  /**
+   * Sets the interval at which the log retention policy is enforced.
+   *
+   * @param retentionInterval The interval at which the log retention policy is enforced in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the retention interval is not positive
+   */
+  public void setRetentionInterval(long retentionInterval) {
+    put(LOG_RETENTION_INTERVAL, Assert.arg(retentionInterval, retentionInterval > 0, "retention interval must be positive"));
+  }
+
+  /**
+   * Returns the interval at which the log retention policy is enforced.
+   *
+   * @return The interval at which the log retention policy is enforced in milliseconds.
+   */
+  public long getRetentionInterval() {
+    return get(LOG_RETENTION_INTERVAL, DEFAULT_LOG_RETENTION_INTERVAL);
+  }
+
+  /**
+   * Sets the interval at which the log retention policy is enforced, returning the log configuration for method
+   * chaining.
+   *
+   * @param retentionInterval The interval at which the log retention policy is enforced in milliseconds.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the retention interval is not positive
+   */
+  public Log withRetentionInterval(long retentionInterval) {
+    setRetentionInterval(retentionInterval);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of bytes of recently appended entries to cache in memory.<p>
+   *
+   * Reads of cached entries, such as those made when replicating recent entries to each follower, are served from
+   * memory rather than from the log's segments. A cache size of {@code 0} disables the cache.
+   *
+   * @param cacheSize The maximum number of bytes of entries to cache.
+   * @throws java.lang.IllegalArgumentException If the cache size is negative
+   */
+  public void setCacheSize(int cacheSize) {
+    put(LOG_CACHE_SIZE, Assert.arg(cacheSize, cacheSize >= 0, "cache size must be non-negative"));
+  }
+
+  /**
+   * Returns the maximum number of bytes of recently appended entries to cache in memory.
+   *
+   * @return The maximum number of bytes of entries to cache.
+   */
+  public int getCacheSize() {
+    return get(LOG_CACHE_SIZE, DEFAULT_LOG_CACHE_SIZE);
+  }
+
+  /**
+   * Sets the maximum number of bytes of recently appended entries to cache in memory, returning the log configuration
+   * for method chaining.
+   *
+   * @param cacheSize The maximum number of bytes of entries to cache.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the cache size is negative
+   */
+  public Log withCacheSize(int cacheSize) {
+    setCacheSize(cacheSize);
+    return this;
+  }
+
+  /**
+   * Sets the maximum interval in milliseconds between entries recorded in each segment's time index.<p>
+   *
+   * The time index maps append times to log indexes so that entries can be found by time. An entry is recorded in the
+   * time index once either the time index interval or the {@link #setTimeIndexEntries(int) time index entries} have
+   * passed since the last recorded entry.
+   *
+   * @param timeIndexInterval The maximum interval in milliseconds between time index entries.
+   * @throws java.lang.IllegalArgumentException If the time index interval is negative
+   */
+  public void setTimeIndexInterval(long timeIndexInterval) {
+    put(LOG_TIME_INDEX_INTERVAL, Assert.arg(timeIndexInterval, timeIndexInterval >= 0, "time index interval must be non-negative"));
+  }
+
+  /**
+   * Returns the maximum interval in milliseconds between entries recorded in each segment's time index.
+   *
+   * @return The maximum interval in milliseconds between time index entries.
+   */
+  public long getTimeIndexInterval() {
+    return get(LOG_TIME_INDEX_INTERVAL, DEFAULT_LOG_TIME_INDEX_INTERVAL);
+  }
+
+  /**
+   * Sets the maximum interval in milliseconds between entries recorded in each segment's time index, returning the log
+   * configuration for method chaining.
+   *
+   * @param timeIndexInterval The maximum interval in milliseconds between time index entries.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the time index interval is negative
+   */
+  public Log withTimeIndexInterval(long timeIndexInterval) {
+    setTimeIndexInterval(timeIndexInterval);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of log entries between entries recorded in each segment's time index.
+   *
+   * @param timeIndexEntries The maximum number of log entries between time index entries.
+   * @throws java.lang.IllegalArgumentException If the number of entries is not positive
+   */
+  public void setTimeIndexEntries(int timeIndexEntries) {
+    put(LOG_TIME_INDEX_ENTRIES, Assert.arg(timeIndexEntries, timeIndexEntries > 0, "time index entries must be positive"));
+  }
+
+  /**
+   * Returns the maximum number of log entries between entries recorded in each segment's time index.
+   *
+   * @return The maximum number of log entries between time index entries.
+   */
+  public int getTimeIndexEntries() {
+    return get(LOG_TIME_INDEX_ENTRIES, DEFAULT_LOG_TIME_INDEX_ENTRIES);
+  }
+
+  /**
+   * Sets the maximum number of log entries between entries recorded in each segment's time index, returning the log
+   * configuration for method chaining.
+   *
+   * @param timeIndexEntries The maximum number of log entries between time index entries.
+   * @return The log configuration.
+   * @throws java.lang.IllegalArgumentException If the number of entries is not positive
+   */
+  public Log withTimeIndexEntries(int timeIndexEntries) {
+    setTimeIndexEntries(timeIndexEntries);
+    return this;
+  }
+
   /**
    * Gets a log manager for the given resource.
    *
@@ -226,4 +438,12 @@ public abstract class Log extends AbstractConfigurable implements Configurable {
    */
   public abstract LogManager getLogManager(String name);
 
+  /**
+   * Gets a snapshot store for the given resource.
+   *
+   * @param name The resource name.
+   * @return The resource snapshot store.
+   */
+  public abstract SnapshotStore getSnapshotStore(String name);
+
 }
@@ -17,6 +17,8 @@ package net.kuujo.copycat.log;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Log manager.
@@ -46,4 +48,93 @@ public interface LogManager extends Loggable {
    */
   List<ByteBuffer> getEntries(long from, long to);
 
+  /**
+   * Compacts the log in the background, dropping all entries up to the {@code index} (exclusive) and placing the
+   * {@code entry} at the {@code index}.<p>
+   *
+   * The segment containing the index is sealed and rewritten on a background thread. Once the compacted segment has
+   * been written, it's swapped into the log on the given executor, which must be the executor on which the log is
+   * otherwise accessed. Until the returned future is completed, the log continues to reflect its uncompacted state.
+   * If a compaction is already in progress, the in-progress compaction's future is returned.
+   *
+   * @param index The index at which to compact the log.
+   * @param entry The entry to write to the log at the given index.
+   * @param executor The executor on which to swap the compacted segment into the log.
+   * @return A completable future to be completed once the log has been compacted.
+   * @throws IllegalStateException If the log is not open.
+   * @throws IndexOutOfBoundsException if the log does not contain the {@code index}
+   */
+  CompletableFuture<Void> compact(long index, ByteBuffer entry, Executor executor);
+
+  /**
+   * Discards all entries in the log and restarts the log at the {@code index} with the {@code entry}.<p>
+   *
+   * Unlike {@link #compact(long, ByteBuffer)}, the log need not contain the index. This is used to replace the log of
+   * a replica that has fallen behind the beginning of another replica's log once the replica has installed a snapshot
+   * at the index. The new entry is forced to disk before this method returns.
+   *
+   * @param index The index at which to restart the log.
+   * @param entry The entry to write to the log at the given index.
+   * @throws IllegalStateException If the log is not open.
+   * @throws IndexOutOfBoundsException If the index is not greater than zero.
+   * @throws LogException If a new segment cannot be opened
+   */
+  void reset(long index, ByteBuffer entry);
+
+  /**
+   * Cleans the log in the background, removing entries that have been superseded by later entries with the same key.<p>
+   *
+   * Sealed segments ending at or before the {@code index} are rewritten on a background thread. Keyed entries that are
+   * followed by a later entry with the same key within the cleaned segments, and tombstones older than the tombstone
+   * retention time, are replaced with the resolver's placeholder entries so that log indexes remain contiguous. Cleaned
+   * segments are swapped into the log on the given executor, which must be the executor on which the log is otherwise
+   * accessed. If a clean is already in progress, the in-progress clean's future is returned.
+   *
+   * @param index The highest index that may be cleaned.
+   * @param resolver The resolver with which to determine the keys of entries.
+   * @param tombstoneRetention The time in milliseconds for which to retain tombstones.
+   * @param executor The executor on which to swap cleaned segments into the log.
+   * @return A completable future to be completed with the number of bytes reclaimed once the log has been cleaned.
+   * @throws IllegalStateException If the log is not open.
+   */
+  CompletableFuture<Long> clean(long index, KeyResolver resolver, long tombstoneRetention, Executor executor);
+
+  /**
+   * Enforces the log's retention policy.<p>
+   *
+   * Segments are evaluated from the head of the log, and segments the retention policy does not retain are removed from
+   * the log. The segment containing the last entry in the log is always retained. Removed segments are closed and
+   * deleted in the background.
+   *
+   * @return A completable future to be completed with the number of bytes reclaimed once expired segments are deleted.
+   * @throws IllegalStateException If the log is not open.
+   */
+  CompletableFuture<Long> enforceRetentionPolicy();
+
+  /**
+   * Returns the durable index of the log.<p>
+   *
+   * The durable index is the highest index known to have been forced to disk. Entries appended after the last forced
+   * flush are not reflected in the durable index until the log is flushed again.
+   *
+   * @return The highest index known to have been flushed to disk, or {@code 0} if no entries are durable.
+   * @throws IllegalStateException If the log is not open.
+   */
+  long durableIndex();
+
+  /**
+   * Returns the index from which to read entries appended at or after the given time.<p>
+   *
+   * Segments record the times at which entries are appended in sparse time indexes, so the returned index is the index
+   * of the latest indexed entry appended at or before the given time. Reading from the returned index may return some
+   * entries appended before the given time, but never skips entries appended after it. Segments are located with a
+   * binary search, so only the time indexes of a few segments are searched.
+   *
+   * @param timestamp The time for which to find an index.
+   * @return The index from which to read entries appended at or after the given time, or the first index if no indexed
+   *         entry was appended at or before the given time. {@code null} if the log is empty.
+   * @throws IllegalStateException If the log is not open.
+   */
+  Long indexForTimestamp(long timestamp);
+
 }
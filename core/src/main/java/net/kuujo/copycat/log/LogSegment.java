@@ -15,6 +15,9 @@
  */
 package net.kuujo.copycat.log;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 /**
  * Log segment.
  *
@@ -41,4 +44,35 @@ public interface LogSegment extends Loggable {
    * @return The segment timestamp.
    */
   long timestamp();
+
+  /**
+   * Records the time at which an entry was appended in the segment's time index.<p>
+   *
+   * Entries must be recorded in index order. Recording an entry removes any recorded entries at or after its index.
+   *
+   * @param index The index of the appended entry.
+   * @param timestamp The time at which the entry was appended.
+   * @throws IllegalStateException If the segment is not open.
+   */
+  void indexTimestamp(long index, long timestamp);
+
+  /**
+   * Returns the index of the latest entry in the segment's time index that was appended at or before the given time.
+   *
+   * @param timestamp The time for which to find an index.
+   * @return The index of the latest indexed entry appended at or before the given time, or {@code null} if no indexed
+   *         entry in the segment was appended at or before the given time.
+   * @throws IllegalStateException If the segment is not open.
+   */
+  Long indexForTimestamp(long timestamp);
+
+  /**
+   * Appends a list of entries to the segment.
+   *
+   * @param entries A list of entries to append.
+   * @return A list of appended entry indices.
+   * @throws IllegalStateException If the segment is not open.
+   * @throws NullPointerException If the entries list is null.
+   */
+  List<Long> appendEntries(List<ByteBuffer> entries);
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import net.kuujo.copycat.internal.util.Assert;
+import net.kuujo.copycat.internal.util.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process wide budget of open sealed file log segments.<p>
+ *
+ * Sealed {@link FileLogSegment}s register with the handle manager once their files have been opened. When more sealed
+ * segments are open than the budget allows, the least recently used segments across all file logs in the process are
+ * closed on a background thread and are reopened when they're next accessed. Segments that are being written are
+ * never closed, so the budget is soft: each log additionally holds the files of its current segment open.<p>
+ *
+ * Reads only record the time at which a segment was accessed, which requires no locking. The manager's lock is taken
+ * only when a segment is opened or closed, at which point the least recently accessed segments are chosen for
+ * eviction.<p>
+ *
+ * The budget defaults to {@code 1024} segments and can be changed with the {@code copycat.log.max-open-segments}
+ * system property.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+class SegmentHandleManager {
+  static final String MAX_OPEN_SEGMENTS_PROPERTY = "copycat.log.max-open-segments";
+  private static final int DEFAULT_MAX_OPEN_SEGMENTS = 1024;
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentHandleManager.class);
+  private static final SegmentHandleManager INSTANCE = new SegmentHandleManager(Integer.getInteger(MAX_OPEN_SEGMENTS_PROPERTY, DEFAULT_MAX_OPEN_SEGMENTS));
+  private final Set<FileLogSegment> segments = new HashSet<>();
+  private final ExecutorService executor;
+  private int maxOpenSegments;
+
+  SegmentHandleManager(int maxOpenSegments) {
+    this.maxOpenSegments = Assert.arg(maxOpenSegments, maxOpenSegments > 0, "max open segments must be positive");
+    ThreadFactory threadFactory = new NamedThreadFactory("copycat-log-handles-%d");
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = threadFactory.newThread(r);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the process wide handle manager.
+   */
+  static SegmentHandleManager instance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sets the maximum number of sealed segments that may be open at once.
+   *
+   * @param maxOpenSegments The maximum number of open sealed segments.
+   */
+  void setMaxOpenSegments(int maxOpenSegments) {
+    Assert.arg(maxOpenSegments, maxOpenSegments > 0, "max open segments must be positive");
+    List<FileLogSegment> evicted;
+    synchronized (this) {
+      this.maxOpenSegments = maxOpenSegments;
+      evicted = evict(null);
+    }
+    unload(evicted);
+  }
+
+  /**
+   * Returns the maximum number of sealed segments that may be open at once.
+   */
+  synchronized int getMaxOpenSegments() {
+    return maxOpenSegments;
+  }
+
+  /**
+   * Records an access to an open sealed segment without locking.
+   *
+   * @param segment The accessed segment.
+   */
+  void touch(FileLogSegment segment) {
+    segment.lastAccess = System.nanoTime();
+  }
+
+  /**
+   * Counts a sealed segment whose files have been opened against the budget, closing the least recently used segments
+   * if the budget is exceeded.
+   *
+   * @param segment The opened segment.
+   */
+  void acquire(FileLogSegment segment) {
+    touch(segment);
+    List<FileLogSegment> evicted;
+    synchronized (this) {
+      segments.add(segment);
+      evicted = evict(segment);
+    }
+    unload(evicted);
+  }
+
+  /**
+   * Removes a segment from the budget once it has been closed or unsealed.
+   *
+   * @param segment The released segment.
+   */
+  synchronized void release(FileLogSegment segment) {
+    segments.remove(segment);
+  }
+
+  /**
+   * Returns whether the given segment is counted against the budget.
+   */
+  synchronized boolean contains(FileLogSegment segment) {
+    return segments.contains(segment);
+  }
+
+  /**
+   * Returns the executor on which evicted segments are closed.
+   */
+  ExecutorService executor() {
+    return executor;
+  }
+
+  /**
+   * Removes the least recently used segments in excess of the budget, excluding the given segment.
+   */
+  private List<FileLogSegment> evict(FileLogSegment accessed) {
+    if (segments.size() <= maxOpenSegments) {
+      return null;
+    }
+    List<FileLogSegment> candidates = new ArrayList<>(segments);
+    candidates.sort(Comparator.comparingLong(segment -> segment.lastAccess));
+    List<FileLogSegment> evicted = new ArrayList<>();
+    for (FileLogSegment segment : candidates) {
+      if (segments.size() <= maxOpenSegments) {
+        break;
+      }
+      if (segment != accessed) {
+        segments.remove(segment);
+        evicted.add(segment);
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Closes evicted segments on the background thread. Segments are closed outside of the manager's lock and the lock of
+   * the segment that triggered the eviction, so segments of different logs never wait on one another.
+   */
+  private void unload(List<FileLogSegment> evicted) {
+    if (evicted != null) {
+      executor.execute(() -> {
+        for (FileLogSegment segment : evicted) {
+          try {
+            segment.unload();
+          } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to close segment {}", segment.id(), e);
+          }
+        }
+      });
+    }
+  }
+
+}
@@ -17,19 +17,26 @@ package net.kuujo.copycat.log;
 
 import net.kuujo.copycat.AbstractConfigurable;
 
+import java.util.Map;
+
 /**
  * Size based log compaction strategy.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class SizeBasedRetentionPolicy extends AbstractConfigurable implements RetentionPolicy {
-  private long size;
+  private static final String RETENTION_SIZE = "size";
+  private static final long DEFAULT_RETENTION_SIZE = Long.MAX_VALUE;
 
   public SizeBasedRetentionPolicy() {
   }
 
   public SizeBasedRetentionPolicy(long size) {
-    this.size = size;
+    setSize(size);
+  }
+
+  public SizeBasedRetentionPolicy(Map<String, Object> config) {
+    super(config);
   }
 
   private SizeBasedRetentionPolicy(SizeBasedRetentionPolicy policy) {
@@ -47,7 +54,7 @@ public class SizeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @param size The retention size.
    */
   public void setSize(long size) {
-    this.size = size;
+    this.put(RETENTION_SIZE, size);
   }
 
   /**
@@ -56,7 +63,7 @@ public class SizeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @return The retention size.
    */
   public long getSize() {
-    return size;
+    return get(RETENTION_SIZE, DEFAULT_RETENTION_SIZE);
   }
 
   /**
@@ -66,13 +73,13 @@ public class SizeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @return The retention policy.
    */
   public SizeBasedRetentionPolicy withSize(long size) {
-    this.size = size;
+    setSize(size);
     return this;
   }
 
   @Override
   public boolean retain(LogSegment segment) {
-    return segment.log().size() < size;
+    return segment.log().size() < getSize();
   }
 
 }
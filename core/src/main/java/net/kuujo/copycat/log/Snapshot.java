@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Committed state snapshot.<p>
+ *
+ * Snapshots are stored separately from the log as a sequence of chunks. Each chunk is checksummed, and the snapshot
+ * records the index and term of the last entry applied to the state it captures.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface Snapshot {
+
+  /**
+   * Returns the index of the last entry included in the snapshot.
+   *
+   * @return The snapshot index.
+   */
+  long index();
+
+  /**
+   * Returns the term of the last entry included in the snapshot.
+   *
+   * @return The snapshot term.
+   */
+  long term();
+
+  /**
+   * Returns the number of chunks in the snapshot.
+   *
+   * @return The number of snapshot chunks.
+   */
+  int chunks();
+
+  /**
+   * Returns the total size of the snapshot's chunks in bytes.
+   *
+   * @return The snapshot size in bytes.
+   */
+  long size();
+
+  /**
+   * Returns the checksum of the snapshot, computed from the checksums of its chunks.
+   *
+   * @return The snapshot checksum.
+   */
+  long checksum();
+
+  /**
+   * Reads a chunk of the snapshot.
+   *
+   * @param chunk The position of the chunk to read.
+   * @return The chunk.
+   * @throws IndexOutOfBoundsException If the snapshot does not contain the chunk
+   * @throws LogException If the chunk cannot be read or does not match its checksum
+   */
+  ByteBuffer readChunk(int chunk);
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Store of state snapshots.<p>
+ *
+ * Snapshots are written to the store rather than to the log, so the log only needs to record the index at which a
+ * snapshot was taken. The store holds a single current snapshot, which is replaced each time a new snapshot is
+ * committed.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface SnapshotStore extends Closeable {
+
+  /**
+   * Opens the store, recovering the most recently committed snapshot.
+   */
+  void open() throws IOException;
+
+  /**
+   * Returns a boolean indicating whether the store is open.
+   *
+   * @return Indicates whether the store is open.
+   */
+  boolean isOpen();
+
+  /**
+   * Returns the current snapshot.
+   *
+   * @return The most recently committed snapshot, or {@code null} if no snapshot has been committed.
+   * @throws IllegalStateException If the store is not open.
+   */
+  Snapshot snapshot();
+
+  /**
+   * Creates a new snapshot.
+   *
+   * @param index The index of the last entry included in the snapshot.
+   * @param term The term of the last entry included in the snapshot.
+   * @return A writer for the new snapshot.
+   * @throws IllegalStateException If the store is not open.
+   * @throws IllegalArgumentException If the index is not greater than the index of the current snapshot
+   */
+  SnapshotWriter createSnapshot(long index, long term);
+
+  /**
+   * Deletes the store and all its snapshots.
+   */
+  void delete();
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writer of a new snapshot.<p>
+ *
+ * Chunks are written in order. Chunks that are unchanged since the store's current snapshot can be copied from it
+ * without being rewritten. The snapshot does not replace the store's current snapshot until it's committed.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface SnapshotWriter {
+
+  /**
+   * Writes the next chunk of the snapshot.
+   *
+   * @param chunk The chunk to write.
+   * @return The snapshot writer.
+   * @throws LogException If the chunk cannot be written
+   */
+  SnapshotWriter writeChunk(ByteBuffer chunk);
+
+  /**
+   * Appends data to the next chunk of the snapshot.<p>
+   *
+   * Data is appended to the chunk in order until the chunk is completed by {@link #completeChunk()}, so a chunk can
+   * be written without being held in memory in its entirety.
+   *
+   * @param data The data to append to the chunk.
+   * @return The snapshot writer.
+   * @throws LogException If the data cannot be written
+   */
+  SnapshotWriter appendChunk(ByteBuffer data);
+
+  /**
+   * Completes the chunk written by {@link #appendChunk(ByteBuffer)}.
+   *
+   * @return The snapshot writer.
+   * @throws LogException If the chunk cannot be completed
+   */
+  SnapshotWriter completeChunk();
+
+  /**
+   * Copies a chunk of the store's current snapshot as the next chunk of the snapshot.
+   *
+   * @param chunk The position of the chunk in the current snapshot.
+   * @return The snapshot writer.
+   * @throws IllegalStateException If the store has no current snapshot
+   * @throws IndexOutOfBoundsException If the current snapshot does not contain the chunk
+   * @throws LogException If the chunk cannot be copied
+   */
+  SnapshotWriter copyChunk(int chunk);
+
+  /**
+   * Commits the snapshot, replacing the store's current snapshot.
+   *
+   * @return The committed snapshot.
+   * @throws LogException If the snapshot cannot be committed
+   */
+  Snapshot commit();
+
+  /**
+   * Discards the snapshot.
+   */
+  void abort();
+
+}
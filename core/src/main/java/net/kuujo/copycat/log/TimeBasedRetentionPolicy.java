@@ -17,6 +17,7 @@ package net.kuujo.copycat.log;
 
 import net.kuujo.copycat.AbstractConfigurable;
 
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -25,13 +26,18 @@ import java.util.concurrent.TimeUnit;
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class TimeBasedRetentionPolicy extends AbstractConfigurable implements RetentionPolicy {
-  private long time;
+  private static final String RETENTION_TIME = "time";
+  private static final long DEFAULT_RETENTION_TIME = Long.MAX_VALUE;
 
   public TimeBasedRetentionPolicy() {
   }
 
   public TimeBasedRetentionPolicy(long time, TimeUnit unit) {
-    this.time = unit.toMillis(time);
+    setTime(time, unit);
+  }
+
+  public TimeBasedRetentionPolicy(Map<String, Object> config) {
+    super(config);
   }
 
   private TimeBasedRetentionPolicy(TimeBasedRetentionPolicy policy) {
@@ -49,7 +55,7 @@ public class TimeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @param time The retention time in milliseconds.
    */
   public void setTime(long time) {
-    this.time = time;
+    this.put(RETENTION_TIME, time);
   }
 
   /**
@@ -59,7 +65,7 @@ public class TimeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @param unit The retention time unit.
    */
   public void setTime(long time, TimeUnit unit) {
-    this.time = unit.toMillis(time);
+    setTime(unit.toMillis(time));
   }
 
   /**
@@ -68,7 +74,7 @@ public class TimeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @return The retention time in milliseconds.
    */
   public long getTime() {
-    return time;
+    return get(RETENTION_TIME, DEFAULT_RETENTION_TIME);
   }
 
   /**
@@ -78,7 +84,7 @@ public class TimeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @return The retention policy.
    */
   public TimeBasedRetentionPolicy withTime(long time) {
-    this.time = time;
+    setTime(time);
     return this;
   }
 
@@ -90,13 +96,26 @@ public class TimeBasedRetentionPolicy extends AbstractConfigurable implements Re
    * @return The retention policy.
    */
   public TimeBasedRetentionPolicy withTime(long time, TimeUnit unit) {
-    this.time = unit.toMillis(time);
+    setTime(time, unit);
     return this;
   }
 
+  /**
+   * Returns whether the given segment should be retained.<p>
+   *
+   * A segment expires once its last entry was appended before the retention time, as recorded in the segment's time
+   * index. If the segment's time index does not cover any entries appended before the retention time, the segment's
+   * creation time is used instead.
+   */
   @Override
   public boolean retain(LogSegment segment) {
-    return System.currentTimeMillis() < segment.timestamp() + time;
+    long time = System.currentTimeMillis() - getTime();
+    Long lastIndex = segment.lastIndex();
+    Long index = lastIndex != null ? segment.indexForTimestamp(time) : null;
+    if (index != null) {
+      return !index.equals(lastIndex);
+    }
+    return segment.timestamp() > time;
   }
 
 }
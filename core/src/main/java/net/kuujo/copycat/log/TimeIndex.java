@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import java.util.Arrays;
+
+/**
+ * Sparse index of the times at which log entries were appended.<p>
+ *
+ * Each mark records the index of an entry and the time at which it was appended. Marks are held in index order, and
+ * their timestamps never decrease, so entries can be found by time with a binary search. Adding a mark for an index
+ * that is not greater than existing marks first removes those marks, since entries at those indexes must have been
+ * removed from the log. Not threadsafe.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+class TimeIndex {
+  private static final int DEFAULT_CAPACITY = 16;
+  private long[] indexes = new long[DEFAULT_CAPACITY];
+  private long[] timestamps = new long[DEFAULT_CAPACITY];
+  private int size;
+
+  /**
+   * Adds a mark to the index.
+   *
+   * @param index The entry index.
+   * @param timestamp The time at which the entry was appended.
+   * @return The position of the mark in the index.
+   */
+  int add(long index, long timestamp) {
+    while (size > 0 && indexes[size - 1] >= index) {
+      size--;
+    }
+    if (size == indexes.length) {
+      indexes = Arrays.copyOf(indexes, size * 2);
+      timestamps = Arrays.copyOf(timestamps, size * 2);
+    }
+    indexes[size] = index;
+    // Clamp the timestamp in case the clock moved backwards so that marks remain ordered by time.
+    timestamps[size] = size > 0 ? Math.max(timestamp, timestamps[size - 1]) : timestamp;
+    return size++;
+  }
+
+  /**
+   * Returns the index of the latest mark at or before the given time.
+   *
+   * @param timestamp The time to look up.
+   * @param maxIndex The highest index that may be returned.
+   * @return The index of the latest entry known to have been appended at or before the given time, or {@code null} if
+   *         no such entry is indexed.
+   */
+  Long lookup(long timestamp, long maxIndex) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] <= timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    while (high >= 0 && indexes[high] > maxIndex) {
+      high--;
+    }
+    return high >= 0 ? indexes[high] : null;
+  }
+
+  /**
+   * Returns the entry index of the mark at the given position.
+   */
+  long index(int position) {
+    return indexes[position];
+  }
+
+  /**
+   * Returns the timestamp of the mark at the given position.
+   */
+  long timestamp(int position) {
+    return timestamps[position];
+  }
+
+  /**
+   * Returns the number of marks in the index.
+   */
+  int size() {
+    return size;
+  }
+
+}
@@ -17,6 +17,8 @@ package net.kuujo.copycat.log;
 
 import net.kuujo.copycat.AbstractConfigurable;
 
+import java.util.Map;
+
 /**
  * Retention policy that does not retain any logs.
  *
@@ -28,6 +30,10 @@ public class ZeroRetentionPolicy extends AbstractConfigurable implements Retenti
     super();
   }
 
+  public ZeroRetentionPolicy(Map<String, Object> config) {
+    super(config);
+  }
+
   private ZeroRetentionPolicy(ZeroRetentionPolicy policy) {
     super(policy);
   }
@@ -14,6 +14,8 @@
  */
 package net.kuujo.copycat.protocol;
 
+import net.kuujo.copycat.internal.util.Assert;
+
 import java.util.Objects;
 
 /**
@@ -43,6 +45,7 @@ public class CommitResponse extends AbstractResponse {
   }
 
   private Object result;
+  private Long index;
 
   /**
    * Returns the commit result.
@@ -54,9 +57,18 @@ public class CommitResponse extends AbstractResponse {
     return (T) result;
   }
 
+  /**
+   * Returns the index at which the entry was committed.
+   *
+   * @return The index of the committed entry.
+   */
+  public Long index() {
+    return index;
+  }
+
   @Override
   public int hashCode() {
-    return Objects.hash(id, member, status, result);
+    return Objects.hash(id, member, status, result, index);
   }
 
   @Override
@@ -66,6 +78,7 @@ public class CommitResponse extends AbstractResponse {
       return response.id.equals(id)
         && response.member.equals(member)
         && response.status == status
+        && Objects.equals(response.index, index)
         && ((response.result == null && result == null)
         || response.result != null && result != null && response.result.equals(result));
     }
@@ -100,6 +113,17 @@ public class CommitResponse extends AbstractResponse {
       return this;
     }
 
+    /**
+     * Sets the index at which the entry was committed.
+     *
+     * @param index The index of the committed entry.
+     * @return The response builder.
+     */
+    public Builder withIndex(Long index) {
+      response.index = Assert.index(index, index == null || index > 0, "index must be greater than zero");
+      return this;
+    }
+
     @Override
     public int hashCode() {
       return Objects.hash(response);
@@ -35,7 +35,18 @@ public enum Consistency {
   /**
    * Indicates that consistency should be guaranteed for reads.
    */
-  STRONG("strong");
+  STRONG("strong"),
+
+  /**
+   * Indicates that reads may be served by any replica whose state lags the leader's commit index by no more than
+   * the configured bounds.
+   */
+  BOUNDED("bounded"),
+
+  /**
+   * Indicates that reads may be served by any replica that has applied the caller's last write.
+   */
+  SESSION("session");
 
   public static Consistency parse(String name) {
     switch (name) {
@@ -45,6 +56,10 @@ public enum Consistency {
         return DEFAULT;
       case "strong":
         return STRONG;
+      case "bounded":
+        return BOUNDED;
+      case "session":
+        return SESSION;
       default:
         throw new IllegalArgumentException("Invalid consistency name " + name);
     }
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.protocol;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Protocol install request.<p>
+ *
+ * Install requests are sent by the leader to replicas whose logs have fallen behind the beginning of the leader's log.
+ * The leader's current snapshot is streamed to the replica one piece at a time. Each request carries a piece of a
+ * single snapshot chunk, identified by the chunk number and the offset of the piece within the chunk.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class InstallRequest extends AbstractRequest {
+
+  /**
+   * Returns a new install request builder.
+   *
+   * @return A new install request builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns an install request builder for an existing request.
+   *
+   * @param request The request to build.
+   * @return The install request builder.
+   */
+  public static Builder builder(InstallRequest request) {
+    return new Builder(request);
+  }
+
+  private long term;
+  private String leader;
+  private long snapshotIndex;
+  private long snapshotTerm;
+  private int chunks;
+  private int chunk;
+  private long chunkSize;
+  private long offset;
+  private ByteBuffer data;
+
+  /**
+   * Returns the requesting node's current term.
+   *
+   * @return The requesting node's current term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns the requesting leader address.
+   *
+   * @return The leader's address.
+   */
+  public String leader() {
+    return leader;
+  }
+
+  /**
+   * Returns the index of the last entry included in the snapshot.
+   *
+   * @return The snapshot index.
+   */
+  public long snapshotIndex() {
+    return snapshotIndex;
+  }
+
+  /**
+   * Returns the term of the last entry included in the snapshot.
+   *
+   * @return The snapshot term.
+   */
+  public long snapshotTerm() {
+    return snapshotTerm;
+  }
+
+  /**
+   * Returns the total number of chunks in the snapshot. Snapshots without chunks are transferred with a single empty
+   * request.
+   *
+   * @return The number of chunks in the snapshot.
+   */
+  public int chunks() {
+    return chunks;
+  }
+
+  /**
+   * Returns the chunk to which the request's data belongs.
+   *
+   * @return The zero based chunk number.
+   */
+  public int chunk() {
+    return chunk;
+  }
+
+  /**
+   * Returns the total size of the chunk to which the request's data belongs.
+   *
+   * @return The chunk size in bytes.
+   */
+  public long chunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Returns the offset of the request's data within the chunk.
+   *
+   * @return The offset of the data within the chunk.
+   */
+  public long offset() {
+    return offset;
+  }
+
+  /**
+   * Returns the chunk data.
+   *
+   * @return The chunk data.
+   */
+  public ByteBuffer data() {
+    return data;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request's data completes its chunk.
+   *
+   * @return Indicates whether the request's data is the last piece of its chunk.
+   */
+  public boolean isChunkComplete() {
+    return offset + data.remaining() == chunkSize;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request's data completes the snapshot.
+   *
+   * @return Indicates whether the request's data is the last piece of the snapshot.
+   */
+  public boolean isComplete() {
+    return chunk >= chunks - 1 && isChunkComplete();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, member, term, leader, snapshotIndex, snapshotTerm, chunks, chunk, chunkSize, offset, data);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (object instanceof InstallRequest) {
+      InstallRequest request = (InstallRequest) object;
+      return request.id.equals(id)
+        && request.member.equals(member)
+        && request.term == term
+        && request.leader.equals(leader)
+        && request.snapshotIndex == snapshotIndex
+        && request.snapshotTerm == snapshotTerm
+        && request.chunks == chunks
+        && request.chunk == chunk
+        && request.chunkSize == chunkSize
+        && request.offset == offset
+        && request.data.equals(data);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[id=%s, term=%d, leader=%s, snapshotIndex=%d, snapshotTerm=%d, chunks=%d, chunk=%d, chunkSize=%d, offset=%d, data=[...]]", getClass().getSimpleName(), id, term, leader, snapshotIndex, snapshotTerm, chunks, chunk, chunkSize, offset);
+  }
+
+  /**
+   * Install request builder.
+   */
+  public static class Builder extends AbstractRequest.Builder<Builder, InstallRequest> {
+    private Builder() {
+      this(new InstallRequest());
+    }
+
+    private Builder(InstallRequest request) {
+      super(request);
+    }
+
+    /**
+     * Sets the request term.
+     *
+     * @param term The request term.
+     * @return The install request builder.
+     */
+    public Builder withTerm(long term) {
+      request.term = Assert.arg(term, term > 0, "term must be greater than zero");
+      return this;
+    }
+
+    /**
+     * Sets the request leader.
+     *
+     * @param leader The request leader.
+     * @return The install request builder.
+     */
+    public Builder withLeader(String leader) {
+      request.leader = Assert.isNotNull(leader, "leader");
+      return this;
+    }
+
+    /**
+     * Sets the snapshot index.
+     *
+     * @param index The index of the last entry included in the snapshot.
+     * @return The install request builder.
+     */
+    public Builder withSnapshotIndex(long index) {
+      request.snapshotIndex = Assert.index(index, index > 0, "snapshot index must be greater than zero");
+      return this;
+    }
+
+    /**
+     * Sets the snapshot term.
+     *
+     * @param term The term of the last entry included in the snapshot.
+     * @return The install request builder.
+     */
+    public Builder withSnapshotTerm(long term) {
+      request.snapshotTerm = Assert.arg(term, term > 0, "snapshot term must be greater than zero");
+      return this;
+    }
+
+    /**
+     * Sets the number of chunks in the snapshot.
+     *
+     * @param chunks The number of chunks in the snapshot.
+     * @return The install request builder.
+     */
+    public Builder withChunks(int chunks) {
+      request.chunks = Assert.arg(chunks, chunks >= 0, "chunks must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the chunk to which the request's data belongs.
+     *
+     * @param chunk The zero based chunk number.
+     * @return The install request builder.
+     */
+    public Builder withChunk(int chunk) {
+      request.chunk = Assert.index(chunk, chunk >= 0, "chunk must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the total size of the chunk to which the request's data belongs.
+     *
+     * @param chunkSize The chunk size in bytes.
+     * @return The install request builder.
+     */
+    public Builder withChunkSize(long chunkSize) {
+      request.chunkSize = Assert.arg(chunkSize, chunkSize >= 0, "chunk size must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the offset of the request's data within the chunk.
+     *
+     * @param offset The offset of the data within the chunk.
+     * @return The install request builder.
+     */
+    public Builder withOffset(long offset) {
+      request.offset = Assert.index(offset, offset >= 0, "offset must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the chunk data.
+     *
+     * @param data The chunk data.
+     * @return The install request builder.
+     */
+    public Builder withData(ByteBuffer data) {
+      request.data = Assert.isNotNull(data, "data");
+      return this;
+    }
+
+    @Override
+    public InstallRequest build() {
+      super.build();
+      Assert.isNotNull(request.leader, "leader");
+      Assert.arg(request.term, request.term > 0, "term must be greater than zero");
+      Assert.index(request.snapshotIndex, request.snapshotIndex > 0, "snapshot index must be greater than zero");
+      Assert.arg(request.snapshotTerm, request.snapshotTerm > 0, "snapshot term must be greater than zero");
+      Assert.arg(request.chunks, request.chunks >= 0, "chunks must be positive");
+      Assert.index(request.chunk, request.chunk < Math.max(request.chunks, 1), "chunk must be less than the number of chunks");
+      Assert.isNotNull(request.data, "data");
+      Assert.index(request.offset, request.offset + request.data.remaining() <= request.chunkSize, "data exceeds the chunk size");
+      return request;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(request);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Builder && ((Builder) object).request.equals(request);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s[request=%s]", getClass().getCanonicalName(), request);
+    }
+
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.protocol;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.util.Objects;
+
+/**
+ * Protocol install response.<p>
+ *
+ * The response indicates the position in the snapshot from which the replica expects the next request. If a request
+ * was received out of order, for instance after a previous transfer was interrupted, the leader resumes the transfer
+ * from the chunk and offset in the response.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class InstallResponse extends AbstractResponse {
+
+  /**
+   * Returns a new install response builder.
+   *
+   * @return A new install response builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns an install response builder for an existing response.
+   *
+   * @param response The response to build.
+   * @return The install response builder.
+   */
+  public static Builder builder(InstallResponse response) {
+    return new Builder(response);
+  }
+
+  private long term;
+  private boolean succeeded;
+  private int chunk;
+  private long offset;
+
+  /**
+   * Returns the responding node's current term.
+   *
+   * @return The responding node's current term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request's data was accepted.
+   *
+   * @return Indicates whether the install was successful.
+   */
+  public boolean succeeded() {
+    return succeeded;
+  }
+
+  /**
+   * Returns the chunk the replica expects next.
+   *
+   * @return The zero based number of the next expected chunk.
+   */
+  public int chunk() {
+    return chunk;
+  }
+
+  /**
+   * Returns the offset within the next expected chunk from which the replica expects data.
+   *
+   * @return The next expected offset.
+   */
+  public long offset() {
+    return offset;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, member, term, succeeded, chunk, offset);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (object instanceof InstallResponse) {
+      InstallResponse response = (InstallResponse) object;
+      return response.id.equals(id)
+        && response.status == status
+        && response.member.equals(member)
+        && response.term == term
+        && response.succeeded == succeeded
+        && response.chunk == chunk
+        && response.offset == offset;
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[id=%s, status=%s, term=%d, succeeded=%b, chunk=%d, offset=%d]", getClass().getSimpleName(), id, status, term, succeeded, chunk, offset);
+  }
+
+  /**
+   * Install response builder.
+   */
+  public static class Builder extends AbstractResponse.Builder<Builder, InstallResponse> {
+    private Builder() {
+      this(new InstallResponse());
+    }
+
+    private Builder(InstallResponse response) {
+      super(response);
+    }
+
+    /**
+     * Sets the response term.
+     *
+     * @param term The response term.
+     * @return The install response builder.
+     */
+    public Builder withTerm(long term) {
+      response.term = term;
+      return this;
+    }
+
+    /**
+     * Sets whether the request succeeded.
+     *
+     * @param succeeded Whether the install request succeeded.
+     * @return The install response builder.
+     */
+    public Builder withSucceeded(boolean succeeded) {
+      response.succeeded = succeeded;
+      return this;
+    }
+
+    /**
+     * Sets the chunk the replica expects next.
+     *
+     * @param chunk The zero based number of the next expected chunk.
+     * @return The install response builder.
+     */
+    public Builder withChunk(int chunk) {
+      response.chunk = Assert.index(chunk, chunk >= 0, "chunk must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the offset within the next expected chunk from which the replica expects data.
+     *
+     * @param offset The next expected offset.
+     * @return The install response builder.
+     */
+    public Builder withOffset(long offset) {
+      response.offset = Assert.index(offset, offset >= 0, "offset must be positive");
+      return this;
+    }
+
+    @Override
+    public InstallResponse build() {
+      super.build();
+      Assert.arg(response.term, response.term > 0, "term must be greater than zero");
+      return response;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(response);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Builder && ((Builder) object).response.equals(response);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s[response=%s]", getClass().getCanonicalName(), response);
+    }
+
+  }
+
+}
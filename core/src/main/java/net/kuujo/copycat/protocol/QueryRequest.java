@@ -48,6 +48,7 @@ public class QueryRequest extends AbstractRequest {
 
   private ByteBuffer entry;
   private Consistency consistency = Consistency.DEFAULT;
+  private Long index;
 
   /**
    * Returns the query entry.
@@ -67,9 +68,19 @@ public class QueryRequest extends AbstractRequest {
     return consistency;
   }
 
+  /**
+   * Returns the minimum index that must have been applied to the state before the query is evaluated.
+   *
+   * @return The minimum applied index for {@link Consistency#SESSION} queries or {@code null} if the state need not
+   *         have applied any particular index.
+   */
+  public Long index() {
+    return index;
+  }
+
   @Override
   public int hashCode() {
-    return Objects.hash(id, member, entry, consistency);
+    return Objects.hash(id, member, entry, consistency, index);
   }
 
   @Override
@@ -79,7 +90,8 @@ public class QueryRequest extends AbstractRequest {
       return request.id.equals(id)
         && request.member.equals(member)
         && request.entry.equals(entry)
-        && request.consistency == consistency;
+        && request.consistency == consistency
+        && Objects.equals(request.index, index);
     }
     return false;
   }
@@ -123,6 +135,17 @@ public class QueryRequest extends AbstractRequest {
       return this;
     }
 
+    /**
+     * Sets the minimum index that must have been applied to the state before the query is evaluated.
+     *
+     * @param index The minimum applied index.
+     * @return The request builder.
+     */
+    public Builder withIndex(Long index) {
+      request.index = Assert.index(index, index == null || index > 0, "index must be greater than zero");
+      return this;
+    }
+
     @Override
     public QueryRequest build() {
       super.build();
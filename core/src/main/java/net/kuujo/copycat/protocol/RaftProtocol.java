@@ -122,4 +122,36 @@ public interface RaftProtocol extends Managed {
    */
   RaftProtocol commitHandler(MessageHandler<CommitRequest, CommitResponse> handler);
 
+  /**
+   * Sends a protocol install request.
+   *
+   * @param request The protocol install request.
+   * @return A completable future to be completed with the install response.
+   */
+  CompletableFuture<InstallResponse> install(InstallRequest request);
+
+  /**
+   * Registers a protocol install request handler.
+   *
+   * @param handler A protocol install request handler.
+   * @return The Raft protocol.
+   */
+  RaftProtocol installHandler(MessageHandler<InstallRequest, InstallResponse> handler);
+
+  /**
+   * Sends a protocol read index request.
+   *
+   * @param request The protocol read index request.
+   * @return A completable future to be completed with the read index response.
+   */
+  CompletableFuture<ReadIndexResponse> readIndex(ReadIndexRequest request);
+
+  /**
+   * Registers a protocol read index request handler.
+   *
+   * @param handler A protocol read index request handler.
+   * @return The Raft protocol.
+   */
+  RaftProtocol readIndexHandler(MessageHandler<ReadIndexRequest, ReadIndexResponse> handler);
+
 }
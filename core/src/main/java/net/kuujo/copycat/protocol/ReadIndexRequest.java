@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.protocol;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.util.Objects;
+
+/**
+ * Protocol read index request.<p>
+ *
+ * Read index requests are sent by followers to the leader to obtain a commit index confirmed by a quorum of the
+ * cluster. Once the follower has applied entries up to the read index it can evaluate strongly consistent queries
+ * against its own state.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class ReadIndexRequest extends AbstractRequest {
+
+  /**
+   * Returns a new read index request builder.
+   *
+   * @return A new read index request builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a read index request builder for an existing request.
+   *
+   * @param request The request to build.
+   * @return The read index request builder.
+   */
+  public static Builder builder(ReadIndexRequest request) {
+    return new Builder(request);
+  }
+
+  private long term;
+
+  /**
+   * Returns the requesting node's current term.
+   *
+   * @return The requesting node's current term.
+   */
+  public long term() {
+    return term;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, member, term);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (object instanceof ReadIndexRequest) {
+      ReadIndexRequest request = (ReadIndexRequest) object;
+      return request.id.equals(id)
+        && request.member.equals(member)
+        && request.term == term;
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[id=%s, uri=%s, term=%d]", getClass().getSimpleName(), id, member, term);
+  }
+
+  /**
+   * Read index request builder.
+   */
+  public static class Builder extends AbstractRequest.Builder<Builder, ReadIndexRequest> {
+    private Builder() {
+      this(new ReadIndexRequest());
+    }
+
+    private Builder(ReadIndexRequest request) {
+      super(request);
+    }
+
+    /**
+     * Sets the request term.
+     *
+     * @param term The request term.
+     * @return The read index request builder.
+     */
+    public Builder withTerm(long term) {
+      request.term = Assert.arg(term, term > 0, "term must be greater than zero");
+      return this;
+    }
+
+    @Override
+    public ReadIndexRequest build() {
+      super.build();
+      Assert.arg(request.term, request.term > 0, "term must be greater than zero");
+      return request;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(request);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Builder && ((Builder) object).request.equals(request);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s[request=%s]", getClass().getCanonicalName(), request);
+    }
+
+  }
+
+}
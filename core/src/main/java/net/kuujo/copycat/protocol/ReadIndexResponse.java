@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.protocol;
+
+import net.kuujo.copycat.internal.util.Assert;
+
+import java.util.Objects;
+
+/**
+ * Protocol read index response.<p>
+ *
+ * The response carries the leader's commit index at the start of a confirmation round in which a quorum of the
+ * cluster acknowledged the leader. Queries evaluated after the read index has been applied are linearizable.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class ReadIndexResponse extends AbstractResponse {
+
+  /**
+   * Returns a new read index response builder.
+   *
+   * @return A new read index response builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a read index response builder for an existing response.
+   *
+   * @param response The response to build.
+   * @return The read index response builder.
+   */
+  public static Builder builder(ReadIndexResponse response) {
+    return new Builder(response);
+  }
+
+  private long term;
+  private Long readIndex;
+
+  /**
+   * Returns the responding node's current term.
+   *
+   * @return The responding node's current term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns the confirmed read index.
+   *
+   * @return The leader's confirmed commit index or {@code null} if no entries have been committed.
+   */
+  public Long readIndex() {
+    return readIndex;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, member, term, readIndex);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (object instanceof ReadIndexResponse) {
+      ReadIndexResponse response = (ReadIndexResponse) object;
+      return response.id.equals(id)
+        && response.status == status
+        && response.member.equals(member)
+        && response.term == term
+        && Objects.equals(response.readIndex, readIndex);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[id=%s, status=%s, term=%d, readIndex=%s]", getClass().getSimpleName(), id, status, term, readIndex);
+  }
+
+  /**
+   * Read index response builder.
+   */
+  public static class Builder extends AbstractResponse.Builder<Builder, ReadIndexResponse> {
+    private Builder() {
+      this(new ReadIndexResponse());
+    }
+
+    private Builder(ReadIndexResponse response) {
+      super(response);
+    }
+
+    /**
+     * Sets the response term.
+     *
+     * @param term The response term.
+     * @return The read index response builder.
+     */
+    public Builder withTerm(long term) {
+      response.term = term;
+      return this;
+    }
+
+    /**
+     * Sets the confirmed read index.
+     *
+     * @param readIndex The leader's confirmed commit index.
+     * @return The read index response builder.
+     */
+    public Builder withReadIndex(Long readIndex) {
+      response.readIndex = Assert.index(readIndex, readIndex == null || readIndex > 0, "index must be greater than zero");
+      return this;
+    }
+
+    @Override
+    public ReadIndexResponse build() {
+      super.build();
+      if (response.status == Status.OK) {
+        Assert.arg(response.term, response.term > 0, "term must be greater than zero");
+      }
+      return response;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(response);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Builder && ((Builder) object).response.equals(response);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s[response=%s]", getClass().getCanonicalName(), response);
+    }
+
+  }
+
+}
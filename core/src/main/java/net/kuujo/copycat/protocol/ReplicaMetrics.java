@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.protocol;
+
+/**
+ * Replication metrics for a single replica.<p>
+ *
+ * Metrics are maintained by the leader for each replica to which it replicates entries. They are updated each time
+ * the leader receives a response to an append request and may be read from any thread.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class ReplicaMetrics {
+  private final String uri;
+  private volatile int batchEntries;
+  private volatile int batchSize;
+  private volatile int lastBatchEntries;
+  private volatile int lastBatchSize;
+  private volatile double latency;
+  private volatile long appends;
+
+  public ReplicaMetrics(String uri) {
+    this.uri = uri;
+  }
+
+  /**
+   * Returns the replica URI.
+   *
+   * @return The replica URI.
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * Returns the current maximum number of entries per append request.
+   *
+   * @return The current maximum number of entries per append request.
+   */
+  public int getBatchEntries() {
+    return batchEntries;
+  }
+
+  /**
+   * Returns the current maximum number of entry bytes per append request.
+   *
+   * @return The current maximum number of entry bytes per append request.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the current batch limits.
+   *
+   * @param batchEntries The maximum number of entries per append request.
+   * @param batchSize The maximum number of entry bytes per append request.
+   * @return The replica metrics.
+   */
+  public ReplicaMetrics setBatch(int batchEntries, int batchSize) {
+    this.batchEntries = batchEntries;
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Returns the number of entries in the last acknowledged append request.
+   *
+   * @return The number of entries in the last acknowledged append request.
+   */
+  public int getLastBatchEntries() {
+    return lastBatchEntries;
+  }
+
+  /**
+   * Returns the number of entry bytes in the last acknowledged append request.
+   *
+   * @return The number of entry bytes in the last acknowledged append request.
+   */
+  public int getLastBatchSize() {
+    return lastBatchSize;
+  }
+
+  /**
+   * Returns the smoothed append request latency.
+   *
+   * @return The exponentially weighted moving average of append request latency in milliseconds.
+   */
+  public double getLatency() {
+    return latency;
+  }
+
+  /**
+   * Returns the total number of acknowledged append requests.
+   *
+   * @return The total number of acknowledged append requests.
+   */
+  public long getAppends() {
+    return appends;
+  }
+
+  /**
+   * Records an acknowledged append request.
+   *
+   * @param entries The number of entries in the request.
+   * @param size The number of entry bytes in the request.
+   * @param latency The smoothed append request latency in milliseconds.
+   * @return The replica metrics.
+   */
+  public ReplicaMetrics recordAppend(int entries, int size, double latency) {
+    this.lastBatchEntries = entries;
+    this.lastBatchSize = size;
+    this.latency = latency;
+    this.appends++;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReplicaMetrics[uri=%s, batchEntries=%d, batchSize=%d, latency=%.3f, appends=%d]", uri, batchEntries, batchSize, latency, appends);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.kuujo.copycat.CopycatState;
+import net.kuujo.copycat.cluster.coordinator.CoordinatedResourceConfig;
+import net.kuujo.copycat.cluster.coordinator.CoordinatorConfig;
+import net.kuujo.copycat.cluster.manager.ClusterManager;
+import net.kuujo.copycat.internal.cluster.coordinator.DefaultClusterCoordinator;
+import net.kuujo.copycat.log.BufferedLog;
+import net.kuujo.copycat.protocol.CommitResponse;
+import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.protocol.QueryRequest;
+import net.kuujo.copycat.protocol.QueryResponse;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Default resource context test.<p>
+ *
+ * The resource runs on a follower. Commits and queries forwarded to the leader are answered by the test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class DefaultResourceContextTest {
+  private ScheduledExecutorService executor;
+  private CopycatStateContext context;
+  private DefaultResourceContext resource;
+  private final Queue<QueryRequest> queries = new ConcurrentLinkedQueue<>();
+  private final AtomicLong commitIndex = new AtomicLong();
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    executor = Executors.newSingleThreadScheduledExecutor();
+    CoordinatedResourceConfig config = new CoordinatedResourceConfig()
+      .withReplicas("local", "foo", "bar")
+      .withElectionTimeout(10000)
+      .withHeartbeatInterval(10000)
+      .withLog(new BufferedLog());
+    context = new CopycatStateContext("test", "local", config, executor) {
+      @Override
+      public CompletableFuture<QueryResponse> query(QueryRequest request) {
+        queries.add(request);
+        return super.query(request);
+      }
+    };
+    context.consumer((index, entry) -> entry);
+    context.commitHandler(request -> CompletableFuture.completedFuture(CommitResponse.builder()
+      .withId(request.id())
+      .withUri(request.uri())
+      .withIndex(commitIndex.incrementAndGet())
+      .withResult(request.entry())
+      .build()));
+    context.queryHandler(request -> CompletableFuture.completedFuture(QueryResponse.builder()
+      .withId(request.id())
+      .withUri(request.uri())
+      .withResult(request.entry())
+      .build()));
+    executor.submit(() -> {
+      context.log().open();
+      context.snapshots().open();
+      context.setTerm(1);
+      context.setLeader("foo");
+      return context.transition(CopycatState.FOLLOWER);
+    }).get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+
+    ClusterManager cluster = (ClusterManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ClusterManager.class}, (proxy, method, args) -> null);
+    DefaultClusterCoordinator coordinator = new DefaultClusterCoordinator("local", new CoordinatorConfig()) {
+      @Override
+      public CompletableFuture<Void> acquireResource(String name) {
+        return CompletableFuture.completedFuture(null);
+      }
+    };
+    resource = new DefaultResourceContext("test", config, cluster, context, coordinator);
+    resource.open().get(5, TimeUnit.SECONDS);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    executor.shutdownNow();
+    queries.clear();
+  }
+
+  /**
+   * Tests that session queries carry the index of the last write committed through the context.
+   */
+  public void testSessionQueryIndex() throws Exception {
+    resource.query(ByteBuffer.allocate(4), Consistency.SESSION).get(5, TimeUnit.SECONDS);
+    assertNull(queries.poll().index());
+
+    resource.commit(ByteBuffer.allocate(4)).get(5, TimeUnit.SECONDS);
+    resource.commit(ByteBuffer.allocate(4)).get(5, TimeUnit.SECONDS);
+    resource.query(ByteBuffer.allocate(4), Consistency.SESSION).get(5, TimeUnit.SECONDS);
+    assertEquals(queries.poll().index().longValue(), 2);
+
+    // Only session queries are bound to the session's writes.
+    resource.query(ByteBuffer.allocate(4), Consistency.DEFAULT).get(5, TimeUnit.SECONDS);
+    assertNull(queries.poll().index());
+  }
+
+}
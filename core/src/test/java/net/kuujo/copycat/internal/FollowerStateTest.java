@@ -0,0 +1,316 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.kuujo.copycat.CopycatState;
+import net.kuujo.copycat.cluster.coordinator.CoordinatedResourceConfig;
+import net.kuujo.copycat.log.BufferedLog;
+import net.kuujo.copycat.log.Snapshot;
+import net.kuujo.copycat.protocol.AppendRequest;
+import net.kuujo.copycat.protocol.AppendResponse;
+import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.protocol.InstallRequest;
+import net.kuujo.copycat.protocol.InstallResponse;
+import net.kuujo.copycat.protocol.QueryRequest;
+import net.kuujo.copycat.protocol.QueryResponse;
+import net.kuujo.copycat.protocol.ReadIndexRequest;
+import net.kuujo.copycat.protocol.ReadIndexResponse;
+import net.kuujo.copycat.protocol.Response;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Follower state test.<p>
+ *
+ * The follower runs as a member of a three node cluster. Requests from the leader are submitted by the test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class FollowerStateTest {
+  private ScheduledExecutorService executor;
+  private CopycatStateContext context;
+  private final Queue<CompletableFuture<ReadIndexResponse>> readIndexes = new ConcurrentLinkedQueue<>();
+  private final Queue<QueryRequest> forwarded = new ConcurrentLinkedQueue<>();
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    executor = Executors.newSingleThreadScheduledExecutor();
+    context = new CopycatStateContext("test", "foo", new CoordinatedResourceConfig()
+      .withReplicas("local", "foo", "bar")
+      .withLog(new BufferedLog())
+      .withElectionTimeout(10000)
+      .withHeartbeatInterval(10000), executor);
+    context.consumer((index, entry) -> entry);
+    context.readIndexHandler(request -> {
+      CompletableFuture<ReadIndexResponse> future = new CompletableFuture<>();
+      readIndexes.add(future);
+      return future;
+    });
+    context.queryHandler(request -> {
+      forwarded.add(request);
+      return new CompletableFuture<>();
+    });
+    call(() -> {
+      context.log().open();
+      context.snapshots().open();
+      context.setTerm(1);
+      return context.transition(CopycatState.FOLLOWER);
+    }).get(5, TimeUnit.SECONDS);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    executor.shutdownNow();
+    readIndexes.clear();
+    forwarded.clear();
+  }
+
+  /**
+   * Tests that bounded queries are evaluated locally only while the follower lags the leader's commit index by no
+   * more than the maximum number of entries.
+   */
+  public void testBoundedQueryMaxLagEntries() throws Exception {
+    call(() -> context.setBoundedReadMaxLag(10000).setBoundedReadMaxLagEntries(2));
+    assertTrue(append(0, 1, 1L).succeeded());
+
+    assertEquals(query(Consistency.BOUNDED, null).get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertTrue(forwarded.isEmpty());
+
+    // The leader reports a commit index beyond the follower's log, so the follower lags by four entries.
+    assertFalse(append(5, 0, 5L).succeeded());
+    CompletableFuture<QueryResponse> query = query(Consistency.BOUNDED, null);
+    assertFalse(query.isDone());
+    assertEquals(forwarded.size(), 1);
+    assertEquals(forwarded.poll().uri(), "local");
+  }
+
+  /**
+   * Tests that bounded queries are forwarded to the leader once the leader hasn't been heard from within the
+   * maximum lag.
+   */
+  public void testBoundedQueryMaxLag() throws Exception {
+    call(() -> context.setBoundedReadMaxLag(100).setBoundedReadMaxLagEntries(10));
+    assertTrue(append(0, 1, 1L).succeeded());
+
+    assertEquals(query(Consistency.BOUNDED, null).get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertTrue(forwarded.isEmpty());
+
+    Thread.sleep(200);
+    CompletableFuture<QueryResponse> query = query(Consistency.BOUNDED, null);
+    assertFalse(query.isDone());
+    assertEquals(forwarded.size(), 1);
+  }
+
+  /**
+   * Tests that session queries are evaluated locally only once the session's last write has been applied.
+   */
+  public void testSessionQuery() throws Exception {
+    assertTrue(append(0, 2, 1L).succeeded());
+
+    assertEquals(query(Consistency.SESSION, 1L).get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertEquals(query(Consistency.SESSION, null).get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertTrue(forwarded.isEmpty());
+
+    CompletableFuture<QueryResponse> query = query(Consistency.SESSION, 2L);
+    assertFalse(query.isDone());
+    assertEquals(forwarded.size(), 1);
+    assertEquals(forwarded.poll().index().longValue(), 2);
+  }
+
+  /**
+   * Tests that a strong query is evaluated once the follower has applied entries up to the leader's read index.
+   */
+  public void testReadIndexQueryWaitsForApplied() throws Exception {
+    assertTrue(append(0, 2, null).succeeded());
+
+    CompletableFuture<QueryResponse> query = query(Consistency.STRONG, null);
+    CompletableFuture<ReadIndexResponse> readIndex = readIndexes.poll();
+    assertNotNull(readIndex);
+    readIndex.complete(ReadIndexResponse.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("local")
+      .withTerm(1)
+      .withReadIndex(2L)
+      .build());
+    call(() -> null);
+    assertFalse(query.isDone());
+
+    // Committing the first entry isn't enough to evaluate the query.
+    assertTrue(append(2, 0, 1L).succeeded());
+    call(() -> null);
+    assertFalse(query.isDone());
+
+    assertTrue(append(2, 0, 2L).succeeded());
+    assertEquals(query.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertEquals(call(() -> context.getLastApplied()).longValue(), 2);
+  }
+
+  /**
+   * Tests that a strong query fails if the leader responds to the read index request with an error.
+   */
+  public void testReadIndexQueryFailsOnError() throws Exception {
+    assertTrue(append(0, 1, 1L).succeeded());
+
+    CompletableFuture<QueryResponse> query = query(Consistency.STRONG, null);
+    CompletableFuture<ReadIndexResponse> readIndex = readIndexes.poll();
+    assertNotNull(readIndex);
+    readIndex.complete(ReadIndexResponse.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("local")
+      .withStatus(Response.Status.ERROR)
+      .withError(new IllegalStateException("Not the leader"))
+      .build());
+    QueryResponse response = query.get(5, TimeUnit.SECONDS);
+    assertEquals(response.status(), Response.Status.ERROR);
+    assertTrue(response.error() instanceof IllegalStateException);
+  }
+
+  /**
+   * Tests that a follower responds to read index requests with an error.
+   */
+  public void testReadIndexNotLeader() throws Exception {
+    ReadIndexResponse response = call(() -> context.readIndex(ReadIndexRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("foo")
+      .withTerm(1)
+      .build())).get(5, TimeUnit.SECONDS);
+    assertEquals(response.status(), Response.Status.ERROR);
+    assertNull(response.readIndex());
+  }
+
+  /**
+   * Tests that a snapshot is installed from pieces sent by the leader and that pieces that don't continue the
+   * transfer are rejected with the position from which the transfer must resume.
+   */
+  public void testInstallSnapshot() throws Exception {
+    byte[] chunk = "0123456789".getBytes();
+
+    InstallResponse response = install(0, chunk.length, 0, ByteBuffer.wrap(chunk, 0, 4));
+    assertTrue(response.succeeded());
+    assertEquals(response.chunk(), 0);
+    assertEquals(response.offset(), 4);
+
+    // A piece that skips data is rejected.
+    response = install(0, chunk.length, 6, ByteBuffer.wrap(chunk, 6, 4));
+    assertFalse(response.succeeded());
+    assertEquals(response.chunk(), 0);
+    assertEquals(response.offset(), 4);
+
+    response = install(0, chunk.length, 4, ByteBuffer.wrap(chunk, 4, 6));
+    assertTrue(response.succeeded());
+    assertEquals(response.chunk(), 1);
+    assertEquals(response.offset(), 0);
+
+    response = install(1, 3, 0, ByteBuffer.wrap("foo".getBytes()));
+    assertTrue(response.succeeded());
+    assertEquals(response.chunk(), 2);
+
+    Snapshot snapshot = call(() -> context.snapshots().snapshot());
+    assertEquals(snapshot.index(), 5);
+    assertEquals(snapshot.chunks(), 2);
+    assertEquals(snapshot.readChunk(0), ByteBuffer.wrap(chunk));
+    assertEquals(snapshot.readChunk(1), ByteBuffer.wrap("foo".getBytes()));
+    assertEquals(call(() -> context.log().firstIndex()).longValue(), 5);
+    assertEquals(call(() -> context.getLastApplied()).longValue(), 5);
+  }
+
+  /**
+   * Sends a piece of a two chunk snapshot at index 5 to the follower.
+   */
+  private InstallResponse install(int chunk, long chunkSize, long offset, ByteBuffer data) throws Exception {
+    return context.install(InstallRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("foo")
+      .withTerm(1)
+      .withLeader("local")
+      .withSnapshotIndex(5)
+      .withSnapshotTerm(1)
+      .withChunks(2)
+      .withChunk(chunk)
+      .withChunkSize(chunkSize)
+      .withOffset(offset)
+      .withData(data.slice())
+      .build()).get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Appends the given number of entries from the leader following the given index.
+   */
+  private AppendResponse append(long logIndex, int count, Long commitIndex) throws Exception {
+    List<ByteBuffer> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      ByteBuffer entry = ByteBuffer.allocate(12);
+      entry.putLong(1);
+      entry.putInt(i);
+      entry.flip();
+      entries.add(entry);
+    }
+    return call(() -> context.append(AppendRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("foo")
+      .withTerm(1)
+      .withLeader("local")
+      .withLogIndex(logIndex > 0 ? logIndex : null)
+      .withLogTerm(logIndex > 0 ? 1L : null)
+      .withEntries(entries)
+      .withCommitIndex(commitIndex)
+      .build())).get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Submits a query with the given consistency and session index to the follower.
+   */
+  private CompletableFuture<QueryResponse> query(Consistency consistency, Long index) throws Exception {
+    CompletableFuture<QueryResponse> future = call(() -> context.query(QueryRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("foo")
+      .withEntry(ByteBuffer.allocate(10))
+      .withConsistency(consistency)
+      .withIndex(index)
+      .build()));
+    call(() -> null);
+    return future;
+  }
+
+  /**
+   * Runs the given task on the context executor and waits for its result.
+   */
+  private <T> T call(Callable<T> task) throws Exception {
+    return executor.submit(task).get(5, TimeUnit.SECONDS);
+  }
+
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.kuujo.copycat.CopycatState;
+import net.kuujo.copycat.cluster.coordinator.CoordinatedResourceConfig;
+import net.kuujo.copycat.log.BufferedLog;
+import net.kuujo.copycat.log.LogManager;
+import net.kuujo.copycat.protocol.AppendRequest;
+import net.kuujo.copycat.protocol.AppendResponse;
+import net.kuujo.copycat.protocol.CommitRequest;
+import net.kuujo.copycat.protocol.CommitResponse;
+import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.protocol.InstallRequest;
+import net.kuujo.copycat.protocol.InstallResponse;
+import net.kuujo.copycat.protocol.PingRequest;
+import net.kuujo.copycat.protocol.PingResponse;
+import net.kuujo.copycat.protocol.QueryRequest;
+import net.kuujo.copycat.protocol.QueryResponse;
+import net.kuujo.copycat.protocol.ReadIndexRequest;
+import net.kuujo.copycat.protocol.ReadIndexResponse;
+import net.kuujo.copycat.protocol.Request;
+import net.kuujo.copycat.protocol.Response;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Leader state test.<p>
+ *
+ * The leader runs against a three node cluster whose followers are simulated by holding each outgoing request
+ * until the test responds to it.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class LeaderStateTest {
+  private ScheduledExecutorService executor;
+  private CopycatStateContext context;
+  private final Queue<Message<AppendRequest, AppendResponse>> appends = new ConcurrentLinkedQueue<>();
+  private final Queue<Message<PingRequest, PingResponse>> pings = new ConcurrentLinkedQueue<>();
+  private final Queue<Message<InstallRequest, InstallResponse>> installs = new ConcurrentLinkedQueue<>();
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    CountingLog.APPENDS.set(0);
+    CountingLog.FLUSHES.set(0);
+    executor = Executors.newSingleThreadScheduledExecutor();
+    context = new CopycatStateContext("test", "local", new CoordinatedResourceConfig()
+      .withReplicas("local", "foo", "bar")
+      .withLog(new CountingLog())
+      .withElectionTimeout(10000)
+      .withHeartbeatInterval(10000), executor);
+    context.consumer((index, entry) -> entry);
+    context.appendHandler(request -> send(appends, request));
+    context.pingHandler(request -> send(pings, request));
+    context.installHandler(request -> send(installs, request));
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Tests that a rejected append rolls back the replica's pipeline and that responses to abandoned requests are
+   * ignored.
+   */
+  public void testRollbackOnRejectedAppend() throws Exception {
+    call(() -> context.setReplicationWindow(4).setReplicationBatchEntries(1));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+
+    List<CompletableFuture<CommitResponse>> futures = commit(3, 10);
+    List<Message<AppendRequest, AppendResponse>> pipeline = take(appends, "foo");
+    assertEquals(pipeline.size(), 3);
+    for (int i = 0; i < pipeline.size(); i++) {
+      assertEquals(pipeline.get(i).request.logIndex().longValue(), i + 1);
+    }
+
+    // Rejecting the first request resends the window, but never from before the last index known to be replicated.
+    pipeline.get(0).reply(appendResponse(pipeline.get(0).request, false, null));
+    settle();
+    List<Message<AppendRequest, AppendResponse>> resent = take(appends, "foo");
+    assertEquals(resent.size(), 3);
+    for (int i = 0; i < resent.size(); i++) {
+      assertEquals(resent.get(i).request.logIndex().longValue(), i + 1);
+    }
+
+    // Responses to requests sent before the rollback neither reopen the window nor roll it back again.
+    pipeline.get(1).reply(appendResponse(pipeline.get(1).request, false, null));
+    pipeline.get(2).reply(appendResponse(pipeline.get(2).request, false, null));
+    settle();
+    assertTrue(take(appends, "foo").isEmpty());
+
+    for (Message<AppendRequest, AppendResponse> append : resent) {
+      append.reply(appendResponse(append.request, true, lastIndex(append.request)));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      CommitResponse response = futures.get(i).get(5, TimeUnit.SECONDS);
+      assertEquals(response.status(), Response.Status.OK);
+      assertEquals(response.index().longValue(), i + 2);
+    }
+  }
+
+  /**
+   * Tests that append requests contain no more than the configured number of entries.
+   */
+  public void testReplicationBatchEntriesLimit() throws Exception {
+    call(() -> context.setReplicationWindow(4).setReplicationBatchEntries(2));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+
+    commit(5, 10);
+    List<Message<AppendRequest, AppendResponse>> batches = take(appends, "foo");
+    assertEquals(batches.size(), 3);
+    assertEquals(batches.get(0).request.entries().size(), 2);
+    assertEquals(batches.get(1).request.entries().size(), 2);
+    assertEquals(batches.get(2).request.entries().size(), 1);
+  }
+
+  /**
+   * Tests that append requests contain no more than the configured number of bytes unless a single entry exceeds
+   * the limit.
+   */
+  public void testReplicationBatchSizeLimit() throws Exception {
+    // Each entry is prefixed with its eight byte term, so two 10 byte entries fit in a batch but three don't.
+    call(() -> context.setReplicationWindow(4).setReplicationBatchSize(40));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+
+    commit(4, 10);
+    List<Message<AppendRequest, AppendResponse>> batches = take(appends, "foo");
+    assertEquals(batches.size(), 2);
+    for (Message<AppendRequest, AppendResponse> batch : batches) {
+      assertEquals(batch.request.entries().size(), 2);
+    }
+    acknowledgeAppends();
+
+    commit(1, 100);
+    batches = take(appends, "foo");
+    assertEquals(batches.size(), 1);
+    assertEquals(batches.get(0).request.entries().size(), 1);
+  }
+
+  /**
+   * Tests that commits received within a single executor tick are appended, flushed and replicated once.
+   */
+  public void testCommitsBatchedWithinTick() throws Exception {
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+    CountingLog.APPENDS.set(0);
+    CountingLog.FLUSHES.set(0);
+
+    List<CompletableFuture<CommitResponse>> futures = commit(3, 10);
+    assertEquals(CountingLog.APPENDS.get(), 1);
+    assertEquals(CountingLog.FLUSHES.get(), 1);
+    List<Message<AppendRequest, AppendResponse>> batches = take(appends, "foo");
+    assertEquals(batches.size(), 1);
+    assertEquals(batches.get(0).request.entries().size(), 3);
+
+    acknowledgeAppends();
+    for (int i = 0; i < futures.size(); i++) {
+      CommitResponse response = futures.get(i).get(5, TimeUnit.SECONDS);
+      assertEquals(response.status(), Response.Status.OK);
+      assertEquals(response.index().longValue(), i + 2);
+    }
+  }
+
+  /**
+   * Tests that strong reads are served locally while the leader holds a lease and confirmed with a heartbeat round
+   * once the lease has expired.
+   */
+  public void testLeaseRead() throws Exception {
+    // The lease lasts for three quarters of the election timeout less the clock drift bound.
+    call(() -> context.setLeaseReads(true).setElectionTimeout(1000).setLeaseClockDrift(250));
+    startLeader();
+
+    // Reads aren't served from the lease until an entry from the leader's term has been committed.
+    for (Message<PingRequest, PingResponse> ping : take(pings, "foo")) {
+      ping.reply(pingResponse(ping.request));
+    }
+    settle();
+    CompletableFuture<QueryResponse> uncommittedRead = query(Consistency.STRONG);
+    settle();
+    assertFalse(uncommittedRead.isDone());
+    List<Message<PingRequest, PingResponse>> confirmation = take(pings, "foo");
+    assertEquals(confirmation.size(), 1);
+    confirmation.get(0).reply(pingResponse(confirmation.get(0).request));
+    assertEquals(uncommittedRead.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+
+    commit(1, 10);
+    acknowledgeAppends();
+    pings.clear();
+
+    CompletableFuture<QueryResponse> leaseRead = query(Consistency.STRONG);
+    settle();
+    assertTrue(leaseRead.isDone());
+    assertEquals(leaseRead.get().status(), Response.Status.OK);
+    assertTrue(pings.isEmpty());
+
+    Thread.sleep(600);
+    CompletableFuture<QueryResponse> expiredRead = query(Consistency.STRONG);
+    settle();
+    assertFalse(expiredRead.isDone());
+    List<Message<PingRequest, PingResponse>> round = take(pings, "foo");
+    assertEquals(round.size(), 1);
+    round.get(0).reply(pingResponse(round.get(0).request));
+    assertEquals(expiredRead.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+  }
+
+  /**
+   * Tests that strong reads received while a read index round is in flight wait for and share the next round.
+   */
+  public void testReadIndexRoundsCoalesced() throws Exception {
+    call(() -> context.setLeaseReads(false));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+    pings.clear();
+
+    CompletableFuture<QueryResponse> firstRead = query(Consistency.STRONG);
+    settle();
+    List<Message<PingRequest, PingResponse>> round = take(pings, "foo");
+    assertEquals(round.size(), 1);
+    assertEquals(take(pings, "bar").size(), 1);
+
+    List<CompletableFuture<QueryResponse>> reads = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      reads.add(query(Consistency.STRONG));
+    }
+    settle();
+    assertTrue(pings.isEmpty());
+
+    // Heartbeats sent before the reads were received can't confirm them, so they wait for the next round.
+    round.get(0).reply(pingResponse(round.get(0).request));
+    assertEquals(firstRead.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    settle();
+    for (CompletableFuture<QueryResponse> read : reads) {
+      assertFalse(read.isDone());
+    }
+
+    List<Message<PingRequest, PingResponse>> nextRound = take(pings, "foo");
+    assertEquals(nextRound.size(), 1);
+    assertEquals(take(pings, "bar").size(), 1);
+    nextRound.get(0).reply(pingResponse(nextRound.get(0).request));
+    for (CompletableFuture<QueryResponse> read : reads) {
+      assertEquals(read.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    }
+    settle();
+    assertTrue(pings.isEmpty());
+  }
+
+  /**
+   * Tests that a read index round isn't confirmed by an append request sent before the round started.
+   */
+  public void testReadIndexRoundIgnoresInFlightAppends() throws Exception {
+    call(() -> context.setLeaseReads(false));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+    pings.clear();
+
+    commit(1, 10);
+    List<Message<AppendRequest, AppendResponse>> inFlight = take(appends, "foo");
+    assertEquals(inFlight.size(), 1);
+
+    CompletableFuture<QueryResponse> read = query(Consistency.STRONG);
+    settle();
+    List<Message<PingRequest, PingResponse>> round = take(pings, "foo");
+    assertEquals(round.size(), 1);
+
+    inFlight.get(0).reply(appendResponse(inFlight.get(0).request, true, lastIndex(inFlight.get(0).request)));
+    settle();
+    assertFalse(read.isDone());
+
+    round.get(0).reply(pingResponse(round.get(0).request));
+    assertEquals(read.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+  }
+
+  /**
+   * Tests that a read index requested by a follower is returned once a heartbeat round confirms the leader.
+   */
+  public void testReadIndexRequest() throws Exception {
+    call(() -> context.setLeaseReads(false));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+    pings.clear();
+
+    CompletableFuture<ReadIndexResponse> response = readIndex();
+    settle();
+    assertFalse(response.isDone());
+
+    List<Message<PingRequest, PingResponse>> round = take(pings, "foo");
+    assertEquals(round.size(), 1);
+    round.get(0).reply(pingResponse(round.get(0).request));
+    assertEquals(response.get(5, TimeUnit.SECONDS).status(), Response.Status.OK);
+    assertEquals(response.get().readIndex().longValue(), 1);
+  }
+
+  /**
+   * Tests that a read index request fails if the leader learns of a newer term while confirming the read index.
+   */
+  public void testReadIndexRequestFailsOnNewerTerm() throws Exception {
+    call(() -> context.setLeaseReads(false));
+    startLeader();
+    commit(1, 10);
+    acknowledgeAppends();
+    pings.clear();
+
+    CompletableFuture<ReadIndexResponse> response = readIndex();
+    settle();
+    List<Message<PingRequest, PingResponse>> round = take(pings, "foo");
+    assertEquals(round.size(), 1);
+    round.get(0).reply(PingResponse.builder()
+      .withId(round.get(0).request.id())
+      .withUri("foo")
+      .withTerm(2)
+      .withSucceeded(false)
+      .build());
+    assertEquals(response.get(5, TimeUnit.SECONDS).status(), Response.Status.ERROR);
+    settle();
+    assertEquals(call(() -> context.state()), CopycatState.FOLLOWER);
+  }
+
+  /**
+   * Tests that a snapshot transfer resumes from the position returned by a replica that rejected a piece.
+   */
+  public void testInstallResumesFromReplicaPosition() throws Exception {
+    // Replace the log with a snapshot at index 5 so that a replica that doesn't have the index must install it.
+    int chunkSize = 100 * 1024;
+    call(() -> {
+      context.log().open();
+      context.snapshots().open();
+      context.snapshots().createSnapshot(5, 1).writeChunk(ByteBuffer.allocate(chunkSize)).commit();
+      ByteBuffer entry = ByteBuffer.allocate(8);
+      entry.putLong(1);
+      entry.flip();
+      context.log().reset(5, entry);
+      context.setCommitIndex(5L).setLastApplied(5L);
+      return null;
+    });
+    startLeader();
+
+    commit(1, 10);
+    List<Message<AppendRequest, AppendResponse>> append = take(appends, "foo");
+    assertEquals(append.size(), 1);
+    assertEquals(append.get(0).request.logIndex().longValue(), 5);
+    append.get(0).reply(appendResponse(append.get(0).request, false, null));
+    settle();
+
+    List<Message<InstallRequest, InstallResponse>> install = take(installs, "foo");
+    assertEquals(install.size(), 1);
+    assertEquals(install.get(0).request.chunk(), 0);
+    assertEquals(install.get(0).request.offset(), 0);
+
+    // The replica rejects the piece and asks for the transfer to resume from another position in the chunk.
+    install.get(0).reply(installResponse(install.get(0).request, false, 0, 1000));
+    settle();
+    install = take(installs, "foo");
+    assertEquals(install.size(), 1);
+    assertEquals(install.get(0).request.chunk(), 0);
+    assertEquals(install.get(0).request.offset(), 1000);
+    assertEquals(install.get(0).request.chunkSize(), chunkSize);
+
+    // Complete the transfer, after which the replica is caught up from the snapshot index.
+    long offset = 1000;
+    while (!install.isEmpty()) {
+      InstallRequest request = install.get(0).request;
+      offset += request.data().remaining();
+      install.get(0).reply(request.isComplete()
+        ? installResponse(request, true, request.chunks(), 0)
+        : installResponse(request, true, request.chunk(), offset));
+      settle();
+      install = take(installs, "foo");
+    }
+    assertEquals(offset, chunkSize);
+
+    append = take(appends, "foo");
+    assertEquals(append.size(), 1);
+    assertEquals(append.get(0).request.logIndex().longValue(), 5);
+  }
+
+  /**
+   * Transitions the context to leader in the first term.
+   */
+  private void startLeader() throws Exception {
+    call(() -> {
+      if (!context.log().isOpen()) {
+        context.log().open();
+        context.snapshots().open();
+      }
+      context.setTerm(1);
+      return context.transition(CopycatState.LEADER);
+    }).get(5, TimeUnit.SECONDS);
+    settle();
+  }
+
+  /**
+   * Submits the given number of commits to the leader within a single executor tick.
+   */
+  private List<CompletableFuture<CommitResponse>> commit(int count, int size) throws Exception {
+    List<CompletableFuture<CommitResponse>> futures = call(() -> {
+      List<CompletableFuture<CommitResponse>> commits = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        commits.add(context.commit(CommitRequest.builder()
+          .withId(UUID.randomUUID().toString())
+          .withUri("local")
+          .withEntry(ByteBuffer.allocate(size))
+          .build()));
+      }
+      return commits;
+    });
+    settle();
+    return futures;
+  }
+
+  /**
+   * Submits a query with the given consistency to the leader.
+   */
+  private CompletableFuture<QueryResponse> query(Consistency consistency) {
+    return context.query(QueryRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("local")
+      .withEntry(ByteBuffer.allocate(10))
+      .withConsistency(consistency)
+      .build());
+  }
+
+  /**
+   * Submits a read index request from a follower to the leader.
+   */
+  private CompletableFuture<ReadIndexResponse> readIndex() throws Exception {
+    return call(() -> context.readIndex(ReadIndexRequest.builder()
+      .withId(UUID.randomUUID().toString())
+      .withUri("local")
+      .withTerm(1)
+      .build()));
+  }
+
+  /**
+   * Acknowledges all append requests sent by the leader until no more requests are sent.
+   */
+  private void acknowledgeAppends() throws Exception {
+    while (!appends.isEmpty()) {
+      Message<AppendRequest, AppendResponse> append;
+      while ((append = appends.poll()) != null) {
+        append.reply(appendResponse(append.request, true, lastIndex(append.request)));
+      }
+      settle();
+    }
+  }
+
+  /**
+   * Runs the given task on the context executor and waits for its result.
+   */
+  private <T> T call(Callable<T> task) throws Exception {
+    return executor.submit(task).get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Waits for tasks queued on the context executor to run, including the tasks they queue in turn.
+   */
+  private void settle() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      call(() -> null);
+    }
+  }
+
+  /**
+   * Records a request sent by the leader, returning a future to be completed by the test.
+   */
+  private static <T extends Request, U extends Response> CompletableFuture<U> send(Queue<Message<T, U>> messages, T request) {
+    Message<T, U> message = new Message<>(request);
+    messages.add(message);
+    return message.future;
+  }
+
+  /**
+   * Removes and returns all requests sent to the given member in the order in which they were sent.
+   */
+  private static <T extends Request, U extends Response> List<Message<T, U>> take(Queue<Message<T, U>> messages, String member) {
+    List<Message<T, U>> taken = new ArrayList<>();
+    Iterator<Message<T, U>> iterator = messages.iterator();
+    while (iterator.hasNext()) {
+      Message<T, U> message = iterator.next();
+      if (message.request.uri().equals(member)) {
+        taken.add(message);
+        iterator.remove();
+      }
+    }
+    return taken;
+  }
+
+  /**
+   * Returns the index of the last entry in the given append request.
+   */
+  private static Long lastIndex(AppendRequest request) {
+    return (request.logIndex() != null ? request.logIndex() : 0) + request.entries().size();
+  }
+
+  /**
+   * Creates a response to the given append request.
+   */
+  private static AppendResponse appendResponse(AppendRequest request, boolean succeeded, Long logIndex) {
+    return AppendResponse.builder()
+      .withId(request.id())
+      .withUri(request.uri())
+      .withTerm(request.term())
+      .withSucceeded(succeeded)
+      .withLogIndex(logIndex)
+      .build();
+  }
+
+  /**
+   * Creates a response to the given install request indicating the next position expected by the replica.
+   */
+  private static InstallResponse installResponse(InstallRequest request, boolean succeeded, int chunk, long offset) {
+    return InstallResponse.builder()
+      .withId(request.id())
+      .withUri(request.uri())
+      .withTerm(request.term())
+      .withSucceeded(succeeded)
+      .withChunk(chunk)
+      .withOffset(offset)
+      .build();
+  }
+
+  /**
+   * Creates a successful response to the given ping request.
+   */
+  private static PingResponse pingResponse(PingRequest request) {
+    return PingResponse.builder()
+      .withId(request.id())
+      .withUri(request.uri())
+      .withTerm(request.term())
+      .withSucceeded(true)
+      .build();
+  }
+
+  /**
+   * Buffered log that counts appends and flushes to the logs it creates.
+   */
+  public static class CountingLog extends BufferedLog {
+    private static final AtomicInteger APPENDS = new AtomicInteger();
+    private static final AtomicInteger FLUSHES = new AtomicInteger();
+
+    public CountingLog() {
+      super();
+    }
+
+    public CountingLog(Map<String, Object> config) {
+      super(config);
+    }
+
+    @Override
+    public LogManager getLogManager(String name) {
+      LogManager log = super.getLogManager(name);
+      return (LogManager) Proxy.newProxyInstance(LogManager.class.getClassLoader(), new Class<?>[]{LogManager.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "appendEntry":
+          case "appendEntries":
+            APPENDS.incrementAndGet();
+            break;
+          case "flush":
+            FLUSHES.incrementAndGet();
+            break;
+        }
+        try {
+          return method.invoke(log, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+    }
+  }
+
+  /**
+   * Request sent by the leader awaiting a response.
+   */
+  private static class Message<T extends Request, U extends Response> {
+    private final T request;
+    private final CompletableFuture<U> future = new CompletableFuture<>();
+
+    private Message(T request) {
+      this.request = request;
+    }
+
+    private void reply(U response) {
+      future.complete(response);
+    }
+  }
+
+}
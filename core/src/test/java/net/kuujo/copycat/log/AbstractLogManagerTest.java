@@ -23,6 +23,7 @@ import static org.testng.Assert.assertTrue;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -274,6 +275,48 @@ public abstract class AbstractLogManagerTest {
     assertEquals(log.lastIndex().longValue(), entriesPerSegment * 2);
   }
 
+  /**
+   * Tests {@link AbstractLogManager#compact(long, ByteBuffer, java.util.concurrent.Executor)} in the background.
+   */
+  public void testCompactInBackground() throws Exception {
+    appendEntries(entriesPerSegment * 3);
+    long index = entriesPerSegment * 2 + 2;
+    log.compact(index, Bytes.of(5000), Runnable::run).get();
+
+    assertBytesEqual(log.getEntry(index), 5000);
+    for (long i = index + 1; i <= entriesPerSegment * 3; i++)
+      assertBytesEqual(log.getEntry(i), i);
+    assertEquals(log.entryCount(), entriesPerSegment * 3 - index + 1);
+    assertEquals(log.firstIndex().longValue(), index);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+
+    // Append to the segment that was rolled over when the compacted segment was sealed
+    List<Long> indexes = appendEntries(1, 6000);
+    assertIndexes(indexes, entriesPerSegment * 3 + 1, entriesPerSegment * 3 + 1);
+    assertBytesEqual(log.getEntry(entriesPerSegment * 3 + 1), 6000);
+  }
+
+  /**
+   * Tests {@link AbstractLogManager#reset(long, ByteBuffer)} beyond the end of the log.
+   */
+  public void testReset() {
+    appendEntries(entriesPerSegment * 2);
+    int index = entriesPerSegment * 4 + 1;
+    log.reset(index, Bytes.of(5000));
+
+    assertFalse(log.containsIndex(entriesPerSegment * 2));
+    assertBytesEqual(log.getEntry(index), 5000);
+    assertEquals(log.entryCount(), 1);
+    assertEquals(log.segments().size(), 1);
+    assertEquals(log.firstIndex().longValue(), index);
+    assertEquals(log.lastIndex().longValue(), index);
+    assertEquals(log.durableIndex(), index);
+
+    List<Long> indexes = appendEntries(1, 6000);
+    assertIndexes(indexes, index + 1, index + 1);
+    assertBytesEqual(log.getEntry(index + 1), 6000);
+  }
+
   /**
    * Tests {@link AbstractLogManager#compact(long, ByteBuffer)} on the log tail.
    */
@@ -417,6 +460,80 @@ public abstract class AbstractLogManagerTest {
     assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
   }
 
+  /**
+   * Tests that recently appended entries are read from the entry cache.
+   */
+  public void testEntryCache() {
+    appendEntries(entriesPerSegment * 2);
+    long hitCount = log.cacheHitCount();
+    assertBytesEqual(log.getEntry(entriesPerSegment), entriesPerSegment);
+    assertEquals(log.getEntry(entriesPerSegment).getInt(), entriesPerSegment);
+    assertEquals(log.cacheHitCount(), hitCount + 2);
+
+    // Entries removed from the log must not be served from the cache.
+    log.removeAfter(entriesPerSegment);
+    appendEntries(1, 1000);
+    assertBytesEqual(log.getEntry(entriesPerSegment + 1), 1000);
+  }
+
+  /**
+   * Tests finding log indexes by the times at which entries were appended.
+   */
+  public void testIndexForTimestamp() throws Exception {
+    assertNull(log.indexForTimestamp(System.currentTimeMillis()));
+    long before = System.currentTimeMillis() - 1;
+    appendEntries(entriesPerSegment * 3);
+    long after = System.currentTimeMillis();
+    assertEquals(log.indexForTimestamp(before).longValue(), 1);
+
+    // The last entry of each sealed segment is indexed, so later segments are never skipped.
+    long index = log.indexForTimestamp(after);
+    assertTrue(index > entriesPerSegment * 2 && index <= entriesPerSegment * 3);
+
+    // Indexes of removed entries are never returned.
+    log.removeAfter(entriesPerSegment / 2);
+    assertTrue(log.indexForTimestamp(after) <= entriesPerSegment / 2);
+  }
+
+  /**
+   * Tests {@link AbstractLogManager#clean(long, KeyResolver, long, java.util.concurrent.Executor)} of superseded entries.
+   */
+  public void testClean() throws Exception {
+    appendEntries(entriesPerSegment * 3);
+    long size = log.size();
+    assertTrue(log.clean(log.lastIndex(), RESOLVER, TimeUnit.HOURS.toMillis(1), Runnable::run).get() > 0);
+
+    // Only the latest entry for each key in the sealed segments is retained, and the current segment is not cleaned.
+    for (long i = 1; i < entriesPerSegment * 2 - 2; i++)
+      assertEquals(log.getEntry(i).limit(), 1);
+    for (long i = entriesPerSegment * 2 - 2; i <= entriesPerSegment * 3; i++)
+      assertBytesEqual(log.getEntry(i), i);
+    assertEquals(log.entryCount(), entriesPerSegment * 3);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+    assertTrue(log.size() < size);
+
+    List<Long> indexes = appendEntries(1, 5000);
+    assertIndexes(indexes, entriesPerSegment * 3 + 1, entriesPerSegment * 3 + 1);
+  }
+
+  /**
+   * Tests that tombstones are retained by {@link AbstractLogManager#clean(long, KeyResolver, long, java.util.concurrent.Executor)}
+   * until they expire.
+   */
+  public void testCleanTombstones() throws Exception {
+    appendEntries(entriesPerSegment * 2);
+    long tombstone = log.appendEntry(Bytes.of(-3));
+    appendEntries(entriesPerSegment * 2, 5000);
+
+    log.clean(log.lastIndex(), RESOLVER, TimeUnit.HOURS.toMillis(1), Runnable::run).get();
+    assertEquals(log.getEntry(3).limit(), 1);
+    assertBytesEqual(log.getEntry(tombstone), -3);
+
+    log.clean(log.lastIndex(), RESOLVER, 0, Runnable::run).get();
+    assertEquals(log.getEntry(tombstone).limit(), 1);
+    assertBytesEqual(log.getEntry(tombstone + 1), 5000);
+  }
+
   /**
    * Tests {@link AbstractLogManager#size()} across segments.
    */
@@ -460,6 +577,27 @@ public abstract class AbstractLogManagerTest {
     assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
   }
 
+  /**
+   * Resolves the keys of test entries less than 1000, replacing removed entries with single byte placeholders.
+   */
+  private static final KeyResolver RESOLVER = new KeyResolver() {
+    @Override
+    public Object key(ByteBuffer entry) {
+      int value = entry.limit() >= 4 ? Math.abs(entry.getInt(0)) : 0;
+      return value != 0 && value < 1000 ? value % 3 : null;
+    }
+
+    @Override
+    public boolean isTombstone(ByteBuffer entry) {
+      return entry.getInt(0) < 0;
+    }
+
+    @Override
+    public ByteBuffer placeholder(ByteBuffer entry) {
+      return ByteBuffer.allocate(1);
+    }
+  };
+
   /**
    * Appends {@code numEntries} increasingly numbered ByteBuffer wrapped entries to the log.
    */
@@ -481,11 +619,22 @@ public abstract class AbstractLogManagerTest {
   }
 
   protected static void assertBytesEqual(ByteBuffer b1, int number) {
-    assertEquals(new BigInteger(b1.array()), new BigInteger(ByteBuffer.allocate(4).putInt(number).array()));
+    assertEquals(new BigInteger(bytes(b1)), new BigInteger(ByteBuffer.allocate(4).putInt(number).array()));
   }
 
   protected static void assertBytesEqual(ByteBuffer b1, String string) {
-    assertEquals(new String(b1.array()), string);
+    assertEquals(new String(bytes(b1)), string);
+  }
+
+  /**
+   * Returns the bytes of the given buffer, supporting both heap and direct buffers.
+   */
+  private static byte[] bytes(ByteBuffer buffer) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.rewind();
+    byte[] bytes = new byte[duplicate.limit()];
+    duplicate.get(bytes);
+    return bytes;
   }
 
   protected static void assertIndexes(List<Long> indexes, int start, int end) {
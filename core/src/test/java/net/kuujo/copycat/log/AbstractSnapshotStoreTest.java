@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests snapshot store implementations.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public abstract class AbstractSnapshotStoreTest {
+  protected SnapshotStore store;
+
+  /**
+   * Creates a test snapshot store instance.
+   */
+  protected abstract SnapshotStore createStore() throws Throwable;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Throwable {
+    store = createStore();
+    store.open();
+  }
+
+  @AfterMethod
+  protected void afterMethod() throws Throwable {
+    store.close();
+    store.delete();
+  }
+
+  /**
+   * Tests writing and reading a snapshot.
+   */
+  public void testWriteSnapshot() {
+    assertNull(store.snapshot());
+    Snapshot snapshot = store.createSnapshot(10, 2)
+      .writeChunk(chunk("foo"))
+      .writeChunk(chunk("bar"))
+      .writeChunk(chunk("baz"))
+      .commit();
+    assertEquals(store.snapshot().index(), 10);
+    assertEquals(store.snapshot().term(), 2);
+    assertEquals(store.snapshot().chunks(), 3);
+    assertEquals(store.snapshot().size(), 9);
+    assertEquals(store.snapshot().checksum(), snapshot.checksum());
+    assertChunk(store.snapshot(), 0, "foo");
+    assertChunk(store.snapshot(), 1, "bar");
+    assertChunk(store.snapshot(), 2, "baz");
+  }
+
+  /**
+   * Tests copying unchanged chunks from the current snapshot.
+   */
+  public void testCopyChunks() {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).writeChunk(chunk("bar")).commit();
+    store.createSnapshot(20, 3).copyChunk(0).writeChunk(chunk("baz")).copyChunk(1).commit();
+    assertEquals(store.snapshot().index(), 20);
+    assertEquals(store.snapshot().chunks(), 3);
+    assertChunk(store.snapshot(), 0, "foo");
+    assertChunk(store.snapshot(), 1, "baz");
+    assertChunk(store.snapshot(), 2, "bar");
+  }
+
+  /**
+   * Tests writing chunks in pieces.
+   */
+  public void testAppendChunks() {
+    Snapshot snapshot = store.createSnapshot(10, 2)
+      .appendChunk(chunk("fo"))
+      .appendChunk(chunk("o"))
+      .completeChunk()
+      .writeChunk(chunk("bar"))
+      .completeChunk()
+      .commit();
+    assertEquals(store.snapshot().chunks(), 3);
+    assertEquals(store.snapshot().size(), 6);
+    assertEquals(store.snapshot().checksum(), snapshot.checksum());
+    assertChunk(store.snapshot(), 0, "foo");
+    assertChunk(store.snapshot(), 1, "bar");
+    assertChunk(store.snapshot(), 2, "");
+  }
+
+  /**
+   * Tests that a snapshot can't be committed while a chunk is partially written.
+   */
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testCommitPartialChunk() {
+    store.createSnapshot(10, 2).appendChunk(chunk("foo")).commit();
+  }
+
+  /**
+   * Tests that an aborted snapshot does not replace the current snapshot.
+   */
+  public void testAbortSnapshot() {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).commit();
+    SnapshotWriter writer = store.createSnapshot(20, 2).writeChunk(chunk("bar"));
+    writer.abort();
+    assertEquals(store.snapshot().index(), 10);
+    assertChunk(store.snapshot(), 0, "foo");
+  }
+
+  /**
+   * Tests that snapshots must be taken at increasing indexes.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testCreateStaleSnapshot() {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).commit();
+    store.createSnapshot(10, 2);
+  }
+
+  protected static ByteBuffer chunk(String value) {
+    return ByteBuffer.wrap(value.getBytes());
+  }
+
+  protected static void assertChunk(Snapshot snapshot, int chunk, String value) {
+    ByteBuffer buffer = snapshot.readChunk(chunk);
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertEquals(new String(bytes), value);
+  }
+
+}
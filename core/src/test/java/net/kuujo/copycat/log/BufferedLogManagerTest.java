@@ -17,6 +17,8 @@ package net.kuujo.copycat.log;
 
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertTrue;
+
 /**
  * Buffered log test.
  *
@@ -27,7 +29,7 @@ public class BufferedLogManagerTest extends AbstractLogManagerTest {
 
   @Override
   protected AbstractLogManager createLog() throws Throwable {
-    return (AbstractLogManager) new BufferedLog().getLogManager("test");
+    return (AbstractLogManager) new BufferedLog().withSegmentSize(segmentSize).getLogManager("test");
   }
 
   @Override
@@ -35,4 +37,17 @@ public class BufferedLogManagerTest extends AbstractLogManagerTest {
     return 4;
   }
 
+  /**
+   * Tests that entries read from segments cannot be used to modify the segments' chunks.
+   */
+  public void testGetEntryIsReadOnly() {
+    appendEntries(entriesPerSegment * 2);
+    for (LogSegment segment : log.segments()) {
+      for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+        assertTrue(segment.getEntry(i).isReadOnly());
+        assertBytesEqual(segment.getEntry(i), i);
+      }
+    }
+  }
+
 }
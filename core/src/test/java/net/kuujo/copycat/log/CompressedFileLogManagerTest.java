@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compressed file log test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class CompressedFileLogManagerTest extends FileLogManagerTest {
+
+  @Override
+  protected FileLog createConfig() {
+    // Use a block size smaller than a segment so that entries span compressed blocks.
+    return super.createConfig().withCompressed(true).withCompressionBlockSize(32);
+  }
+
+  /**
+   * Tests that sealed segments are compressed and remain readable.
+   */
+  public void testCompressSealedSegments() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    awaitCompression();
+
+    // Compressed files are swapped in when the log is next rolled over.
+    indexes.addAll(appendEntries(entriesPerSegment, entriesPerSegment * 3 + 1));
+    assertFalse(segmentFile(segmentId(0), "log").exists());
+    assertTrue(segmentFile(segmentId(0), "log.deflate").exists());
+    assertTrue(segmentFile(segmentId(1), "log.deflate").exists());
+    assertTrue(segmentFile(segmentId(3), "log").exists());
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+
+    reopenLog();
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 4);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Tests that a compressed segment is decompressed when entries are removed from it.
+   */
+  public void testRemoveAfterCompressedSegment() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    awaitCompression();
+    appendEntries(entriesPerSegment, entriesPerSegment * 2 + 1);
+    long segmentId = segmentId(0);
+    assertTrue(segmentFile(segmentId, "log.deflate").exists());
+
+    log.removeAfter(2);
+    assertFalse(segmentFile(segmentId, "log.deflate").exists());
+    assertEquals(log.lastIndex().longValue(), 2);
+    List<Long> indexes = appendEntries(entriesPerSegment, 3);
+    assertIndexes(indexes, 3, entriesPerSegment + 2);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Compressed segments have no log file to recycle, so they're deleted once they expire.
+   */
+  @Override
+  public void testRecycleSegments() throws Throwable {
+    log.close();
+    log.delete();
+    log = (AbstractLogManager) createConfig().withRetentionPolicy(new ZeroRetentionPolicy()).getLogManager(id);
+    log.open();
+
+    appendEntries(entriesPerSegment * 3);
+    awaitCompression();
+    appendEntries(entriesPerSegment, entriesPerSegment * 3 + 1);
+    List<Long> segmentIds = log.segments().stream().map(LogSegment::id).collect(Collectors.toList());
+    log.enforceRetentionPolicy().get();
+    assertFalse(segmentFile(segmentIds.get(0), "log.deflate").exists());
+    assertFalse(segmentFile(segmentIds.get(0), "log.pool").exists());
+    assertEquals(log.firstIndex().longValue(), entriesPerSegment * 3 + 1);
+  }
+
+  /**
+   * Waits for segments to be compressed in the background.
+   */
+  private void awaitCompression() throws Throwable {
+    log.executor().submit(() -> {}).get();
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Entry cache test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class EntryCacheTest {
+
+  /**
+   * Tests that the oldest entries are evicted once the cache exceeds its maximum size.
+   */
+  public void testEvictOldestEntries() {
+    EntryCache cache = new EntryCache(12);
+    for (int i = 1; i <= 4; i++) {
+      cache.put(i, entry(i));
+    }
+    assertEquals(cache.size(), 12);
+    assertNull(cache.get(1));
+    assertEquals(cache.get(2).getInt(), 2);
+    assertEquals(cache.get(4).getInt(), 4);
+    assertEquals(cache.hitCount(), 2);
+    assertEquals(cache.missCount(), 1);
+  }
+
+  /**
+   * Tests that each read returns an independent view of the cached entry.
+   */
+  public void testGetReturnsIndependentView() {
+    EntryCache cache = new EntryCache(1024);
+    ByteBuffer entry = entry(1);
+    cache.put(1, entry);
+    entry.putInt(0, 2);
+    ByteBuffer first = cache.get(1);
+    assertEquals(first.getInt(), 1);
+    assertEquals(cache.get(1).getInt(), 1);
+  }
+
+  /**
+   * Tests that a non-contiguous append resets the cache.
+   */
+  public void testNonContiguousPutResetsCache() {
+    EntryCache cache = new EntryCache(1024);
+    cache.put(1, entry(1));
+    cache.put(2, entry(2));
+    cache.put(5, entry(5));
+    assertNull(cache.get(1));
+    assertEquals(cache.get(5).getInt(), 5);
+    assertEquals(cache.size(), 4);
+  }
+
+  /**
+   * Tests removing entries from the head and tail of the cache.
+   */
+  public void testRemoveEntries() {
+    EntryCache cache = new EntryCache(1024);
+    for (int i = 1; i <= 5; i++) {
+      cache.put(i, entry(i));
+    }
+    cache.removeBefore(3);
+    cache.removeAfter(4);
+    assertNull(cache.get(2));
+    assertNull(cache.get(5));
+    assertEquals(cache.get(3).getInt(), 3);
+    assertEquals(cache.size(), 8);
+
+    // Appending after the truncated tail continues the cached window.
+    cache.put(5, entry(50));
+    assertEquals(cache.get(5).getInt(), 50);
+  }
+
+  private static ByteBuffer entry(int value) {
+    ByteBuffer entry = ByteBuffer.allocate(4);
+    entry.putInt(value);
+    entry.flip();
+    return entry;
+  }
+
+}
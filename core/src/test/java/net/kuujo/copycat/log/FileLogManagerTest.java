@@ -0,0 +1,435 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * File log test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class FileLogManagerTest extends AbstractLogManagerTest {
+  protected String id;
+
+  @AfterTest
+  protected void cleanLogDir() throws IOException {
+    Path directory = Paths.get("target/test-logs/");
+    if (!Files.exists(directory)) {
+      return;
+    }
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Override
+  protected AbstractLogManager createLog() throws Throwable {
+    id = UUID.randomUUID().toString();
+    return (AbstractLogManager) createConfig().getLogManager(id);
+  }
+
+  /**
+   * Creates the file log configuration for the current test.
+   */
+  protected FileLog createConfig() {
+    return new FileLog()
+      .withSegmentSize(segmentSize)
+      .withDirectory(new File(String.format("target/test-logs/%s", id)));
+  }
+
+  @Override
+  protected int entrySize() {
+    return 12;
+  }
+
+  /**
+   * Tests that entries are recovered when the log is reopened.
+   */
+  public void testReopen() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    reopenLog();
+    assertEquals(log.segments().size(), 3);
+    assertEquals(log.firstIndex().longValue(), 1);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+    assertEquals(log.size(), entrySize() * entriesPerSegment * 3);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+
+    // Appending after reopening should continue from the last recovered index.
+    List<Long> moreIndexes = appendEntries(entriesPerSegment, entriesPerSegment * 3 + 1);
+    assertIndexes(moreIndexes, entriesPerSegment * 3 + 1, entriesPerSegment * 4);
+    assertEquals(log.segments().size(), 4);
+  }
+
+  /**
+   * Tests that the durable index is advanced only by forced flushes.
+   */
+  public void testDurableIndex() throws Throwable {
+    assertEquals(log.durableIndex(), 0);
+    appendEntries(entriesPerSegment - 1);
+    assertEquals(log.durableIndex(), 0);
+    log.flush();
+    assertEquals(log.durableIndex(), 0);
+    log.flush(true);
+    assertEquals(log.durableIndex(), entriesPerSegment - 1);
+
+    // Rolling over to a new segment forces the previous segment.
+    appendEntries(2, entriesPerSegment);
+    log.flush(true);
+    assertEquals(log.durableIndex(), entriesPerSegment + 1);
+
+    log.removeAfter(2);
+    assertEquals(log.durableIndex(), 2);
+  }
+
+  /**
+   * Tests that entries appended in bulk can be read and recovered.
+   */
+  public void testAppendEntriesRecovery() throws Throwable {
+    List<ByteBuffer> entries = IntStream.range(1, entriesPerSegment * 3 + 2)
+      .boxed()
+      .map(i -> ByteBuffer.allocate(4).putInt(i))
+      .collect(Collectors.toList());
+    List<Long> indexes = log.appendEntries(entries);
+    assertIndexes(indexes, 1, entriesPerSegment * 3 + 1);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+
+    reopenLog();
+    assertEquals(log.segments().size(), 4);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3 + 1);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Tests that a torn write at the tail of the log is discarded when the log is reopened.
+   */
+  public void testRecoverTornWrite() throws Throwable {
+    appendEntries(entriesPerSegment * 2 + 2);
+    long segmentId = segmentId(2);
+    log.close();
+
+    // Corrupt the last byte of the last entry in the last segment.
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile(segmentId, "log"), "rw")) {
+      long position = entrySize() * 2 - 1;
+      file.seek(position);
+      byte value = file.readByte();
+      file.seek(position);
+      file.writeByte(value ^ 0xFF);
+    }
+
+    reopenLog();
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 2 + 1);
+    assertBytesEqual(log.getEntry(entriesPerSegment * 2 + 1), entriesPerSegment * 2 + 1);
+    List<Long> indexes = appendEntries(1, entriesPerSegment * 2 + 2);
+    assertIndexes(indexes, entriesPerSegment * 2 + 2, entriesPerSegment * 2 + 2);
+  }
+
+  /**
+   * Tests that entries are recovered from the log file when their index entries are lost.
+   */
+  public void testRecoverLostIndex() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 2 + 2);
+    long segmentId = segmentId(2);
+    log.close();
+    assertTrue(segmentFile(segmentId, "index").delete());
+
+    reopenLog();
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 2 + 2);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Tests that a compacted segment committed before the log was closed replaces the segments it compacted, even if
+   * the compacted segments were not yet deleted.
+   */
+  public void testRecoverCommittedCompaction() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    long firstSegmentId = segmentId(0);
+    long secondSegmentId = segmentId(1);
+    log.close();
+
+    // Simulate a failure after the compacted segment was committed but before the replaced segments were deleted.
+    long compactIndex = entriesPerSegment + 2;
+    writeRewrittenSegment(compactIndex, entriesPerSegment * 2, true);
+
+    reopenLog();
+    assertEquals(log.firstIndex().longValue(), compactIndex);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+    assertBytesEqual(log.getEntry(compactIndex), 0);
+    for (long i = compactIndex + 1; i <= entriesPerSegment * 3; i++) {
+      assertBytesEqual(log.getEntry(i), i);
+    }
+    assertFalse(segmentFile(firstSegmentId, "metadata").exists());
+    assertFalse(segmentFile(secondSegmentId, "metadata").exists());
+  }
+
+  /**
+   * Tests that a compacted segment that was not committed before the log was closed is discarded.
+   */
+  public void testDiscardUncommittedCompaction() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    log.close();
+
+    // Simulate a failure while the compacted segment was being written.
+    long segmentId = writeRewrittenSegment(entriesPerSegment + 2, entriesPerSegment * 2, false);
+
+    reopenLog();
+    assertEquals(log.firstIndex().longValue(), 1);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+    assertFalse(segmentFile(segmentId, "metadata.tmp").exists());
+    assertFalse(segmentFile(segmentId, "log").exists());
+  }
+
+  /**
+   * Tests that expired segments are deleted from disk when the retention policy is enforced.
+   */
+  public void testEnforceRetentionPolicy() throws Throwable {
+    log.close();
+    log.delete();
+    log = (AbstractLogManager) createConfig().withRetentionPolicy(new ZeroRetentionPolicy()).getLogManager(id);
+    log.open();
+
+    appendEntries(entriesPerSegment * 3);
+    List<Long> segmentIds = log.segments().stream().map(LogSegment::id).collect(Collectors.toList());
+    assertEquals(segmentIds.size(), 3);
+    assertEquals(log.enforceRetentionPolicy().get().longValue(), entrySize() * entriesPerSegment * 2);
+    assertEquals(log.segments().size(), 1);
+    assertEquals(log.firstIndex().longValue(), entriesPerSegment * 2 + 1);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 3);
+    assertFalse(segmentFile(segmentIds.get(0), "log").exists());
+    assertFalse(segmentFile(segmentIds.get(1), "index").exists());
+    assertTrue(segmentFile(segmentIds.get(2), "log").exists());
+  }
+
+  /**
+   * Tests that segments are preallocated before the log is rolled over to them.
+   */
+  public void testPreallocateSegments() throws Throwable {
+    appendEntries(entriesPerSegment + 1);
+    assertEquals(log.segments().size(), 2);
+    assertTrue(segmentFile(segmentId(1), "log").length() >= segmentSize);
+    assertEquals(log.segment().size(), entrySize());
+  }
+
+  /**
+   * Tests that the log files of expired segments are recycled without recovering their stale entries.
+   */
+  public void testRecycleSegments() throws Throwable {
+    log.close();
+    log.delete();
+    log = (AbstractLogManager) createConfig().withRetentionPolicy(new ZeroRetentionPolicy()).getLogManager(id);
+    log.open();
+
+    appendEntries(entriesPerSegment * 3);
+    List<Long> segmentIds = log.segments().stream().map(LogSegment::id).collect(Collectors.toList());
+    log.enforceRetentionPolicy().get();
+    assertTrue(segmentFile(segmentIds.get(0), "log.pool").exists());
+    assertTrue(segmentFile(segmentIds.get(1), "log.pool").exists());
+
+    List<Long> indexes = appendEntries(entriesPerSegment * 2 + 1, entriesPerSegment * 3 + 1);
+    assertFalse(segmentFile(segmentIds.get(0), "log.pool").exists());
+    assertFalse(segmentFile(segmentIds.get(1), "log.pool").exists());
+
+    reopenLog();
+    assertEquals(log.firstIndex().longValue(), entriesPerSegment * 2 + 1);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment * 5 + 1);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Tests that segments expire by the time their last entries were appended.
+   */
+  public void testEnforceTimeBasedRetentionPolicy() throws Throwable {
+    log.close();
+    log.delete();
+    log = (AbstractLogManager) createConfig().withRetentionPolicy(new TimeBasedRetentionPolicy(1, TimeUnit.HOURS)).getLogManager(id);
+    log.open();
+
+    appendEntries(entriesPerSegment * 3);
+    reopenLog();
+    assertEquals(log.enforceRetentionPolicy().get().longValue(), 0);
+    assertEquals(log.segments().size(), 3);
+
+    log.close();
+    log = (AbstractLogManager) createConfig().withRetentionPolicy(new TimeBasedRetentionPolicy(-1, TimeUnit.HOURS)).getLogManager(id);
+    log.open();
+    assertEquals(log.enforceRetentionPolicy().get().longValue(), entrySize() * entriesPerSegment * 2);
+    assertEquals(log.firstIndex().longValue(), entriesPerSegment * 2 + 1);
+  }
+
+  /**
+   * Tests that segment time indexes are recovered when the log is reopened.
+   */
+  public void testTimeIndexRecovery() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    long after = System.currentTimeMillis();
+    long index = log.indexForTimestamp(after);
+    reopenLog();
+    assertTrue(((FileLogSegment) log.segments().iterator().next()).isLazy());
+    assertEquals(log.indexForTimestamp(after).longValue(), index);
+    assertEquals(log.indexForTimestamp(0).longValue(), 1);
+  }
+
+  /**
+   * Tests that sealed segments are opened lazily when the log is reopened.
+   */
+  public void testLazyOpenSealedSegments() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    reopenLog();
+    List<LogSegment> segments = new ArrayList<>(log.segments());
+    assertEquals(segments.size(), 3);
+    assertTrue(((FileLogSegment) segments.get(0)).isLazy());
+    assertTrue(((FileLogSegment) segments.get(1)).isLazy());
+    assertFalse(((FileLogSegment) segments.get(2)).isLazy());
+    assertEquals(log.size(), entrySize() * entriesPerSegment * 3);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+    assertFalse(((FileLogSegment) segments.get(0)).isLazy());
+  }
+
+  /**
+   * Tests that removing entries from a lazily opened segment unseals the segment.
+   */
+  public void testRemoveAfterLazySegment() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    reopenLog();
+    log.removeAfter(entriesPerSegment / 2);
+    assertEquals(log.segments().size(), 1);
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment / 2);
+
+    reopenLog();
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment / 2);
+    List<Long> indexes = appendEntries(entriesPerSegment, entriesPerSegment / 2 + 1);
+    reopenLog();
+    assertEquals(log.lastIndex().longValue(), entriesPerSegment / 2 + entriesPerSegment);
+    indexes.stream().forEach(i -> assertBytesEqual(log.getEntry(i), i));
+  }
+
+  /**
+   * Tests that the least recently used sealed segments are closed when the handle budget is exceeded.
+   */
+  public void testSegmentHandleBudget() throws Throwable {
+    SegmentHandleManager handles = SegmentHandleManager.instance();
+    int maxOpenSegments = handles.getMaxOpenSegments();
+    handles.setMaxOpenSegments(1);
+    try {
+      appendEntries(entriesPerSegment * 3);
+      reopenLog();
+      List<FileLogSegment> segments = log.segments().stream().map(s -> (FileLogSegment) s).collect(Collectors.toList());
+      assertTrue(segments.get(0).isLazy());
+      assertTrue(segments.get(1).isLazy());
+
+      assertBytesEqual(log.getEntry(1), 1);
+      assertBytesEqual(log.getEntry(entriesPerSegment + 1), entriesPerSegment + 1);
+      handles.executor().submit(() -> {}).get();
+      assertTrue(segments.get(0).isLazy());
+      assertFalse(segments.get(1).isLazy());
+      assertFalse(segments.get(2).isLazy());
+
+      // Evicted segments are reopened when they're next accessed.
+      assertBytesEqual(log.getEntry(2), 2);
+      handles.executor().submit(() -> {}).get();
+      assertFalse(segments.get(0).isLazy());
+      assertTrue(segments.get(1).isLazy());
+
+      log.close();
+      assertFalse(handles.contains(segments.get(0)));
+    } finally {
+      handles.setMaxOpenSegments(maxOpenSegments);
+    }
+  }
+
+  /**
+   * Closes and reopens the log.
+   */
+  protected void reopenLog() throws Throwable {
+    if (log.isOpen()) {
+      log.close();
+    }
+    log = (AbstractLogManager) createConfig().getLogManager(id);
+    log.open();
+  }
+
+  /**
+   * Writes a segment as it's written by compaction, starting with an empty entry followed by the entries of the log up
+   * to the given last index. The log must be closed.
+   *
+   * @return The id of the written segment.
+   */
+  protected long writeRewrittenSegment(long firstIndex, long lastIndex, boolean commit) throws Throwable {
+    long segmentId = 1000;
+    FileLogSegment segment = new FileLogSegment((FileLogManager) log, segmentId, firstIndex, false);
+    segment.open();
+    List<ByteBuffer> entries = new ArrayList<>();
+    entries.add(ByteBuffer.allocate(4).putInt(0));
+    for (long i = firstIndex + 1; i <= lastIndex; i++) {
+      entries.add(ByteBuffer.allocate(4).putInt((int) i));
+    }
+    segment.appendEntries(entries);
+    segment.flush(true);
+    if (commit) {
+      segment.commit();
+    }
+    segment.close();
+    return segmentId;
+  }
+
+  /**
+   * Returns the id of the segment at the given position in the log.<p>
+   *
+   * Segment ids depend on whether segments were prepared in the background before the log was rolled over to them.
+   */
+  protected long segmentId(int position) {
+    return new ArrayList<>(log.segments()).get(position).id();
+  }
+
+  /**
+   * Returns a file for the given segment.
+   */
+  protected File segmentFile(long segmentId, String extension) {
+    return new File(String.format("target/test-logs/%s/%s-%d.%s", id, id, segmentId, extension));
+  }
+
+}
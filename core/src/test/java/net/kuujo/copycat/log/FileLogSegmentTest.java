@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * File log segment test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class FileLogSegmentTest {
+  private FileLogManager log;
+  private FileLogSegment segment;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Throwable {
+    String id = UUID.randomUUID().toString();
+    log = (FileLogManager) new FileLog()
+      .withPreallocate(false)
+      .withDirectory(new File(String.format("target/test-logs/%s", id)))
+      .getLogManager(id);
+    segment = new FileLogSegment(log, 1, 1);
+    segment.open();
+  }
+
+  @AfterMethod
+  protected void afterMethod() throws Throwable {
+    if (segment.isOpen()) {
+      segment.close();
+    }
+    segment.delete();
+  }
+
+  /**
+   * Tests that a torn final record is discarded when the segment is reopened.
+   */
+  public void testRecoverTruncatedLastEntry() throws Throwable {
+    appendEntries(5);
+    reopenTruncated(2);
+    assertEquals(segment.lastIndex().longValue(), 4);
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(segment.getEntry(i).getInt(), i);
+    }
+    assertEquals(segment.appendEntry(ByteBuffer.allocate(4).putInt(5)), 5);
+    assertEquals(segment.getEntry(5).getInt(), 5);
+  }
+
+  /**
+   * Tests that a final record whose header was only partially written is discarded when the segment is reopened.
+   */
+  public void testRecoverTruncatedLastHeader() throws Throwable {
+    appendEntries(2);
+    reopenTruncated(4 + FileLogSegment.HEADER_SIZE / 2);
+    assertEquals(segment.lastIndex().longValue(), 1);
+    assertEquals(segment.getEntry(1).getInt(), 1);
+  }
+
+  /**
+   * Tests that a segment whose only record was torn is reopened empty.
+   */
+  public void testRecoverTruncatedOnlyEntry() throws Throwable {
+    appendEntries(1);
+    reopenTruncated(1);
+    assertNull(segment.lastIndex());
+  }
+
+  /**
+   * Appends {@code numEntries} increasingly numbered entries to the segment.
+   */
+  private void appendEntries(int numEntries) {
+    for (int i = 1; i <= numEntries; i++) {
+      segment.appendEntry(ByteBuffer.allocate(4).putInt(i));
+    }
+    segment.flush(true);
+  }
+
+  /**
+   * Closes the segment, removes the given number of bytes from the end of its log file, and reopens it.
+   */
+  private void reopenTruncated(int bytes) throws Throwable {
+    long size = segment.size();
+    segment.close();
+    try (RandomAccessFile file = new RandomAccessFile(new File(log.base.getParentFile(), String.format("%s-1.log", log.base.getName())), "rw")) {
+      file.setLength(size - bytes);
+    }
+    segment = new FileLogSegment(log, 1, 1);
+    segment.open();
+  }
+
+}
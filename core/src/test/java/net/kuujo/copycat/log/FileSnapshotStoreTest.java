@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+/**
+ * File snapshot store test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class FileSnapshotStoreTest extends AbstractSnapshotStoreTest {
+  private String id;
+
+  @Override
+  protected SnapshotStore createStore() throws Throwable {
+    id = UUID.randomUUID().toString();
+    return createConfig().getSnapshotStore(id);
+  }
+
+  private FileLog createConfig() {
+    return new FileLog().withDirectory(new File(String.format("target/test-logs/%s", id)));
+  }
+
+  /**
+   * Tests that the latest committed snapshot is recovered when the store is reopened.
+   */
+  public void testRecoverSnapshot() throws Throwable {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).commit();
+    store.createSnapshot(20, 3).writeChunk(chunk("bar")).writeChunk(chunk("foo")).commit();
+    // A snapshot that was never committed is discarded.
+    store.createSnapshot(30, 3).writeChunk(chunk("baz"));
+    store.close();
+
+    store = createConfig().getSnapshotStore(id);
+    store.open();
+    assertEquals(store.snapshot().index(), 20);
+    assertEquals(store.snapshot().term(), 3);
+    assertChunk(store.snapshot(), 0, "bar");
+    assertChunk(store.snapshot(), 1, "foo");
+    assertFalse(new File(String.format("target/test-logs/%s/%s-snapshots/30.tmp", id, id)).exists());
+    store.createSnapshot(30, 3).writeChunk(chunk("baz")).commit();
+    assertChunk(store.snapshot(), 0, "baz");
+  }
+
+  /**
+   * Tests that unchanged chunks remain readable after the snapshot they were written for is deleted.
+   */
+  public void testUnchangedChunks() {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).writeChunk(chunk("bar")).commit();
+    store.createSnapshot(20, 2).writeChunk(chunk("foo")).writeChunk(chunk("baz")).commit();
+    assertFalse(new File(String.format("target/test-logs/%s/%s-snapshots/10", id, id)).exists());
+    assertChunk(store.snapshot(), 0, "foo");
+    assertChunk(store.snapshot(), 1, "baz");
+  }
+
+  /**
+   * Tests that corrupt chunks are detected when they're read.
+   */
+  @Test(expectedExceptions = LogException.class)
+  public void testCorruptChunk() throws Throwable {
+    store.createSnapshot(10, 2).writeChunk(chunk("foo")).commit();
+    try (RandomAccessFile file = new RandomAccessFile(String.format("target/test-logs/%s/%s-snapshots/10/0.chunk", id, id), "rw")) {
+      file.write('x');
+    }
+    store.snapshot().readChunk(0);
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat.log;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Time index test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class TimeIndexTest {
+
+  /**
+   * Tests that lookups return the latest entry appended at or before the given time.
+   */
+  public void testLookup() {
+    TimeIndex index = new TimeIndex();
+    for (int i = 0; i < 100; i++) {
+      index.add(i * 10 + 1, i * 1000);
+    }
+    assertNull(index.lookup(-1, Long.MAX_VALUE));
+    assertEquals(index.lookup(0, Long.MAX_VALUE).longValue(), 1);
+    assertEquals(index.lookup(1500, Long.MAX_VALUE).longValue(), 11);
+    assertEquals(index.lookup(2000, Long.MAX_VALUE).longValue(), 21);
+    assertEquals(index.lookup(Long.MAX_VALUE, Long.MAX_VALUE).longValue(), 991);
+    assertEquals(index.lookup(Long.MAX_VALUE, 990).longValue(), 981);
+  }
+
+  /**
+   * Tests that adding an entry removes entries at or after its index.
+   */
+  public void testAddTruncatesRemovedEntries() {
+    TimeIndex index = new TimeIndex();
+    index.add(1, 1000);
+    index.add(10, 2000);
+    index.add(20, 3000);
+    assertEquals(index.add(10, 4000), 1);
+    assertEquals(index.size(), 2);
+    assertEquals(index.lookup(3500, Long.MAX_VALUE).longValue(), 1);
+    assertEquals(index.lookup(4000, Long.MAX_VALUE).longValue(), 10);
+  }
+
+  /**
+   * Tests that entries remain ordered by time if the clock moves backwards.
+   */
+  public void testClampTimestamps() {
+    TimeIndex index = new TimeIndex();
+    index.add(1, 2000);
+    int position = index.add(2, 1000);
+    assertEquals(index.timestamp(position), 2000);
+    assertNull(index.lookup(1500, Long.MAX_VALUE));
+    assertEquals(index.lookup(2000, Long.MAX_VALUE).longValue(), 2);
+  }
+
+}
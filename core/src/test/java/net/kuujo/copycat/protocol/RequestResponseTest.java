@@ -1372,6 +1372,31 @@ public class RequestResponseTest {
     assertEquals(request.consistency(), Consistency.STRONG);
   }
 
+  /**
+   * Tests that the query request builder fails with an invalid session index.
+   */
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testQueryRequestBuilderFailsWithInvalidIndex() {
+    QueryRequest.builder().withIndex(0L);
+  }
+
+  /**
+   * Tests that the query request builder succeeds with a session index.
+   */
+  public void testQueryRequestBuilderSucceedsWithSessionIndex() {
+    QueryRequest request = QueryRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withEntry(ByteBuffer.wrap("Hello world!".getBytes()))
+      .withConsistency(Consistency.SESSION)
+      .withIndex(10L)
+      .build();
+    assertEquals(request.consistency(), Consistency.SESSION);
+    assertEquals(request.index(), Long.valueOf(10));
+    assertEquals(Consistency.parse(Consistency.BOUNDED.toString()), Consistency.BOUNDED);
+    assertEquals(Consistency.parse(Consistency.SESSION.toString()), Consistency.SESSION);
+  }
+
   /**
    * Tests that the query response builder fails without being properly configured.
    */
@@ -1440,4 +1465,168 @@ public class RequestResponseTest {
     assertEquals(response.result(), "Hello world!");
   }
 
+  /**
+   * Tests that the install request builder fails without a configured leader.
+   */
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testInstallRequestBuilderFailsWithoutLeader() {
+    InstallRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withTerm(1)
+      .withSnapshotIndex(10)
+      .withSnapshotTerm(1)
+      .withChunks(2)
+      .withChunk(0)
+      .withChunkSize(12)
+      .withOffset(0)
+      .withData(ByteBuffer.wrap("Hello world!".getBytes()))
+      .build();
+  }
+
+  /**
+   * Tests that the install request builder fails with a chunk outside of the snapshot.
+   */
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testInstallRequestBuilderFailsWithInvalidChunk() {
+    InstallRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withLeader("bar")
+      .withTerm(1)
+      .withSnapshotIndex(10)
+      .withSnapshotTerm(1)
+      .withChunks(2)
+      .withChunk(2)
+      .withChunkSize(12)
+      .withOffset(0)
+      .withData(ByteBuffer.wrap("Hello world!".getBytes()))
+      .build();
+  }
+
+  /**
+   * Tests that the install request builder fails with data that exceeds the chunk size.
+   */
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testInstallRequestBuilderFailsWithDataExceedingChunk() {
+    InstallRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withLeader("bar")
+      .withTerm(1)
+      .withSnapshotIndex(10)
+      .withSnapshotTerm(1)
+      .withChunks(2)
+      .withChunk(1)
+      .withChunkSize(16)
+      .withOffset(6)
+      .withData(ByteBuffer.wrap("Hello world!".getBytes()))
+      .build();
+  }
+
+  /**
+   * Tests that the install request builder succeeds with a valid configuration.
+   */
+  public void testInstallRequestBuilderSucceedsWithValidConfiguration() {
+    InstallRequest request = InstallRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withLeader("bar")
+      .withTerm(2)
+      .withSnapshotIndex(10)
+      .withSnapshotTerm(1)
+      .withChunks(2)
+      .withChunk(1)
+      .withChunkSize(18)
+      .withOffset(6)
+      .withData(ByteBuffer.wrap("Hello world!".getBytes()))
+      .build();
+    assertEquals(request.id(), "test");
+    assertEquals(request.uri(), "foo");
+    assertEquals(request.leader(), "bar");
+    assertEquals(request.term(), 2);
+    assertEquals(request.snapshotIndex(), 10);
+    assertEquals(request.snapshotTerm(), 1);
+    assertEquals(request.chunks(), 2);
+    assertEquals(request.chunk(), 1);
+    assertEquals(request.offset(), 6);
+    assertEquals(new String(request.data().array()), "Hello world!");
+    assertTrue(request.isChunkComplete());
+    assertTrue(request.isComplete());
+  }
+
+  /**
+   * Tests that the install response builder succeeds with a valid configuration.
+   */
+  public void testInstallResponseBuilderSucceedsWithValidConfiguration() {
+    InstallResponse response = InstallResponse.builder()
+      .withId("test")
+      .withUri("foo")
+      .withTerm(1)
+      .withSucceeded(false)
+      .withChunk(3)
+      .withOffset(1024)
+      .build();
+    assertEquals(response.id(), "test");
+    assertEquals(response.uri(), "foo");
+    assertEquals(response.term(), 1);
+    assertFalse(response.succeeded());
+    assertEquals(response.chunk(), 3);
+    assertEquals(response.offset(), 1024);
+  }
+
+  /**
+   * Tests that the read index request builder fails without a configured term.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testReadIndexRequestBuilderFailsWithoutTerm() {
+    ReadIndexRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .build();
+  }
+
+  /**
+   * Tests that the read index request builder succeeds with a valid configuration.
+   */
+  public void testReadIndexRequestBuilderSucceedsWithValidConfiguration() {
+    ReadIndexRequest request = ReadIndexRequest.builder()
+      .withId("test")
+      .withUri("foo")
+      .withTerm(2)
+      .build();
+    assertEquals(request.id(), "test");
+    assertEquals(request.uri(), "foo");
+    assertEquals(request.term(), 2);
+  }
+
+  /**
+   * Tests that the read index response builder fails with an invalid read index.
+   */
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testReadIndexResponseBuilderFailsWithInvalidReadIndex() {
+    ReadIndexResponse.builder()
+      .withId("test")
+      .withUri("foo")
+      .withTerm(1)
+      .withReadIndex(0L)
+      .build();
+  }
+
+  /**
+   * Tests that the read index response builder succeeds with a valid configuration.
+   */
+  public void testReadIndexResponseBuilderSucceedsWithValidConfiguration() {
+    ReadIndexResponse response = ReadIndexResponse.builder()
+      .withId("test")
+      .withUri("foo")
+      .withTerm(1)
+      .withReadIndex(10L)
+      .build();
+    assertEquals(response.id(), "test");
+    assertEquals(response.uri(), "foo");
+    assertEquals(response.term(), 1);
+    assertEquals(response.readIndex(), Long.valueOf(10));
+  }
+
 }
@@ -74,6 +74,18 @@ public interface EventLog<T> extends Resource<EventLog<T>> {
    */
   CompletableFuture<T> get(long index);
 
+  /**
+   * Finds the index from which to replay entries committed at or after the given time.<p>
+   *
+   * Indexes are found using the times at which entries were appended to the local log, so replaying from the returned
+   * index may also replay a few entries committed shortly before the given time.
+   *
+   * @param timestamp The time from which to replay entries.
+   * @return A completable future to be completed with the index from which to replay entries, or {@code null} if the
+   *         log is empty.
+   */
+  CompletableFuture<Long> indexForTimestamp(long timestamp);
+
   /**
    * Commits an entry to the log.
    *
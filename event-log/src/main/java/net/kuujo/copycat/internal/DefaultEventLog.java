@@ -60,6 +60,16 @@ public class DefaultEventLog<T> extends AbstractResource<EventLog<T>> implements
     return future;
   }
 
+  @Override
+  public CompletableFuture<Long> indexForTimestamp(long timestamp) {
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    context.execute(() -> {
+      Long index = context.log().indexForTimestamp(timestamp);
+      executor.execute(() -> future.complete(index));
+    });
+    return future;
+  }
+
   @Override
   public CompletableFuture<Long> commit(T entry) {
     return context.commit(serializer.writeObject(entry)).thenApplyAsync(ByteBuffer::getLong, executor);
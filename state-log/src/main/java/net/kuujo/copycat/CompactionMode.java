@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat;
+
+/**
+ * State log compaction mode.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public enum CompactionMode {
+
+  /**
+   * Indicates that the log is compacted by replacing committed entries with a snapshot of the state.
+   */
+  SNAPSHOT("snapshot"),
+
+  /**
+   * Indicates that the log is compacted by removing keyed command entries that have been superseded by later entries
+   * with the same key.
+   */
+  KEY("key");
+
+  public static CompactionMode parse(String name) {
+    switch (name) {
+      case "snapshot":
+        return SNAPSHOT;
+      case "key":
+        return KEY;
+      default:
+        throw new IllegalArgumentException("Invalid compaction mode " + name);
+    }
+  }
+
+  private final String name;
+
+  private CompactionMode(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
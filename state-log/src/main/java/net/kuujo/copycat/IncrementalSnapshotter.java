@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat;
+
+/**
+ * Incremental state snapshotter.<p>
+ *
+ * The state is divided into a fixed number of partitions, each of which is written to its own snapshot chunk. When a
+ * snapshot is taken, only partitions that have changed since the previous snapshot are serialized and written, and the
+ * chunks of unchanged partitions are carried over from the previous snapshot.
+ *
+ * @param <V> The partition snapshot type.
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface IncrementalSnapshotter<V> {
+
+  /**
+   * Returns the number of state partitions.
+   *
+   * @return The number of state partitions.
+   */
+  int partitions();
+
+  /**
+   * Returns whether a partition has changed since it was last snapshotted.
+   *
+   * @param partition The partition number.
+   * @return Whether the partition has changed.
+   */
+  boolean isChanged(int partition);
+
+  /**
+   * Takes a snapshot of a partition. Implementations should consider the partition unchanged once it's been
+   * snapshotted. All partitions are snapshotted if the previous snapshot is unavailable.
+   *
+   * @param partition The partition number.
+   * @return The partition snapshot.
+   */
+  V snapshot(int partition);
+
+  /**
+   * Installs a snapshot of a partition.
+   *
+   * @param partition The partition number.
+   * @param snapshot The partition snapshot.
+   */
+  void install(int partition, V snapshot);
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Map from which snapshot views can be captured in constant time.<p>
+ *
+ * Capturing a {@link #view() view} doesn't copy the map. Instead, while a view is outstanding, the first modification
+ * of each key records the value it replaces in the view, and the view is materialized by overlaying the recorded
+ * values on the current contents of the map. Views may be materialized from any thread while the map is modified, but
+ * the map itself must only be modified by one thread at a time. The map permits {@code null} keys and values.
+ *
+ * @param <K> The map key type.
+ * @param <V> The map value type.
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class SnapshotMap<K, V> extends AbstractMap<K, V> {
+  private static final Object NULL = new Object();
+  private static final Object ABSENT = new Object();
+  private final ConcurrentMap<Object, Object> map = new ConcurrentHashMap<>();
+  private final List<View> views = new CopyOnWriteArrayList<>();
+  private final Set<Entry<K, V>> entrySet = new EntrySet();
+
+  public SnapshotMap() {
+  }
+
+  public SnapshotMap(Map<? extends K, ? extends V> map) {
+    putAll(map);
+  }
+
+  /**
+   * Captures a view of the current contents of the map.<p>
+   *
+   * The view must be released once it's no longer needed. Until then, modifications of the map record the values they
+   * replace.
+   *
+   * @return A view of the current contents of the map, materialized as a new {@link HashMap}.
+   */
+  public SnapshotView<Map<K, V>> view() {
+    View view = new View();
+    views.add(view);
+    return view;
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return map.containsKey(mask(key));
+  }
+
+  @Override
+  public V get(Object key) {
+    return unmask(map.get(mask(key)));
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Object maskedKey = mask(key);
+    record(maskedKey);
+    return unmask(map.put(maskedKey, mask(value)));
+  }
+
+  @Override
+  public V remove(Object key) {
+    Object maskedKey = mask(key);
+    record(maskedKey);
+    return unmask(map.remove(maskedKey));
+  }
+
+  @Override
+  public void clear() {
+    if (!views.isEmpty()) {
+      for (Object key : map.keySet()) {
+        record(key);
+      }
+    }
+    map.clear();
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return entrySet;
+  }
+
+  /**
+   * Records the current value of a key in outstanding views before the key is modified.
+   */
+  private void record(Object key) {
+    for (View view : views) {
+      if (!view.original.containsKey(key)) {
+        Object value = map.get(key);
+        view.original.put(key, value != null ? value : ABSENT);
+      }
+    }
+  }
+
+  /**
+   * Masks null keys and values, which aren't supported by the underlying map.
+   */
+  private static Object mask(Object value) {
+    return value != null ? value : NULL;
+  }
+
+  /**
+   * Unmasks null keys and values.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T unmask(Object value) {
+    return value != NULL ? (T) value : null;
+  }
+
+  /**
+   * Snapshot view.
+   */
+  private class View implements SnapshotView<Map<K, V>> {
+    private final ConcurrentMap<Object, Object> original = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<K, V> materialize() {
+      Map<K, V> snapshot = new HashMap<>(map.size());
+      // The original value of a key is always recorded before the key is modified, so a value read from the map is
+      // current as of the view if no original value is recorded for the key once the value has been read.
+      for (Entry<Object, Object> entry : map.entrySet()) {
+        Object value = entry.getValue();
+        Object originalValue = original.get(entry.getKey());
+        if (originalValue == null) {
+          snapshot.put(unmask(entry.getKey()), unmask(value));
+        }
+      }
+      // Keys modified since the view was captured may have been missed above, so add their original values.
+      for (Entry<Object, Object> entry : original.entrySet()) {
+        if (entry.getValue() != ABSENT) {
+          snapshot.put(unmask(entry.getKey()), unmask(entry.getValue()));
+        }
+      }
+      return snapshot;
+    }
+
+    @Override
+    public void release() {
+      views.remove(this);
+    }
+  }
+
+  /**
+   * Map entry set.
+   */
+  private class EntrySet extends AbstractSet<Entry<K, V>> {
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+      Iterator<Entry<Object, Object>> iterator = map.entrySet().iterator();
+      return new Iterator<Entry<K, V>>() {
+        private Object lastKey = ABSENT;
+
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+          Entry<Object, Object> entry = iterator.next();
+          lastKey = entry.getKey();
+          return new MapEntry(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void remove() {
+          if (lastKey == ABSENT) {
+            throw new IllegalStateException();
+          }
+          SnapshotMap.this.remove(unmask(lastKey));
+          lastKey = ABSENT;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public void clear() {
+      SnapshotMap.this.clear();
+    }
+  }
+
+  /**
+   * Map entry that writes through to the map.
+   */
+  private class MapEntry extends SimpleEntry<K, V> {
+    private MapEntry(Object key, Object value) {
+      super(unmask(key), unmask(value));
+    }
+
+    @Override
+    public V setValue(V value) {
+      super.setValue(value);
+      return put(getKey(), value);
+    }
+  }
+
+}
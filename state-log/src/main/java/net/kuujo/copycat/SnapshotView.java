@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat;
+
+/**
+ * View of the state captured for a snapshot.<p>
+ *
+ * Views are captured in the user thread and must not be affected by commands applied after they're captured, for
+ * instance by referencing immutable or persistent copies of the state. The view is then materialized, serialized and
+ * written to the snapshot store on a background thread while commands continue to be applied.
+ *
+ * @param <V> The snapshot type.
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@FunctionalInterface
+public interface SnapshotView<V> {
+
+  /**
+   * Materializes the snapshot. Called at most once, from a background thread.
+   *
+   * @return The snapshot to serialize.
+   */
+  V materialize();
+
+  /**
+   * Releases any resources held by the view. Called once the view is no longer needed, whether or not it was
+   * materialized. By default, this method does nothing.
+   */
+  default void release() {
+  }
+
+}
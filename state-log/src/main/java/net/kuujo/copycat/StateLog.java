@@ -75,6 +75,36 @@ public interface StateLog<T> extends Resource<StateLog<T>> {
    */
   <U extends T, V> StateLog<T> registerCommand(String name, Function<U, V> command);
 
+  /**
+   * Registers a keyed state command.<p>
+   *
+   * When the log is compacted by key, each entry of a keyed command supersedes all prior entries with the same key, so
+   * the command must completely determine the state associated with its key regardless of that state's prior value.
+   *
+   * @param name The command name.
+   * @param command The command function.
+   * @param key The function with which to determine the key of a command entry.
+   * @param <U> The command input type.
+   * @param <V> The command output type.
+   * @return The state log.
+   */
+  <U extends T, V> StateLog<T> registerCommand(String name, Function<U, V> command, Function<U, ?> key);
+
+  /**
+   * Registers a keyed state command that deletes the state associated with its key.<p>
+   *
+   * When the log is compacted by key, entries of delete commands supersede prior entries with the same key and are
+   * themselves removed from the log once they're older than the configured tombstone retention time.
+   *
+   * @param name The command name.
+   * @param command The command function.
+   * @param key The function with which to determine the key of a command entry.
+   * @param <U> The command input type.
+   * @param <V> The command output type.
+   * @return The state log.
+   */
+  <U extends T, V> StateLog<T> registerDeleteCommand(String name, Function<U, V> command, Function<U, ?> key);
+
   /**
    * Unregisters a state command.
    *
@@ -130,6 +160,19 @@ public interface StateLog<T> extends Resource<StateLog<T>> {
    */
   <V> StateLog<T> snapshotWith(Supplier<V> snapshotter);
 
+  /**
+   * Registers a state log snapshot function that captures a {@link SnapshotView view} of the state.<p>
+   *
+   * The snapshot function is called in the user thread, but views are materialized, serialized and written on a
+   * background thread while commands continue to be applied, so capturing a view should be cheap. Snapshot views
+   * replace any snapshot function registered with {@link #snapshotWith(Supplier)}. Snapshots are installed with the
+   * installer registered with {@link #installWith(Consumer)}.
+   *
+   * @param snapshotter The snapshot view function.
+   * @return The state log.
+   */
+  <V> StateLog<T> snapshotViewWith(Supplier<SnapshotView<V>> snapshotter);
+
   /**
    * Registers a state log snapshot installer.
    *
@@ -138,6 +181,16 @@ public interface StateLog<T> extends Resource<StateLog<T>> {
    */
   <V> StateLog<T> installWith(Consumer<V> installer);
 
+  /**
+   * Registers an incremental state log snapshotter, which both snapshots and installs the state.<p>
+   *
+   * Incremental snapshots replace any snapshot and install functions registered on the log.
+   *
+   * @param snapshotter The incremental snapshotter.
+   * @return The state log.
+   */
+  <V> StateLog<T> incrementalSnapshotWith(IncrementalSnapshotter<V> snapshotter);
+
   /**
    * Submits a state command or query to the log.
    *
@@ -24,6 +24,7 @@ import net.kuujo.copycat.log.Log;
 import net.kuujo.copycat.protocol.Consistency;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * State log configuration.
@@ -33,8 +34,12 @@ import java.util.Map;
 public class StateLogConfig extends ResourceConfig<StateLogConfig> {
   private static final Log DEFAULT_STATE_LOG_LOG = new FileLog();
   public static final String STATE_LOG_DEFAULT_CONSISTENCY = "consistency";
+  public static final String STATE_LOG_COMPACTION = "compaction";
+  public static final String STATE_LOG_TOMBSTONE_RETENTION = "tombstone-retention";
 
   private static final String DEFAULT_STATE_LOG_DEFAULT_CONSISTENCY = "default";
+  private static final String DEFAULT_STATE_LOG_COMPACTION = "snapshot";
+  private static final long DEFAULT_STATE_LOG_TOMBSTONE_RETENTION = TimeUnit.DAYS.toMillis(1);
 
   public StateLogConfig() {
     super();
@@ -111,6 +116,116 @@ public class StateLogConfig extends ResourceConfig<StateLogConfig> {
     return this;
   }
 
+  /**
+   * Sets the state log compaction mode.
+   *
+   * @param compaction The state log compaction mode.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public void setCompaction(String compaction) {
+    put(STATE_LOG_COMPACTION, CompactionMode.parse(Assert.isNotNull(compaction, "compaction")).toString());
+  }
+
+  /**
+   * Sets the state log compaction mode.
+   *
+   * @param compaction The state log compaction mode.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public void setCompaction(CompactionMode compaction) {
+    put(STATE_LOG_COMPACTION, Assert.isNotNull(compaction, "compaction").toString());
+  }
+
+  /**
+   * Returns the state log compaction mode.
+   *
+   * @return The state log compaction mode.
+   */
+  public CompactionMode getCompaction() {
+    return CompactionMode.parse(get(STATE_LOG_COMPACTION, DEFAULT_STATE_LOG_COMPACTION));
+  }
+
+  /**
+   * Sets the state log compaction mode, returning the configuration for method chaining.
+   *
+   * @param compaction The state log compaction mode.
+   * @return The state log configuration.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public StateLogConfig withCompaction(String compaction) {
+    setCompaction(compaction);
+    return this;
+  }
+
+  /**
+   * Sets the state log compaction mode, returning the configuration for method chaining.
+   *
+   * @param compaction The state log compaction mode.
+   * @return The state log configuration.
+   * @throws java.lang.NullPointerException If the compaction mode is {@code null}
+   */
+  public StateLogConfig withCompaction(CompactionMode compaction) {
+    setCompaction(compaction);
+    return this;
+  }
+
+  /**
+   * Sets the time for which tombstones are retained when the log is compacted by key.
+   *
+   * @param retention The tombstone retention time in milliseconds.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public void setTombstoneRetention(long retention) {
+    put(STATE_LOG_TOMBSTONE_RETENTION, Assert.arg(retention, retention >= 0, "tombstone retention must not be negative"));
+  }
+
+  /**
+   * Sets the time for which tombstones are retained when the log is compacted by key.
+   *
+   * @param retention The tombstone retention time.
+   * @param unit The retention time unit.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public void setTombstoneRetention(long retention, TimeUnit unit) {
+    setTombstoneRetention(unit.toMillis(retention));
+  }
+
+  /**
+   * Returns the time for which tombstones are retained when the log is compacted by key.
+   *
+   * @return The tombstone retention time in milliseconds.
+   */
+  public long getTombstoneRetention() {
+    return get(STATE_LOG_TOMBSTONE_RETENTION, DEFAULT_STATE_LOG_TOMBSTONE_RETENTION);
+  }
+
+  /**
+   * Sets the time for which tombstones are retained when the log is compacted by key, returning the configuration for
+   * method chaining.
+   *
+   * @param retention The tombstone retention time in milliseconds.
+   * @return The state log configuration.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public StateLogConfig withTombstoneRetention(long retention) {
+    setTombstoneRetention(retention);
+    return this;
+  }
+
+  /**
+   * Sets the time for which tombstones are retained when the log is compacted by key, returning the configuration for
+   * method chaining.
+   *
+   * @param retention The tombstone retention time.
+   * @param unit The retention time unit.
+   * @return The state log configuration.
+   * @throws java.lang.IllegalArgumentException If the retention time is negative
+   */
+  public StateLogConfig withTombstoneRetention(long retention, TimeUnit unit) {
+    setTombstoneRetention(retention, unit);
+    return this;
+  }
+
   @Override
   public CoordinatedResourceConfig resolve(ClusterConfig cluster) {
     return new CoordinatedResourceConfig(super.toMap())
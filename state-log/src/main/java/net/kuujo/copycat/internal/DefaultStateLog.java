@@ -15,19 +15,34 @@
  */
 package net.kuujo.copycat.internal;
 
+import net.kuujo.copycat.CompactionMode;
 import net.kuujo.copycat.CopycatException;
+import net.kuujo.copycat.IncrementalSnapshotter;
 import net.kuujo.copycat.ResourceContext;
+import net.kuujo.copycat.SnapshotView;
 import net.kuujo.copycat.StateLog;
 import net.kuujo.copycat.StateLogConfig;
 import net.kuujo.copycat.internal.util.Assert;
 import net.kuujo.copycat.internal.util.concurrent.Futures;
+import net.kuujo.copycat.internal.util.concurrent.NamedThreadFactory;
+import net.kuujo.copycat.log.KeyResolver;
+import net.kuujo.copycat.log.Snapshot;
+import net.kuujo.copycat.log.SnapshotWriter;
 import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.util.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -41,13 +56,44 @@ import java.util.function.Supplier;
  */
 @SuppressWarnings("rawtypes")
 public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements StateLog<T> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DefaultStateLog.class);
+  private static final int SNAPSHOT_CHUNK_SIZE = 1024 * 1024;
+  private static final int SNAPSHOT_ENTRY = 0;
+  private static final int COMMAND_ENTRY = 1;
+  private static final int KEYED_COMMAND_ENTRY = 2;
+  private static final int TOMBSTONE_ENTRY = 3;
+  private static final int CLEANED_ENTRY = 4;
+  private static final KeyResolver RESOLVER = new EntryKeyResolver();
+  private static final ExecutorService SNAPSHOT_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    private final ThreadFactory threadFactory = new NamedThreadFactory("copycat-snapshot-%d");
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = threadFactory.newThread(r);
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
   private final Map<Integer, OperationInfo> operations = new ConcurrentHashMap<>(128);
+  private final CompactionMode compaction;
+  private final long tombstoneRetention;
+  private final Serializer snapshotSerializer;
   private Supplier snapshotter;
+  private Supplier<SnapshotView> snapshotViewer;
   private Consumer installer;
+  private IncrementalSnapshotter incrementalSnapshotter;
+  private volatile boolean fullSnapshot = true;
+  private volatile long snapshotIndex;
   private long commitIndex;
+  private volatile long cleanedSize;
+  private final AtomicBoolean compacting = new AtomicBoolean();
 
   public DefaultStateLog(ResourceContext context) {
     super(context);
+    StateLogConfig config = context.config().getResourceConfig();
+    this.compaction = config.getCompaction();
+    this.tombstoneRetention = config.getTombstoneRetention();
+    this.snapshotSerializer = context.config().getSerializer();
     context.consumer(this::consume);
   }
 
@@ -58,6 +104,20 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
     return this;
   }
 
+  @Override
+  public <U extends T, V> StateLog<T> registerCommand(String name, Function<U, V> command, Function<U, ?> key) {
+    Assert.state(isClosed(), "Cannot register command on open state log");
+    operations.put(name.hashCode(), new OperationInfo<>(name, command, Assert.isNotNull(key, "key"), false));
+    return this;
+  }
+
+  @Override
+  public <U extends T, V> StateLog<T> registerDeleteCommand(String name, Function<U, V> command, Function<U, ?> key) {
+    Assert.state(isClosed(), "Cannot register command on open state log");
+    operations.put(name.hashCode(), new OperationInfo<>(name, command, Assert.isNotNull(key, "key"), true));
+    return this;
+  }
+
   @Override
   public StateLog<T> unregisterCommand(String name) {
     Assert.state(isClosed(), "Cannot unregister command on open state log");
@@ -102,6 +162,14 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
     return this;
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public <V> StateLog<T> snapshotViewWith(Supplier<SnapshotView<V>> snapshotter) {
+    Assert.state(isClosed(), "Cannot modify state log once opened");
+    this.snapshotViewer = (Supplier) snapshotter;
+    return this;
+  }
+
   @Override
   public <V> StateLog<T> installWith(Consumer<V> installer) {
     Assert.state(isClosed(), "Cannot modify state log once opened");
@@ -109,6 +177,13 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
     return this;
   }
 
+  @Override
+  public <V> StateLog<T> incrementalSnapshotWith(IncrementalSnapshotter<V> snapshotter) {
+    Assert.state(isClosed(), "Cannot modify state log once opened");
+    this.incrementalSnapshotter = snapshotter;
+    return this;
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public <U> CompletableFuture<U> submit(String command, T entry) {
@@ -122,9 +197,20 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
     // queries are forwarded to the current cluster leader for evaluation. Otherwise, it's safe to
     // read stale data from the local node.
     ByteBuffer buffer = serializer.writeObject(entry);
-    ByteBuffer commandEntry = ByteBuffer.allocate(8 + buffer.capacity());
-    commandEntry.putInt(1); // Entry type
-    commandEntry.putInt(command.hashCode());
+    ByteBuffer commandEntry;
+    if (operationInfo.key != null) {
+      // Keyed entries are written with their serialized key so that the log can be cleaned without the command.
+      ByteBuffer key = serializer.writeObject(operationInfo.key.apply(entry));
+      commandEntry = ByteBuffer.allocate(12 + key.capacity() + buffer.capacity());
+      commandEntry.putInt(operationInfo.tombstone ? TOMBSTONE_ENTRY : KEYED_COMMAND_ENTRY);
+      commandEntry.putInt(command.hashCode());
+      commandEntry.putInt(key.capacity());
+      commandEntry.put(key);
+    } else {
+      commandEntry = ByteBuffer.allocate(8 + buffer.capacity());
+      commandEntry.putInt(COMMAND_ENTRY);
+      commandEntry.putInt(command.hashCode());
+    }
     commandEntry.put(buffer);
     commandEntry.rewind();
     if (operationInfo.readOnly) {
@@ -143,24 +229,49 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
    */
   @SuppressWarnings({"unchecked", "rawtypes"})
   private ByteBuffer consume(Long index, ByteBuffer entry) {
-    int entryType = entry.getInt();
+    // Snapshots installed from the leader are represented by an entry with no payload.
+    int entryType = entry.hasRemaining() ? entry.getInt() : SNAPSHOT_ENTRY;
     switch (entryType) {
-      case 0: // Snapshot entry
-        installSnapshot(entry.slice());
+      case SNAPSHOT_ENTRY:
+        installSnapshot(index);
         return ByteBuffer.allocate(0);
-      case 1: // Command entry
+      case COMMAND_ENTRY:
+        return executeCommand(index, entry.getInt(), entry);
+      case KEYED_COMMAND_ENTRY:
+      case TOMBSTONE_ENTRY:
         int commandCode = entry.getInt();
-        OperationInfo operationInfo = operations.get(commandCode);
-        if (operationInfo != null) {
-          T value = serializer.readObject(entry.slice());
-          return serializer.writeObject(executeInUserThread(() -> operationInfo.execute(index, value)));
-        }
-        throw new IllegalStateException("Invalid state log operation");
+        int keyLength = entry.getInt();
+        entry.position(entry.position() + keyLength);
+        return executeCommand(index, commandCode, entry);
+      case CLEANED_ENTRY: // Superseded entry removed by the log cleaner
+        return ByteBuffer.allocate(0);
       default:
         throw new IllegalArgumentException("Invalid entry type");
     }
   }
 
+  /**
+   * Executes a command entry.
+   *
+   * @param index The entry index.
+   * @param commandCode The command code.
+   * @param entry The log entry, positioned at the command input.
+   * @return The command output.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private ByteBuffer executeCommand(Long index, int commandCode, ByteBuffer entry) {
+    // Entries up to the index of an installed snapshot are already reflected in the state.
+    if (index != null && index <= snapshotIndex) {
+      return ByteBuffer.allocate(0);
+    }
+    OperationInfo operationInfo = operations.get(commandCode);
+    if (operationInfo != null) {
+      T value = serializer.readObject(entry.slice());
+      return serializer.writeObject(executeInUserThread(() -> operationInfo.execute(index, value)));
+    }
+    throw new IllegalStateException("Invalid state log operation");
+  }
+
   /**
    * Executes a callable in the user's thread.
    */
@@ -201,34 +312,249 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
   }
 
   /**
-   * Checks whether to take a snapshot.
+   * Checks whether to compact the log.
    */
-  private void checkSnapshot() {
-    if (context.log().size() > context.config().getResourceConfig().getLog().getSegmentSize()) {
-      takeSnapshot();
+  private void checkCompaction() {
+    if (!compacting.get()) {
+      long segmentSize = context.config().getResourceConfig().getLog().getSegmentSize();
+      if (compaction == CompactionMode.KEY) {
+        if (context.log().size() > cleanedSize + segmentSize) {
+          clean();
+        }
+      } else if (commitIndex > snapshotIndex && context.log().size() > segmentSize) {
+        takeSnapshot();
+      }
     }
   }
 
   /**
-   * Takes a snapshot and compacts the log.
+   * Removes superseded keyed entries from the log.<p>
+   *
+   * Sealed segments are cleaned in the background, with only the final swap of the cleaned segments performed on the
+   * context thread. The log is cleaned again once it has grown by another segment.
+   */
+  private void clean() {
+    compacting.set(true);
+    long index = commitIndex;
+    context.execute(() -> {
+      try {
+        long size = context.log().size();
+        context.log().clean(index, RESOLVER, tombstoneRetention, context).whenComplete((reclaimed, error) -> {
+          cleanedSize = error == null ? size - reclaimed : size;
+          compacting.set(false);
+        });
+      } catch (Exception e) {
+        compacting.set(false);
+      }
+    });
+  }
+
+  /**
+   * Takes a snapshot and compacts the log.<p>
+   *
+   * Snapshots are captured in the user thread. Once the term of the snapshot index has been read from the log, the
+   * snapshot is serialized and written to the snapshot store on the snapshot thread, so only capturing the snapshot
+   * delays commands. Snapshot views are captured without serializing the state, while other snapshots are serialized
+   * when they're captured. The log is then compacted in the background, replacing entries up to the snapshot index
+   * with a single snapshot entry, with only the final swap of the compacted segment performed on the context thread.
    */
   private void takeSnapshot() {
-    Object snapshot = snapshotter != null ? executeInUserThread(snapshotter::get) : null;
-    context.log().compact(commitIndex, serializer.writeObject(snapshot));
+    compacting.set(true);
+    long index = commitIndex;
+    SnapshotView<List<ByteBuffer>> snapshot;
+    try {
+      snapshot = captureSnapshot();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to take snapshot at index {}", index, e);
+      fullSnapshot = true;
+      compacting.set(false);
+      return;
+    }
+
+    context.execute(() -> {
+      try {
+        long term = context.log().getEntry(index).getLong(0);
+        SNAPSHOT_EXECUTOR.execute(() -> writeSnapshot(index, term, snapshot));
+      } catch (Exception e) {
+        snapshot.release();
+        fullSnapshot = true;
+        compacting.set(false);
+      }
+    });
+  }
+
+  /**
+   * Captures a snapshot of the state as a view of its snapshot chunks.<p>
+   *
+   * Incremental snapshots are written with one chunk per partition, where the chunks of unchanged partitions are
+   * {@code null}. Other snapshots are serialized as a single object and split into fixed size chunks.
+   */
+  @SuppressWarnings("unchecked")
+  private SnapshotView<List<ByteBuffer>> captureSnapshot() {
+    if (incrementalSnapshotter != null) {
+      List<ByteBuffer> chunks = new ArrayList<>();
+      int partitions = incrementalSnapshotter.partitions();
+      Snapshot previous = context.snapshots().snapshot();
+      boolean full = fullSnapshot || previous == null || previous.chunks() != partitions;
+      for (int i = 0; i < partitions; i++) {
+        chunks.add(full || incrementalSnapshotter.isChanged(i) ? serializer.writeObject(incrementalSnapshotter.snapshot(i)) : null);
+      }
+      fullSnapshot = false;
+      return () -> chunks;
+    } else if (snapshotViewer != null) {
+      SnapshotView view = snapshotViewer.get();
+      return new SnapshotView<List<ByteBuffer>>() {
+        @Override
+        public List<ByteBuffer> materialize() {
+          return splitChunks(snapshotSerializer.writeObject(view.materialize()));
+        }
+
+        @Override
+        public void release() {
+          view.release();
+        }
+      };
+    } else {
+      List<ByteBuffer> chunks = splitChunks(serializer.writeObject(snapshotter != null ? snapshotter.get() : null));
+      return () -> chunks;
+    }
+  }
+
+  /**
+   * Splits a serialized snapshot into fixed size chunks.
+   */
+  private static List<ByteBuffer> splitChunks(ByteBuffer snapshot) {
+    List<ByteBuffer> chunks = new ArrayList<>();
+    for (int position = 0; position < snapshot.capacity(); position += SNAPSHOT_CHUNK_SIZE) {
+      snapshot.limit(Math.min(position + SNAPSHOT_CHUNK_SIZE, snapshot.capacity()));
+      snapshot.position(position);
+      chunks.add(snapshot.slice());
+    }
+    return chunks;
   }
 
   /**
-   * Installs a snapshot.
+   * Writes snapshot chunks to the snapshot store and compacts the log once the snapshot has been committed.
+   */
+  private void writeSnapshot(long index, long term, SnapshotView<List<ByteBuffer>> snapshot) {
+    SnapshotWriter writer = null;
+    try {
+      List<ByteBuffer> chunks;
+      try {
+        chunks = snapshot.materialize();
+      } finally {
+        snapshot.release();
+      }
+
+      writer = context.snapshots().createSnapshot(index, term);
+      for (int i = 0; i < chunks.size(); i++) {
+        ByteBuffer chunk = chunks.get(i);
+        if (chunk != null) {
+          writer.writeChunk(chunk);
+        } else {
+          writer.copyChunk(i);
+        }
+      }
+      writer.commit();
+      snapshotIndex = index;
+    } catch (Exception e) {
+      LOGGER.warn("Failed to write snapshot at index {}", index, e);
+      if (writer != null) {
+        writer.abort();
+      }
+      // Unchanged partitions can't be carried over from a snapshot that was never written.
+      fullSnapshot = true;
+      compacting.set(false);
+      return;
+    }
+
+    ByteBuffer entry = ByteBuffer.allocate(12);
+    entry.putLong(term);
+    entry.putInt(SNAPSHOT_ENTRY);
+    entry.flip();
+    context.execute(() -> {
+      try {
+        context.log().compact(index, entry, context).whenComplete((result, error) -> compacting.set(false));
+      } catch (Exception e) {
+        compacting.set(false);
+      }
+    });
+  }
+
+  /**
+   * Installs the snapshot taken at the given index from the snapshot store.<p>
+   *
+   * If a later snapshot was committed before the log was compacted, the later snapshot is installed and the entries it
+   * includes are skipped when they're applied.
    */
   @SuppressWarnings("unchecked")
-  private void installSnapshot(ByteBuffer snapshot) {
-    if (installer != null) {
-      Object value = serializer.readObject(snapshot);
+  private void installSnapshot(long index) {
+    Snapshot snapshot = context.snapshots().snapshot();
+    if (snapshot == null || snapshot.index() < index) {
+      throw new IllegalStateException("No snapshot available at index " + index);
+    }
+
+    if (incrementalSnapshotter != null) {
+      List<Object> partitions = new ArrayList<>(snapshot.chunks());
+      for (int i = 0; i < snapshot.chunks(); i++) {
+        partitions.add(serializer.readObject(snapshot.readChunk(i)));
+      }
+      executeInUserThread(() -> {
+        for (int i = 0; i < partitions.size(); i++) {
+          incrementalSnapshotter.install(i, partitions.get(i));
+        }
+        return null;
+      });
+    } else if (installer != null) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) snapshot.size());
+      for (int i = 0; i < snapshot.chunks(); i++) {
+        buffer.put(snapshot.readChunk(i));
+      }
+      buffer.flip();
+      Object value = serializer.readObject(buffer);
       executeInUserThread(() -> {
         installer.accept(value);
         return null;
       });
     }
+    snapshotIndex = snapshot.index();
+    commitIndex = Math.max(commitIndex, snapshot.index());
+    fullSnapshot = true;
+  }
+
+  /**
+   * Resolves the keys of keyed command entries. Log entries are prefixed with the 8 byte term of the entry.
+   */
+  private static class EntryKeyResolver implements KeyResolver {
+    @Override
+    public Object key(ByteBuffer entry) {
+      if (entry.limit() < 20) {
+        return null;
+      }
+      int entryType = entry.getInt(8);
+      if (entryType != KEYED_COMMAND_ENTRY && entryType != TOMBSTONE_ENTRY) {
+        return null;
+      }
+      byte[] key = new byte[entry.getInt(16)];
+      ByteBuffer duplicate = entry.duplicate();
+      duplicate.position(20);
+      duplicate.get(key);
+      return ByteBuffer.wrap(key);
+    }
+
+    @Override
+    public boolean isTombstone(ByteBuffer entry) {
+      return entry.getInt(8) == TOMBSTONE_ENTRY;
+    }
+
+    @Override
+    public ByteBuffer placeholder(ByteBuffer entry) {
+      ByteBuffer placeholder = ByteBuffer.allocate(12);
+      placeholder.putLong(entry.getLong(0));
+      placeholder.putInt(CLEANED_ENTRY);
+      placeholder.flip();
+      return placeholder;
+    }
   }
 
   /**
@@ -237,6 +563,8 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
   private class OperationInfo<TT, U> {
     private final String name;
     private final Function<TT, U> function;
+    private final Function<TT, ?> key;
+    private final boolean tombstone;
     private final boolean readOnly;
     private final Consistency consistency;
 
@@ -245,8 +573,18 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
     }
 
     private OperationInfo(String name, Function<TT, U> function, boolean readOnly, Consistency consistency) {
+      this(name, function, null, false, readOnly, consistency);
+    }
+
+    private OperationInfo(String name, Function<TT, U> function, Function<TT, ?> key, boolean tombstone) {
+      this(name, function, key, tombstone, false, Consistency.DEFAULT);
+    }
+
+    private OperationInfo(String name, Function<TT, U> function, Function<TT, ?> key, boolean tombstone, boolean readOnly, Consistency consistency) {
       this.name = name;
       this.function = function;
+      this.key = key;
+      this.tombstone = tombstone;
       this.readOnly = readOnly;
       this.consistency = consistency;
     }
@@ -256,7 +594,7 @@ public class DefaultStateLog<T> extends AbstractResource<StateLog<T>> implements
       if (index != null) {
         commitIndex = index;
       }
-      checkSnapshot();
+      checkCompaction();
       return result;
     }
   }
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.kuujo.copycat;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import net.kuujo.copycat.cluster.ClusterConfig;
+import net.kuujo.copycat.cluster.coordinator.CoordinatedResourceConfig;
+import net.kuujo.copycat.cluster.manager.ClusterManager;
+import net.kuujo.copycat.internal.DefaultStateLog;
+import net.kuujo.copycat.log.FileLog;
+import net.kuujo.copycat.log.LogManager;
+import net.kuujo.copycat.log.Snapshot;
+import net.kuujo.copycat.log.SnapshotStore;
+import net.kuujo.copycat.log.SnapshotWriter;
+import net.kuujo.copycat.protocol.Consistency;
+import net.kuujo.copycat.protocol.ReplicaMetrics;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * State log test.<p>
+ *
+ * State logs run on a single member resource context that commits entries directly to a file log, so the log can be
+ * replayed by reopening the state log over the same directory.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class StateLogTest {
+  private File directory;
+  private TestResourceContext context;
+
+  @BeforeMethod
+  protected void beforeMethod() throws IOException {
+    directory = Files.createTempDirectory("copycat-state-log").toFile();
+  }
+
+  @AfterMethod
+  protected void afterMethod() throws Exception {
+    if (context != null && context.isOpen()) {
+      context.close().get(10, TimeUnit.SECONDS);
+    }
+    Files.walk(directory.toPath())
+      .sorted(Comparator.reverseOrder())
+      .map(Path::toFile)
+      .forEach(File::delete);
+  }
+
+  /**
+   * Tests that entries superseded by later keyed commands are cleaned from the log and that the cleaned log is
+   * replayed to the same state.
+   */
+  public void testCleanKeyedCommands() throws Exception {
+    Map<String, String> map = new HashMap<>();
+    StateLog<String> stateLog = createKeyValueLog(CompactionMode.KEY, map);
+    stateLog.open().get(10, TimeUnit.SECONDS);
+    for (int i = 0; i < 200; i++) {
+      stateLog.submit("put", "key" + (i % 5) + "=" + i).get(10, TimeUnit.SECONDS);
+    }
+    stateLog.submit("delete", "key4").get(10, TimeUnit.SECONDS);
+
+    // Cleaned entries are replaced by placeholders that keep the entry's term.
+    await(() -> {
+      LogManager log = context.log();
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        ByteBuffer entry = log.getEntry(i);
+        if (entry.getLong(0) == 1 && entry.getInt(8) == 4) {
+          return true;
+        }
+      }
+      return false;
+    });
+    stateLog.close().get(10, TimeUnit.SECONDS);
+
+    Map<String, String> replayed = new HashMap<>();
+    createKeyValueLog(CompactionMode.KEY, replayed).open().get(10, TimeUnit.SECONDS);
+    assertEquals(replayed, map);
+    assertEquals(replayed.size(), 4);
+    assertEquals(replayed.get("key0"), "195");
+    assertFalse(replayed.containsKey("key4"));
+  }
+
+  /**
+   * Tests that unchanged partitions are carried over from the previous snapshot and that the incremental snapshot is
+   * installed when the log is replayed.
+   */
+  public void testIncrementalSnapshot() throws Exception {
+    TestSnapshotter snapshotter = new TestSnapshotter();
+    StateLog<String> stateLog = createPartitionedLog(snapshotter);
+    stateLog.open().get(10, TimeUnit.SECONDS);
+    stateLog.submit("add", "b").get(10, TimeUnit.SECONDS);
+    for (int i = 0; i < 1000 && snapshotter.snapshots[0].get() < 2; i++) {
+      stateLog.submit("add", "a" + i).get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(snapshotter.snapshots[0].get(), 2);
+    assertEquals(snapshotter.snapshots[1].get(), 1);
+
+    // The second snapshot is taken when the last command is applied.
+    long lastIndex = call(() -> context.log().lastIndex());
+    await(() -> context.snapshots().snapshot() != null && context.snapshots().snapshot().index() == lastIndex);
+    Snapshot snapshot = call(() -> context.snapshots().snapshot());
+    assertEquals(snapshot.chunks(), 2);
+    assertEquals(context.config().getSerializer().readObject(snapshot.readChunk(1)), Arrays.asList("b"));
+    await(() -> context.log().firstIndex() == lastIndex);
+    stateLog.close().get(10, TimeUnit.SECONDS);
+
+    TestSnapshotter replayed = new TestSnapshotter();
+    createPartitionedLog(replayed).open().get(10, TimeUnit.SECONDS);
+    assertEquals(replayed.partitions[0], snapshotter.partitions[0]);
+    assertEquals(replayed.partitions[1], Arrays.asList("b"));
+  }
+
+  /**
+   * Tests that snapshot views are released even if they fail to materialize and that the state is restored from a
+   * snapshot view when the log is replayed.
+   */
+  public void testSnapshotView() throws Exception {
+    List<String> list = new ArrayList<>();
+    AtomicInteger views = new AtomicInteger();
+    AtomicInteger releases = new AtomicInteger();
+    StateLog<String> stateLog = createListLog(CompactionMode.SNAPSHOT, 1024, list)
+      .snapshotViewWith(() -> {
+        List<String> view = new ArrayList<>(list);
+        int attempt = views.incrementAndGet();
+        return new SnapshotView<List<String>>() {
+          @Override
+          public List<String> materialize() {
+            if (attempt == 1) {
+              throw new IllegalStateException("Failed to materialize snapshot");
+            }
+            return view;
+          }
+
+          @Override
+          public void release() {
+            releases.incrementAndGet();
+          }
+        };
+      });
+    stateLog.open().get(10, TimeUnit.SECONDS);
+
+    for (int i = 0; i < 1000 && call(() -> context.snapshots().snapshot()) == null; i++) {
+      stateLog.submit("add", String.valueOf(i)).get(10, TimeUnit.SECONDS);
+    }
+    assertTrue(views.get() > 1);
+    await(() -> releases.get() == views.get());
+    await(() -> context.log().firstIndex() > 1);
+    stateLog.close().get(10, TimeUnit.SECONDS);
+
+    List<String> replayed = new ArrayList<>();
+    createListLog(CompactionMode.SNAPSHOT, 1024, replayed).open().get(10, TimeUnit.SECONDS);
+    assertEquals(replayed, list);
+  }
+
+  /**
+   * Tests that a snapshot entry without a payload installs the latest snapshot and that entries included in the
+   * snapshot aren't applied again.
+   */
+  public void testReplaySkipsEntriesInSnapshot() throws Exception {
+    List<String> list = new ArrayList<>();
+    StateLog<String> stateLog = createListLog(CompactionMode.SNAPSHOT, 1024 * 1024, list);
+    stateLog.open().get(10, TimeUnit.SECONDS);
+    for (int i = 1; i <= 5; i++) {
+      stateLog.submit("add", String.valueOf(i)).get(10, TimeUnit.SECONDS);
+    }
+    stateLog.close().get(10, TimeUnit.SECONDS);
+
+    // A snapshot installed from the leader leaves an entry with only a term in the log. A later snapshot is committed
+    // before the log is compacted again.
+    CoordinatedResourceConfig config = createConfig(CompactionMode.SNAPSHOT, 1024 * 1024);
+    LogManager log = config.getLog().getLogManager("test");
+    SnapshotStore snapshots = config.getLog().getSnapshotStore("test");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> {
+        log.open();
+        snapshots.open();
+        SnapshotWriter writer = snapshots.createSnapshot(4, 1);
+        writer.writeChunk(config.getSerializer().writeObject(new ArrayList<>(Arrays.asList("1", "2", "3", "4"))));
+        writer.commit();
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        entry.putLong(1);
+        entry.flip();
+        return log.compact(3, entry, executor);
+      }).get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+      executor.submit(() -> {
+        log.close();
+        snapshots.close();
+        return null;
+      }).get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+
+    List<String> replayed = new ArrayList<>();
+    createListLog(CompactionMode.SNAPSHOT, 1024 * 1024, replayed).open().get(10, TimeUnit.SECONDS);
+    assertEquals(replayed, Arrays.asList("1", "2", "3", "4", "5"));
+  }
+
+  /**
+   * Creates a state log of keyed put and delete commands applied to the given map.
+   */
+  private StateLog<String> createKeyValueLog(CompactionMode compaction, Map<String, String> map) {
+    return createStateLog(compaction, 1024)
+      .registerCommand("put", (String entry) -> map.put(entry.split("=")[0], entry.split("=")[1]), (String entry) -> entry.split("=")[0])
+      .registerDeleteCommand("delete", (String key) -> map.remove(key), (String key) -> key);
+  }
+
+  /**
+   * Creates a state log of commands that add entries to the given list.
+   */
+  private StateLog<String> createListLog(CompactionMode compaction, int segmentSize, List<String> list) {
+    return createStateLog(compaction, segmentSize)
+      .registerCommand("add", (String entry) -> list.add(entry))
+      .installWith((List<String> snapshot) -> {
+        list.clear();
+        list.addAll(snapshot);
+      });
+  }
+
+  /**
+   * Creates a state log of commands that add entries to the partitions of the given snapshotter.
+   */
+  private StateLog<String> createPartitionedLog(TestSnapshotter snapshotter) {
+    return createStateLog(CompactionMode.SNAPSHOT, 1024)
+      .registerCommand("add", (String entry) -> snapshotter.add(entry))
+      .incrementalSnapshotWith(snapshotter);
+  }
+
+  /**
+   * Creates a state log over the test directory.
+   */
+  private StateLog<String> createStateLog(CompactionMode compaction, int segmentSize) {
+    context = new TestResourceContext(createConfig(compaction, segmentSize));
+    return new DefaultStateLog<>(context);
+  }
+
+  /**
+   * Creates a resource configuration for a state log over the test directory.
+   */
+  private CoordinatedResourceConfig createConfig(CompactionMode compaction, int segmentSize) {
+    return new StateLogConfig()
+      .withLog(new FileLog().withDirectory(directory).withSegmentSize(segmentSize))
+      .withCompaction(compaction)
+      .withTombstoneRetention(0)
+      .resolve(new ClusterConfig());
+  }
+
+  /**
+   * Runs the given task on the context thread and waits for its result.
+   */
+  private <T> T call(Callable<T> task) throws Exception {
+    return context.executor.submit(task).get(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Waits for the given condition, evaluated on the context thread, to be met.
+   */
+  private void await(Callable<Boolean> condition) throws Exception {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (!call(condition)) {
+      assertTrue(System.currentTimeMillis() < timeout, "condition not met");
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Incremental snapshotter with one partition for entries starting with "a" and one for all other entries.
+   */
+  private static class TestSnapshotter implements IncrementalSnapshotter<List<String>> {
+    @SuppressWarnings("unchecked")
+    private final List<String>[] partitions = new List[]{new ArrayList<>(), new ArrayList<>()};
+    private final boolean[] changed = new boolean[2];
+    private final AtomicInteger[] snapshots = new AtomicInteger[]{new AtomicInteger(), new AtomicInteger()};
+
+    private boolean add(String entry) {
+      int partition = entry.startsWith("a") ? 0 : 1;
+      changed[partition] = true;
+      return partitions[partition].add(entry);
+    }
+
+    @Override
+    public int partitions() {
+      return partitions.length;
+    }
+
+    @Override
+    public boolean isChanged(int partition) {
+      return changed[partition];
+    }
+
+    @Override
+    public List<String> snapshot(int partition) {
+      snapshots[partition].incrementAndGet();
+      changed[partition] = false;
+      return new ArrayList<>(partitions[partition]);
+    }
+
+    @Override
+    public void install(int partition, List<String> snapshot) {
+      partitions[partition] = new ArrayList<>(snapshot);
+      changed[partition] = false;
+    }
+  }
+
+  /**
+   * Single member resource context that commits entries directly to the log.<p>
+   *
+   * Entries are appended and applied on the context thread. When the context is opened, all entries in the log are
+   * applied in order.
+   */
+  private static class TestResourceContext implements ResourceContext {
+    private final CoordinatedResourceConfig config;
+    private final LogManager log;
+    private final SnapshotStore snapshots;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private BiFunction<Long, ByteBuffer, ByteBuffer> consumer;
+    private volatile boolean open;
+
+    private TestResourceContext(CoordinatedResourceConfig config) {
+      this.config = config;
+      this.log = config.getLog().getLogManager("test");
+      this.snapshots = config.getLog().getSnapshotStore("test");
+    }
+
+    @Override
+    public String name() {
+      return "test";
+    }
+
+    @Override
+    public CoordinatedResourceConfig config() {
+      return config;
+    }
+
+    @Override
+    public CopycatState state() {
+      return CopycatState.LEADER;
+    }
+
+    @Override
+    public ClusterManager cluster() {
+      return null;
+    }
+
+    @Override
+    public LogManager log() {
+      return log;
+    }
+
+    @Override
+    public SnapshotStore snapshots() {
+      return snapshots;
+    }
+
+    @Override
+    public Collection<ReplicaMetrics> replicaMetrics() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public ResourceContext consumer(BiFunction<Long, ByteBuffer, ByteBuffer> consumer) {
+      this.consumer = consumer;
+      return this;
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> commit(ByteBuffer entry) {
+      return CompletableFuture.supplyAsync(() -> {
+        ByteBuffer logEntry = ByteBuffer.allocate(entry.remaining() + 8);
+        logEntry.putLong(1);
+        logEntry.put(entry);
+        logEntry.flip();
+        return apply(log.appendEntry(logEntry), logEntry);
+      }, executor);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> query(ByteBuffer entry) {
+      return query(entry, Consistency.DEFAULT);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> query(ByteBuffer entry, Consistency consistency) {
+      return CompletableFuture.supplyAsync(() -> consumer.apply(null, entry), executor);
+    }
+
+    /**
+     * Applies a log entry to the consumer without its term.
+     */
+    private ByteBuffer apply(long index, ByteBuffer entry) {
+      ByteBuffer userEntry = entry.duplicate();
+      userEntry.position(8);
+      return consumer.apply(index, userEntry.slice());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      executor.execute(command);
+    }
+
+    @Override
+    public CompletableFuture<ResourceContext> open() {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          log.open();
+          snapshots.open();
+        } catch (Exception e) {
+          throw new CopycatException(e);
+        }
+        if (log.firstIndex() != null) {
+          for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+            apply(i, log.getEntry(i));
+          }
+        }
+        open = true;
+        return this;
+      }, executor);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public CompletableFuture<Void> close() {
+      return CompletableFuture.runAsync(() -> {
+        open = false;
+        try {
+          log.close();
+          snapshots.close();
+        } catch (Exception e) {
+          throw new CopycatException(e);
+        }
+      }, executor).thenRun(executor::shutdown);
+    }
+
+    @Override
+    public boolean isClosed() {
+      return !open;
+    }
+  }
+
+}
@@ -34,4 +34,17 @@ public @interface Command {
    */
   String name() default "";
 
+  /**
+   * The position of the argument that keys the command, or {@code -1} if the command is not keyed.<p>
+   *
+   * When the state log is compacted by key, a keyed command supersedes all prior commands with the same key, so keyed
+   * commands must completely determine the state associated with the key regardless of its prior state.
+   */
+  int key() default -1;
+
+  /**
+   * Whether the command deletes the state associated with its key.
+   */
+  boolean tombstone() default false;
+
 }
@@ -23,6 +23,9 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
@@ -33,6 +36,9 @@ import java.util.function.Function;
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class DefaultStateMachine<T> extends AbstractResource<StateMachine<T>> implements StateMachine<T> {
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Boolean.class,
+    Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class,
+    BigDecimal.class, Class.class));
   private final Class<T> stateType;
   private T state;
   private final StateLog<List<Object>> log;
@@ -121,22 +127,54 @@ public class DefaultStateMachine<T> extends AbstractResource<StateMachine<T>> im
   }
 
   /**
-   * Takes a snapshot of the state machine state.
+   * Captures a view of the state machine state.<p>
+   *
+   * {@link SnapshotMap} values are captured as views and immutable values are captured by reference, so neither is
+   * copied until the snapshot is materialized in the background. Other values may be modified in place by subsequent
+   * commands, so they're serialized when the view is captured.
    */
-  private Map<String, Object> snapshot() {
-    return data;
+  private SnapshotView<Map<String, Object>> snapshot() {
+    Map<String, SnapshotView<?>> views = new HashMap<>(data.size());
+    for (Map.Entry<String, Object> entry : data.entrySet()) {
+      Object value = entry.getValue();
+      if (value instanceof SnapshotMap) {
+        views.put(entry.getKey(), ((SnapshotMap<?, ?>) value).view());
+      } else if (value == null || value instanceof Enum || IMMUTABLE_TYPES.contains(value.getClass())) {
+        views.put(entry.getKey(), () -> value);
+      } else {
+        ByteBuffer bytes = serializer.writeObject(value);
+        views.put(entry.getKey(), () -> serializer.readObject(bytes));
+      }
+    }
+
+    return new SnapshotView<Map<String, Object>>() {
+      @Override
+      public Map<String, Object> materialize() {
+        Map<String, Object> snapshot = new HashMap<>(views.size());
+        for (Map.Entry<String, SnapshotView<?>> entry : views.entrySet()) {
+          snapshot.put(entry.getKey(), entry.getValue().materialize());
+        }
+        return snapshot;
+      }
+
+      @Override
+      public void release() {
+        views.values().forEach(SnapshotView::release);
+      }
+    };
   }
 
   /**
-   * Installs a snapshot of the state machine state.
+   * Installs a snapshot of the state machine state and reinitializes the current state with it.
    */
   private void install(Map<String, Object> snapshot) {
     this.data = snapshot;
+    initialize();
   }
 
   @Override
   public synchronized CompletableFuture<StateMachine<T>> open() {
-    log.snapshotWith(this::snapshot);
+    log.snapshotViewWith(this::snapshot);
     log.installWith(this::install);
     return log.open().thenApply(v -> this);
   }
@@ -149,7 +187,7 @@ public class DefaultStateMachine<T> extends AbstractResource<StateMachine<T>> im
   @Override
   public synchronized CompletableFuture<Void> close() {
     return log.close().whenComplete((result, error) -> {
-      log.snapshotWith(null);
+      log.snapshotViewWith(null);
       log.installWith(null);
     });
   }
@@ -170,7 +208,17 @@ public class DefaultStateMachine<T> extends AbstractResource<StateMachine<T>> im
       } else {
         Command command = method.getAnnotation(Command.class);
         if (command != null) {
-          log.registerCommand(command.name().equals("") ? method.getName() : command.name(), wrapOperation(method));
+          String name = command.name().equals("") ? method.getName() : command.name();
+          if (command.key() >= 0) {
+            int key = command.key();
+            if (command.tombstone()) {
+              log.registerDeleteCommand(name, wrapOperation(method), values -> values.get(key));
+            } else {
+              log.registerCommand(name, wrapOperation(method), values -> values.get(key));
+            }
+          } else {
+            log.registerCommand(name, wrapOperation(method));
+          }
         } else if (method.isAccessible()) {
           log.registerCommand(method.getName(), wrapOperation(method));
         }